@@ -99,6 +99,15 @@ public final class ByteArrayDefinition extends AbstractArrayDefinition {
         return b.toString();
     }
 
+    /**
+     * Get a copy of the contents of this array
+     *
+     * @return the bytes of the array
+     */
+    public byte[] getBytes() {
+        return Arrays.copyOf(fContent, fContent.length);
+    }
+
     /**
      * Get a byte of the byte array
      * @param index the index of the byte
@@ -21,6 +21,7 @@ import org.eclipse.tracecompass.ctf.core.event.types.*;
 import org.eclipse.tracecompass.internal.ctf.core.SafeMappedByteBuffer;
 import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputPacketIndex;
 import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputPacketIndexEntry;
+import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputPacketIndexFile;
 import org.eclipse.tracecompass.internal.ctf.core.trace.Utils;
 import org.jetbrains.annotations.Nullable;
 
@@ -30,7 +31,10 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.List;
 import java.util.UUID;
+import java.util.logging.Logger;
 
 /**
  * <b><u>StreamInput</u></b>
@@ -43,6 +47,8 @@ public class CTFStreamInput implements IDefinitionScope {
     // Attributes
     // ------------------------------------------------------------------------
 
+    private static final Logger LOGGER = Logger.getLogger(CTFStreamInput.class.getName());
+
     private static final int MAP_SIZE = 4096;
 
     /**
@@ -82,6 +88,17 @@ public class CTFStreamInput implements IDefinitionScope {
      */
     private long fLostSoFar = 0;
 
+    /**
+     * Whether the complete index of this input was read from, or written to,
+     * its index file
+     */
+    private boolean fIndexPersisted = false;
+
+    /**
+     * Number of packets of the index whose event ids are known
+     */
+    private int fNbPacketsWithEventIds = 0;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -191,15 +208,55 @@ public class CTFStreamInput implements IDefinitionScope {
 
     /**
      * Create the index for this trace file.
+     *
+     * This can be called for different stream inputs in parallel.
      */
-    public void setupIndex() {
+    public synchronized void setupIndex() {
+        if (!fIndex.isEmpty()) {
+            return;
+        }
 
         /*
-         * The BitBuffer to extract data from the StreamInput
+         * Re-use the index persisted the last time this file was completely
+         * indexed, if it still matches the file.
          */
-        BitBuffer bitBuffer = new BitBuffer();
-        bitBuffer.setByteOrder(getStream().getTrace().getByteOrder());
+        List<ICTFPacketDescriptor> entries = StreamInputPacketIndexFile.read(fFile);
+        if (entries != null && !entries.isEmpty()) {
+            fIndex.appendAll(entries);
+            for (ICTFPacketDescriptor entry : entries) {
+                fLostSoFar += entry.getLostEvents();
+                if (entry.getEventIds() != null) {
+                    fNbPacketsWithEventIds++;
+                }
+            }
+            setTimestampEnd(fIndex.lastElement().getTimestampEnd());
+            fIndexPersisted = true;
+            return;
+        }
 
+        /* Otherwise index all the packets currently in the file, using a single channel. */
+        try (FileChannel fc = FileChannel.open(fFile.toPath(), StandardOpenOption.READ)) {
+            long sizeBits = fc.size() * Byte.SIZE;
+            long currentPosBits = getNextPacketOffsetBits();
+            while (currentPosBits < sizeBits) {
+                if (!fIndex.append(createPacketIndexEntry(fc, currentPosBits))) {
+                    return;
+                }
+                long nextPosBits = getNextPacketOffsetBits();
+                if (nextPosBits <= currentPosBits) {
+                    /* Zero-sized packet, leave it to the readers to deal with */
+                    return;
+                }
+                currentPosBits = nextPosBits;
+            }
+            persistIndex();
+        } catch (IOException | CTFException e) {
+            /*
+             * Packets that could not be indexed here will be indexed, and
+             * their errors reported, when they get read.
+             */
+            LOGGER.fine(() -> "Stopped indexing " + fFile + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+        }
     }
 
     /**
@@ -212,57 +269,108 @@ public class CTFStreamInput implements IDefinitionScope {
      * @throws CTFException
      *             If there was a problem reading the packed header
      */
-    public boolean addPacketHeaderIndex() throws CTFException {
-        long currentPosBits = 0L;
-        if (!fIndex.isEmpty()) {
-            ICTFPacketDescriptor pos = fIndex.lastElement();
-            if (pos == null) {
-                throw new IllegalStateException("Index contains null packet entries"); //$NON-NLS-1$
-            }
-            currentPosBits = pos.getOffsetBits() + pos.getPacketSizeBits();
-        }
+    public synchronized boolean addPacketHeaderIndex() throws CTFException {
+        long currentPosBits = getNextPacketOffsetBits();
         if (currentPosBits < getStreamSizeBits()) {
-            fIndex.append(createPacketIndexEntry(currentPosBits));
+            try (FileChannel fc = FileChannel.open(fFile.toPath(), StandardOpenOption.READ)) {
+                fIndex.append(createPacketIndexEntry(fc, currentPosBits));
+            } catch (IOException e) {
+                throw new CTFException("Failed to create packet index entry", e); //$NON-NLS-1$
+            }
             return true;
         }
+        persistIndex();
         return false;
     }
 
+    /**
+     * Record the ids of the types of the events present in a packet of this
+     * file, once it was read completely. When all the packets of the file are
+     * covered, the index file is updated to include them.
+     *
+     * @param packet
+     *            The packet, from the index of this stream input
+     * @param eventIds
+     *            The ids of the events of the packet
+     */
+    public synchronized void setPacketEventIds(ICTFPacketDescriptor packet, BitSet eventIds) {
+        if (!(packet instanceof StreamInputPacketIndexEntry) || packet.getEventIds() != null) {
+            return;
+        }
+        ((StreamInputPacketIndexEntry) packet).setEventIds((BitSet) eventIds.clone());
+        fNbPacketsWithEventIds++;
+        if (fIndexPersisted && fNbPacketsWithEventIds == fIndex.size()) {
+            StreamInputPacketIndexFile.write(fFile, fIndex);
+        }
+    }
+
+    /**
+     * Index the types of the events present in each packet of this file, so
+     * that readers filtering events by name can skip the packets that have
+     * none of the events they want. This reads the whole file, but skips over
+     * the contents of the events whenever possible.
+     *
+     * Packets that are read completely by regular readers also get their
+     * event types indexed along the way.
+     */
+    public void indexEventIds() {
+        try (CTFStreamInputReader reader = new CTFStreamInputReader(this, eventName -> false)) {
+            /* No event is wanted, this only returns once all packets are read */
+            reader.readNextEvent();
+        } catch (CTFException | IOException e) {
+            LOGGER.fine(() -> "Stopped indexing the event types of " + fFile + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    private long getNextPacketOffsetBits() {
+        if (fIndex.isEmpty()) {
+            return 0L;
+        }
+        ICTFPacketDescriptor pos = fIndex.lastElement();
+        if (pos == null) {
+            throw new IllegalStateException("Index contains null packet entries"); //$NON-NLS-1$
+        }
+        return pos.getOffsetBits() + pos.getPacketSizeBits();
+    }
+
+    /**
+     * Save the index once the whole file is indexed, for the next time it is
+     * opened.
+     */
+    private void persistIndex() {
+        if (!fIndexPersisted && !fIndex.isEmpty()) {
+            StreamInputPacketIndexFile.write(fFile, fIndex);
+            fIndexPersisted = true;
+        }
+    }
+
     private long getStreamSizeBits() {
         return fFile.length() * Byte.SIZE;
     }
 
-    private ICTFPacketDescriptor createPacketIndexEntry(long dataOffsetbits)
-            throws CTFException {
-
-        try (FileChannel fc = FileChannel.open(fFile.toPath(), StandardOpenOption.READ)) {
-            if (fc == null) {
-                throw new IOException("Failed to create FileChannel"); //$NON-NLS-1$
-            }
-            BitBuffer bitBuffer = createBitBufferForPacketHeader(fc, dataOffsetbits);
-            /*
-             * Read the trace packet header if it exists.
-             */
-            parseTracePacketHeader(bitBuffer);
+    private ICTFPacketDescriptor createPacketIndexEntry(FileChannel fc, long dataOffsetbits)
+            throws CTFException, IOException {
+        BitBuffer bitBuffer = createBitBufferForPacketHeader(fc, dataOffsetbits);
+        /*
+         * Read the trace packet header if it exists.
+         */
+        parseTracePacketHeader(bitBuffer);
 
-            /*
-             * Read the stream packet context if it exists.
-             */
-            long size = fc.size();
-            ICTFPacketDescriptor packetIndex = parsePacketContext(dataOffsetbits, size, bitBuffer);
+        /*
+         * Read the stream packet context if it exists.
+         */
+        long size = fc.size();
+        ICTFPacketDescriptor packetIndex = parsePacketContext(dataOffsetbits, size, bitBuffer);
 
-            /* Basic validation */
-            if (packetIndex.getContentSizeBits() > packetIndex.getPacketSizeBits()) {
-                throw new CTFException("Content size > packet size"); //$NON-NLS-1$
-            }
+        /* Basic validation */
+        if (packetIndex.getContentSizeBits() > packetIndex.getPacketSizeBits()) {
+            throw new CTFException("Content size > packet size"); //$NON-NLS-1$
+        }
 
-            if (packetIndex.getPacketSizeBits() > ((size * Byte.SIZE - packetIndex.getOffsetBits()))) {
-                throw new CTFException("Not enough data remaining in the file for the size of this packet"); //$NON-NLS-1$
-            }
-            return packetIndex;
-        } catch (IOException e) {
-            throw new CTFException("Failed to create packet index entry", e); //$NON-NLS-1$
+        if (packetIndex.getPacketSizeBits() > ((size * Byte.SIZE - packetIndex.getOffsetBits()))) {
+            throw new CTFException("Not enough data remaining in the file for the size of this packet"); //$NON-NLS-1$
         }
+        return packetIndex;
     }
 
     private BitBuffer createBitBufferForPacketHeader(FileChannel fc, long dataOffsetbits) throws CTFException, IOException {
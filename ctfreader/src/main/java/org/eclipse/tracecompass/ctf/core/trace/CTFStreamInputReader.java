@@ -13,6 +13,7 @@
 package org.eclipse.tracecompass.ctf.core.trace;
 
 import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.CTFStrings;
 import org.eclipse.tracecompass.ctf.core.event.IEventDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.IEventDefinition;
 import org.eclipse.tracecompass.ctf.core.event.io.BitBuffer;
@@ -20,6 +21,8 @@ import org.eclipse.tracecompass.ctf.core.event.types.IDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.types.StructDeclaration;
 import org.eclipse.tracecompass.internal.ctf.core.SafeMappedByteBuffer;
 import org.eclipse.tracecompass.internal.ctf.core.trace.CTFPacketReader;
+import org.eclipse.tracecompass.internal.ctf.core.trace.DecodedPacket;
+import org.eclipse.tracecompass.internal.ctf.core.trace.DecodedPacketCache;
 import org.eclipse.tracecompass.internal.ctf.core.trace.NullPacketReader;
 import org.jetbrains.annotations.Nullable;
 
@@ -29,9 +32,13 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
 import java.util.List;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 
+import static java.util.Objects.requireNonNull;
+
 /**
  * A CTF trace event reader. Reads the events of a trace file.
  *
@@ -81,6 +88,26 @@ public class CTFStreamInputReader implements AutoCloseable {
      */
     private boolean fLive = false;
 
+    /**
+     * For each event id, if the events of that type should be returned, or
+     * null to return all events.
+     */
+    private final @Nullable boolean[] fWantedEventIds;
+
+    private final boolean fWantLostEvents;
+
+    /**
+     * Index in the current packet of the current event, -1 if no event was
+     * read from the current packet reader yet.
+     */
+    private int fEventIndex = -1;
+
+    /**
+     * Where each event of the current packet starts, once the packet was
+     * decoded completely, null otherwise.
+     */
+    private @Nullable DecodedPacket fDecodedPacket = null;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -93,7 +120,36 @@ public class CTFStreamInputReader implements AutoCloseable {
      *             If the file cannot be opened
      */
     public CTFStreamInputReader(CTFStreamInput streamInput) throws CTFException {
+        this(streamInput, null);
+    }
+
+    /**
+     * Constructs a StreamInputReader that only reads the events whose name is
+     * accepted by the given filter. The other events are skipped, without
+     * being decoded if their size does not depend on their contents.
+     *
+     * @param streamInput
+     *            The StreamInput to read.
+     * @param eventNameFilter
+     *            The filter on event names, or null to read all events
+     * @throws CTFException
+     *             If the file cannot be opened
+     */
+    public CTFStreamInputReader(CTFStreamInput streamInput, @Nullable Predicate<String> eventNameFilter) throws CTFException {
         fStreamInput = streamInput;
+        if (eventNameFilter == null) {
+            fWantedEventIds = null;
+            fWantLostEvents = true;
+        } else {
+            List<IEventDeclaration> declarations = getEventDeclarations();
+            boolean[] wanted = new boolean[declarations.size()];
+            for (int i = 0; i < wanted.length; i++) {
+                IEventDeclaration declaration = declarations.get(i);
+                wanted[i] = (declaration == null || eventNameFilter.test(declaration.getName()));
+            }
+            fWantedEventIds = wanted;
+            fWantLostEvents = eventNameFilter.test(CTFStrings.LOST_EVENT_NAME);
+        }
         fFile = fStreamInput.getFile();
         try {
             fFileChannel = FileChannel.open(fFile.toPath(), StandardOpenOption.READ);
@@ -117,7 +173,7 @@ public class CTFStreamInputReader implements AutoCloseable {
                 }
             }
             ICTFPacketDescriptor packet = getPacket();
-            fPacketReader = getCurrentPacketReader(packet);
+            setPacketReader(getCurrentPacketReader(packet));
         } catch (Exception e) {
             try {
                 close();
@@ -128,6 +184,12 @@ public class CTFStreamInputReader implements AutoCloseable {
         }
     }
 
+    private void setPacketReader(IPacketReader packetReader) {
+        fPacketReader = packetReader;
+        fEventIndex = -1;
+        fDecodedPacket = null;
+    }
+
     private IPacketReader getCurrentPacketReader(@Nullable ICTFPacketDescriptor packet) throws CTFException {
         IPacketReader ctfPacketReader = NullPacketReader.INSTANCE;
         if (packet != null) {
@@ -139,7 +201,8 @@ public class CTFStreamInputReader implements AutoCloseable {
             bitBuffer.position(packet.getPayloadStartBits());
             IDeclaration eventHeaderDeclaration = getStreamInput().getStream().getEventHeaderDeclaration();
             CTFTrace trace = getStreamInput().getStream().getTrace();
-            ctfPacketReader = new CTFPacketReader(bitBuffer, packet, getEventDeclarations(), eventHeaderDeclaration, getStreamEventContextDecl(), trace.getPacketHeaderDef(), trace);
+            ctfPacketReader = new CTFPacketReader(bitBuffer, packet, getEventDeclarations(), eventHeaderDeclaration, getStreamEventContextDecl(), trace.getPacketHeaderDef(), trace,
+                    fWantedEventIds, fWantLostEvents);
         }
         return ctfPacketReader;
     }
@@ -182,7 +245,7 @@ public class CTFStreamInputReader implements AutoCloseable {
         if (fFileChannel != null) {
             fFileChannel.close();
         }
-        fPacketReader = NullPacketReader.INSTANCE;
+        setPacketReader(NullPacketReader.INSTANCE);
     }
 
     // ------------------------------------------------------------------------
@@ -294,27 +357,129 @@ public class CTFStreamInputReader implements AutoCloseable {
      *             if an error occurs
      */
     public CTFResponse readNextEvent() throws CTFException {
+        while (true) {
+            /*
+             * Change packet if needed
+             */
+            if (!fPacketReader.hasMoreEvents()) {
+                final ICTFPacketDescriptor prevPacket = fPacketReader.getCurrentPacket();
+                if (prevPacket != null || fLive) {
+                    goToNextPacket();
+                }
 
-        /*
-         * Change packet if needed
-         */
-        if (!fPacketReader.hasMoreEvents()) {
-            final ICTFPacketDescriptor prevPacket = fPacketReader.getCurrentPacket();
-            if (prevPacket != null || fLive) {
-                goToNextPacket();
             }
 
+            /*
+             * If an event is available, read it. With an event filter, the
+             * rest of the packet may not contain any wanted event, in which
+             * case we move on to the next packet.
+             */
+            if (!fPacketReader.hasMoreEvents()) {
+                break;
+            }
+            IEventDefinition event = fPacketReader.readNextEvent();
+            if (event != null) {
+                setCurrentEvent(event);
+                fEventIndex++;
+                return CTFResponse.OK;
+            }
         }
+        this.setCurrentEvent(null);
+        return fLive ? CTFResponse.WAIT : CTFResponse.FINISH;
+    }
 
-        /*
-         * If an event is available, read it.
-         */
-        if (fPacketReader.hasMoreEvents()) {
-            setCurrentEvent(fPacketReader.readNextEvent());
+    /**
+     * Move back to the event before the current one, which becomes the current
+     * event. If there is no current event because the end of the stream was
+     * reached, this goes to the last event of the stream.
+     * <p>
+     * The packets are read backwards using the packet index. The first time
+     * the reader moves back into a packet, the packet is read completely to
+     * find where each of its events starts, unless another reader of the
+     * trace already did it. After that, each event is only decoded when it
+     * is returned.
+     *
+     * @return OK if the reader moved to the previous event, FINISH if it is
+     *         now before the first event of the stream
+     * @throws CTFException
+     *             if an error occurs
+     */
+    public CTFResponse readPreviousEvent() throws CTFException {
+        int target = (fCurrentEvent == null ? fEventIndex : fEventIndex - 1);
+        if (target >= 0) {
+            /* The previous event is in the current packet */
+            if (fDecodedPacket == null) {
+                decodePacket(fPacketIndex);
+            }
+            readDecodedEvent(target);
             return CTFResponse.OK;
         }
-        this.setCurrentEvent(null);
-        return fLive ? CTFResponse.WAIT : CTFResponse.FINISH;
+
+        for (int packetIndex = Math.min(fPacketIndex, getPacketSize()) - 1; packetIndex >= 0; packetIndex--) {
+            int nbEvents = decodePacket(packetIndex);
+            if (nbEvents > 0) {
+                readDecodedEvent(nbEvents - 1);
+                return CTFResponse.OK;
+            }
+        }
+
+        /* We are at the beginning, the next event read will be the first one */
+        fPacketIndex = 0;
+        setPacketReader(getCurrentPacketReader(getPacket()));
+        setCurrentEvent(null);
+        return CTFResponse.FINISH;
+    }
+
+    /**
+     * Make a packet the current one, and read it completely to find where
+     * each of its events starts.
+     *
+     * @return The number of events of the packet
+     */
+    private int decodePacket(int packetIndex) throws CTFException {
+        fPacketIndex = packetIndex;
+        setPacketReader(getCurrentPacketReader(getPacket()));
+        DecodedPacket decodedPacket = decodeCurrentPacket();
+        return (decodedPacket == null ? 0 : decodedPacket.size());
+    }
+
+    /**
+     * Decode the current packet, whose reader must not have read any event
+     * yet. Readers reading all the events share the result with the other
+     * readers of the trace through its packet cache. Readers with an event
+     * filter skip some events, so they keep theirs to themselves.
+     *
+     * @return The decoded packet, or null if there is no current packet
+     */
+    private @Nullable DecodedPacket decodeCurrentPacket() throws CTFException {
+        IPacketReader packetReader = fPacketReader;
+        if (!(packetReader instanceof CTFPacketReader)) {
+            return null;
+        }
+        boolean shared = (fWantedEventIds == null && fWantLostEvents);
+        DecodedPacketCache cache = getStreamInput().getStream().getTrace().getPacketCache();
+        DecodedPacket decodedPacket = (shared ? cache.get(fStreamInput, fPacketIndex) : null);
+        if (decodedPacket == null) {
+            decodedPacket = DecodedPacket.decode((CTFPacketReader) packetReader);
+            recordPacketEventIds();
+            if (shared) {
+                cache.put(fStreamInput, fPacketIndex, decodedPacket);
+            }
+        }
+        fDecodedPacket = decodedPacket;
+        return decodedPacket;
+    }
+
+    /**
+     * Make an event of the current packet, which must have been decoded, the
+     * current event.
+     */
+    private void readDecodedEvent(int index) throws CTFException {
+        DecodedPacket decodedPacket = requireNonNull(fDecodedPacket);
+        CTFPacketReader reader = (CTFPacketReader) fPacketReader;
+        decodedPacket.moveTo(reader, index);
+        setCurrentEvent(reader.readNextEvent());
+        fEventIndex = index;
     }
 
     /**
@@ -324,21 +489,59 @@ public class CTFStreamInputReader implements AutoCloseable {
      *             if an error occurs
      */
     private void goToNextPacket() throws CTFException {
-        fPacketIndex++;
-        // did we already index the packet?
-        while (getPacketSize() < (fPacketIndex + 1)) {
-            // go to the next packet if there is one, index it at the same time
-            if (fStreamInput.addPacketHeaderIndex()) {
-                fPacketIndex = getPacketSize() - 1;
-            } else {
-                fPacketReader = NullPacketReader.INSTANCE;
-                return;
+        recordPacketEventIds();
+        ICTFPacketDescriptor packet;
+        do {
+            fPacketIndex++;
+            // did we already index the packet?
+            while (getPacketSize() < (fPacketIndex + 1)) {
+                // go to the next packet if there is one, index it at the same time
+                if (fStreamInput.addPacketHeaderIndex()) {
+                    fPacketIndex = getPacketSize() - 1;
+                } else {
+                    setPacketReader(NullPacketReader.INSTANCE);
+                    return;
+                }
+
             }
+            packet = getPacket();
+        } while (packet != null && !mayContainWantedEvents(packet));
+        setPacketReader(getCurrentPacketReader(packet));
 
+    }
+
+    /**
+     * If the current packet was read completely, we now know which types of
+     * events it contains.
+     */
+    private void recordPacketEventIds() {
+        IPacketReader packetReader = fPacketReader;
+        ICTFPacketDescriptor packet = packetReader.getCurrentPacket();
+        if (packetReader instanceof CTFPacketReader && packet != null
+                && packet.getEventIds() == null && ((CTFPacketReader) packetReader).hasReadAllEvents()) {
+            fStreamInput.setPacketEventIds(packet, ((CTFPacketReader) packetReader).getReadEventIds());
         }
-        ICTFPacketDescriptor packet = getPacket();
-        fPacketReader = getCurrentPacketReader(packet);
+    }
 
+    /**
+     * Check if a packet can contain events this reader wants, from the event
+     * ids indexed for the packet.
+     */
+    private boolean mayContainWantedEvents(ICTFPacketDescriptor packet) {
+        final boolean[] wanted = fWantedEventIds;
+        BitSet packetEventIds = packet.getEventIds();
+        if (wanted == null || packetEventIds == null) {
+            return true;
+        }
+        if (fWantLostEvents && packet.getLostEvents() != 0) {
+            return true;
+        }
+        for (int id = packetEventIds.nextSetBit(0); id >= 0; id = packetEventIds.nextSetBit(id + 1)) {
+            if (id >= wanted.length || wanted[id]) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -380,6 +583,25 @@ public class CTFStreamInputReader implements AutoCloseable {
             gotoPacket(timestamp);
         }
 
+        /*
+         * Find the event directly if the packet was decoded before, by this
+         * reader or another one. Otherwise, decode it now: nearby seeks, which
+         * are common when navigating the same time range, will be cheaper.
+         */
+        if (fWantedEventIds == null && fWantLostEvents) {
+            DecodedPacket decodedPacket = decodeCurrentPacket();
+            if (decodedPacket != null && decodedPacket.size() > 0) {
+                int index = decodedPacket.search(timestamp);
+                if (index < decodedPacket.size()) {
+                    readDecodedEvent(index);
+                    return index;
+                }
+                /* All the events of this packet are before the timestamp */
+                readDecodedEvent(decodedPacket.size() - 1);
+                offset = decodedPacket.size();
+            }
+        }
+
         /*
          * Advance until either of these conditions are met:
          *
@@ -440,7 +662,7 @@ public class CTFStreamInputReader implements AutoCloseable {
         /*
          * Go to last indexed packet
          */
-        fPacketReader = getCurrentPacketReader(getPacket());
+        setPacketReader(getCurrentPacketReader(getPacket()));
 
         /*
          * Keep going until you cannot
@@ -455,7 +677,7 @@ public class CTFStreamInputReader implements AutoCloseable {
          */
         for (int pos = lastPacketIndex; pos > 0; pos--) {
             fPacketIndex = pos;
-            fPacketReader = getCurrentPacketReader(getPacket());
+            setPacketReader(getCurrentPacketReader(getPacket()));
 
             if (fPacketReader.hasMoreEvents()) {
                 break;
@@ -476,6 +698,42 @@ public class CTFStreamInputReader implements AutoCloseable {
         setCurrentEvent(prevEvent);
     }
 
+    /**
+     * Check if the current event of this reader comes before the current
+     * event of another reader of the same trace file. Events that share a
+     * timestamp are told apart by their position in the file.
+     *
+     * @param other
+     *            Another reader of the same trace file
+     * @return If this reader is on an earlier event than the other one
+     */
+    boolean isBefore(CTFStreamInputReader other) {
+        if (fCurrentEvent == null) {
+            return false;
+        }
+        if (other.fCurrentEvent == null) {
+            return true;
+        }
+        if (fPacketIndex != other.fPacketIndex) {
+            return fPacketIndex < other.fPacketIndex;
+        }
+        long position = getReadPosition();
+        long otherPosition = other.getReadPosition();
+        if (position != otherPosition) {
+            return position < otherPosition;
+        }
+        /* The lost event of a packet is read at the same position as its last event */
+        return fPacketReader.hasMoreEvents() && !other.fPacketReader.hasMoreEvents();
+    }
+
+    /**
+     * Position in the current packet right after the current event.
+     */
+    private long getReadPosition() {
+        IPacketReader packetReader = fPacketReader;
+        return (packetReader instanceof CTFPacketReader ? ((CTFPacketReader) packetReader).getPosition() : 0);
+    }
+
     /**
      * Sets the current event in a stream input reader
      *
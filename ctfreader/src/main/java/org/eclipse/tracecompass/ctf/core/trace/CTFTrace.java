@@ -14,10 +14,13 @@
 
 package org.eclipse.tracecompass.ctf.core.trace;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.eclipse.tracecompass.ctf.core.CTFException;
 import org.eclipse.tracecompass.ctf.core.CTFStrings;
 import org.eclipse.tracecompass.ctf.core.event.CTFClock;
+import org.eclipse.tracecompass.ctf.core.event.IEventDefinition;
 import org.eclipse.tracecompass.ctf.core.event.IEventDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.io.BitBuffer;
 import org.eclipse.tracecompass.ctf.core.event.metadata.DeclarationScope;
@@ -28,6 +31,8 @@ import org.eclipse.tracecompass.ctf.core.event.types.*;
 import org.eclipse.tracecompass.internal.ctf.core.SafeMappedByteBuffer;
 import org.eclipse.tracecompass.internal.ctf.core.event.metadata.MetadataStrings;
 import org.eclipse.tracecompass.internal.ctf.core.trace.CTFStream;
+import org.eclipse.tracecompass.internal.ctf.core.trace.DecodedPacketCache;
+import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputPacketIndex;
 import org.eclipse.tracecompass.internal.ctf.core.trace.Utils;
 import org.jetbrains.annotations.NotNull;
 
@@ -41,6 +46,12 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
 
 /**
  * A CTF trace on the file system.
@@ -122,12 +133,21 @@ public class CTFTrace implements IDefinitionScope {
      */
     private final Map<String, CTFClock> fClocks = new HashMap<>();
 
+    /** Threads used to index the stream files in parallel */
+    private static final ThreadFactory INDEXER_THREAD_FACTORY = new ThreadFactoryBuilder()
+            .setNameFormat("ctf-indexer-%d") //$NON-NLS-1$
+            .setDaemon(true)
+            .build();
+
     /** Handlers for the metadata files */
     private static final FileFilter METADATA_FILE_FILTER = new MetadataFileFilter();
     private static final Comparator<File> METADATA_COMPARATOR = new MetadataComparator();
 
     private final DeclarationScope fScope = new DeclarationScope(null, MetadataStrings.TRACE);
 
+    /** Decoded packets, shared by all the readers of this trace */
+    private final DecodedPacketCache fPacketCache = new DecodedPacketCache(DecodedPacketCache.DEFAULT_MAX_SIZE);
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -192,12 +212,15 @@ public class CTFTrace implements IDefinitionScope {
         }
 
         /* Create their index */
+        List<CTFStreamInput> allInputs = new ArrayList<>();
         for (ICTFStream stream : getStreams()) {
             Set<CTFStreamInput> inputs = stream.getStreamInputs();
             for (CTFStreamInput s : inputs) {
                 addStream(s);
+                allInputs.add(s);
             }
         }
+        indexStreamInputs(allInputs);
     }
 
     // ------------------------------------------------------------------------
@@ -422,11 +445,56 @@ public class CTFTrace implements IDefinitionScope {
          */
         ICTFStream stream = s.getStream();
         fStreams.put(stream.getId(), stream);
+    }
 
-        /*
-         * index the trace
-         */
-        s.setupIndex();
+    /**
+     * Index the types of the events present in each packet of the trace. This
+     * is optional, and requires reading the whole trace, but it allows readers
+     * filtering events by name to skip the packets without any wanted event.
+     * The result is persisted along with the packet index of each stream file.
+     */
+    public void indexEventTypes() {
+        List<CTFStreamInput> inputs = new ArrayList<>();
+        for (ICTFStream stream : getStreams()) {
+            inputs.addAll(stream.getStreamInputs());
+        }
+        forEachStreamInput(inputs, CTFStreamInput::indexEventIds);
+    }
+
+    /**
+     * Index the given stream inputs. Each stream file is indexed sequentially,
+     * since the position of a packet depends on the size of the previous one,
+     * but different files are indexed in parallel.
+     */
+    private static void indexStreamInputs(List<CTFStreamInput> inputs) {
+        forEachStreamInput(inputs, CTFStreamInput::setupIndex);
+    }
+
+    /** Run a task on each of the given stream inputs, in parallel */
+    private static void forEachStreamInput(List<CTFStreamInput> inputs, Consumer<CTFStreamInput> task) {
+        if (inputs.size() <= 1) {
+            inputs.forEach(task);
+            return;
+        }
+
+        int nbThreads = Math.min(inputs.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads, INDEXER_THREAD_FACTORY);
+        try {
+            List<Future<?>> futures = new ArrayList<>(inputs.size());
+            for (CTFStreamInput input : inputs) {
+                futures.add(executor.submit(() -> task.accept(input)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     /**
@@ -714,6 +782,76 @@ public class CTFTrace implements IDefinitionScope {
         return timestampCyclesToNanos(currentEnd);
     }
 
+    /**
+     * Gets the timestamp of the first event of the trace. Only the first packet
+     * of each stream is read.
+     *
+     * @return the timestamp of the first event, in nanoseconds, or
+     *         {@link Long#MIN_VALUE} if the trace has no events
+     * @throws CTFException
+     *             if an error occurs reading the packets
+     */
+    public long getFirstEventTime() throws CTFException {
+        try (CTFTraceReader reader = new CTFTraceReader(this)) {
+            return (reader.hasMoreEvents() ? timestampCyclesToNanos(reader.getStartTime()) : Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * Gets the timestamp of the last event of the trace. The packet index is
+     * used to only read the last packets of the streams, instead of the whole
+     * trace.
+     *
+     * @return the timestamp of the last event, in nanoseconds, or
+     *         {@link Long#MIN_VALUE} if the trace has no events
+     * @throws CTFException
+     *             if an error occurs reading the packets
+     */
+    public long getLastEventTime() throws CTFException {
+        List<CTFStreamInput> streamInputs = new ArrayList<>();
+        for (ICTFStream stream : fStreams.values()) {
+            streamInputs.addAll(stream.getStreamInputs());
+        }
+        /*
+         * No event can be past the end of its packet, so once an event is found
+         * the streams ending before it do not need to be read at all.
+         */
+        streamInputs.sort(Comparator.comparingLong(CTFStreamInput::getTimestampEnd).reversed());
+
+        long lastEvent = Long.MIN_VALUE;
+        for (CTFStreamInput si : streamInputs) {
+            if (si.getTimestampEnd() <= lastEvent) {
+                break;
+            }
+            lastEvent = Math.max(lastEvent, readLastEventTimestamp(si));
+        }
+        return (lastEvent == Long.MIN_VALUE ? Long.MIN_VALUE : timestampCyclesToNanos(lastEvent));
+    }
+
+    /**
+     * Read the last packet of a stream that contains events, and return the
+     * timestamp, in cycles, of its last event.
+     */
+    private static long readLastEventTimestamp(CTFStreamInput streamInput) throws CTFException {
+        StreamInputPacketIndex index = streamInput.getIndex();
+        try (CTFStreamInputReader reader = new CTFStreamInputReader(streamInput)) {
+            for (int i = index.size() - 1; i >= 0; i--) {
+                reader.seek(index.getElement(i).getTimestampBegin());
+                long lastEvent = Long.MIN_VALUE;
+                for (IEventDefinition event = reader.getCurrentEvent(); event != null; event = reader.getCurrentEvent()) {
+                    lastEvent = event.getTimestamp();
+                    reader.readNextEvent();
+                }
+                if (lastEvent != Long.MIN_VALUE) {
+                    return lastEvent;
+                }
+            }
+        } catch (IOException e) {
+            throw new CTFIOException(e);
+        }
+        return Long.MIN_VALUE;
+    }
+
     /**
      * Does the trace need to time scale?
      *
@@ -828,6 +966,16 @@ public class CTFTrace implements IDefinitionScope {
         return fPacketHeaderDef;
     }
 
+    /**
+     * Gets the cache of decoded packets of this trace, which is shared by all
+     * the readers of the trace.
+     *
+     * @return the decoded packet cache
+     */
+    public DecodedPacketCache getPacketCache() {
+        return fPacketCache;
+    }
+
     /**
      * Sets the environment map
      *
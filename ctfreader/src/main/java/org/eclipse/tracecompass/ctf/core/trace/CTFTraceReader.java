@@ -17,13 +17,15 @@ import static java.util.Objects.requireNonNull;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import org.eclipse.tracecompass.ctf.core.CTFException;
 import org.eclipse.tracecompass.ctf.core.event.IEventDeclaration;
 import org.eclipse.tracecompass.ctf.core.event.IEventDefinition;
-import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputReaderTimestampComparator;
+import org.eclipse.tracecompass.internal.ctf.core.trace.LongLoserTree;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A CTF trace reader. Reads the events of a trace.
@@ -38,8 +40,6 @@ public class CTFTraceReader implements AutoCloseable {
 
     private static final int LINE_LENGTH = 60;
 
-    private static final int MIN_PRIO_SIZE = 16;
-
     // ------------------------------------------------------------------------
     // Attributes
     // ------------------------------------------------------------------------
@@ -55,9 +55,22 @@ public class CTFTraceReader implements AutoCloseable {
     private final List<CTFStreamInputReader> fStreamInputReaders = Collections.synchronizedList(new ArrayList<CTFStreamInputReader>());
 
     /**
-     * Priority queue to order the trace file readers by timestamp.
+     * Tournament tree to order the trace file readers by the timestamp of
+     * their current event. Its leaves are the readers of {@link #fReaders}.
+     */
+    private LongLoserTree fPrio;
+
+    /**
+     * The trace file readers, whose leaves in {@link #fPrio} are given by
+     * {@link #toLeaf(int)}.
+     */
+    private CTFStreamInputReader[] fReaders;
+
+    /**
+     * If the trace file readers are on the events before the current position
+     * (reading backwards), instead of the events after it.
      */
-    private PriorityQueue<CTFStreamInputReader> fPrio;
+    private boolean fBackwards = false;
 
     /**
      * Array to count the number of event per trace file.
@@ -79,6 +92,11 @@ public class CTFTraceReader implements AutoCloseable {
      */
     private boolean fClosed = false;
 
+    /**
+     * Filter on the names of the events to read, null to read all of them
+     */
+    private final @Nullable Predicate<String> fEventNameFilter;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -92,7 +110,24 @@ public class CTFTraceReader implements AutoCloseable {
      *             if an error occurs
      */
     public CTFTraceReader(CTFTrace trace) throws CTFException {
+        this(trace, null);
+    }
+
+    /**
+     * Constructs a TraceReader that only reads the events whose name is
+     * accepted by the given filter. The other events are skipped as early as
+     * possible, usually without decoding their fields.
+     *
+     * @param trace
+     *            The trace to read from.
+     * @param eventNameFilter
+     *            The filter on event names, or null to read all events
+     * @throws CTFException
+     *             if an error occurs
+     */
+    public CTFTraceReader(CTFTrace trace, @Nullable Predicate<String> eventNameFilter) throws CTFException {
         fTrace = trace;
+        fEventNameFilter = eventNameFilter;
         fStreamInputReaders.clear();
 
         /**
@@ -126,12 +161,48 @@ public class CTFTraceReader implements AutoCloseable {
     public CTFTraceReader copyFrom() throws CTFException {
         CTFTraceReader newReader = null;
 
-        newReader = new CTFTraceReader(fTrace);
+        newReader = new CTFTraceReader(fTrace, fEventNameFilter);
         newReader.fStartTime = fStartTime;
         newReader.setEndTime(fEndTime);
         return newReader;
     }
 
+    /**
+     * Create a new reader of the same trace, on the same event as this one.
+     * <p>
+     * Seeking a new reader to the timestamp of the current event is not
+     * enough when several events share that timestamp: the new reader would
+     * be on the first of them. Each trace file reader of the copy is instead
+     * moved forward to the event the reader of the same file is on here.
+     *
+     * @return The new CTFTraceReader
+     * @throws CTFException
+     *             if an error occurs
+     */
+    public CTFTraceReader copyAtCurrentEvent() throws CTFException {
+        CTFTraceReader newReader = copyFrom();
+        IEventDefinition currentEvent = getCurrentEventDef();
+        if (currentEvent == null) {
+            newReader.seek(Long.MAX_VALUE);
+            return newReader;
+        }
+
+        newReader.seek(currentEvent.getTimestamp());
+        Map<CTFStreamInput, CTFStreamInputReader> readers = new HashMap<>();
+        for (CTFStreamInputReader reader : fReaders) {
+            readers.put(reader.getStreamInput(), reader);
+        }
+        for (CTFStreamInputReader newStreamReader : newReader.fReaders) {
+            CTFStreamInputReader reader = readers.get(newStreamReader.getStreamInput());
+            /* Only events at the seek timestamp can be skipped here */
+            while (reader != null && newStreamReader.isBefore(reader)) {
+                newStreamReader.readNextEvent();
+            }
+        }
+        newReader.rebuildPrio();
+        return newReader;
+    }
+
     /**
      * Dispose the CTFTraceReader
      */
@@ -176,15 +247,6 @@ public class CTFTraceReader implements AutoCloseable {
         fEndTime = endTime;
     }
 
-    /**
-     * Get the priority queue of this trace reader.
-     *
-     * @return The priority queue of input readers
-     */
-    protected PriorityQueue<CTFStreamInputReader> getPrio() {
-        return fPrio;
-    }
-
     // ------------------------------------------------------------------------
     // Operations
     // ------------------------------------------------------------------------
@@ -210,7 +272,7 @@ public class CTFTraceReader implements AutoCloseable {
                 /*
                  * Create a reader and add it to the group.
                  */
-                fStreamInputReaders.add(new CTFStreamInputReader(requireNonNull(streamInput)));
+                fStreamInputReaders.add(new CTFStreamInputReader(requireNonNull(streamInput), fEventNameFilter));
             }
         }
 
@@ -246,7 +308,7 @@ public class CTFTraceReader implements AutoCloseable {
                  */
                 try (CTFStreamInputReader streamInputReader = new CTFStreamInputReader(requireNonNull(streamInput))) {
                     if (!fStreamInputReaders.contains(streamInputReader)) {
-                        CTFStreamInputReader streamInputReaderToAdd = new CTFStreamInputReader(requireNonNull(streamInput));
+                        CTFStreamInputReader streamInputReaderToAdd = new CTFStreamInputReader(requireNonNull(streamInput), fEventNameFilter);
                         streamInputReaderToAdd.readNextEvent();
                         fStreamInputReaders.add(streamInputReaderToAdd);
                         readers.add(streamInputReaderToAdd);
@@ -256,11 +318,22 @@ public class CTFTraceReader implements AutoCloseable {
                 }
             }
         }
+        ensureForwards();
         long[] temp = fEventCountPerTraceFile;
         fEventCountPerTraceFile = new long[readers.size() + temp.length];
-        for (CTFStreamInputReader reader : readers) {
-            fPrio.add(reader);
+        LongLoserTree oldPrio = fPrio;
+        fReaders = fStreamInputReaders.toArray(new CTFStreamInputReader[0]);
+        fPrio = new LongLoserTree(fReaders.length);
+        for (int i = 0; i < fReaders.length; i++) {
+            if (i < oldPrio.size()) {
+                if (!oldPrio.isEmpty(i)) {
+                    fPrio.setKey(i, oldPrio.getKey(i), false);
+                }
+            } else {
+                setLeaf(i);
+            }
         }
+        fPrio.rebuild();
         System.arraycopy(temp, 0, fEventCountPerTraceFile, 0, temp.length);
     }
 
@@ -286,30 +359,20 @@ public class CTFTraceReader implements AutoCloseable {
      *             if an error occurs
      */
     private void populateStreamInputReaderHeap() throws CTFException {
-        if (fStreamInputReaders.isEmpty()) {
-            fPrio = new PriorityQueue<>(MIN_PRIO_SIZE,
-                    new StreamInputReaderTimestampComparator());
-            return;
-        }
-
-        /*
-         * Create the priority queue with a size twice as bigger as the number
-         * of reader in order to avoid constant resizing.
-         */
-        fPrio = new PriorityQueue<>(
-                Math.max(fStreamInputReaders.size() * 2, MIN_PRIO_SIZE),
-                new StreamInputReaderTimestampComparator());
+        fReaders = fStreamInputReaders.toArray(new CTFStreamInputReader[0]);
+        fPrio = new LongLoserTree(fReaders.length);
 
         int pos = 0;
 
-        for (CTFStreamInputReader reader : fStreamInputReaders) {
+        for (int i = 0; i < fReaders.length; i++) {
+            CTFStreamInputReader reader = fReaders[i];
             /*
-             * Add each trace file reader in the priority queue, if we are able
-             * to read an event from it.
+             * Add each trace file reader in the tree, if we are able to read
+             * an event from it.
              */
             CTFResponse readNextEvent = reader.readNextEvent();
             if (readNextEvent == CTFResponse.OK || readNextEvent == CTFResponse.WAIT) {
-                fPrio.add(reader);
+                setLeaf(i);
 
                 fEventCountPerTraceFile[pos] = 0;
                 reader.setName(pos);
@@ -317,6 +380,74 @@ public class CTFTraceReader implements AutoCloseable {
                 pos++;
             }
         }
+        fPrio.rebuild();
+    }
+
+    /**
+     * Set the leaf of a reader to the timestamp of its current event, or mark
+     * it as empty if it has none. The tree must be rebuilt afterwards.
+     */
+    private void setLeaf(int readerIndex) {
+        IEventDefinition event = fReaders[readerIndex].getCurrentEvent();
+        int leaf = toLeaf(readerIndex);
+        if (event == null) {
+            fPrio.setEmpty(leaf, false);
+        } else {
+            fPrio.setKey(leaf, toKey(event.getTimestamp()), false);
+        }
+    }
+
+    /*
+     * Reading backwards, the latest event has to win, so the keys are
+     * inverted. The leaves are also reversed, so that events with the same
+     * timestamp come out in the opposite order of when reading forwards.
+     * Converting a leaf index back to a reader index is the same operation.
+     */
+
+    private int toLeaf(int readerIndex) {
+        return (fBackwards ? fReaders.length - 1 - readerIndex : readerIndex);
+    }
+
+    private long toKey(long timestamp) {
+        long key = LongLoserTree.unsignedKey(timestamp);
+        return (fBackwards ? ~key : key);
+    }
+
+    private void rebuildPrio() {
+        for (int i = 0; i < fReaders.length; i++) {
+            setLeaf(i);
+        }
+        fPrio.rebuild();
+    }
+
+    /**
+     * Bring the trace file readers from the events before the current
+     * position to the events after it.
+     */
+    private void ensureForwards() throws CTFException {
+        if (!fBackwards) {
+            return;
+        }
+        fBackwards = false;
+        for (CTFStreamInputReader reader : fReaders) {
+            reader.readNextEvent();
+        }
+        rebuildPrio();
+    }
+
+    /**
+     * Bring the trace file readers from the events after the current position
+     * to the events before it.
+     */
+    private void ensureBackwards() throws CTFException {
+        if (fBackwards) {
+            return;
+        }
+        fBackwards = true;
+        for (CTFStreamInputReader reader : fReaders) {
+            reader.readPreviousEvent();
+        }
+        rebuildPrio();
     }
 
     /**
@@ -328,6 +459,12 @@ public class CTFTraceReader implements AutoCloseable {
      * @since 2.0
      */
     public IEventDefinition getCurrentEventDef() {
+        try {
+            ensureForwards();
+        } catch (CTFException e) {
+            LOGGER.severe(() -> e.getMessage());
+            return null;
+        }
         CTFStreamInputReader top = getTopStream();
         return (top != null) ? top.getCurrentEvent() : null;
     }
@@ -340,31 +477,33 @@ public class CTFTraceReader implements AutoCloseable {
      *             if an error occurs
      */
     public boolean advance() throws CTFException {
+        ensureForwards();
         /*
-         * Remove the reader from the top of the priority queue.
+         * Get the reader with the oldest event.
          */
-        CTFStreamInputReader top = fPrio.poll();
+        int leaf = fPrio.getWinner();
 
         /*
-         * If the queue was empty.
+         * If the tree was empty.
          */
-        if (top == null) {
+        if (leaf < 0) {
             return false;
         }
+        CTFStreamInputReader top = fReaders[leaf];
         /*
          * Read the next event of this reader.
          */
         switch (top.readNextEvent()) {
         case OK: {
-            /*
-             * Add it back in the queue.
-             */
-            fPrio.add(top);
             /*
              * We're in OK, there's a guaranteed top#getCurrentEvent() unless another
              * thread does something bad.
              */
             IEventDefinition currentEvent = requireNonNull(top.getCurrentEvent());
+            /*
+             * Move it to the position of its new event in the tree.
+             */
+            fPrio.update(leaf, LongLoserTree.unsignedKey(currentEvent.getTimestamp()));
             final long topEnd = fTrace.timestampCyclesToNanos(currentEvent.getTimestamp());
             setEndTime(Math.max(topEnd, getEndTime()));
             fEventCountPerTraceFile[top.getName()]++;
@@ -372,14 +511,16 @@ public class CTFTraceReader implements AutoCloseable {
             break;
         }
         case WAIT: {
-            fPrio.add(top);
+            /* Leave it in the tree, it will be polled again */
             break;
         }
         case FINISH:
+            fPrio.remove(leaf);
             break;
         case ERROR:
         default:
             // something bad happend
+            fPrio.remove(leaf);
         }
         /*
          * If there is no reader in the queue, it means the trace reader reached
@@ -388,6 +529,49 @@ public class CTFTraceReader implements AutoCloseable {
         return hasMoreEvents();
     }
 
+    /**
+     * Get the event right before the current position, the one
+     * {@link #retreat()} moves back over.
+     * <p>
+     * This switches the trace file readers to reading backwards, which only
+     * requires to step each of them back by one event. The next call to
+     * {@link #advance()} or {@link #getCurrentEventDef()} switches them back.
+     *
+     * @return The previous event, or null if the current position is the
+     *         beginning of the trace
+     * @throws CTFException
+     *             if an error occurs
+     */
+    public @Nullable IEventDefinition getPreviousEventDef() throws CTFException {
+        ensureBackwards();
+        CTFStreamInputReader top = getTopStream();
+        return (top != null) ? top.getCurrentEvent() : null;
+    }
+
+    /**
+     * Move the current position back by one event, so that the event returned
+     * by {@link #getPreviousEventDef()} is now the one after the current
+     * position.
+     *
+     * @return True if there are events before the new position
+     * @throws CTFException
+     *             if an error occurs
+     */
+    public boolean retreat() throws CTFException {
+        ensureBackwards();
+        int leaf = fPrio.getWinner();
+        if (leaf < 0) {
+            return false;
+        }
+        CTFStreamInputReader top = fReaders[toLeaf(leaf)];
+        if (top.readPreviousEvent() == CTFResponse.OK) {
+            fPrio.update(leaf, toKey(requireNonNull(top.getCurrentEvent()).getTimestamp()));
+        } else {
+            fPrio.remove(leaf);
+        }
+        return hasMoreEvents();
+    }
+
     /**
      * Go to the last event in the trace.
      *
@@ -396,7 +580,7 @@ public class CTFTraceReader implements AutoCloseable {
      */
     public void goToLastEvent() throws CTFException {
         seek(getEndTime());
-        while (fPrio.size() > 1) {
+        while (fPrio.getNonEmptyCount() > 1) {
             advance();
         }
     }
@@ -416,23 +600,19 @@ public class CTFTraceReader implements AutoCloseable {
      *             if an error occurs
      */
     public boolean seek(long timestamp) throws CTFException {
-        /*
-         * Remove all the trace readers from the priority queue
-         */
-        fPrio.clear();
-        for (CTFStreamInputReader streamInputReader : fStreamInputReaders) {
+        fBackwards = false;
+        for (int i = 0; i < fReaders.length; i++) {
             /*
              * Seek the trace reader.
              */
-            streamInputReader.seek(timestamp);
+            fReaders[i].seek(timestamp);
 
             /*
-             * Add it to the priority queue if there is a current event.
+             * Put it in the tree if there is a current event.
              */
-            if (streamInputReader.getCurrentEvent() != null) {
-                fPrio.add(streamInputReader);
-            }
+            setLeaf(i);
         }
+        fPrio.rebuild();
         return hasMoreEvents();
     }
 
@@ -442,16 +622,19 @@ public class CTFTraceReader implements AutoCloseable {
      * @return the stream with the oldest event
      */
     public CTFStreamInputReader getTopStream() {
-        return fPrio.peek();
+        int leaf = fPrio.getWinner();
+        return (leaf < 0 ? null : fReaders[toLeaf(leaf)]);
     }
 
     /**
-     * Does the trace have more events?
+     * Does the trace have more events? When reading backwards, after a call
+     * to {@link #getPreviousEventDef()} or {@link #retreat()}, this is if
+     * there are more events before the current position.
      *
      * @return true if yes.
      */
     public final boolean hasMoreEvents() {
-        return fPrio.size() > 0;
+        return fPrio.getWinner() >= 0;
     }
 
     /**
@@ -530,8 +713,10 @@ public class CTFTraceReader implements AutoCloseable {
      *            whether the trace is live
      */
     public void setLive(boolean live) {
-        for (CTFStreamInputReader s : fPrio) {
-            s.setLive(live);
+        for (int i = 0; i < fReaders.length; i++) {
+            if (!fPrio.isEmpty(toLeaf(i))) {
+                fReaders[i].setLive(live);
+            }
         }
     }
 
@@ -605,8 +790,10 @@ public class CTFTraceReader implements AutoCloseable {
      * @since 1.0
      */
     public void populateIndex() throws CTFException {
-        for (CTFStreamInputReader sir : fPrio) {
-            sir.goToLastEvent();
+        for (int i = 0; i < fReaders.length; i++) {
+            if (!fPrio.isEmpty(toLeaf(i))) {
+                fReaders[i].goToLastEvent();
+            }
         }
         seek(0);
 
@@ -12,7 +12,9 @@
 package org.eclipse.tracecompass.ctf.core.trace;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.BitSet;
 import java.util.Map;
 
 /**
@@ -119,4 +121,14 @@ public interface ICTFPacketDescriptor {
      */
     long getPayloadStartBits();
 
+    /**
+     * Get the ids of the types of the events in this packet, if they were
+     * indexed. Readers only interested in some types of events can skip the
+     * packets that contain none of them.
+     *
+     * @return The event ids present in the packet, or null if they are not
+     *         known. The returned set must not be modified.
+     */
+    @Nullable BitSet getEventIds();
+
 }
\ No newline at end of file
@@ -15,6 +15,7 @@ package org.eclipse.tracecompass.ctf.core.trace;
 import org.eclipse.tracecompass.ctf.core.CTFException;
 import org.eclipse.tracecompass.ctf.core.event.IEventDefinition;
 import org.eclipse.tracecompass.ctf.core.event.types.ICompositeDefinition;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Packet reader interface, allows for more flexible packet readers. A packet
@@ -57,11 +58,12 @@ public interface IPacketReader {
      * Reads the next event of the packet into the right event definition.
      *
      * @return The event definition containing the event data that was just
-     *         read.
+     *         read, or null if the reader filters events and none of the
+     *         remaining ones were wanted.
      * @throws CTFException
      *             If there was a problem reading the trace
      */
-    IEventDefinition readNextEvent() throws CTFException;
+    @Nullable IEventDefinition readNextEvent() throws CTFException;
 
     /**
      * Get the packet being read
@@ -125,6 +125,109 @@ public class EventDeclaration implements IEventDeclaration {
                 packetDescriptor);
     }
 
+    /**
+     * Skip over an event of this type without decoding it, when it is not
+     * wanted by the reader. This is only possible if the timestamp of the
+     * event is in its header, and if its contexts and payload only contain
+     * fixed-size fields. Otherwise the input is left untouched, and the event
+     * has to be read with
+     * {@link #createDefinition(StructDeclaration, ICTFPacketDescriptor, ICompositeDefinition, ICompositeDefinition, BitBuffer, long)}.
+     *
+     * @param streamEventContextDecl
+     *            event context
+     * @param eventHeaderDef
+     *            The event header definition, already read
+     * @param input
+     *            the bitbuffer input source, positioned after the header
+     * @return If the event was skipped
+     * @throws CTFException
+     *             If the end of the event is past the end of the input
+     */
+    public boolean skipDefinition(@Nullable StructDeclaration streamEventContextDecl, @Nullable ICompositeDefinition eventHeaderDef, @NotNull BitBuffer input)
+            throws CTFException {
+        if (!hasHeaderTimestamp(eventHeaderDef)) {
+            return false;
+        }
+        long position = skipFixedSize(streamEventContextDecl, input.position());
+        position = skipFixedSize(fContext, position);
+        position = skipFixedSize(fFields, position);
+        if (position < 0) {
+            return false;
+        }
+        input.position(position);
+        return true;
+    }
+
+    /**
+     * Get the timestamp of an event from its header only, for events skipped
+     * with {@link #skipDefinition}.
+     *
+     * @param eventHeaderDef
+     *            The event header definition
+     * @param prevTimestamp
+     *            The timestamp of the previous event of the packet
+     * @return The timestamp of the event
+     * @throws CTFIOException
+     *             If the header is not a valid event header
+     */
+    public static long calculateHeaderTimestamp(@Nullable ICompositeDefinition eventHeaderDef, long prevTimestamp) throws CTFIOException {
+        return calculateTimestamp(eventHeaderDef, prevTimestamp, null, null);
+    }
+
+    private static boolean hasHeaderTimestamp(@Nullable ICompositeDefinition eventHeaderDef) {
+        if (eventHeaderDef instanceof EventHeaderDefinition) {
+            return true;
+        }
+        return (eventHeaderDef instanceof StructDefinition)
+                && (((StructDefinition) eventHeaderDef).lookupDefinition(CTFStrings.TIMESTAMP) instanceof IntegerDefinition);
+    }
+
+    /**
+     * Compute where a field of the given type, starting at the given
+     * position, would end. Follows the alignment rules of the declarations'
+     * createDefinition() methods.
+     *
+     * @return The position after the field, or -1 if the field does not have
+     *         a fixed size (or if the position was already -1)
+     */
+    private static long skipFixedSize(@Nullable IDeclaration declaration, long position) {
+        if (position < 0 || declaration == null) {
+            return position;
+        }
+        long pos = align(position, declaration.getAlignment());
+        if (declaration instanceof IntegerDeclaration) {
+            return pos + ((IntegerDeclaration) declaration).getLength();
+        } else if (declaration instanceof EnumDeclaration) {
+            return skipFixedSize(((EnumDeclaration) declaration).getContainerType(), pos);
+        } else if (declaration instanceof FloatDeclaration) {
+            FloatDeclaration floatDecl = (FloatDeclaration) declaration;
+            int size = floatDecl.getExponent() + floatDecl.getMantissa();
+            return (size == Integer.SIZE || size == Long.SIZE) ? pos + size : -1;
+        } else if (declaration instanceof ArrayDeclaration) {
+            ArrayDeclaration arrayDecl = (ArrayDeclaration) declaration;
+            if (arrayDecl.isAlignedBytes()) {
+                return pos + (long) arrayDecl.getLength() * Byte.SIZE;
+            }
+            for (int i = 0; i < arrayDecl.getLength() && pos >= 0; i++) {
+                pos = skipFixedSize(arrayDecl.getElementType(), pos);
+            }
+            return pos;
+        } else if (declaration instanceof StructDeclaration) {
+            StructDeclaration structDecl = (StructDeclaration) declaration;
+            for (String fieldName : structDecl.getFieldsList()) {
+                pos = skipFixedSize(structDecl.getField(fieldName), pos);
+            }
+            return pos;
+        }
+        /* Strings, sequences and variants */
+        return -1;
+    }
+
+    private static long align(long position, long alignment) {
+        long mask = alignment - 1;
+        return (position + mask) & ~mask;
+    }
+
     private static long calculateTimestamp(@Nullable ICompositeDefinition eventHeaderDef, long prevTimestamp, StructDefinition eventPayload, StructDefinition eventContext) throws CTFIOException {
         long timestamp = 0;
         Definition def = null;
@@ -28,6 +28,7 @@ import org.eclipse.tracecompass.internal.ctf.core.event.LostEventDeclaration;
 import org.eclipse.tracecompass.internal.ctf.core.event.types.composite.EventHeaderDefinition;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.BitSet;
 import java.util.List;
 
 /**
@@ -64,6 +65,21 @@ public final class CTFPacketReader implements IPacketReader, IDefinitionScope {
 
     private @Nullable ICompositeDefinition fEventHeader;
 
+    /*
+     * Which event ids are wanted by the reader, or null to read all events.
+     * Ids outside of the array are always read.
+     */
+    private final @Nullable boolean[] fWantedEventIds;
+
+    /* Ids of the types of the events read so far, wanted or not */
+    private final BitSet fReadEventIds = new BitSet();
+
+    /* If restorePosition() jumped over events that were never read */
+    private boolean fSkippedEvents = false;
+
+    /** If the lost events of the packet are returned by this reader */
+    private final boolean fWantLostEvents;
+
     /**
      * Constructor
      *
@@ -86,15 +102,49 @@ public final class CTFPacketReader implements IPacketReader, IDefinitionScope {
     public CTFPacketReader(BitBuffer input, ICTFPacketDescriptor packetContext, List<IEventDeclaration> declarations,
                            @Nullable IDeclaration eventHeaderDeclaration, @Nullable StructDeclaration streamContext, @Nullable ICompositeDefinition packetHeader,
             IDefinitionScope packetScope) {
+        this(input, packetContext, declarations, eventHeaderDeclaration, streamContext, packetHeader, packetScope, null, true);
+    }
+
+    /**
+     * Constructor for a reader that only returns some of the events of the
+     * packet. The other ones are skipped without being decoded when their
+     * size is known in advance, and decoded then dropped otherwise.
+     *
+     * @param input
+     *            input {@link BitBuffer}
+     * @param packetContext
+     *            packet_context where we get info like lost events and cpu_id
+     * @param declarations
+     *            event declarations for this packet reader
+     * @param eventHeaderDeclaration
+     *            event header declaration, what to read before any given event,
+     *            to find it's id
+     * @param streamContext
+     *            the context declaration
+     * @param packetHeader
+     *            the header with the magic numbers and such
+     * @param packetScope
+     *            the scope of the packetHeader
+     * @param wantedEventIds
+     *            For each event id, if the events of that type should be
+     *            returned. Null to return all the events.
+     * @param wantLostEvents
+     *            If the lost events of the packet should be returned
+     */
+    public CTFPacketReader(BitBuffer input, ICTFPacketDescriptor packetContext, List<IEventDeclaration> declarations,
+                           @Nullable IDeclaration eventHeaderDeclaration, @Nullable StructDeclaration streamContext, @Nullable ICompositeDefinition packetHeader,
+            IDefinitionScope packetScope, @Nullable boolean[] wantedEventIds, boolean wantLostEvents) {
         fInput = input;
         fPacketContext = packetContext;
         fDeclarations = declarations;
         fPacketScope = packetScope;
-        fHasLost = fPacketContext.getLostEvents() != 0;
+        fWantLostEvents = wantLostEvents;
+        fHasLost = wantLostEvents && (fPacketContext.getLostEvents() != 0);
         fLastTimestamp = fPacketContext.getTimestampBegin();
         fStreamEventHeaderDecl = eventHeaderDeclaration;
         fStreamContext = streamContext;
         fTracePacketHeader = packetHeader;
+        fWantedEventIds = wantedEventIds;
     }
 
     @Override
@@ -107,18 +157,36 @@ public final class CTFPacketReader implements IPacketReader, IDefinitionScope {
         return fHasLost || (fInput.position() < fPacketContext.getContentSizeBits());
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * If the reader only wants some of the events, this can return null when
+     * all the remaining events of the packet were not wanted.
+     */
     @Override
-    public EventDefinition readNextEvent() throws CTFException {
-        int eventID = (int) IEventDeclaration.UNSET_EVENT_ID;
-        final long posStart = fInput.position();
-        /*
-         * Return the Lost Event after all other events in this packet. We need
-         * to check if the bytebuffer is at the beginning too.
-         */
-        if (fHasLost && (posStart >= fPacketContext.getContentSizeBits())) {
+    public @Nullable EventDefinition readNextEvent() throws CTFException {
+        while (fInput.position() < fPacketContext.getContentSizeBits()) {
+            EventDefinition eventDef = readEvent();
+            if (eventDef != null) {
+                return eventDef;
+            }
+        }
+        /* Return the Lost Event after all other events in this packet. */
+        if (fHasLost) {
             fHasLost = false;
             return createLostEvent(fPacketContext);
         }
+        return null;
+    }
+
+    /**
+     * Read the event at the current position.
+     *
+     * @return The event, or null if it is not wanted by this reader
+     */
+    private @Nullable EventDefinition readEvent() throws CTFException {
+        int eventID = (int) IEventDeclaration.UNSET_EVENT_ID;
+        final long posStart = fInput.position();
 
         fEventHeader = null;
         /* Read the stream event header. */
@@ -170,6 +238,16 @@ public final class CTFPacketReader implements IPacketReader, IDefinitionScope {
             throw new CTFIOException("Incorrect event id : " + eventID); //$NON-NLS-1$
         }
         EventDeclaration declaration = (EventDeclaration) eventDeclaration;
+        fReadEventIds.set(eventID);
+        final boolean[] wantedEventIds = fWantedEventIds;
+        boolean wanted = (wantedEventIds == null || eventID >= wantedEventIds.length || wantedEventIds[eventID]);
+        if (!wanted && declaration.skipDefinition(fStreamContext, fEventHeader, fInput)) {
+            if (posStart == fInput.position()) {
+                throw new CTFIOException("Empty event not allowed, event: " + declaration.getName()); //$NON-NLS-1$
+            }
+            fLastTimestamp = EventDeclaration.calculateHeaderTimestamp(fEventHeader, fLastTimestamp);
+            return null;
+        }
         EventDefinition eventDef = declaration.createDefinition(fStreamContext, fPacketContext, fTracePacketHeader, fEventHeader, fInput, fLastTimestamp);
         fLastTimestamp = eventDef.getTimestamp();
         /*
@@ -181,7 +259,50 @@ public final class CTFPacketReader implements IPacketReader, IDefinitionScope {
             throw new CTFIOException("Empty event not allowed, event: " + eventDef.getDeclaration().getName()); //$NON-NLS-1$
         }
 
-        return eventDef;
+        return (wanted ? eventDef : null);
+    }
+
+    /**
+     * Get the current position of this reader in the packet, in bits. Along
+     * with {@link #getLastTimestamp()}, this is what is needed to read again
+     * from this point later, see {@link #restorePosition}.
+     *
+     * @return The current position
+     */
+    public long getPosition() {
+        return fInput.position();
+    }
+
+    /**
+     * Get the timestamp of the last event read, which the timestamps of the
+     * following events may be relative to.
+     *
+     * @return The timestamp of the last event, in cycles
+     */
+    public long getLastTimestamp() {
+        return fLastTimestamp;
+    }
+
+    /**
+     * Go back to a position previously returned by {@link #getPosition()},
+     * right before an event. The next call to {@link #readNextEvent()} will
+     * return that event again.
+     *
+     * @param position
+     *            The position in the packet, in bits
+     * @param lastTimestamp
+     *            The value of {@link #getLastTimestamp()} at that position
+     * @throws CTFException
+     *             If the position is outside of the packet
+     */
+    public void restorePosition(long position, long lastTimestamp) throws CTFException {
+        if (position > fInput.position()) {
+            fSkippedEvents = true;
+        }
+        fInput.position(position);
+        fLastTimestamp = lastTimestamp;
+        /* The lost event always comes last, it is still ahead */
+        fHasLost = fWantLostEvents && (fPacketContext.getLostEvents() != 0);
     }
 
     private EventDefinition createLostEvent(final ICTFPacketDescriptor currentPacket) {
@@ -217,6 +338,28 @@ public final class CTFPacketReader implements IPacketReader, IDefinitionScope {
                 fPacketContext);
     }
 
+    /**
+     * Get the ids of the types of the events read so far from this packet.
+     * Once {@link #hasReadAllEvents()} returns true, these are the ids of all
+     * the events of the packet.
+     *
+     * @return The ids of the events read so far
+     */
+    public BitSet getReadEventIds() {
+        return fReadEventIds;
+    }
+
+    /**
+     * Check if every event of the packet was read by this reader, in which
+     * case {@link #getReadEventIds()} is complete. This is not the case if
+     * {@link #restorePosition} was used to skip some of them.
+     *
+     * @return If all the events of the packet were read
+     */
+    public boolean hasReadAllEvents() {
+        return !fSkippedEvents && !hasMoreEvents();
+    }
+
     @Override
     public ILexicalScope getScopePath() {
         return ILexicalScope.PACKET;
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2018 EfficiOS Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.ctf.core.trace;
+
+import org.eclipse.tracecompass.ctf.core.CTFException;
+import org.eclipse.tracecompass.ctf.core.event.IEventDefinition;
+
+import java.util.Arrays;
+
+/**
+ * Result of decoding a whole packet once: where each of its events starts,
+ * and their timestamps. With this, any event of the packet can be read again
+ * directly with {@link CTFPacketReader#restorePosition}, without decoding the
+ * events before it.
+ * <p>
+ * Instances are immutable, so they can be shared between readers through the
+ * {@link DecodedPacketCache}.
+ */
+public final class DecodedPacket {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Approximate size of an instance without its events, in bytes */
+    private static final long BASE_SIZE = 64;
+
+    /** Size of the data kept for each event, in bytes */
+    private static final long EVENT_SIZE = 3 * Long.BYTES;
+
+    private final long[] fPositions;
+    private final long[] fLastTimestamps;
+    private final long[] fTimestamps;
+
+    private DecodedPacket(long[] positions, long[] lastTimestamps, long[] timestamps) {
+        fPositions = positions;
+        fLastTimestamps = lastTimestamps;
+        fTimestamps = timestamps;
+    }
+
+    /**
+     * Decode all the remaining events of a packet reader. The reader should
+     * be at the start of its packet, and will be at the end of it afterwards.
+     *
+     * @param reader
+     *            The packet reader
+     * @return The decoded packet
+     * @throws CTFException
+     *             If an event cannot be read
+     */
+    public static DecodedPacket decode(CTFPacketReader reader) throws CTFException {
+        long[] positions = new long[INITIAL_CAPACITY];
+        long[] lastTimestamps = new long[INITIAL_CAPACITY];
+        long[] timestamps = new long[INITIAL_CAPACITY];
+        int nbEvents = 0;
+        while (reader.hasMoreEvents()) {
+            long position = reader.getPosition();
+            long lastTimestamp = reader.getLastTimestamp();
+            IEventDefinition event = reader.readNextEvent();
+            if (event == null) {
+                break;
+            }
+            if (nbEvents == positions.length) {
+                int newLength = 2 * nbEvents;
+                positions = Arrays.copyOf(positions, newLength);
+                lastTimestamps = Arrays.copyOf(lastTimestamps, newLength);
+                timestamps = Arrays.copyOf(timestamps, newLength);
+            }
+            positions[nbEvents] = position;
+            lastTimestamps[nbEvents] = lastTimestamp;
+            timestamps[nbEvents] = event.getTimestamp();
+            nbEvents++;
+        }
+        return new DecodedPacket(Arrays.copyOf(positions, nbEvents),
+                Arrays.copyOf(lastTimestamps, nbEvents),
+                Arrays.copyOf(timestamps, nbEvents));
+    }
+
+    /**
+     * Get the number of events in the packet.
+     *
+     * @return The number of events
+     */
+    public int size() {
+        return fPositions.length;
+    }
+
+    /**
+     * Get the approximate memory used by this object.
+     *
+     * @return The size in bytes
+     */
+    public long getSizeInBytes() {
+        return BASE_SIZE + EVENT_SIZE * size();
+    }
+
+    /**
+     * Get the timestamp of an event.
+     *
+     * @param index
+     *            The index of the event in the packet
+     * @return The timestamp of the event, in cycles
+     */
+    public long getTimestamp(int index) {
+        return fTimestamps[index];
+    }
+
+    /**
+     * Find the first event whose timestamp is greater or equal to the given
+     * one.
+     *
+     * @param timestamp
+     *            The timestamp to look for, in cycles
+     * @return The index of that event, or {@link #size()} if all the events
+     *         of the packet are before the timestamp
+     */
+    public int search(long timestamp) {
+        int low = 0;
+        int high = fTimestamps.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (fTimestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Move a reader of this packet right before one of its events, so that
+     * its next call to {@link CTFPacketReader#readNextEvent()} returns it.
+     *
+     * @param reader
+     *            A reader of the same packet
+     * @param index
+     *            The index of the event in the packet
+     * @throws CTFException
+     *             If the position is invalid for that reader
+     */
+    public void moveTo(CTFPacketReader reader, int index) throws CTFException {
+        reader.restorePosition(fPositions[index], fLastTimestamps[index]);
+    }
+}
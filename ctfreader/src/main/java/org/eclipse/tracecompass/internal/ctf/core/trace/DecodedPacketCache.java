@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2018 EfficiOS Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.ctf.core.trace;
+
+import org.eclipse.tracecompass.ctf.core.trace.CTFStreamInput;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Least-recently-used cache of {@link DecodedPacket}s, bounded by the memory
+ * they use. There is one per trace, shared by all the readers of that trace,
+ * so that readers looking at the same time range (for example the different
+ * views of the same window) only decode each packet once.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class DecodedPacketCache {
+
+    /** Default maximum size, in bytes */
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    private final long fMaxSize;
+    private final Map<Key, DecodedPacket> fPackets = new LinkedHashMap<>(16, 0.75f, true);
+    private long fSize = 0;
+
+    /**
+     * Constructor
+     *
+     * @param maxSize
+     *            The maximum memory used by the cached packets, in bytes
+     */
+    public DecodedPacketCache(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Negative size " + maxSize); //$NON-NLS-1$
+        }
+        fMaxSize = maxSize;
+    }
+
+    /**
+     * Get a cached packet.
+     *
+     * @param streamInput
+     *            The stream input containing the packet
+     * @param packetIndex
+     *            The index of the packet in the stream input
+     * @return The decoded packet, or null if it is not in the cache
+     */
+    public synchronized @Nullable DecodedPacket get(CTFStreamInput streamInput, int packetIndex) {
+        return fPackets.get(new Key(streamInput, packetIndex));
+    }
+
+    /**
+     * Add a packet to the cache, evicting the least recently used ones if
+     * needed. Packets larger than the whole cache are not kept.
+     *
+     * @param streamInput
+     *            The stream input containing the packet
+     * @param packetIndex
+     *            The index of the packet in the stream input
+     * @param packet
+     *            The decoded packet
+     */
+    public synchronized void put(CTFStreamInput streamInput, int packetIndex, DecodedPacket packet) {
+        if (packet.getSizeInBytes() > fMaxSize) {
+            return;
+        }
+        DecodedPacket previous = fPackets.put(new Key(streamInput, packetIndex), packet);
+        if (previous != null) {
+            fSize -= previous.getSizeInBytes();
+        }
+        fSize += packet.getSizeInBytes();
+
+        Iterator<DecodedPacket> iterator = fPackets.values().iterator();
+        while (fSize > fMaxSize) {
+            fSize -= iterator.next().getSizeInBytes();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Remove all the packets from the cache.
+     */
+    public synchronized void clear() {
+        fPackets.clear();
+        fSize = 0;
+    }
+
+    /**
+     * Get the memory currently used by the cached packets.
+     *
+     * @return The size in bytes
+     */
+    public synchronized long getSizeInBytes() {
+        return fSize;
+    }
+
+    private static final class Key {
+        private final CTFStreamInput fStreamInput;
+        private final int fPacketIndex;
+
+        Key(CTFStreamInput streamInput, int packetIndex) {
+            fStreamInput = streamInput;
+            fPacketIndex = packetIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fStreamInput, fPacketIndex);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return fPacketIndex == other.fPacketIndex && fStreamInput.equals(other.fStreamInput);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2018 EfficiOS Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.ctf.core.trace;
+
+/**
+ * Tournament tree ("loser tree") used to merge a fixed number of sorted
+ * sources, keyed on primitive long values.
+ * <p>
+ * Each source is a leaf, identified by its index. The tree keeps the current
+ * key of every leaf, so finding the smallest one never calls back into the
+ * sources. When the key of the winning leaf changes, only the path from that
+ * leaf to the root is replayed, which costs one comparison per level. Changes
+ * to any other leaf require the whole tree to be rebuilt.
+ * <p>
+ * Leaves can also be empty, for sources that have no more elements. Equal keys
+ * are ordered by leaf index, so the merge order is deterministic.
+ * <p>
+ * Keys are compared as signed values. Callers with unsigned keys can flip
+ * their sign bit first, see {@link #unsignedKey(long)}.
+ */
+public final class LongLoserTree {
+
+    private static final int NONE = -1;
+
+    private final int fSize;
+    private final long[] fKeys;
+    private final boolean[] fEmpty;
+    private int fNbNonEmpty;
+
+    /**
+     * Internal nodes, each holding the leaf that lost the match at that node.
+     * Index 0 holds the overall winner. Leaf i is at virtual position
+     * (fSize + i), so the parent of any position p is p / 2.
+     */
+    private final int[] fLosers;
+
+    /**
+     * Constructor, initially all the leaves are empty.
+     *
+     * @param size
+     *            The number of leaves
+     */
+    public LongLoserTree(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative size " + size); //$NON-NLS-1$
+        }
+        fSize = size;
+        fKeys = new long[size];
+        fEmpty = new boolean[size];
+        fLosers = new int[Math.max(size, 1)];
+        clear();
+    }
+
+    /**
+     * Convert an unsigned key to a signed one with the same ordering.
+     *
+     * @param key
+     *            The unsigned key
+     * @return The key to pass to this tree
+     */
+    public static long unsignedKey(long key) {
+        return key ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * Get the number of leaves of this tree, empty or not.
+     *
+     * @return The number of leaves
+     */
+    public int size() {
+        return fSize;
+    }
+
+    /**
+     * Mark all leaves as empty.
+     */
+    public void clear() {
+        for (int i = 0; i < fSize; i++) {
+            fEmpty[i] = true;
+        }
+        fNbNonEmpty = 0;
+        rebuild();
+    }
+
+    /**
+     * Recompute the whole tree from the current leaf keys. Cheaper than
+     * updating the leaves one by one when most of them changed, for example
+     * after a seek. Use {@link #setKey} and {@link #setEmpty} with a false
+     * 'replay' parameter before calling this.
+     */
+    public void rebuild() {
+        if (fSize == 0) {
+            fLosers[0] = NONE;
+            return;
+        }
+        int[] winners = new int[fSize];
+        for (int node = fSize - 1; node >= 1; node--) {
+            int left = winnerAt(winners, 2 * node);
+            int right = winnerAt(winners, 2 * node + 1);
+            if (beats(left, right)) {
+                winners[node] = left;
+                fLosers[node] = right;
+            } else {
+                winners[node] = right;
+                fLosers[node] = left;
+            }
+        }
+        fLosers[0] = (fSize == 1 ? 0 : winners[1]);
+    }
+
+    private int winnerAt(int[] winners, int position) {
+        return (position >= fSize ? position - fSize : winners[position]);
+    }
+
+    /**
+     * Set the key of a leaf, which becomes non-empty.
+     *
+     * @param leaf
+     *            The leaf index
+     * @param key
+     *            The new key
+     * @param replay
+     *            If the tree should be updated right away, which is only
+     *            possible for the winning leaf. Otherwise pass false, and
+     *            call {@link #rebuild()} once all the leaves are set.
+     */
+    public void setKey(int leaf, long key, boolean replay) {
+        fKeys[leaf] = key;
+        if (fEmpty[leaf]) {
+            fEmpty[leaf] = false;
+            fNbNonEmpty++;
+        }
+        if (replay) {
+            replay(leaf);
+        }
+    }
+
+    /**
+     * Set the key of the winning leaf, and update the tree.
+     *
+     * @param leaf
+     *            The index of the winning leaf
+     * @param key
+     *            The new key
+     */
+    public void update(int leaf, long key) {
+        setKey(leaf, key, true);
+    }
+
+    /**
+     * Mark a leaf as empty, it will never be the winner until it gets a key
+     * again.
+     *
+     * @param leaf
+     *            The leaf index
+     * @param replay
+     *            If the tree should be updated right away, see
+     *            {@link #setKey}
+     */
+    public void setEmpty(int leaf, boolean replay) {
+        if (!fEmpty[leaf]) {
+            fEmpty[leaf] = true;
+            fNbNonEmpty--;
+        }
+        if (replay) {
+            replay(leaf);
+        }
+    }
+
+    /**
+     * Mark the winning leaf as empty, and update the tree.
+     *
+     * @param leaf
+     *            The index of the winning leaf
+     */
+    public void remove(int leaf) {
+        setEmpty(leaf, true);
+    }
+
+    /**
+     * Check if a leaf is empty.
+     *
+     * @param leaf
+     *            The leaf index
+     * @return If the leaf is empty
+     */
+    public boolean isEmpty(int leaf) {
+        return fEmpty[leaf];
+    }
+
+    /**
+     * Get the current key of a leaf.
+     *
+     * @param leaf
+     *            The leaf index
+     * @return The key of the leaf, meaningless if the leaf is empty
+     */
+    public long getKey(int leaf) {
+        return fKeys[leaf];
+    }
+
+    /**
+     * Get the number of leaves that are not empty.
+     *
+     * @return The number of non-empty leaves
+     */
+    public int getNonEmptyCount() {
+        return fNbNonEmpty;
+    }
+
+    /**
+     * Get the leaf with the smallest key.
+     *
+     * @return The index of the winning leaf, or -1 if all the leaves are empty
+     */
+    public int getWinner() {
+        int winner = fLosers[0];
+        return (winner == NONE || fEmpty[winner] ? NONE : winner);
+    }
+
+    /**
+     * Get the key of the winning leaf. Only valid if {@link #getWinner()} is
+     * not -1.
+     *
+     * @return The smallest key
+     */
+    public long getWinnerKey() {
+        return fKeys[fLosers[0]];
+    }
+
+    private void replay(int leaf) {
+        int candidate = leaf;
+        for (int node = (fSize + leaf) / 2; node >= 1; node /= 2) {
+            int loser = fLosers[node];
+            if (beats(loser, candidate)) {
+                fLosers[node] = candidate;
+                candidate = loser;
+            }
+        }
+        fLosers[0] = candidate;
+    }
+
+    private boolean beats(int a, int b) {
+        if (fEmpty[a] != fEmpty[b]) {
+            return fEmpty[b];
+        }
+        if (!fEmpty[a] && fKeys[a] != fKeys[b]) {
+            return fKeys[a] < fKeys[b];
+        }
+        return a < b;
+    }
+}
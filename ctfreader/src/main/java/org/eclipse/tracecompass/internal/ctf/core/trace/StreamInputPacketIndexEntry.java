@@ -19,8 +19,10 @@ import org.eclipse.tracecompass.ctf.core.event.types.*;
 import org.eclipse.tracecompass.ctf.core.trace.ICTFPacketDescriptor;
 import org.eclipse.tracecompass.ctf.core.trace.IPacketReader;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.AbstractMap;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -89,6 +91,11 @@ public class StreamInputPacketIndexEntry implements ICTFPacketDescriptor {
 
     private final long fEndPacketHeaderBits;
 
+    /**
+     * Ids of the event types present in the packet, once they are known
+     */
+    private volatile @Nullable BitSet fEventIds = null;
+
     // ------------------------------------------------------------------------
     // Constructors
     // ------------------------------------------------------------------------
@@ -194,6 +201,47 @@ public class StreamInputPacketIndexEntry implements ICTFPacketDescriptor {
         fLostEvents = entryToAdd.getLostEvents();
     }
 
+    /**
+     * Constructor taking already-computed values, used to restore an entry
+     * from a persisted index.
+     *
+     * @param offsetBits
+     *            offset in the file for the start of the packet in bits
+     * @param packetSizeBits
+     *            packet size in bits
+     * @param contentSizeBits
+     *            content size in bits
+     * @param timestampBegin
+     *            begin timestamp
+     * @param timestampEnd
+     *            end timestamp
+     * @param lostEvents
+     *            number of events lost in this packet
+     * @param target
+     *            the traced target, can be null
+     * @param targetId
+     *            the traced target ID
+     * @param attributes
+     *            the packet context attributes
+     * @param endPacketHeaderBits
+     *            end of packet headers
+     */
+    public StreamInputPacketIndexEntry(long offsetBits, long packetSizeBits, long contentSizeBits,
+            long timestampBegin, long timestampEnd, long lostEvents, String target, long targetId,
+            @NotNull Map<String, Object> attributes, long endPacketHeaderBits) {
+        fEndPacketHeaderBits = endPacketHeaderBits;
+        fAttributes = ImmutableMap.copyOf(attributes);
+        fContentSizeBits = contentSizeBits;
+        fPacketSizeBits = packetSizeBits;
+        fTimestampBegin = timestampBegin;
+        fTimestampEnd = timestampEnd;
+        fOffsetBits = offsetBits;
+        fOffsetBytes = offsetBits / Byte.SIZE;
+        fTarget = target;
+        fTargetID = targetId;
+        fLostEvents = lostEvents;
+    }
+
     private static @NotNull Map<String, Object> computeAttributeMap(StructDefinition streamPacketContextDef) {
         Builder<String, Object> attributeBuilder = ImmutableMap.<String, Object> builder();
         for (String field : streamPacketContextDef.getDeclaration().getFieldsList()) {
@@ -386,4 +434,20 @@ public class StreamInputPacketIndexEntry implements ICTFPacketDescriptor {
     public long getPayloadStartBits() {
         return fEndPacketHeaderBits;
     }
+
+    @Override
+    public @Nullable BitSet getEventIds() {
+        return fEventIds;
+    }
+
+    /**
+     * Set the ids of the event types present in the packet, once all its
+     * events were read.
+     *
+     * @param eventIds
+     *            The event ids, which should not be modified afterwards
+     */
+    public void setEventIds(BitSet eventIds) {
+        fEventIds = eventIds;
+    }
 }
@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * Copyright (c) 2018 EfficiOS Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.internal.ctf.core.trace;
+
+import com.google.common.collect.ImmutableMap;
+import org.eclipse.tracecompass.ctf.core.trace.ICTFPacketDescriptor;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Side file in which the packet index of a stream file is persisted, so that
+ * the packets of a trace only need to be indexed the first time it is opened.
+ * <p>
+ * The index file is a hidden file placed next to the stream file it describes.
+ * It records the size and modification time of the stream file, and is only
+ * used if these still match. Failures to read or write it are not fatal, the
+ * stream simply gets indexed again.
+ * <p>
+ * The ids of the event types present in each packet are also saved, for the
+ * packets where they are known.
+ */
+public final class StreamInputPacketIndexFile {
+
+    private static final Logger LOGGER = Logger.getLogger(StreamInputPacketIndexFile.class.getName());
+
+    private static final int MAGIC = 0xC7F1DE70;
+    private static final int VERSION = 2;
+
+    private static final String SUFFIX = ".idx"; //$NON-NLS-1$
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_ENUM = 3;
+    private static final byte TYPE_STRING = 4;
+
+    private StreamInputPacketIndexFile() {}
+
+    /**
+     * Get the index file matching a stream file.
+     *
+     * @param streamFile
+     *            The stream file
+     * @return The index file, which may not exist
+     */
+    public static File indexFileFor(File streamFile) {
+        return new File(streamFile.getParentFile(), '.' + streamFile.getName() + SUFFIX);
+    }
+
+    /**
+     * Read the persisted index of a stream file.
+     *
+     * @param streamFile
+     *            The stream file whose index to read
+     * @return The index entries, in order, or null if there is no valid index
+     *         file for the current contents of the stream file
+     */
+    public static @Nullable List<ICTFPacketDescriptor> read(File streamFile) {
+        File indexFile = indexFileFor(streamFile);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC
+                    || in.readInt() != VERSION
+                    || in.readLong() != streamFile.length()
+                    || in.readLong() != streamFile.lastModified()) {
+                return null;
+            }
+
+            int nbEntries = in.readInt();
+            List<ICTFPacketDescriptor> entries = new ArrayList<>(nbEntries);
+            for (int i = 0; i < nbEntries; i++) {
+                entries.add(readEntry(in));
+            }
+            return entries;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warning(() -> "Could not read packet index file " + indexFile + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+            return null;
+        }
+    }
+
+    /**
+     * Persist the complete index of a stream file. The file is first written
+     * under a temporary name, so that a partially-written index is never
+     * picked up.
+     *
+     * @param streamFile
+     *            The stream file that was indexed
+     * @param index
+     *            The index covering the whole stream file
+     */
+    public static void write(File streamFile, StreamInputPacketIndex index) {
+        File indexFile = indexFileFor(streamFile);
+        File tmpFile = new File(indexFile.getPath() + ".tmp"); //$NON-NLS-1$
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(streamFile.length());
+                out.writeLong(streamFile.lastModified());
+                out.writeInt(index.size());
+                for (int i = 0; i < index.size(); i++) {
+                    writeEntry(out, index.getElement(i));
+                }
+            }
+            Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            /* The trace directory may very well be read-only */
+            LOGGER.fine(() -> "Could not write packet index file " + indexFile + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+            tmpFile.delete();
+        }
+    }
+
+    private static void writeEntry(DataOutput out, ICTFPacketDescriptor entry) throws IOException {
+        out.writeLong(entry.getOffsetBits());
+        out.writeLong(entry.getPacketSizeBits());
+        out.writeLong(entry.getContentSizeBits());
+        out.writeLong(entry.getTimestampBegin());
+        out.writeLong(entry.getTimestampEnd());
+        out.writeLong(entry.getLostEvents());
+        out.writeLong(entry.getTargetId());
+        out.writeLong(entry.getPayloadStartBits());
+        writeValue(out, entry.getTarget());
+
+        Map<String, Object> attributes = entry.getAttributes();
+        out.writeInt(attributes.size());
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            out.writeUTF(attribute.getKey());
+            writeValue(out, attribute.getValue());
+        }
+
+        BitSet eventIds = entry.getEventIds();
+        if (eventIds == null) {
+            out.writeInt(-1);
+        } else {
+            long[] words = eventIds.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    private static ICTFPacketDescriptor readEntry(DataInput in) throws IOException {
+        long offsetBits = in.readLong();
+        long packetSizeBits = in.readLong();
+        long contentSizeBits = in.readLong();
+        long timestampBegin = in.readLong();
+        long timestampEnd = in.readLong();
+        long lostEvents = in.readLong();
+        long targetId = in.readLong();
+        long payloadStartBits = in.readLong();
+        String target = (String) readValue(in);
+
+        int nbAttributes = in.readInt();
+        ImmutableMap.Builder<String, Object> attributes = ImmutableMap.builder();
+        for (int i = 0; i < nbAttributes; i++) {
+            String key = in.readUTF();
+            Object value = readValue(in);
+            if (value != null) {
+                attributes.put(key, value);
+            }
+        }
+        StreamInputPacketIndexEntry entry = new StreamInputPacketIndexEntry(offsetBits, packetSizeBits, contentSizeBits,
+                timestampBegin, timestampEnd, lostEvents, target, targetId,
+                attributes.build(), payloadStartBits);
+
+        int nbEventIdWords = in.readInt();
+        if (nbEventIdWords >= 0) {
+            long[] words = new long[nbEventIdWords];
+            for (int i = 0; i < nbEventIdWords; i++) {
+                words[i] = in.readLong();
+            }
+            entry.setEventIds(BitSet.valueOf(words));
+        }
+        return entry;
+    }
+
+    /**
+     * Write one of the value types found in packet context attributes, see
+     * {@link StreamInputPacketIndexEntry}.
+     */
+    private static void writeValue(DataOutput out, @Nullable Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof SimpleImmutableEntry) {
+            SimpleImmutableEntry<?, ?> enumValue = (SimpleImmutableEntry<?, ?>) value;
+            out.writeByte(TYPE_ENUM);
+            out.writeUTF((String) enumValue.getKey());
+            out.writeLong((Long) enumValue.getValue());
+        } else if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF((String) value);
+        } else {
+            throw new IOException("Unsupported attribute type " + value.getClass().getName()); //$NON-NLS-1$
+        }
+    }
+
+    private static @Nullable Object readValue(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case TYPE_NULL:
+            return null;
+        case TYPE_LONG:
+            return in.readLong();
+        case TYPE_DOUBLE:
+            return in.readDouble();
+        case TYPE_ENUM:
+            String name = in.readUTF();
+            return new SimpleImmutableEntry<>(name, in.readLong());
+        case TYPE_STRING:
+            return in.readUTF();
+        default:
+            throw new IOException("Unknown attribute type " + type); //$NON-NLS-1$
+        }
+    }
+}
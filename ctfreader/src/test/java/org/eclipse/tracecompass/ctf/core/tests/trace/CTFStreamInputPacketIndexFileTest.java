@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2018 EfficiOS Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.tests.trace;
+
+import com.google.common.collect.ImmutableMap;
+import org.eclipse.tracecompass.ctf.core.trace.ICTFPacketDescriptor;
+import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputPacketIndex;
+import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputPacketIndexEntry;
+import org.eclipse.tracecompass.internal.ctf.core.trace.StreamInputPacketIndexFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link StreamInputPacketIndexFile}.
+ */
+class CTFStreamInputPacketIndexFileTest {
+
+    private File fStreamFile;
+    private StreamInputPacketIndex fIndex;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fStreamFile = File.createTempFile("channel0_", null);
+        Files.write(fStreamFile.toPath(), new byte[128]);
+
+        fIndex = new StreamInputPacketIndex();
+        StreamInputPacketIndexEntry entry = new StreamInputPacketIndexEntry(0L, 512L, 500L, 10L, 20L, 0L, "CPU0", 0L,
+                ImmutableMap.<String, Object> of("cpu_id", 0L, "mode", new SimpleImmutableEntry<>("user", 1L)), 64L);
+        BitSet eventIds = new BitSet();
+        eventIds.set(3);
+        eventIds.set(130);
+        entry.setEventIds(eventIds);
+        fIndex.append(entry);
+        fIndex.append(new StreamInputPacketIndexEntry(512L, 512L, 512L, 20L, 30L, 3L, null, -1L,
+                ImmutableMap.<String, Object> of("ratio", 0.5, "name", "test"), 576L));
+    }
+
+    @AfterEach
+    void tearDown() {
+        StreamInputPacketIndexFile.indexFileFor(fStreamFile).delete();
+        fStreamFile.delete();
+    }
+
+    @Test
+    void testReadWrite() {
+        assertNull(StreamInputPacketIndexFile.read(fStreamFile));
+        StreamInputPacketIndexFile.write(fStreamFile, fIndex);
+
+        File indexFile = StreamInputPacketIndexFile.indexFileFor(fStreamFile);
+        assertTrue(indexFile.isFile());
+        assertTrue(indexFile.getName().startsWith("."));
+
+        List<ICTFPacketDescriptor> entries = StreamInputPacketIndexFile.read(fStreamFile);
+        assertNotNull(entries);
+        assertEquals(fIndex.size(), entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            ICTFPacketDescriptor expected = fIndex.getElement(i);
+            ICTFPacketDescriptor actual = entries.get(i);
+            assertEquals(expected.getOffsetBits(), actual.getOffsetBits());
+            assertEquals(expected.getOffsetBytes(), actual.getOffsetBytes());
+            assertEquals(expected.getPacketSizeBits(), actual.getPacketSizeBits());
+            assertEquals(expected.getContentSizeBits(), actual.getContentSizeBits());
+            assertEquals(expected.getTimestampBegin(), actual.getTimestampBegin());
+            assertEquals(expected.getTimestampEnd(), actual.getTimestampEnd());
+            assertEquals(expected.getLostEvents(), actual.getLostEvents());
+            assertEquals(expected.getTarget(), actual.getTarget());
+            assertEquals(expected.getTargetId(), actual.getTargetId());
+            assertEquals(expected.getPayloadStartBits(), actual.getPayloadStartBits());
+            assertEquals(expected.getAttributes(), actual.getAttributes());
+            assertEquals(expected.getEventIds(), actual.getEventIds());
+        }
+    }
+
+    @Test
+    void testStaleIndex() throws IOException {
+        StreamInputPacketIndexFile.write(fStreamFile, fIndex);
+        assertNotNull(StreamInputPacketIndexFile.read(fStreamFile));
+
+        /* The stream file changed size, the index no longer applies */
+        Files.write(fStreamFile.toPath(), new byte[256]);
+        assertNull(StreamInputPacketIndexFile.read(fStreamFile));
+    }
+}
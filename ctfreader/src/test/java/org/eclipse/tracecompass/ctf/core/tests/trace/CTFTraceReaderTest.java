@@ -22,6 +22,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.lttng.scope.ttt.ctf.CtfTestTrace;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -312,6 +315,38 @@ class CTFTraceReaderTest {
         assertTrue(result);
     }
 
+    /**
+     * Seeking uses the packets decoded by the other readers of the trace.
+     * Readers seeking while the packets get decoded, and readers seeking once
+     * they are all cached, should find the same events as reading forwards.
+     *
+     * @throws CTFException
+     *             error
+     */
+    @Test
+    void testSeekSharedPackets() throws CTFException {
+        CTFTrace trace = testTraceWrapper.getTrace();
+        List<Long> timestamps = new ArrayList<>();
+        for (int i = 0; i < 20000 && fixture.hasMoreEvents(); i++) {
+            if (i % 500 == 0) {
+                timestamps.add(fixture.getCurrentEventDef().getTimestamp());
+            }
+            fixture.advance();
+        }
+
+        for (int run = 0; run < 2; run++) {
+            try (CTFTraceReader reader = new CTFTraceReader(trace)) {
+                for (long timestamp : timestamps) {
+                    reader.seek(timestamp);
+                    IEventDefinition event = reader.getCurrentEventDef();
+                    assertNotNull(event);
+                    assertEquals(timestamp, event.getTimestamp());
+                }
+            }
+        }
+        assertTrue(trace.getPacketCache().getSizeInBytes() > 0);
+    }
+
     /**
      * @return
      */
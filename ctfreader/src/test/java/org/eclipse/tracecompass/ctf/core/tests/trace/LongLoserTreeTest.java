@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2018 EfficiOS Inc.
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.ctf.core.tests.trace;
+
+import org.eclipse.tracecompass.internal.ctf.core.trace.LongLoserTree;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The class <code>LongLoserTreeTest</code> contains tests for the class
+ * {@link LongLoserTree}.
+ */
+class LongLoserTreeTest {
+
+    private static final int NONE = -1;
+
+    /**
+     * Merge sorted arrays using a loser tree, the way the trace reader merges
+     * its streams.
+     */
+    private static List<Long> merge(long[]... sources) {
+        LongLoserTree tree = new LongLoserTree(sources.length);
+        int[] positions = new int[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i].length == 0) {
+                tree.setEmpty(i, false);
+            } else {
+                tree.setKey(i, sources[i][0], false);
+            }
+        }
+        tree.rebuild();
+
+        List<Long> merged = new ArrayList<>();
+        while (tree.getWinner() != NONE) {
+            int leaf = tree.getWinner();
+            merged.add(tree.getWinnerKey());
+            positions[leaf]++;
+            if (positions[leaf] < sources[leaf].length) {
+                tree.update(leaf, sources[leaf][positions[leaf]]);
+            } else {
+                tree.remove(leaf);
+            }
+        }
+        assertEquals(0, tree.getNonEmptyCount());
+        return merged;
+    }
+
+    private static List<Long> sortedConcat(long[]... sources) {
+        List<Long> all = new ArrayList<>();
+        for (long[] source : sources) {
+            for (long key : source) {
+                all.add(key);
+            }
+        }
+        Collections.sort(all);
+        return all;
+    }
+
+    /**
+     * Test trees without leaves, or with only empty leaves.
+     */
+    @Test
+    void testEmpty() {
+        assertEquals(NONE, new LongLoserTree(0).getWinner());
+        assertEquals(NONE, new LongLoserTree(5).getWinner());
+        assertEquals(Collections.emptyList(), merge(new long[0], new long[0], new long[0]));
+    }
+
+    /**
+     * Test a tree with a single leaf.
+     */
+    @Test
+    void testSingleLeaf() {
+        long[] source = { 1, 3, 5 };
+        assertEquals(Arrays.asList(1L, 3L, 5L), merge(source));
+    }
+
+    /**
+     * Test merging sources that include empty ones, duplicate keys and the
+     * extreme values.
+     */
+    @Test
+    void testMerge() {
+        long[][] sources = {
+                { 1, 3, 5 },
+                { 2, 4, 6 },
+                {},
+                { 4, 5, 6 },
+                { Long.MIN_VALUE, 2, Long.MAX_VALUE }
+        };
+        assertEquals(sortedConcat(sources), merge(sources));
+    }
+
+    /**
+     * Merge random sources, for all tree sizes up to a few dozen leaves, which
+     * covers both power-of-two and other sizes.
+     */
+    @Test
+    void testRandomMerge() {
+        Random random = new Random(42);
+        for (int nbSources = 1; nbSources <= 40; nbSources++) {
+            long[][] sources = new long[nbSources][];
+            for (int i = 0; i < nbSources; i++) {
+                sources[i] = new long[random.nextInt(20)];
+                for (int j = 0; j < sources[i].length; j++) {
+                    sources[i][j] = random.nextInt(50);
+                }
+                Arrays.sort(sources[i]);
+            }
+            assertEquals(sortedConcat(sources), merge(sources), "Size " + nbSources);
+        }
+    }
+
+    /**
+     * Test that equal keys come out in the order of their leaves.
+     */
+    @Test
+    void testTies() {
+        LongLoserTree tree = new LongLoserTree(3);
+        for (int i = 0; i < 3; i++) {
+            tree.setKey(i, 10, false);
+        }
+        tree.rebuild();
+        assertEquals(0, tree.getWinner());
+        tree.update(0, 20);
+        assertEquals(1, tree.getWinner());
+        tree.remove(1);
+        assertEquals(2, tree.getWinner());
+        tree.update(2, 20);
+        assertEquals(0, tree.getWinner());
+        assertEquals(20, tree.getWinnerKey());
+    }
+
+    /**
+     * Test emptying leaves and setting them again, with a rebuild.
+     */
+    @Test
+    void testEmptyLeaves() {
+        LongLoserTree tree = new LongLoserTree(5);
+        assertEquals(5, tree.size());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(tree.isEmpty(i));
+        }
+
+        tree.setKey(3, 7, false);
+        tree.setKey(1, 9, false);
+        tree.rebuild();
+        assertEquals(2, tree.getNonEmptyCount());
+        assertFalse(tree.isEmpty(3));
+        assertEquals(3, tree.getWinner());
+
+        tree.remove(3);
+        assertTrue(tree.isEmpty(3));
+        assertEquals(1, tree.getWinner());
+        assertEquals(9, tree.getKey(1));
+
+        tree.setEmpty(1, false);
+        tree.setKey(4, 1, false);
+        tree.rebuild();
+        assertEquals(1, tree.getNonEmptyCount());
+        assertEquals(4, tree.getWinner());
+
+        tree.clear();
+        assertEquals(0, tree.getNonEmptyCount());
+        assertEquals(NONE, tree.getWinner());
+    }
+
+    /**
+     * Test that unsigned keys keep their unsigned order once converted.
+     */
+    @Test
+    void testUnsignedKey() {
+        long[] unsignedKeys = { 0, 1, Long.MAX_VALUE, Long.MIN_VALUE, -1 };
+        for (int i = 1; i < unsignedKeys.length; i++) {
+            assertTrue(LongLoserTree.unsignedKey(unsignedKeys[i - 1]) < LongLoserTree.unsignedKey(unsignedKeys[i]));
+        }
+
+        LongLoserTree tree = new LongLoserTree(3);
+        tree.setKey(0, LongLoserTree.unsignedKey(-1), false);
+        tree.setKey(1, LongLoserTree.unsignedKey(Long.MIN_VALUE), false);
+        tree.setKey(2, LongLoserTree.unsignedKey(5), false);
+        tree.rebuild();
+        assertEquals(2, tree.getWinner());
+        tree.remove(2);
+        assertEquals(1, tree.getWinner());
+        tree.remove(1);
+        assertEquals(0, tree.getWinner());
+    }
+}
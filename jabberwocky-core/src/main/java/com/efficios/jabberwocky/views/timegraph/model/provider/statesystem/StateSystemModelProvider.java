@@ -13,6 +13,7 @@ import ca.polymtl.dorsal.libdelorean.IStateSystemReader;
 import ca.polymtl.dorsal.libdelorean.exceptions.StateSystemDisposedException;
 import ca.polymtl.dorsal.libdelorean.interval.StateInterval;
 import com.efficios.jabberwocky.analysis.statesystem.StateSystemAnalysis;
+import com.efficios.jabberwocky.analysis.statesystem.StateSystemAnalysisPipeline;
 import com.efficios.jabberwocky.project.TraceProject;
 import com.efficios.jabberwocky.views.timegraph.model.provider.TimeGraphModelProvider;
 import com.efficios.jabberwocky.views.timegraph.model.provider.arrows.TimeGraphModelArrowProvider;
@@ -131,6 +132,9 @@ public abstract class StateSystemModelProvider extends TimeGraphModelProvider {
 
         fTreeRenderFunction = treeRenderFunction;
 
+        /* Have the analysis built along with the others whenever a project gets read. */
+        StateSystemAnalysisPipeline.INSTANCE.registerAnalysis(stateSystemAnalysis);
+
         /*
          * Change listener which will take care of keeping the target state
          * system up to date.
@@ -9,6 +9,7 @@
 
 package com.efficios.jabberwocky.analysis.eventstats
 
+import ca.polymtl.dorsal.libdelorean.IStateSystemQuarkResolver.ROOT_ATTRIBUTE
 import ca.polymtl.dorsal.libdelorean.IStateSystemWriter
 import com.efficios.jabberwocky.analysis.statesystem.StateSystemAnalysis
 import com.efficios.jabberwocky.collection.TraceCollection
@@ -36,13 +37,13 @@ object EventStatsAnalysis : StateSystemAnalysis() {
         /* Increment the totals, then the attributes corresponding to this event's name and cpu */
         val ts = event.timestamp
 
-        val totalQuark = ss.getQuarkAbsoluteAndAdd(TOTAL_ATTRIBUTE)
+        val totalQuark = ss.getChildQuarkAndAdd(ROOT_ATTRIBUTE, TOTAL_ATTRIBUTE)
         ss.incrementAttribute(ts, totalQuark)
 
-        val eventNameQuark = ss.getQuarkAbsoluteAndAdd(EVENT_NAME_ATTRIBUTE, event.eventName)
+        val eventNameQuark = ss.getChildQuarkAndAdd(ss.getChildQuarkAndAdd(ROOT_ATTRIBUTE, EVENT_NAME_ATTRIBUTE), event.eventName)
         ss.incrementAttribute(ts, eventNameQuark)
 
-        val cpuQuark = ss.getQuarkAbsoluteAndAdd(CPU_ATTRIBUTE, event.cpu.toString())
+        val cpuQuark = ss.getChildQuarkAndAdd(ss.getChildQuarkAndAdd(ROOT_ATTRIBUTE, CPU_ATTRIBUTE), event.cpu)
         ss.incrementAttribute(ts, cpuQuark)
     }
 
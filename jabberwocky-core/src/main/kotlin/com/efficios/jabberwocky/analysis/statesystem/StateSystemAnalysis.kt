@@ -9,77 +9,438 @@
 
 package com.efficios.jabberwocky.analysis.statesystem
 
+import ca.polymtl.dorsal.libdelorean.CompositeStateSystem
 import ca.polymtl.dorsal.libdelorean.IStateSystemReader
 import ca.polymtl.dorsal.libdelorean.IStateSystemWriter
 import ca.polymtl.dorsal.libdelorean.StateSystemFactory
+import ca.polymtl.dorsal.libdelorean.TimeSlicedStateSystem
 import ca.polymtl.dorsal.libdelorean.backend.StateHistoryBackendFactory
+import ca.polymtl.dorsal.libdelorean.statedump.Statedump
 import com.efficios.jabberwocky.analysis.IAnalysis
 import com.efficios.jabberwocky.analysis.IAnalysis.Companion.ANALYSES_DIRECTORY
 import com.efficios.jabberwocky.collection.TraceCollection
 import com.efficios.jabberwocky.common.TimeRange
+import com.efficios.jabberwocky.common.intersection
+import com.efficios.jabberwocky.common.intersects
 import com.efficios.jabberwocky.project.TraceProject
-import com.efficios.jabberwocky.task.JabberwockyTask
+import com.efficios.jabberwocky.trace.Trace
 import com.efficios.jabberwocky.trace.event.TraceEvent
 import java.io.IOException
 import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
 
 abstract class StateSystemAnalysis : IAnalysis {
 
     companion object {
         private const val HISTORY_FILE_EXTENSION = ".ht"
+        private const val RANGE_FILE_INFIX = ".range."
+
+        /** Default duration of the lookbehind for partial ranges, 1 second in nanoseconds */
+        private const val DEFAULT_RANGE_LOOKBEHIND = 1_000_000_000L
     }
 
+    /** The state systems opened on the histories of partial ranges, per history file */
+    private val rangeStateSystems = ConcurrentHashMap<Path, MutableList<IStateSystemReader>>()
+
+    /**
+     * Execute this analysis. If a range is specified, and the history of the
+     * whole project is not available, only the history covering that range
+     * will be built. See [rangeLookbehind].
+     */
     final override fun execute(project: TraceProject<*, *>, range: TimeRange?, extraParams: String?): IStateSystemReader {
-        if (range != null) throw UnsupportedOperationException("Partial ranges for state system analysis not yet implemented")
 //        if (extraParams != null) logWarning("Ignoring extra parameters: $extraParams")
 
-        /* Wrap this in an in-band JabberwockyTask so that progress can be reported. */
-        val task = JabberwockyTask<IStateSystemReader>("Processing states for analysis ${this.javaClass.simpleName}") {
-            /* Determine the path of the history tree backing file we expect */
-            val analysisClassName = javaClass.toString()
-            val analysesDirectory = project.directory.resolve(ANALYSES_DIRECTORY)
-            if (!Files.exists(analysesDirectory)) Files.createDirectory(analysesDirectory)
-
-            val stateSystemFile = analysesDirectory.resolve(analysisClassName + HISTORY_FILE_EXTENSION)
-            var newFile = !Files.exists(stateSystemFile)
-
-            /* Create the history tree backend we will use */
-            val htBackend = if (Files.exists(stateSystemFile)) {
-                try {
-                    StateHistoryBackendFactory.createHistoryTreeBackendExistingFile(analysisClassName, stateSystemFile.toFile(), providerVersion)
-                } catch (e: IOException) {
-                    /* The expected provider version may not match what we have on disk. Try building the file from scratch instead */
-                    newFile = true
-                    StateHistoryBackendFactory.createHistoryTreeBackendNewFile(analysisClassName, stateSystemFile.toFile(), providerVersion, project.startTime)
+        if (range != null) return StateSystemAnalysisPipeline.execute(project, this, range)
+        return StateSystemAnalysisPipeline.execute(project, listOf(this)).getValue(this)
+    }
+
+    /**
+     * Open the state system(s) backing this analysis for the given project. The
+     * returned [Histories] lists the builders that still need to be run, if the
+     * history files did not exist yet.
+     */
+    internal fun openStateSystems(project: TraceProject<*, *>): Histories {
+        val traces = filterTraces(project).traces
+        if (buildPerTrace && traces.size > 1) return openPerTraceHistories(project, traces)
+        if (buildTimeSliced && traces.isNotEmpty() && trackedState() == null) return openTimeSlicedHistories(project, traces)
+
+        /*
+         * The history covers the whole traces, even if the events that are
+         * filtered out by [eventNameFilter] are the last ones.
+         */
+        val endTime = traces.map { it.endTime }.max() ?: project.startTime
+        val (ss, newFile) = openHistory(project, "", project.startTime)
+        val builders = if (newFile) listOf(Builder(project, ss, traces, minimumEndTime = endTime)) else emptyList()
+        return Histories(listOf(ss), builders, ::CompositeStateSystem)
+    }
+
+    /**
+     * Open the existing state system(s) of this analysis for the given
+     * project, without creating any history file.
+     *
+     * @return The state system, or null if its history files are not all
+     *         present and valid
+     */
+    internal fun openExistingStateSystems(project: TraceProject<*, *>): IStateSystemReader? {
+        val traces = filterTraces(project).traces
+        var combine: (String, List<IStateSystemReader>) -> IStateSystemReader = ::CompositeStateSystem
+        val suffixes = when {
+            buildPerTrace && traces.size > 1 -> traces.indices.map { ".$it" }
+            buildTimeSliced && traces.isNotEmpty() && trackedState() == null -> {
+                combine = ::TimeSlicedStateSystem
+                generateSequence(0) { it + 1 }
+                        .map { sliceSuffix(it) }
+                        .takeWhile { Files.exists(historyFile(project, it)) }
+                        .toList()
+            }
+            else -> listOf("")
+        }
+        if (suffixes.isEmpty()) return null
+
+        val stateSystems = mutableListOf<IStateSystemWriter>()
+        for (suffix in suffixes) {
+            val ss = openExistingHistory(project, suffix)
+            if (ss == null) {
+                stateSystems.forEach { it.dispose() }
+                return null
+            }
+            stateSystems.add(ss)
+        }
+        return Histories(stateSystems, emptyList(), combine).reader()
+    }
+
+    private fun openPerTraceHistories(project: TraceProject<*, *>, traces: Collection<Trace<*>>): Histories {
+        /* All per-trace histories end at the same time, so that their combination covers the whole range. */
+        val endTime = traces.map { it.endTime }.max()!!
+        val histories = traces.mapIndexed { index, trace -> trace to openHistory(project, ".$index", project.startTime) }
+        val builders = histories
+                .filter { (_, history) -> history.second }
+                .map { (trace, history) -> Builder(project, history.first, listOf(trace), independent = true, minimumEndTime = endTime) }
+        return Histories(histories.map { it.second.first }, builders, ::CompositeStateSystem)
+    }
+
+    private fun openTimeSlicedHistories(project: TraceProject<*, *>, traces: Collection<Trace<*>>): Histories {
+        /* Re-use the slices from a previous build, if they are all valid */
+        val nbExisting = generateSequence(0) { it + 1 }
+                .takeWhile { Files.exists(historyFile(project, sliceSuffix(it))) }
+                .count()
+        if (nbExisting > 0) {
+            val existing = (0 until nbExisting).map { openExistingHistory(project, sliceSuffix(it)) }
+            if (existing.all { it != null }) return Histories(existing.filterNotNull(), emptyList(), ::TimeSlicedStateSystem)
+            existing.forEach { it?.dispose() }
+        }
+
+        val startTime = project.startTime
+        val endTime = traces.map { it.endTime }.max()!!
+        val nbSlices = Runtime.getRuntime().availableProcessors()
+        val sliceStarts = (1 until nbSlices)
+                .map { startTime + it * (endTime - startTime) / nbSlices }
+                .filter { it > startTime }
+                .distinct()
+                .let { listOf(startTime) + it }
+
+        /* Remove the slices of a previous build that had more of them */
+        generateSequence(sliceStarts.size) { it + 1 }
+                .map { historyFile(project, sliceSuffix(it)) }
+                .takeWhile { Files.exists(it) }
+                .forEach { Files.delete(it) }
+
+        val stateSystems = sliceStarts.mapIndexed { index, sliceStart ->
+            openHistory(project, sliceSuffix(index), sliceStart, forceNewFile = true).first
+        }
+
+        /*
+         * The first slice can be built right away. The other ones need the
+         * state at their start time, which is computed by a first pass over
+         * the events up to the last slice start, that does not store any
+         * history. See [reconstructState].
+         */
+        val firstSlice = Builder(project, stateSystems[0], traces, independent = true,
+                rangeEnd = sliceStarts.getOrNull(1), minimumEndTime = endTime)
+        if (sliceStarts.size == 1) return Histories(stateSystems, listOf(firstSlice), ::TimeSlicedStateSystem)
+
+        val statedumps = StatedumpBuilder(project, traces, sliceStarts.drop(1)) { dumps ->
+            dumps.mapIndexed { index, dump ->
+                val sliceIndex = index + 1
+                Builder(project, stateSystems[sliceIndex], traces, independent = true,
+                        rangeStart = sliceStarts[sliceIndex], rangeEnd = sliceStarts.getOrNull(sliceIndex + 1),
+                        minimumEndTime = endTime, initialState = dump)
+            }
+        }
+        return Histories(stateSystems, listOf(firstSlice, statedumps), ::TimeSlicedStateSystem)
+    }
+
+    /**
+     * Open a history covering only the given range of the project. A history
+     * previously built for a range containing it will be re-used. Otherwise a
+     * new one is built, also covering the ranges of the existing histories it
+     * overlaps, which it supersedes.
+     *
+     * The histories of superseded ranges are only deleted once all the state
+     * systems opened on them have been disposed.
+     */
+    internal fun openRangeHistories(project: TraceProject<*, *>, requestedRange: TimeRange): Histories {
+        val range = requestedRange.intersection(project.fullRange)
+                ?: throw IllegalArgumentException("Range $requestedRange is outside of the project's range ${project.fullRange}")
+        val existingRanges = deleteUnusedRanges(rangeHistoryFiles(project))
+
+        /* Prefer the largest ranges, so that the ranges they supersede stop being used. */
+        existingRanges.keys
+                .filter { range.startTime >= it.startTime && range.endTime <= it.endTime }
+                .sortedByDescending { it.duration }
+                .forEach {
+                    val ss = openExistingHistory(project, rangeSuffix(it))
+                    if (ss != null) return Histories(listOf(trackRangeStateSystem(existingRanges.getValue(it), ss)), emptyList(), ::CompositeStateSystem)
                 }
-            } else {
-                StateHistoryBackendFactory.createHistoryTreeBackendNewFile(analysisClassName, stateSystemFile.toFile(), providerVersion, project.startTime)
+
+        val overlapping = existingRanges.keys.filter { it.intersects(range) }
+        val buildRange = TimeRange.of(overlapping.map { it.startTime }.plus(range.startTime).min()!!,
+                overlapping.map { it.endTime }.plus(range.endTime).max()!!)
+
+        val ss = openHistory(project, rangeSuffix(buildRange), buildRange.startTime, forceNewFile = true).first
+        trackRangeStateSystem(historyFile(project, rangeSuffix(buildRange)), ss)
+        val lookbehindStart = maxOf(project.startTime, buildRange.startTime - rangeLookbehind)
+        val builder = RangeBuilder(project, ss, filterTraces(project).traces, buildRange, lookbehindStart)
+        return Histories(listOf(ss), listOf(builder), ::CompositeStateSystem)
+    }
+
+    private fun trackRangeStateSystem(file: Path, ss: IStateSystemWriter): IStateSystemWriter {
+        rangeStateSystems.compute(file) { _, list -> (list ?: mutableListOf()).apply { add(ss) } }
+        return ss
+    }
+
+    /**
+     * Delete the histories of the ranges contained in other ranges, which are
+     * not used anymore. Files that cannot be deleted are left for a later
+     * attempt.
+     *
+     * @return The remaining ranges
+     */
+    private fun deleteUnusedRanges(ranges: Map<TimeRange, Path>): Map<TimeRange, Path> {
+        val superseded = ranges.filter { (range, _) ->
+            ranges.keys.any { it != range && range.startTime >= it.startTime && range.endTime <= it.endTime }
+        }
+        val deleted = superseded.filterValues { file ->
+            val inUse = rangeStateSystems.computeIfPresent(file) { _, list ->
+                list.removeAll { it.isDisposed }
+                if (list.isEmpty()) null else list
+            } != null
+            !inUse && try {
+                Files.deleteIfExists(file)
+                true
+            } catch (e: IOException) {
+                false
             }
+        }
+        return ranges - deleted.keys
+    }
+
+    /** Find the histories built for partial ranges, per range */
+    private fun rangeHistoryFiles(project: TraceProject<*, *>): Map<TimeRange, Path> {
+        val analysesDirectory = project.directory.resolve(ANALYSES_DIRECTORY)
+        if (!Files.isDirectory(analysesDirectory)) return emptyMap()
+
+        val prefix = javaClass.toString() + RANGE_FILE_INFIX
+        return Files.newDirectoryStream(analysesDirectory).use { paths ->
+            paths.map { it to it.fileName.toString() }
+                    .filter { (_, name) -> name.startsWith(prefix) && name.endsWith(HISTORY_FILE_EXTENSION) }
+                    .mapNotNull { (path, name) ->
+                        val bounds = name.removePrefix(prefix).removeSuffix(HISTORY_FILE_EXTENSION).split('-')
+                        val start = bounds.getOrNull(0)?.toLongOrNull()
+                        val end = bounds.getOrNull(1)?.toLongOrNull()
+                        if (bounds.size != 2 || start == null || end == null || end < start) null else TimeRange.of(start, end) to path
+                    }
+                    .toMap()
+        }
+    }
+
+    private fun rangeSuffix(range: TimeRange) = "$RANGE_FILE_INFIX${range.startTime}-${range.endTime}"
+
+    private fun historyFile(project: TraceProject<*, *>, suffix: String): Path =
+            project.directory.resolve(ANALYSES_DIRECTORY).resolve(javaClass.toString() + suffix + HISTORY_FILE_EXTENSION)
+
+    private fun sliceSuffix(sliceIndex: Int) = ".slice$sliceIndex"
+
+    private fun openHistory(project: TraceProject<*, *>,
+                            suffix: String,
+                            startTime: Long,
+                            forceNewFile: Boolean = false): Pair<IStateSystemWriter, Boolean> {
+        if (!forceNewFile) {
+            /* The expected provider version may not match what we have on disk. If so, build the file from scratch instead */
+            openExistingHistory(project, suffix)?.let { return Pair(it, false) }
+        }
+
+        val analysesDirectory = project.directory.resolve(ANALYSES_DIRECTORY)
+        if (!Files.exists(analysesDirectory)) Files.createDirectory(analysesDirectory)
+
+        val htBackend = StateHistoryBackendFactory.createHistoryTreeBackendNewFile(javaClass.toString(),
+                historyFile(project, suffix).toFile(), providerVersion, startTime)
+        return Pair(StateSystemFactory.newStateSystem(htBackend, true), true)
+    }
+
+    /**
+     * Open an existing history file of this analysis.
+     *
+     * @return The state system, or null if the file does not exist or cannot
+     *         be used
+     */
+    private fun openExistingHistory(project: TraceProject<*, *>, suffix: String): IStateSystemWriter? {
+        val stateSystemFile = historyFile(project, suffix)
+        if (!Files.exists(stateSystemFile)) return null
+
+        val htBackend = try {
+            StateHistoryBackendFactory.createHistoryTreeBackendExistingFile(javaClass.toString(), stateSystemFile.toFile(), providerVersion)
+        } catch (e: IOException) {
+            return null
+        }
+        return StateSystemFactory.newStateSystem(htBackend, false)
+    }
 
-            val ss = StateSystemFactory.newStateSystem(htBackend, newFile)
-            /* If there was a history file already built, it should be good to go. If not, build it */
-            if (newFile) buildForProject(project, ss)
-            ss
-        }
-        task.run()
-        return task.get()
-    }
-
-    private fun buildForProject(project: TraceProject<*, *>, stateSystem: IStateSystemWriter) {
-        val traces = filterTraces(project)
-        val trackedState = trackedState()
-        // TODO This iteration could eventually move to a central location, so that the events are
-        // read once then dispatched to several "state providers".
-        // However some analyses may not need all events from all traces in a project. We'll see...
-        var latestTimestamp = project.startTime
-        traces.iterator().use {
-            while (it.hasNext()) {
-                val event = it.next()
-                handleEvent(stateSystem, event, trackedState)
-                latestTimestamp = event.timestamp
+    /**
+     * The state systems backing one execution of this analysis, and the builders
+     * that need to be run before they can be queried.
+     */
+    internal inner class Histories(private val stateSystems: List<IStateSystemWriter>,
+                                   val builders: List<Builder>,
+                                   private val combine: (String, List<IStateSystemReader>) -> IStateSystemReader) {
+
+        /** Obtain the reader for these histories, once they are built. */
+        fun reader(): IStateSystemReader =
+                stateSystems.singleOrNull() ?: combine(this@StateSystemAnalysis.javaClass.toString(), stateSystems)
+
+        fun dispose() = stateSystems.forEach { it.dispose() }
+    }
+
+    /**
+     * Build state for one state system of this analysis. The events to handle
+     * are supplied by the caller, which allows a single read of the project to
+     * feed several analyses.
+     *
+     * An [independent] builder can be run concurrently with the other builders,
+     * reading its traces on its own. A builder only handles the events between
+     * [rangeStart] (inclusive) and [rangeEnd] (exclusive), when they are set.
+     */
+    internal open inner class Builder(project: TraceProject<*, *>,
+                                      val stateSystem: IStateSystemWriter,
+                                      /** The traces whose events this analysis wants to receive */
+                                      val traces: Collection<Trace<*>>,
+                                      val independent: Boolean = false,
+                                      val rangeStart: Long? = null,
+                                      val rangeEnd: Long? = null,
+                                      private val minimumEndTime: Long = project.startTime,
+                                      initialState: Statedump? = null) {
+
+        val analysis = this@StateSystemAnalysis
+
+        protected val trackedState = trackedState()
+        private var latestTimestamp = rangeStart ?: project.startTime
+
+        init {
+            initialState?.restoreInto(stateSystem, latestTimestamp)
+        }
+
+        fun accepts(timestamp: Long) =
+                (rangeStart == null || timestamp >= rangeStart) && (rangeEnd == null || timestamp < rangeEnd)
+
+        /** The events of the given trace this builder wants, see [StateSystemAnalysis.eventNameFilter] */
+        open fun eventNameFilter(trace: Trace<*>) = analysis.eventNameFilter(trace)
+
+        open fun handle(event: TraceEvent) {
+            handleEvent(stateSystem, event, trackedState)
+            latestTimestamp = event.timestamp
+        }
+
+        /**
+         * Complete the history once all events were handled.
+         *
+         * @return The builders that need to be run next, if any
+         */
+        open fun finish(): List<Builder> {
+            val endTime = if (rangeEnd != null) rangeEnd - 1 else maxOf(latestTimestamp, minimumEndTime)
+            stateSystem.closeHistory(endTime)
+            return emptyList()
+        }
+    }
+
+    /**
+     * Builder that reconstructs the state of the analysis without storing any
+     * history, only to take a [Statedump] of it at each of the given
+     * timestamps. It stops at the last timestamp.
+     */
+    private inner class StatedumpBuilder(project: TraceProject<*, *>,
+                                         traces: Collection<Trace<*>>,
+                                         private val timestamps: List<Long>,
+                                         private val nextBuilders: (List<Statedump>) -> List<Builder>) :
+            Builder(project, newNullStateSystem(), traces, rangeEnd = timestamps.last()) {
+
+        private val statedumps = mutableListOf<Statedump>()
+
+        override fun eventNameFilter(trace: Trace<*>) = reconstructionEventNameFilter(trace)
+
+        override fun handle(event: TraceEvent) {
+            /* The statedump is taken before handling the first event at or after the timestamp. */
+            while (statedumps.size < timestamps.size && event.timestamp >= timestamps[statedumps.size]) {
+                statedumps.add(takeStatedump(stateSystem))
+            }
+            reconstructState(stateSystem, event)
+        }
+
+        override fun finish(): List<Builder> {
+            while (statedumps.size < timestamps.size) statedumps.add(takeStatedump(stateSystem))
+            stateSystem.dispose()
+            return nextBuilders(statedumps)
+        }
+    }
+
+    /**
+     * Builder for the history of a partial range. The events of the lookbehind
+     * period preceding the range are handled without storing any history, and
+     * the resulting state is used as the initial state of the range.
+     */
+    private inner class RangeBuilder(project: TraceProject<*, *>,
+                                     stateSystem: IStateSystemWriter,
+                                     traces: Collection<Trace<*>>,
+                                     private val range: TimeRange,
+                                     lookbehindStart: Long) :
+            Builder(project, stateSystem, traces, rangeStart = lookbehindStart, rangeEnd = range.endTime + 1) {
+
+        private var lookbehindStateSystem: IStateSystemWriter? =
+                if (lookbehindStart < range.startTime) newNullStateSystem() else null
+
+        override fun handle(event: TraceEvent) {
+            val lookbehindSS = lookbehindStateSystem
+            if (lookbehindSS != null) {
+                if (event.timestamp < range.startTime) {
+                    handleEvent(lookbehindSS, event, trackedState)
+                    return
+                }
+                endLookbehind(lookbehindSS)
             }
+            super.handle(event)
+        }
+
+        override fun finish(): List<Builder> {
+            lookbehindStateSystem?.let { endLookbehind(it) }
+            return super.finish()
+        }
+
+        private fun endLookbehind(lookbehindSS: IStateSystemWriter) {
+            takeStatedump(lookbehindSS).restoreInto(stateSystem, range.startTime)
+            lookbehindSS.dispose()
+            lookbehindStateSystem = null
         }
-        stateSystem.closeHistory(latestTimestamp)
+    }
+
+    /** State system that does not store any history, only its current state */
+    private fun newNullStateSystem() =
+            StateSystemFactory.newStateSystem(StateHistoryBackendFactory.createNullBackend(javaClass.toString()))
+
+    private fun takeStatedump(ss: IStateSystemWriter): Statedump {
+        val quarks = 0 until ss.nbAttributes
+        return Statedump(quarks.map { ss.getFullAttributePathArray(it) },
+                quarks.map { ss.queryOngoingState(it) },
+                providerVersion)
     }
 
     protected abstract val providerVersion: Int
@@ -93,6 +454,83 @@ abstract class StateSystemAnalysis : IAnalysis {
      */
     protected open fun trackedState(): Array<Any>? = null
 
+    /**
+     * Override this to build one separate history per trace returned by
+     * [filterTraces], in parallel, instead of one history for all of them.
+     * Queries will then be served by a [CompositeStateSystem] combining the
+     * per-trace histories.
+     *
+     * This should only be used if the handling of the events of one trace does
+     * not depend on the state generated by the other traces.
+     */
+    protected open val buildPerTrace = false
+
+    /**
+     * Override this to build the history in several time slices, in parallel.
+     * A first pass over the events, which does not store any history, takes a
+     * [Statedump] at the start of each slice, from which each slice then gets
+     * built concurrently. Queries will then be served by a
+     * [TimeSlicedStateSystem].
+     *
+     * The state of the analysis must be entirely contained in its state system
+     * for this to work, so this is ignored if [trackedState] is used.
+     *
+     * The slices after the first one can only start once the first pass
+     * reaches them, so this only pays off if that pass is much cheaper than
+     * building the history. Running [handleEvent] on every event up to the
+     * last slice costs almost as much as a serial build, so analyses should
+     * only enable this if they also override [reconstructState] or
+     * [reconstructionEventNameFilter] to skip most of that work.
+     */
+    protected open val buildTimeSliced = false
+
+    /**
+     * When executing on a partial range, the duration before the start of the
+     * range whose events are handled to obtain the initial state of the range.
+     * States that do not change during that period will be missing.
+     */
+    protected open val rangeLookbehind = DEFAULT_RANGE_LOOKBEHIND
+
+    /**
+     * Override this to only receive the events of the given trace whose name
+     * is accepted by the returned filter. The other events may then be skipped
+     * by the trace reader without being decoded, which can make a big
+     * difference for analyses that only look at a few types of events.
+     *
+     * Events that are not accepted can still be received, if another analysis
+     * built in the same pass wants them.
+     *
+     * @return The event name filter, or null to receive all events
+     */
+    protected open fun eventNameFilter(trace: Trace<*>): ((String) -> Boolean)? = null
+
+    /**
+     * Handle one event of the traces. Events are read through a
+     * [com.efficios.jabberwocky.trace.TraceCursor], so the event object is only
+     * valid for the duration of this call and must not be kept.
+     */
     protected abstract fun handleEvent(ss: IStateSystemWriter, event: TraceEvent, trackedState: Array<Any>?)
 
+    /**
+     * Handle one event in the first pass of a time-sliced build, see
+     * [buildTimeSliced]. That pass only needs the state at the start of each
+     * slice, not its history, so analyses can override this to skip the work
+     * that does not affect the ongoing state, like intermediate state changes
+     * that are overwritten right away.
+     *
+     * By default, this is the same as [handleEvent].
+     */
+    protected open fun reconstructState(ss: IStateSystemWriter, event: TraceEvent) {
+        handleEvent(ss, event, null)
+    }
+
+    /**
+     * The events of the given trace needed by [reconstructState]. Analyses
+     * can override this if some events only matter to their history, and not
+     * to their ongoing state.
+     *
+     * By default, this is the same as [eventNameFilter].
+     */
+    protected open fun reconstructionEventNameFilter(trace: Trace<*>): ((String) -> Boolean)? = eventNameFilter(trace)
+
 }
\ No newline at end of file
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.efficios.jabberwocky.analysis.statesystem
+
+import ca.polymtl.dorsal.libdelorean.IStateSystemReader
+import com.efficios.jabberwocky.common.TimeRange
+import com.efficios.jabberwocky.project.TraceProject
+import com.efficios.jabberwocky.task.JabberwockyTask
+import com.efficios.jabberwocky.trace.SortedCompoundTraceCursor
+import com.efficios.jabberwocky.trace.Trace
+import java.nio.file.Path
+import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+
+/**
+ * Central location where state system analyses get built.
+ *
+ * Reading and decoding trace events is usually the most expensive part of
+ * building a state system. Instead of having each analysis iterate over the
+ * whole project on its own, the pipeline reads the events of the project once
+ * and dispatches each of them to every analysis whose
+ * [StateSystemAnalysis.filterTraces] includes the event's trace.
+ *
+ * Analyses that build one history per trace, or one history per time slice,
+ * have their events read in separate threads, so that these histories are
+ * built in parallel.
+ *
+ * Analyses that are registered with [registerAnalysis] will be built
+ * opportunistically, alongside any analysis that gets executed on a project
+ * for which they also need to be built.
+ *
+ * Executions on the same project are serialized, since they may create the
+ * same history files. Executions on different projects run concurrently.
+ */
+object StateSystemAnalysisPipeline {
+
+    /** Registered analyses, at most one per analysis class */
+    private val registeredAnalyses = ConcurrentHashMap<Class<out StateSystemAnalysis>, StateSystemAnalysis>()
+
+    /**
+     * Locks of the projects, per project directory. Entries only exist while
+     * an execution holds or waits for them, so the map does not grow with
+     * every project ever opened.
+     */
+    private val projectLocks = ConcurrentHashMap<Path, ProjectLock>()
+
+    /** Lock of a project, with the number of executions using it */
+    private class ProjectLock {
+        var users = 0
+    }
+
+    /**
+     * Register an analysis that should be built in the same pass as other
+     * analyses, whenever the project it applies to gets read. Only one
+     * analysis of a given class is registered, registering another instance
+     * of the same class has no effect.
+     */
+    fun registerAnalysis(analysis: StateSystemAnalysis) {
+        registeredAnalyses.putIfAbsent(analysis.javaClass, analysis)
+    }
+
+    /**
+     * Stop building an analysis alongside the others. This deregisters the
+     * analysis of the same class as the given one.
+     */
+    fun deregisterAnalysis(analysis: StateSystemAnalysis) {
+        registeredAnalyses.remove(analysis.javaClass)
+    }
+
+    /**
+     * Run the given block while holding the lock of the project. The counts
+     * are only updated inside [ConcurrentHashMap.compute], so an entry is
+     * removed once the last execution using it is done, and never while
+     * another one waits for it.
+     */
+    private inline fun <T> withProjectLock(project: TraceProject<*, *>, block: () -> T): T {
+        val key = project.directory.toAbsolutePath().normalize()
+        val lock = projectLocks.compute(key) { _, lock -> (lock ?: ProjectLock()).apply { users++ } }!!
+        try {
+            return synchronized(lock, block)
+        } finally {
+            projectLocks.computeIfPresent(key) { _, l -> if (--l.users == 0) null else l }
+        }
+    }
+
+    /**
+     * Obtain the state systems of the given analyses on the given project,
+     * building all the ones that do not exist yet in a single pass over the
+     * trace events.
+     *
+     * Registered analyses that apply to the project and need to be built will
+     * be built at the same time, but their state systems are only kept on disk.
+     *
+     * @param project
+     *            The project on which to run the analyses
+     * @param analyses
+     *            The analyses whose state systems should be returned
+     * @return The state systems, per analysis
+     */
+    fun execute(project: TraceProject<*, *>,
+                analyses: Collection<StateSystemAnalysis>): Map<StateSystemAnalysis, IStateSystemReader> {
+        withProjectLock(project) {
+            val histories = analyses.distinct().associate { it to it.openStateSystems(project) }
+            val builders = histories.values.flatMap { it.builders }.toMutableList()
+
+            /* If nothing needs to be built, no need to look at other analyses. */
+            if (builders.isNotEmpty()) {
+                val requestedClasses = analyses.map { it.javaClass }.toSet()
+                val otherHistories = registeredAnalyses.values
+                        .filter { it.javaClass !in requestedClasses }
+                        .filter { it.appliesTo(project) && it.canExecute(project) }
+                        .map { it.openStateSystems(project) }
+                otherHistories.forEach { builders.addAll(it.builders) }
+
+                val title = builders.map { it.analysis }.distinct().singleOrNull()
+                        ?.let { "Processing states for analysis ${it.javaClass.simpleName}" }
+                        ?: "Processing states for ${builders.map { it.analysis }.distinct().size} analyses"
+
+                /* Wrap this in an in-band JabberwockyTask so that progress can be reported. */
+                val task = JabberwockyTask<Unit>(title) { buildAll(builders) }
+                task.run()
+                task.get()
+
+                /* The state systems of the analyses that were not requested will only be kept on disk. */
+                otherHistories.forEach { it.dispose() }
+            }
+
+            return histories.mapValues { it.value.reader() }
+        }
+    }
+
+    /**
+     * Obtain a state system of the given analysis covering at least the given
+     * range of the project. If the history of the whole project is not
+     * available, only the history of that range will be built.
+     *
+     * @param project
+     *            The project on which to run the analysis
+     * @param analysis
+     *            The analysis to run
+     * @param range
+     *            The time range of interest
+     * @return The state system
+     */
+    fun execute(project: TraceProject<*, *>, analysis: StateSystemAnalysis, range: TimeRange): IStateSystemReader {
+        withProjectLock(project) {
+            /* The history of the whole project covers any range. Only use it if it was already built. */
+            analysis.openExistingStateSystems(project)?.let { return it }
+
+            val histories = analysis.openRangeHistories(project, range)
+            if (histories.builders.isNotEmpty()) {
+                val task = JabberwockyTask<Unit>("Processing states for analysis ${analysis.javaClass.simpleName} on range $range") {
+                    buildAll(histories.builders)
+                }
+                task.run()
+                task.get()
+            }
+            return histories.reader()
+        }
+    }
+
+    private fun buildAll(initialBuilders: List<StateSystemAnalysis.Builder>) {
+        /* Finishing some builders can produce other builders, to be run in a second phase. */
+        var builders = initialBuilders
+        while (builders.isNotEmpty()) {
+            runBuilders(builders)
+            builders = builders.flatMap { it.finish() }
+        }
+    }
+
+    private fun runBuilders(builders: List<StateSystemAnalysis.Builder>) {
+        /*
+         * Independent builders can run in their own thread, sharing their
+         * iteration only with builders that want the same events. The others
+         * all receive their events from one common iteration.
+         */
+        val (independentBuilders, sharedBuilders) = builders.partition { it.independent }
+        val jobs = independentBuilders
+                .groupBy { Pair(it.traces.toSet(), it.rangeStart) }.values
+                .map { jobBuilders -> { dispatchEvents(jobBuilders) } }
+                .toMutableList()
+        if (sharedBuilders.isNotEmpty()) jobs.add { dispatchEvents(sharedBuilders) }
+
+        if (jobs.size == 1) {
+            jobs.single().invoke()
+        } else {
+            val executor = Executors.newFixedThreadPool(minOf(jobs.size, Runtime.getRuntime().availableProcessors()))
+            try {
+                jobs.map { job -> executor.submit(Callable { job() }) }
+                        .forEach {
+                            try {
+                                it.get()
+                            } catch (e: ExecutionException) {
+                                throw e.cause ?: e
+                            }
+                        }
+            } finally {
+                executor.shutdownNow()
+            }
+        }
+    }
+
+    private fun dispatchEvents(builders: List<StateSystemAnalysis.Builder>) {
+        /* Map each trace to the builders that are interested in its events. */
+        val dispatch = IdentityHashMap<Trace<*>, MutableList<StateSystemAnalysis.Builder>>()
+        builders.forEach { builder ->
+            builder.traces.forEach { trace -> dispatch.getOrPut(trace) { mutableListOf() }.add(builder) }
+        }
+
+        /* Only read the events that at least one builder wants */
+        val start = if (builders.any { it.rangeStart == null }) null else builders.map { it.rangeStart!! }.min()
+        val end = if (builders.any { it.rangeEnd == null }) null else builders.map { it.rangeEnd!! }.max()
+
+        /*
+         * Builders do not keep the events, so they can be read through a cursor.
+         * Each trace only needs the events wanted by at least one of its builders.
+         */
+        val cursors = dispatch.map { (trace, traceBuilders) ->
+            val filters = traceBuilders.map { it.eventNameFilter(trace) }
+            if (filters.any { it == null }) {
+                trace.cursor()
+            } else {
+                val nonNullFilters = filters.filterNotNull()
+                trace.cursor { eventName -> nonNullFilters.any { it(eventName) } }
+            }
+        }
+        SortedCompoundTraceCursor(cursors).use {
+            if (start != null) it.seek(start)
+            while (it.advance()) {
+                val event = it.event
+                val timestamp = event.timestamp
+                if (end != null && timestamp >= end) break
+                dispatch[event.trace]?.forEach { builder -> if (builder.accepts(timestamp)) builder.handle(event) }
+            }
+        }
+    }
+}
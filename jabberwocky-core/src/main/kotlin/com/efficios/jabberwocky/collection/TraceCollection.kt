@@ -9,7 +9,9 @@
 
 package com.efficios.jabberwocky.collection
 
+import com.efficios.jabberwocky.trace.SortedCompoundTraceCursor
 import com.efficios.jabberwocky.trace.Trace
+import com.efficios.jabberwocky.trace.TraceCursor
 import com.efficios.jabberwocky.trace.event.TraceEvent
 
 class TraceCollection<out E : TraceEvent, out T : Trace<E>>(val traces: Collection<T>) {
@@ -18,4 +20,11 @@ class TraceCollection<out E : TraceEvent, out T : Trace<E>>(val traces: Collecti
         return BaseTraceCollectionIterator(this)
     }
 
+    /** Get a cursor over the events of all the traces, see [TraceCursor]. */
+    fun cursor(): TraceCursor<TraceEvent> = SortedCompoundTraceCursor(traces.map { it.cursor() })
+
+    /** Get a cursor over the events of all the traces whose name is accepted by the filter. */
+    fun cursor(eventNameFilter: (String) -> Boolean): TraceCursor<TraceEvent> =
+            SortedCompoundTraceCursor(traces.map { it.cursor(eventNameFilter) })
+
 }
\ No newline at end of file
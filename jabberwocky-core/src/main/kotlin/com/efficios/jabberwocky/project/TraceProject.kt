@@ -11,7 +11,9 @@ package com.efficios.jabberwocky.project
 
 import com.efficios.jabberwocky.collection.TraceCollection
 import com.efficios.jabberwocky.common.TimeRange
+import com.efficios.jabberwocky.trace.SortedCompoundTraceCursor
 import com.efficios.jabberwocky.trace.Trace
+import com.efficios.jabberwocky.trace.TraceCursor
 import com.efficios.jabberwocky.trace.event.TraceEvent
 import java.nio.file.Files
 import java.nio.file.Path
@@ -37,6 +39,14 @@ class TraceProject<out E : TraceEvent, out T : Trace<E>> (val name: String,
         return BaseTraceProjectIterator(this)
     }
 
+    /** Get a cursor over the events of all the traces of the project, see [TraceCursor]. */
+    fun cursor(): TraceCursor<TraceEvent> =
+            SortedCompoundTraceCursor(traceCollections.flatMap { it.traces }.map { it.cursor() })
+
+    /** Get a cursor over the events of the project whose name is accepted by the filter. */
+    fun cursor(eventNameFilter: (String) -> Boolean): TraceCursor<TraceEvent> =
+            SortedCompoundTraceCursor(traceCollections.flatMap { it.traces }.map { it.cursor(eventNameFilter) })
+
     /* The project's start time is the earliest of all its traces's start times */
     val startTime: Long = traceCollections
                 .flatMap { collection -> collection.traces }
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.efficios.jabberwocky.trace
+
+import com.efficios.jabberwocky.trace.event.TraceEvent
+
+/**
+ * Cursor only returning the events of another cursor whose name is accepted by
+ * the filter, for traces which cannot skip events while reading them.
+ */
+internal class FilteredTraceCursor<out E : TraceEvent>(private val cursor: TraceCursor<E>,
+                                                       private val eventNameFilter: (String) -> Boolean) : TraceCursor<E> {
+
+    override val event: E
+        get() = cursor.event
+
+    override fun advance(): Boolean {
+        while (cursor.advance()) {
+            if (eventNameFilter(cursor.event.eventName)) return true
+        }
+        return false
+    }
+
+    override fun seek(timestamp: Long) = cursor.seek(timestamp)
+
+    override fun close() = cursor.close()
+}
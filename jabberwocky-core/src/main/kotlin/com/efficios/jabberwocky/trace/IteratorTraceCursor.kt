@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.efficios.jabberwocky.trace
+
+import com.efficios.jabberwocky.trace.event.TraceEvent
+
+/**
+ * Cursor returning the events of a [TraceIterator], for traces which do not
+ * provide a more efficient one.
+ */
+internal class IteratorTraceCursor<out E : TraceEvent>(private val iterator: TraceIterator<E>) : TraceCursor<E> {
+
+    private var current: E? = null
+
+    override val event: E
+        get() = current ?: throw NoSuchElementException()
+
+    override fun advance(): Boolean {
+        current = if (iterator.hasNext()) iterator.next() else null
+        return (current != null)
+    }
+
+    override fun seek(timestamp: Long) {
+        current = null
+        iterator.seek(timestamp)
+    }
+
+    override fun close() {
+        current = null
+        iterator.close()
+    }
+}
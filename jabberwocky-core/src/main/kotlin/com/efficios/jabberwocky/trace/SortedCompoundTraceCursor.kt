@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.efficios.jabberwocky.trace
+
+import com.efficios.jabberwocky.trace.event.TraceEvent
+import com.efficios.jabberwocky.utils.LongLoserTree
+
+/**
+ * Cursor merging the events of several cursors in timestamp order.
+ *
+ * The cursors are ordered by a [LongLoserTree] keyed on the timestamp of their
+ * current event, so each step only compares timestamps along one path of the
+ * tree. Only the cursor whose event was last returned gets advanced, the
+ * current events of the other ones stay valid.
+ */
+internal class SortedCompoundTraceCursor<out E : TraceEvent>(cursors: Collection<TraceCursor<E>>) : TraceCursor<E> {
+
+    private val cursors = cursors.toList()
+    private val tree = LongLoserTree(this.cursors.size)
+
+    /** Leaf of the cursor whose event is the current one, [LongLoserTree.NONE] if there is none. */
+    private var current = LongLoserTree.NONE
+    private var started = false
+
+    override val event: E
+        get() {
+            if (current == LongLoserTree.NONE) throw NoSuchElementException()
+            return cursors[current].event
+        }
+
+    override fun advance(): Boolean {
+        if (!started) {
+            cursors.forEachIndexed { i, cursor ->
+                if (cursor.advance()) tree.setKey(i, cursor.event.timestamp) else tree.setEmpty(i)
+            }
+            tree.rebuild()
+            started = true
+        } else if (current != LongLoserTree.NONE) {
+            val cursor = cursors[current]
+            if (cursor.advance()) tree.update(current, cursor.event.timestamp) else tree.remove(current)
+        }
+        current = tree.winner
+        return (current != LongLoserTree.NONE)
+    }
+
+    override fun seek(timestamp: Long) {
+        cursors.forEach { it.seek(timestamp) }
+        tree.clear()
+        current = LongLoserTree.NONE
+        started = false
+    }
+
+    override fun close() {
+        tree.clear()
+        current = LongLoserTree.NONE
+        cursors.forEach { it.close() }
+    }
+}
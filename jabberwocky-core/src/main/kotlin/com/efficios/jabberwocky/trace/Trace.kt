@@ -7,8 +7,12 @@ abstract class Trace<out E : TraceEvent> {
 
     abstract val name: String
 
-    /* Lazy-load the start time by reading the timestamp of the first event. */
-    val startTime: Long by lazy {
+    /*
+     * Lazy-load the start and end times by reading the timestamps of the first
+     * and last events. Traces that can find these events without reading the
+     * whole trace should override these.
+     */
+    open val startTime: Long by lazy {
         var startTime: Long = 0L
         iterator().use { iter ->
             if (iter.hasNext()) {
@@ -18,7 +22,7 @@ abstract class Trace<out E : TraceEvent> {
         startTime
     }
 
-    val endTime: Long by lazy {
+    open val endTime: Long by lazy {
         var endTime: Long = 0L
         iterator().use {
             if (it.hasNext()) {
@@ -29,4 +33,18 @@ abstract class Trace<out E : TraceEvent> {
     }
 
     abstract fun iterator(): TraceIterator<E>
+
+    /**
+     * Get a cursor over the events of this trace. Traces can override this to
+     * re-use the same event object for all their events, see [TraceCursor].
+     */
+    open fun cursor(): TraceCursor<TraceEvent> = IteratorTraceCursor(iterator())
+
+    /**
+     * Get a cursor over the events of this trace whose name is accepted by the
+     * given filter. Traces that know the name of an event before decoding it
+     * can override this to skip the other events cheaply.
+     */
+    open fun cursor(eventNameFilter: (String) -> Boolean): TraceCursor<TraceEvent> =
+            FilteredTraceCursor(cursor(), eventNameFilter)
 }
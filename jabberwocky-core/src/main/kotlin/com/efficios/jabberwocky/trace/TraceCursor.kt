@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.efficios.jabberwocky.trace
+
+import com.efficios.jabberwocky.trace.event.TraceEvent
+
+/**
+ * Forward-only cursor over events, for consumers that look at each event once
+ * and do not keep it, like analyses building their state.
+ *
+ * Contrary to a [TraceIterator], a cursor does not have to create a new event
+ * object for every event. Implementations may re-use the same object for all
+ * the events of a trace, so [event] is only valid until the next call to
+ * [advance] or [seek]. Values that need to be kept must be copied out of it.
+ *
+ * A new cursor is positioned before the first event, [advance] has to be
+ * called to read it.
+ */
+interface TraceCursor<out E : TraceEvent> : AutoCloseable {
+
+    /**
+     * Move to the next event.
+     *
+     * @return True if the cursor is now on an event, false if there are no more
+     *         events
+     */
+    fun advance(): Boolean
+
+    /**
+     * The event the cursor is currently on. Only valid until the next call to
+     * [advance] or [seek].
+     */
+    val event: E
+
+    /**
+     * Bring this cursor right before the first event with the given timestamp,
+     * or the first one after it.
+     */
+    fun seek(timestamp: Long)
+
+    /**
+     * Close this cursor.
+     * Overridden to not throw any exception.
+     */
+    override fun close()
+}
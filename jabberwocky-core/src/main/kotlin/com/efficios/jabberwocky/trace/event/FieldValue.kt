@@ -51,6 +51,41 @@ sealed class FieldValue(open val attributes: Map<String, String>?) {
         override fun toString() = elements.contentDeepToString()
     }
 
+    /**
+     * Array of unsigned bytes, kept as a primitive array instead of using one
+     * [IntegerValue] per element.
+     */
+    data class ByteArrayValue(val bytes: ByteArray,
+                              val base: Int = 10,
+                              override val attributes: Map<String, String>? = null) : FieldValue(attributes) {
+        val size: Int = bytes.size
+
+        /** Get the unsigned value of the element at the given index */
+        fun getElement(index: Int): Long = java.lang.Byte.toUnsignedLong(bytes[index])
+
+        override fun hashCode() = Objects.hash(Arrays.hashCode(bytes), base)
+
+        override fun equals(other: Any?): Boolean {
+            if (this === other) return true
+            if (other?.javaClass != javaClass) return false
+
+            other as ByteArrayValue
+
+            if (!(bytes contentEquals other.bytes)) return false
+            if (base != other.base) return false
+
+            return true
+        }
+
+        override fun toString() = (0 until size).joinToString(", ", "[", "]") {
+            if (base == 16) {
+                "0x" + java.lang.Long.toHexString(getElement(it))
+            } else {
+                getElement(it).toString()
+            }
+        }
+    }
+
     data class EnumValue(val stringValue: String,
                          val longValue: Long,
                          override val attributes: Map<String, String>? = null) : FieldValue(attributes) {
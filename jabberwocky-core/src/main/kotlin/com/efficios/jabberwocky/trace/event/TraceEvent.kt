@@ -25,4 +25,49 @@ interface TraceEvent {
 
     val attributes: Map<String, String>
 
+    /**
+     * Get the value of an integer (or enum) field. Implementations may read it
+     * without creating the [FieldValue] of the field.
+     *
+     * @throws IllegalArgumentException
+     *             If the event has no integer field with this name
+     */
+    fun getLongField(name: String): Long {
+        val field = fields[name]
+        return when (field) {
+            is FieldValue.IntegerValue -> field.value
+            is FieldValue.EnumValue -> field.longValue
+            else -> throw IllegalArgumentException("Event $eventName has no integer field $name")
+        }
+    }
+
+    /**
+     * Get the value of a string field. Implementations may read it without
+     * creating the [FieldValue] of the field.
+     *
+     * @throws IllegalArgumentException
+     *             If the event has no string field with this name
+     */
+    fun getStringField(name: String): String =
+            (fields[name] as? FieldValue.StringValue)?.value
+                    ?: throw IllegalArgumentException("Event $eventName has no string field $name")
+
+    /**
+     * Get the contents of a byte array field. The returned array should not
+     * be modified.
+     *
+     * @throws IllegalArgumentException
+     *             If the event has no byte array field with this name
+     */
+    fun getBytesField(name: String): ByteArray {
+        val field = fields[name]
+        return when (field) {
+            is FieldValue.ByteArrayValue -> field.bytes
+            is FieldValue.ArrayValue<*> -> ByteArray(field.size) {
+                (field.getElement(it) as? FieldValue.IntegerValue)?.value?.toByte()
+                        ?: throw IllegalArgumentException("Field $name of event $eventName is not an array of integers")
+            }
+            else -> throw IllegalArgumentException("Event $eventName has no byte array field $name")
+        }
+    }
 }
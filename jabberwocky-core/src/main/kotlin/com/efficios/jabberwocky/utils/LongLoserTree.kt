@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.efficios.jabberwocky.utils
+
+/**
+ * Tournament tree ("loser tree") used to merge a fixed number of sorted
+ * sources, keyed on primitive long values.
+ *
+ * Each source is a leaf, identified by its index. The tree keeps the current
+ * key of every leaf, so finding the smallest one never calls back into the
+ * sources. When the key of the winning leaf changes, only the path from that
+ * leaf to the root is replayed, which costs one comparison per level. Changes
+ * to any other leaf require the whole tree to be rebuilt with [rebuild].
+ *
+ * Leaves can also be empty, for sources that have no more elements. Equal keys
+ * are ordered by leaf index, so the merge order is deterministic.
+ */
+class LongLoserTree(val size: Int) {
+
+    companion object {
+        const val NONE = -1
+    }
+
+    private val keys = LongArray(size)
+    private val empty = BooleanArray(size) { true }
+
+    /**
+     * Internal nodes, each holding the leaf that lost the match at that node.
+     * Index 0 holds the overall winner. Leaf i is at virtual position
+     * (size + i), so the parent of any position p is p / 2.
+     */
+    private val losers = IntArray(maxOf(size, 1))
+
+    init {
+        require(size >= 0)
+        rebuild()
+    }
+
+    /** The leaf with the smallest key, or [NONE] if all leaves are empty. */
+    val winner: Int
+        get() {
+            val winner = losers[0]
+            return if (winner == NONE || empty[winner]) NONE else winner
+        }
+
+    /** The key of the [winner]. Only valid if there is a winner. */
+    val winnerKey: Long
+        get() = keys[losers[0]]
+
+    fun isEmpty(leaf: Int) = empty[leaf]
+
+    /** Mark all the leaves as empty. */
+    fun clear() {
+        empty.fill(true)
+        rebuild()
+    }
+
+    /**
+     * Set the key of a leaf, which becomes non-empty. If 'replay' is false,
+     * [rebuild] must be called once all the leaves are set.
+     */
+    fun setKey(leaf: Int, key: Long, replay: Boolean = false) {
+        keys[leaf] = key
+        empty[leaf] = false
+        if (replay) replay(leaf)
+    }
+
+    /** Mark a leaf as empty. If 'replay' is false, [rebuild] must be called afterwards. */
+    fun setEmpty(leaf: Int, replay: Boolean = false) {
+        empty[leaf] = true
+        if (replay) replay(leaf)
+    }
+
+    /** Set the key of the winning leaf, and update the tree. */
+    fun update(leaf: Int, key: Long) = setKey(leaf, key, true)
+
+    /** Mark the winning leaf as empty, and update the tree. */
+    fun remove(leaf: Int) = setEmpty(leaf, true)
+
+    /** Recompute the whole tree from the current keys of the leaves. */
+    fun rebuild() {
+        if (size == 0) {
+            losers[0] = NONE
+            return
+        }
+        val winners = IntArray(size)
+        fun winnerAt(position: Int) = if (position >= size) position - size else winners[position]
+
+        for (node in size - 1 downTo 1) {
+            val left = winnerAt(2 * node)
+            val right = winnerAt(2 * node + 1)
+            if (beats(left, right)) {
+                winners[node] = left
+                losers[node] = right
+            } else {
+                winners[node] = right
+                losers[node] = left
+            }
+        }
+        losers[0] = if (size == 1) 0 else winners[1]
+    }
+
+    private fun replay(leaf: Int) {
+        var candidate = leaf
+        var node = (size + leaf) / 2
+        while (node >= 1) {
+            val loser = losers[node]
+            if (beats(loser, candidate)) {
+                losers[node] = candidate
+                candidate = loser
+            }
+            node /= 2
+        }
+        losers[0] = candidate
+    }
+
+    private fun beats(a: Int, b: Int): Boolean {
+        if (empty[a] != empty[b]) return empty[b]
+        if (!empty[a] && keys[a] != keys[b]) return keys[a] < keys[b]
+        return a < b
+    }
+}
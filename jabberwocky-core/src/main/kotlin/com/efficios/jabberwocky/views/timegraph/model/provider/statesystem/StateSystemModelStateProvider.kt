@@ -132,7 +132,11 @@ abstract class StateSystemModelStateProvider(stateDefinitions: List<StateDefinit
 
         // TODO Check the task parameter during the iteration (for loop?)
 
-        /* Query the intervals from the state system */
+        /*
+         * Query the intervals from the state system. iterator2D only queries
+         * the resolution points, which for zoomed-out views is much less than
+         * all the intervals a range query would return.
+         */
         val quarks = ssTreeElements.map { it.sourceQuark }.toSet()
         ss.iterator2D(queryTimeRange.startTime, queryTimeRange.endTime, resolution, quarks).asSequence()
                 .forEach { iterationStep ->
@@ -176,7 +180,7 @@ abstract class StateSystemModelStateProvider(stateDefinitions: List<StateDefinit
                     val treeElem = quarksToTreeElementMap[quark]!!
                     val targetIntervalList = intervalsPerElement[treeElem]!!
                     if (interval.intersects(lastResolutionPt)
-                            && interval.end != targetIntervalList.last().endTime) {
+                            && interval.end != targetIntervalList.lastOrNull()?.endTime) {
 
                         val modelInterval = createInterval(ss, extraData, treeElem, interval)
                         targetIntervalList.add(modelInterval)
@@ -11,6 +11,7 @@ package com.efficios.jabberwocky.views.xychart.model.provider.statesystem
 
 import ca.polymtl.dorsal.libdelorean.IStateSystemReader
 import com.efficios.jabberwocky.analysis.statesystem.StateSystemAnalysis
+import com.efficios.jabberwocky.analysis.statesystem.StateSystemAnalysisPipeline
 import com.efficios.jabberwocky.views.xychart.model.provider.XYChartModelProvider
 import javafx.beans.property.ObjectProperty
 import javafx.beans.property.ReadOnlyObjectProperty
@@ -26,6 +27,9 @@ abstract class StateSystemXYChartProvider(providerName: String,
         private set(value) = stateSystemProperty.set(value)
 
     init {
+        /* Have the analysis built along with the others whenever a project gets read. */
+        StateSystemAnalysisPipeline.registerAnalysis(stateSystemAnalysis)
+
         /*
          * Change listener which will take care of keeping the target state
          * system up to date.
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+@file:JvmName("TimeSlicedBuildBenchmark")
+
+package com.efficios.jabberwocky.analysis.statesystem
+
+import ca.polymtl.dorsal.libdelorean.IStateSystemQuarkResolver.ROOT_ATTRIBUTE
+import ca.polymtl.dorsal.libdelorean.IStateSystemWriter
+import ca.polymtl.dorsal.libdelorean.statevalue.IntegerStateValue
+import com.efficios.jabberwocky.collection.TraceCollection
+import com.efficios.jabberwocky.project.TraceProject
+import com.efficios.jabberwocky.trace.Trace
+import com.efficios.jabberwocky.trace.TraceIterator
+import com.efficios.jabberwocky.trace.event.BaseTraceEvent
+import com.efficios.jabberwocky.trace.event.TraceEvent
+import java.nio.file.Files
+
+private const val NB_EVENTS = 20_000_000L
+private const val RUNS = 3
+private const val NB_CPUS = 8
+private const val NB_THREADS = 2000
+private const val EVENT_INTERVAL = 10L
+
+/**
+ * Benchmark of the time-sliced build of a state system analysis, see
+ * [StateSystemAnalysis.buildTimeSliced], compared to building the same history
+ * in one serial pass.
+ *
+ * The analysis is a simplified scheduler analysis over a synthetic trace,
+ * which updates the current thread of a CPU and the status of two threads at
+ * each event, so most of the serial build time is spent storing history. The
+ * results are printed in milliseconds, along with the number of available
+ * processors, which is the number of slices.
+ */
+fun main(args: Array<String>) {
+    val nbEvents = args.getOrNull(0)?.toLongOrNull() ?: NB_EVENTS
+    val trace = SyntheticTrace(nbEvents)
+
+    /* Warm up both build modes before measuring */
+    timeBuild(SerialAnalysis, trace)
+    timeBuild(TimeSlicedAnalysis, trace)
+
+    val serialTimes = (1..RUNS).map { timeBuild(SerialAnalysis, trace) }
+    val slicedTimes = (1..RUNS).map { timeBuild(TimeSlicedAnalysis, trace) }
+
+    println("$nbEvents events, ${Runtime.getRuntime().availableProcessors()} processors, best of $RUNS runs:")
+    println("  serial:       ${serialTimes.min()} ms")
+    println("  time-sliced:  ${slicedTimes.min()} ms")
+}
+
+private fun timeBuild(analysis: StateSystemAnalysis, trace: Trace<TraceEvent>): Long {
+    val projectPath = Files.createTempDirectory("time-sliced-benchmark")
+    try {
+        val project = TraceProject("time-sliced-benchmark", projectPath, listOf(TraceCollection(listOf(trace))))
+        val start = System.nanoTime()
+        analysis.execute(project).dispose()
+        return (System.nanoTime() - start) / 1_000_000
+    } finally {
+        projectPath.toFile().deleteRecursively()
+    }
+}
+
+private abstract class SchedulingAnalysis : StateSystemAnalysis() {
+
+    override val providerVersion = 0
+
+    override fun appliesTo(project: TraceProject<*, *>) = true
+
+    override fun canExecute(project: TraceProject<*, *>) = true
+
+    override fun filterTraces(project: TraceProject<*, *>): TraceCollection<*, *> =
+            TraceCollection(project.traceCollections.flatMap { it.traces })
+
+    /** Switch the CPU of the event from its current thread to the next one */
+    override fun handleEvent(ss: IStateSystemWriter, event: TraceEvent, trackedState: Array<Any>?) {
+        val ts = event.timestamp
+        val cpuQuark = ss.getChildQuarkAndAdd(ss.getChildQuarkAndAdd(ROOT_ATTRIBUTE, "CPUs"), event.cpu)
+        val threadsQuark = ss.getChildQuarkAndAdd(ROOT_ATTRIBUTE, "Threads")
+
+        val previousThread = (ss.queryOngoingState(cpuQuark) as? IntegerStateValue)?.value
+        if (previousThread != null) {
+            ss.modifyAttributeInt(ts, 0, ss.getChildQuarkAndAdd(threadsQuark, previousThread))
+        }
+        val nextThread = ((ts / EVENT_INTERVAL * 7919) % NB_THREADS).toInt()
+        ss.modifyAttributeInt(ts, 1, ss.getChildQuarkAndAdd(threadsQuark, nextThread))
+        ss.modifyAttributeInt(ts, nextThread, cpuQuark)
+    }
+}
+
+private object SerialAnalysis : SchedulingAnalysis()
+
+private object TimeSlicedAnalysis : SchedulingAnalysis() {
+    override val buildTimeSliced = true
+}
+
+/** Trace whose events are generated on the fly, one every [EVENT_INTERVAL] */
+private class SyntheticTrace(private val nbEvents: Long) : Trace<TraceEvent>() {
+
+    override val name = "synthetic"
+    override val startTime = 0L
+    override val endTime = (nbEvents - 1) * EVENT_INTERVAL
+
+    override fun iterator(): TraceIterator<TraceEvent> = SyntheticIterator(0)
+
+    fun eventAt(index: Long): TraceEvent =
+            BaseTraceEvent(this, index * EVENT_INTERVAL, (index % NB_CPUS).toInt(), "sched_switch", emptyMap())
+
+    private inner class SyntheticIterator(private var index: Long) : TraceIterator<TraceEvent> {
+        override fun hasNext() = index < nbEvents
+        override fun next() = if (hasNext()) eventAt(index++) else throw NoSuchElementException()
+        override fun hasPrevious() = index > 0
+        override fun previous() = if (hasPrevious()) eventAt(--index) else throw NoSuchElementException()
+
+        override fun seek(timestamp: Long) {
+            index = ((timestamp + EVENT_INTERVAL - 1) / EVENT_INTERVAL).coerceIn(0, nbEvents)
+        }
+
+        override fun copy(): TraceIterator<TraceEvent> = SyntheticIterator(index)
+
+        override fun close() {}
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+@file:JvmName("SortedCompoundTraceCursorBenchmark")
+
+package com.efficios.jabberwocky.trace
+
+import com.efficios.jabberwocky.trace.event.BaseTraceEvent
+import com.efficios.jabberwocky.trace.event.FieldValue
+import com.efficios.jabberwocky.trace.event.TraceEvent
+import java.util.*
+
+private const val NB_EVENTS = 10_000_000
+private const val RUNS = 5
+private val NB_STREAMS = listOf(8, 64, 256)
+
+/**
+ * Benchmark of the merge done by [SortedCompoundTraceCursor], compared to the
+ * previous implementation using a [PriorityQueue] of cursors.
+ *
+ * The merged cursors are synthetic ones with random timestamp increments, so
+ * only the cost of the merge itself gets measured. The results are printed in
+ * events per second, for 8, 64 and 256 cursors.
+ */
+fun main(args: Array<String>) {
+    val nbEvents = args.getOrNull(0)?.toIntOrNull() ?: NB_EVENTS
+
+    for (nbStreams in NB_STREAMS) {
+        val streams = generateStreams(nbStreams, nbEvents).map { SyntheticTrace(it) }
+
+        /* Warm up both implementations before measuring */
+        mergeAll(SortedCompoundTraceCursor(streams.map { it.cursor() }))
+        mergeAll(PriorityQueueCursor(streams.map { it.cursor() }))
+
+        val loserTreeTimes = (1..RUNS).map { timeMerge(SortedCompoundTraceCursor(streams.map { it.cursor() })) }
+        val priorityQueueTimes = (1..RUNS).map { timeMerge(PriorityQueueCursor(streams.map { it.cursor() })) }
+
+        println("$nbStreams streams, $nbEvents events, best of $RUNS runs:")
+        println("  loser tree:     ${eventsPerSecond(nbEvents, loserTreeTimes.min()!!)} events/s")
+        println("  priority queue: ${eventsPerSecond(nbEvents, priorityQueueTimes.min()!!)} events/s")
+    }
+}
+
+private fun generateStreams(nbStreams: Int, nbEvents: Int): List<LongArray> {
+    val random = Random(nbStreams.toLong())
+    return (0 until nbStreams).map {
+        var timestamp = 0L
+        LongArray(nbEvents / nbStreams) {
+            timestamp += random.nextInt(1000)
+            timestamp
+        }
+    }
+}
+
+private fun mergeAll(cursor: TraceCursor<TraceEvent>): Long {
+    var checksum = 0L
+    cursor.use {
+        while (it.advance()) {
+            checksum += it.event.timestamp
+        }
+    }
+    return checksum
+}
+
+private fun timeMerge(cursor: TraceCursor<TraceEvent>): Long {
+    val start = System.nanoTime()
+    mergeAll(cursor)
+    return System.nanoTime() - start
+}
+
+private fun eventsPerSecond(nbEvents: Int, nanos: Long) = "%,d".format(nbEvents * 1_000_000_000L / nanos)
+
+/** Trace over the given timestamps, whose cursor re-uses the same event object. */
+private class SyntheticTrace(val timestamps: LongArray) : Trace<TraceEvent>() {
+
+    override val name = "synthetic"
+    override val startTime = timestamps.firstOrNull() ?: 0L
+    override val endTime = timestamps.lastOrNull() ?: 0L
+
+    override fun iterator(): TraceIterator<TraceEvent> = SyntheticIterator(0)
+
+    override fun cursor(): TraceCursor<TraceEvent> = SyntheticCursor(this)
+
+    private fun eventAt(index: Int): TraceEvent = BaseTraceEvent(this, timestamps[index], 0, "synthetic", emptyMap())
+
+    private inner class SyntheticIterator(private var index: Int) : TraceIterator<TraceEvent> {
+        override fun hasNext() = index < timestamps.size
+        override fun next() = if (hasNext()) eventAt(index++) else throw NoSuchElementException()
+        override fun hasPrevious() = index > 0
+        override fun previous() = if (hasPrevious()) eventAt(--index) else throw NoSuchElementException()
+
+        override fun seek(timestamp: Long) {
+            index = timestamps.indexOfFirst { it >= timestamp }.let { if (it < 0) timestamps.size else it }
+        }
+
+        override fun copy(): TraceIterator<TraceEvent> = SyntheticIterator(index)
+
+        override fun close() {}
+    }
+}
+
+/** Event whose timestamp is changed by its cursor, nothing else is used here. */
+private class SyntheticEvent(override val trace: Trace<TraceEvent>) : TraceEvent {
+    override var timestamp = 0L
+    override val cpu = 0
+    override val eventName = "synthetic"
+    override val fields = emptyMap<String, FieldValue>()
+    override val attributes = emptyMap<String, String>()
+}
+
+private class SyntheticCursor(trace: SyntheticTrace) : TraceCursor<TraceEvent> {
+    private val timestamps = trace.timestamps
+    private var position = -1
+    override val event = SyntheticEvent(trace)
+
+    override fun advance(): Boolean {
+        if (position + 1 >= timestamps.size) return false
+        event.timestamp = timestamps[++position]
+        return true
+    }
+
+    override fun seek(timestamp: Long) {
+        val target = timestamps.indexOfFirst { it >= timestamp }
+        position = (if (target < 0) timestamps.size else target) - 1
+    }
+
+    override fun close() {}
+}
+
+/** The merge as it was done before, for comparison. */
+private class PriorityQueueCursor(private val cursors: Collection<TraceCursor<TraceEvent>>) : TraceCursor<TraceEvent> {
+
+    private val queue = PriorityQueue<TraceCursor<TraceEvent>>(maxOf(cursors.size, 1),
+            Comparator { c1, c2 -> java.lang.Long.compare(c1.event.timestamp, c2.event.timestamp) })
+
+    private var current: TraceCursor<TraceEvent>? = null
+    private var started = false
+
+    override val event: TraceEvent
+        get() = (current ?: throw NoSuchElementException()).event
+
+    override fun advance(): Boolean {
+        if (!started) {
+            cursors.forEach { if (it.advance()) queue.add(it) }
+            started = true
+        } else {
+            current?.let { if (it.advance()) queue.add(it) }
+        }
+        current = queue.poll()
+        return (current != null)
+    }
+
+    override fun seek(timestamp: Long) {
+        queue.clear()
+        cursors.forEach { it.seek(timestamp) }
+        current = null
+        started = false
+    }
+
+    override fun close() {}
+}
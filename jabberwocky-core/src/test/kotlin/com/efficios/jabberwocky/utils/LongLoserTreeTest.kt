@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.efficios.jabberwocky.utils
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import java.util.*
+
+/**
+ * Tests for [LongLoserTree].
+ */
+class LongLoserTreeTest {
+
+    /** Merge the given sorted lists using a loser tree. */
+    private fun merge(sources: List<List<Long>>): List<Long> {
+        val tree = LongLoserTree(sources.size)
+        val positions = IntArray(sources.size)
+        sources.forEachIndexed { i, source -> if (source.isEmpty()) tree.setEmpty(i) else tree.setKey(i, source[0]) }
+        tree.rebuild()
+
+        val merged = mutableListOf<Long>()
+        while (tree.winner != LongLoserTree.NONE) {
+            val leaf = tree.winner
+            merged.add(tree.winnerKey)
+            val source = sources[leaf]
+            positions[leaf]++
+            if (positions[leaf] < source.size) tree.update(leaf, source[positions[leaf]]) else tree.remove(leaf)
+        }
+        return merged
+    }
+
+    @Test
+    fun testEmpty() {
+        assertEquals(LongLoserTree.NONE, LongLoserTree(0).winner)
+        assertEquals(LongLoserTree.NONE, LongLoserTree(5).winner)
+        assertEquals(emptyList<Long>(), merge(listOf(emptyList(), emptyList())))
+    }
+
+    @Test
+    fun testSingleSource() {
+        assertEquals(listOf(1L, 3L, 5L), merge(listOf(listOf(1L, 3L, 5L))))
+    }
+
+    @Test
+    fun testMerge() {
+        val sources = listOf(
+                listOf(1L, 3L, 5L),
+                listOf(2L, 4L, 6L),
+                emptyList(),
+                listOf(4L, 5L, 6L),
+                listOf(Long.MIN_VALUE, 2L, Long.MAX_VALUE))
+        assertEquals(sources.flatten().sorted(), merge(sources))
+    }
+
+    /**
+     * Merge random lists, for all tree sizes up to a few dozen leaves, which
+     * covers both complete and incomplete trees.
+     */
+    @Test
+    fun testRandomMerge() {
+        val random = Random(42)
+        for (nbSources in 1..40) {
+            val sources = (0 until nbSources).map {
+                (0 until random.nextInt(20)).map { random.nextInt(50).toLong() }.sorted()
+            }
+            assertEquals(sources.flatten().sorted(), merge(sources))
+        }
+    }
+
+    /**
+     * Equal keys come out in the order of their leaves.
+     */
+    @Test
+    fun testTies() {
+        val tree = LongLoserTree(3)
+        (0 until 3).forEach { tree.setKey(it, 10L) }
+        tree.rebuild()
+        assertEquals(0, tree.winner)
+        tree.update(0, 20L)
+        assertEquals(1, tree.winner)
+        tree.remove(1)
+        assertEquals(2, tree.winner)
+    }
+}
@@ -12,7 +12,9 @@ package com.efficios.jabberwocky.ctf.trace
 import com.efficios.jabberwocky.ctf.trace.event.CtfTraceEvent
 import com.efficios.jabberwocky.ctf.trace.event.CtfTraceEventFactory
 import com.efficios.jabberwocky.trace.Trace
+import com.efficios.jabberwocky.trace.TraceCursor
 import com.efficios.jabberwocky.trace.TraceInitializationException
+import com.efficios.jabberwocky.trace.event.TraceEvent
 import org.eclipse.tracecompass.ctf.core.CTFException
 import org.eclipse.tracecompass.ctf.core.trace.CTFTrace
 import java.nio.file.Path
@@ -27,10 +29,27 @@ class CtfTrace(val tracePath: Path) : Trace<CtfTraceEvent>() {
 
     override val name = tracePath.fileName.toString()
 
+    /* The packet index tells which packets hold the first and last events, only those get read. */
+    override val startTime: Long by lazy { innerTrace.firstEventTime.takeUnless { it == Long.MIN_VALUE } ?: 0L }
+
+    override val endTime: Long by lazy { innerTrace.lastEventTime.takeUnless { it == Long.MIN_VALUE } ?: 0L }
+
     override fun iterator(): CtfTraceIterator {
         return CtfTraceIterator(this)
     }
 
+    override fun cursor(): TraceCursor<TraceEvent> = CtfTraceCursor(this)
+
+    override fun cursor(eventNameFilter: (String) -> Boolean): TraceCursor<TraceEvent> = CtfTraceCursor(this, eventNameFilter)
+
+    /**
+     * Index which types of events are present in each packet of the trace, so
+     * that cursors filtering events by name can skip whole packets. This reads
+     * the whole trace the first time, the result is saved with the packet
+     * index.
+     */
+    fun indexEventTypes() = innerTrace.indexEventTypes()
+
     val eventFactory = CtfTraceEventFactory(this)
 
     val environment: Map<String, String> = innerTrace.environment
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.efficios.jabberwocky.ctf.trace
+
+import com.efficios.jabberwocky.ctf.trace.event.CtfTraceEventView
+import com.efficios.jabberwocky.trace.TraceCursor
+import com.efficios.jabberwocky.trace.event.TraceEvent
+import org.eclipse.tracecompass.ctf.core.CTFException
+import org.eclipse.tracecompass.ctf.core.CTFStrings
+import org.eclipse.tracecompass.ctf.core.event.IEventDefinition
+import org.eclipse.tracecompass.ctf.core.trace.CTFTraceReader
+import java.util.function.Predicate
+
+/**
+ * Cursor over the events of a CTF trace, which presents all of them through
+ * a single [CtfTraceEventView]. Only lost events, which are rare, get their
+ * own event object.
+ *
+ * If an event name filter is given, it is applied by the trace reader, which
+ * skips the unwanted events without decoding them whenever possible.
+ */
+internal class CtfTraceCursor(private val originTrace: CtfTrace,
+                              eventNameFilter: ((String) -> Boolean)? = null) : TraceCursor<TraceEvent> {
+
+    private val traceReader: CTFTraceReader = try {
+        CTFTraceReader(originTrace.innerTrace, eventNameFilter?.let { filter -> Predicate<String> { filter(it) } })
+    } catch (e: CTFException) {
+        /*
+         * If the CtfTrace was initialized successfully, creating a
+         * reader should not fail.
+         */
+        throw IllegalStateException(e)
+    }
+
+    /** The event definition the next call to advance() will move to */
+    private var nextEventDef: IEventDefinition? = traceReader.currentEventDef
+
+    private var view: CtfTraceEventView? = null
+    private var current: TraceEvent? = null
+
+    override val event: TraceEvent
+        get() = current ?: throw NoSuchElementException()
+
+    override fun advance(): Boolean {
+        val eventDef = nextEventDef
+        if (eventDef == null) {
+            current = null
+            return false
+        }
+
+        current = if (eventDef.declaration.name == CTFStrings.LOST_EVENT_NAME) {
+            originTrace.eventFactory.createEvent(eventDef)
+        } else {
+            view?.apply { reset(eventDef) } ?: CtfTraceEventView(originTrace, eventDef).also { view = it }
+        }
+
+        try {
+            traceReader.advance()
+            nextEventDef = traceReader.currentEventDef
+        } catch (e: CTFException) {
+            /* Shouldn't happen if we did the other checks correctly */
+            throw IllegalStateException(e)
+        }
+        return true
+    }
+
+    override fun seek(timestamp: Long) {
+        current = null
+        /* traceReader.seek() works off cycle counts, not timestamps */
+        traceReader.seek(originTrace.innerTrace.timestampNanoToCycles(timestamp))
+        nextEventDef = traceReader.topStream?.currentEvent
+    }
+
+    override fun close() {
+        current = null
+        traceReader.close()
+    }
+}
@@ -11,205 +11,91 @@ package com.efficios.jabberwocky.ctf.trace
 
 import com.efficios.jabberwocky.ctf.trace.event.CtfTraceEvent
 import com.efficios.jabberwocky.trace.TraceIterator
-import com.google.common.annotations.VisibleForTesting
-import com.google.common.collect.EvictingQueue
-import com.google.common.collect.Iterables
 import org.eclipse.tracecompass.ctf.core.CTFException
-import org.eclipse.tracecompass.ctf.core.event.IEventDefinition
 import org.eclipse.tracecompass.ctf.core.trace.CTFTraceReader
-import java.util.*
-
-private const val MAX_CACHE_SIZE = 50_000
 
+/**
+ * Iterator over the events of a [CtfTrace], in both directions.
+ *
+ * Going backwards is done by the [CTFTraceReader] itself, which steps back
+ * through the packet index of each stream and merges the streams in reverse
+ * order. Reading N events backwards costs about the same as reading them
+ * forwards, and changing direction only moves each stream by one event.
+ */
 open class CtfTraceIterator private constructor(private val originTrace: CtfTrace,
-                                                private val forwardIterator: ForwardIterator) : TraceIterator<CtfTraceEvent> {
-
-    constructor(originTrace: CtfTrace) : this(originTrace, ForwardIterator(originTrace))
+                                                private val traceReader: CTFTraceReader) : TraceIterator<CtfTraceEvent> {
 
-    @VisibleForTesting
-    @Transient
-    internal var cacheIterator: ListIterator<CtfTraceEvent>? = null
-        private set
+    constructor(originTrace: CtfTrace) : this(originTrace, createReader(originTrace))
 
-    override fun hasNext(): Boolean {
-        val cacheIter = cacheIterator
-        if (cacheIter == null || !cacheIter.hasNext()) return forwardIterator.hasNext()
-        return true
+    private companion object {
+        private fun createReader(originTrace: CtfTrace): CTFTraceReader = try {
+            CTFTraceReader(originTrace.innerTrace)
+        } catch (e: CTFException) {
+            /*
+             * If the CtfTrace was initialized successfully, creating an
+             * iterator should not fail.
+             */
+            throw IllegalStateException(e)
+        }
     }
 
+    override fun hasNext(): Boolean = (traceReader.currentEventDef != null)
+
     override fun next(): CtfTraceEvent {
-        val cacheIter = cacheIterator
-        return if (cacheIter == null) {
-            forwardIterator.next()
+        val eventDef = traceReader.currentEventDef ?: throw NoSuchElementException()
 
-        } else if (!cacheIter.hasNext()) {
-            /* Drop the cache, switch back to the forward iterator. */
-            cacheIterator = null
-            forwardIterator.next()
+        /* Wrap the current event into a JW event */
+        val event = originTrace.eventFactory.createEvent(eventDef)
 
-        } else {
-            /* Read from the cache. */
-            cacheIter.next()
+        /* Prepare the "next next" event */
+        try {
+            traceReader.advance()
+        } catch (e: CTFException) {
+            /* Shouldn't happen if we did the other checks correctly */
+            throw IllegalStateException(e)
         }
+        return event
     }
 
-    override fun hasPrevious(): Boolean {
-        val cacheIter = cacheIterator
-        return when {
-            cacheIter == null -> {
-                val newCacheIterator = newCacheIterator() ?: return false
-                cacheIterator = newCacheIterator
-                newCacheIterator.hasPrevious()
-            }
-            cacheIter.hasPrevious() -> /* Continue reading from the cache */
-                true
-            else -> {
-                /* Check if we can load a new cache before this position. */
-                val newPivotEvent = cacheIter.next()
-                forwardIterator.seek(newPivotEvent.timestamp)
-
-                /* Check in case there are several events at this timestamp */
-                while (forwardIterator.peek() != newPivotEvent) {
-                    forwardIterator.next()
-                }
-
-                val newCacheIterator = newCacheIterator() ?: return false
-                cacheIterator = newCacheIterator
-                newCacheIterator.hasPrevious()
-            }
-        }
+    override fun hasPrevious(): Boolean = try {
+        traceReader.previousEventDef != null
+    } catch (e: CTFException) {
+        throw IllegalStateException(e)
     }
 
     override fun previous(): CtfTraceEvent {
-        if (!hasPrevious()) throw NoSuchElementException()
-        /* Previous call to hasPrevious() should have populated 'cacheIterator' */
-        return cacheIterator!!.previous()
+        try {
+            val eventDef = traceReader.previousEventDef ?: throw NoSuchElementException()
+            val event = originTrace.eventFactory.createEvent(eventDef)
+            traceReader.retreat()
+            return event
+        } catch (e: CTFException) {
+            throw IllegalStateException(e)
+        }
     }
 
     override fun seek(timestamp: Long) {
-        cacheIterator = null
-        forwardIterator.seek(timestamp)
-    }
-
-    override fun copy(): CtfTraceIterator = CtfTraceIterator(originTrace, forwardIterator.copy())
+        // TODO Support/test with multiple events at the same timestamp
+        // Current library doesn't give guarantees regarding which events are returned first.
 
-    override fun close() {
-        cacheIterator = null
-        forwardIterator.close()
+        /* traceReader.seek() works off cycle counts, not timestamps !?! */
+        traceReader.seek(originTrace.innerTrace.timestampNanoToCycles(timestamp))
     }
 
-    /**
-     * Returns null when we are at the beginning already.
-     */
-    private fun newCacheIterator(): ListIterator<CtfTraceEvent>? {
-        var startedFromAfterEnd = false
+    override fun copy(): CtfTraceIterator {
         /*
-         * We will jump back to an earlier timestamp, and start reading from there to populate
-         * a cache of events the list-iterator will be able to navigate through.
-         *
-         * The target timestamp is defined as the highest among all the current packets' start times.
-         *
-         * // TODO Test/benchmark with min()?
+         * Seeking to the timestamp of the current event would land on the first
+         * of the events sharing it, the reader copies the position of each stream.
          */
-        var currentPackets = forwardIterator.traceReader.currentPacketDescriptors
-        if (currentPackets == null || Iterables.isEmpty(currentPackets)) {
-            forwardIterator.seek(originTrace.endTime)
-            /* Should not be empty/null on next access */
-            currentPackets = forwardIterator.traceReader.currentPacketDescriptors
-            startedFromAfterEnd = true
-        }
-
-        if (!forwardIterator.hasNext()) throw IllegalStateException()
-
-        val limitEvent = forwardIterator.next() /* Should be present */
-        val ts = currentPackets
-                .map { it.timestampBegin }
-                /* Convert cycles -> real timestamp. */
-                .map { originTrace.innerTrace.timestampCyclesToNanos(it) }
-                .filter { it < limitEvent.timestamp }
-                /*
-                 * Doesn't seem there is a way to query the "previous packet". Handle all edge cases
-                 * (like a last packet containing a single event) by re-reading from the beginning...
-                 */
-                .max() ?: originTrace.startTime
-
-        forwardIterator.seek(ts)
-        if (!forwardIterator.hasNext()) return null
-
-        val list = EvictingQueue.create<CtfTraceEvent>(MAX_CACHE_SIZE)
-        while (forwardIterator.hasNext()) {
-            val event = forwardIterator.peek()!!
-            if (event == limitEvent) break
-            list.add(event)
-            forwardIterator.next()
-        }
-
-        if (startedFromAfterEnd) list.add(limitEvent)
-
-        /* The 'list.size' argument ensures the iterators starts at the last event of the list. */
-        return list.toList().listIterator(list.size)
-    }
-
-    private class ForwardIterator(private val originTrace: CtfTrace) : Iterator<CtfTraceEvent> {
-
-        val traceReader: CTFTraceReader = try {
-            CTFTraceReader(originTrace.innerTrace)
+        val readerCopy = try {
+            traceReader.copyAtCurrentEvent()
         } catch (e: CTFException) {
-            /*
-         * If the CtfTrace was initialized successfully, creating an
-         * iterator should not fail.
-         */
             throw IllegalStateException(e)
         }
+        return CtfTraceIterator(originTrace, readerCopy)
+    }
 
-        private var currentEventDef: IEventDefinition? = traceReader.currentEventDef
-
-        override fun hasNext(): Boolean = (currentEventDef != null)
-
-        override fun next(): CtfTraceEvent {
-            val currentEventDef = currentEventDef ?: throw NoSuchElementException()
-
-            /* Wrap the current event into a JW event */
-            val event = originTrace.eventFactory.createEvent(currentEventDef)
-
-            /* Prepare the "next next" event */
-            try {
-                traceReader.advance()
-                this.currentEventDef = traceReader.currentEventDef
-            } catch (e: CTFException) {
-                /* Shouldn't happen if we did the other checks correctly */
-                throw IllegalStateException(e)
-            }
-
-            return event
-        }
-
-        fun close() {
-            traceReader.close()
-        }
-
-        fun peek(): CtfTraceEvent? {
-            return originTrace.eventFactory.createEvent(currentEventDef ?: return null)
-        }
-
-        fun seek(timestamp: Long) {
-            // TODO Support/test with multiple events at the same timestamp
-            // Current library doesn't give guarantees regarding which events are returned first.
-
-            /* traceReader.seek() works off cycle counts, not timestamps !?! */
-            traceReader.seek(originTrace.innerTrace.timestampNanoToCycles(timestamp))
-            currentEventDef = traceReader.topStream?.currentEvent
-        }
-
-        fun copy(): ForwardIterator {
-            val eventDef = currentEventDef
-            return ForwardIterator(originTrace).apply {
-                /* Here we seek using the *cycle count* directly */
-                traceReader.seek(eventDef?.timestamp ?: Long.MAX_VALUE)
-                currentEventDef = traceReader.topStream?.currentEvent
-            }
-
-        }
-
+    override fun close() {
+        traceReader.close()
     }
 }
@@ -18,4 +18,22 @@ open class CtfTraceEvent(override val trace: CtfTrace,
                          cpu: Int,
                          eventName: String,
                          eventFields: Map<String, FieldValue>,
-                         attributes: Map<String, String>? = null) : BaseTraceEvent(trace, timestamp, cpu, eventName, eventFields, attributes)
+                         attributes: Map<String, String>? = null) : BaseTraceEvent(trace, timestamp, cpu, eventName, eventFields, attributes) {
+
+    /* Read primitive values directly from the CTF definitions when we have them */
+
+    override fun getLongField(name: String): Long {
+        val fieldMap = fields as? CtfTraceEventFieldMap ?: return super.getLongField(name)
+        return fieldMap.getLong(name)
+    }
+
+    override fun getStringField(name: String): String {
+        val fieldMap = fields as? CtfTraceEventFieldMap ?: return super.getStringField(name)
+        return fieldMap.getString(name)
+    }
+
+    override fun getBytesField(name: String): ByteArray {
+        val fieldMap = fields as? CtfTraceEventFieldMap ?: return super.getBytesField(name)
+        return fieldMap.getBytes(name)
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.efficios.jabberwocky.ctf.trace.event
+
+import com.efficios.jabberwocky.trace.event.FieldValue
+import com.google.common.collect.ImmutableMap
+import org.eclipse.tracecompass.ctf.core.event.IEventDefinition
+import org.eclipse.tracecompass.ctf.core.event.types.ByteArrayDefinition
+import org.eclipse.tracecompass.ctf.core.event.types.EnumDefinition
+import org.eclipse.tracecompass.ctf.core.event.types.ICompositeDefinition
+import org.eclipse.tracecompass.ctf.core.event.types.IDefinition
+import org.eclipse.tracecompass.ctf.core.event.types.IntegerDefinition
+import org.eclipse.tracecompass.ctf.core.event.types.StringDefinition
+
+/**
+ * Read-only map of the fields of a CTF event, which only converts the CTF
+ * definitions to [FieldValue]s when they are accessed.
+ *
+ * Payload fields are named like in the trace, minus a leading underscore.
+ * Context fields are prefixed with "context.".
+ *
+ * Looking up a single field with [get] only converts that field, and keeps
+ * it for the next lookups of the same key. Operations that need all the
+ * fields, like iterating over the entries, convert all of them once, and the
+ * result is kept for subsequent calls.
+ */
+internal class CtfTraceEventFieldMap(private var eventDef: IEventDefinition) : AbstractMap<String, FieldValue>() {
+
+    companion object {
+        private const val UNDERSCORE = "_"
+        private const val CONTEXT_FIELD_PREFIX = "context."
+
+        private fun usedName(fieldName: String) = if (fieldName.startsWith(UNDERSCORE)) fieldName.substring(1) else fieldName
+    }
+
+    @Volatile
+    private var parsedFields: Map<String, FieldValue>? = null
+
+    /* Fields converted by single lookups, until all of them are parsed */
+    private var singleFields: MutableMap<String, FieldValue>? = null
+
+    private val allFields: Map<String, FieldValue>
+        get() = parsedFields ?: parseAll().also { parsedFields = it }
+
+    /**
+     * Point this map to the fields of another event, dropping the fields that
+     * were already converted. Used by cursors that re-use their event objects.
+     */
+    @Synchronized
+    fun reset(eventDef: IEventDefinition) {
+        this.eventDef = eventDef
+        parsedFields = null
+        singleFields?.clear()
+    }
+
+    private fun parseAll(): Map<String, FieldValue> {
+        val fields: ImmutableMap.Builder<String, FieldValue> = ImmutableMap.builder()
+        eventDef.fields?.let { fieldsDef ->
+            fieldsDef.fieldNames?.forEach { fields.put(usedName(it), CtfTraceEventFieldParser.parseField(fieldsDef.getDefinition(it))) }
+        }
+        eventDef.context?.let { contextDef ->
+            contextDef.fieldNames.forEach { fields.put(CONTEXT_FIELD_PREFIX + usedName(it), CtfTraceEventFieldParser.parseField(contextDef.getDefinition(it))) }
+        }
+        return fields.build()
+    }
+
+    override val entries: Set<Map.Entry<String, FieldValue>>
+        get() = allFields.entries
+
+    override val keys: Set<String>
+        get() = allFields.keys
+
+    override val size: Int
+        get() = (eventDef.fields?.fieldNames?.size ?: 0) + (eventDef.context?.fieldNames?.size ?: 0)
+
+    override fun isEmpty() = (size == 0)
+
+    override fun containsKey(key: String) = (lookup(key) != null)
+
+    override fun get(key: String): FieldValue? {
+        parsedFields?.let { return it[key] }
+        synchronized(this) {
+            val fields = singleFields ?: HashMap<String, FieldValue>(4).also { singleFields = it }
+            fields[key]?.let { return it }
+            val definition = lookup(key) ?: return null
+            return CtfTraceEventFieldParser.parseField(definition).also { fields[key] = it }
+        }
+    }
+
+    /**
+     * Get the value of an integer or enum field, without creating its
+     * [FieldValue].
+     */
+    fun getLong(key: String): Long {
+        val definition = lookup(key)
+        return when (definition) {
+            is IntegerDefinition -> definition.value
+            is EnumDefinition -> definition.integerValue
+            else -> {
+                val field = definition?.let { CtfTraceEventFieldParser.parseField(it) }
+                (field as? FieldValue.IntegerValue)?.value
+                        ?: throw IllegalArgumentException("No integer field $key in event ${eventDef.declaration.name}")
+            }
+        }
+    }
+
+    /**
+     * Get the value of a string field, without creating its [FieldValue].
+     */
+    fun getString(key: String): String {
+        val definition = lookup(key)
+        return when (definition) {
+            is StringDefinition -> definition.value
+            else -> {
+                val field = definition?.let { CtfTraceEventFieldParser.parseField(it) }
+                (field as? FieldValue.StringValue)?.value
+                        ?: throw IllegalArgumentException("No string field $key in event ${eventDef.declaration.name}")
+            }
+        }
+    }
+
+    /**
+     * Get the contents of a byte array field, without creating its
+     * [FieldValue].
+     */
+    fun getBytes(key: String): ByteArray {
+        val definition = lookup(key)
+        return when (definition) {
+            is ByteArrayDefinition -> definition.bytes
+            else -> {
+                val field = definition?.let { CtfTraceEventFieldParser.parseField(it) }
+                (field as? FieldValue.ByteArrayValue)?.bytes
+                        ?: throw IllegalArgumentException("No byte array field $key in event ${eventDef.declaration.name}")
+            }
+        }
+    }
+
+    /** Find the CTF definition of the field that would be named 'key' in this map. */
+    private fun lookup(key: String): IDefinition? {
+        return if (key.startsWith(CONTEXT_FIELD_PREFIX)) {
+            eventDef.context?.let { lookup(it, key.substring(CONTEXT_FIELD_PREFIX.length)) }
+        } else {
+            eventDef.fields?.let { lookup(it, key) }
+        }
+    }
+
+    private fun lookup(scope: ICompositeDefinition, name: String): IDefinition? {
+        if (scope.fieldNames == null) return null
+        return scope.getDefinition(UNDERSCORE + name)
+                ?: if (name.startsWith(UNDERSCORE)) null else scope.getDefinition(name)
+    }
+}
@@ -34,14 +34,9 @@ object CtfTraceEventFieldParser {
                     elemType.isCharacter -> StringValue(fieldDef.toString()) /* it's a banal string */
                     fieldDef is ByteArrayDefinition -> {
                         /*
-                         * Unsigned byte array, consider this field an array of integers
+                         * Unsigned byte array, keep the bytes as they are
                          */
-                        val elements = (0 until fieldDef.length)
-                                .map { idx -> java.lang.Byte.toUnsignedLong(fieldDef.getByte(idx)) }
-                                .map { longVal -> IntegerValue(longVal, elemType.base) }
-                                .toTypedArray()
-                        ArrayValue(elements)
-
+                        ByteArrayValue(fieldDef.bytes, elemType.base)
                     }
                     else -> {
                         /* Consider this a straight array of integers */
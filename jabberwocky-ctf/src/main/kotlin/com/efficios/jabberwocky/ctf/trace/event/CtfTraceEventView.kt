@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.efficios.jabberwocky.ctf.trace.event
+
+import com.efficios.jabberwocky.ctf.trace.CtfTrace
+import com.efficios.jabberwocky.trace.event.FieldValue
+import com.efficios.jabberwocky.trace.event.TraceEvent
+import com.google.common.base.MoreObjects
+import org.eclipse.tracecompass.ctf.core.event.IEventDefinition
+import java.text.NumberFormat
+
+/**
+ * Mutable event, re-pointed by a cursor to each event it reads, so that no
+ * new event object has to be created for each of them.
+ */
+internal class CtfTraceEventView(override val trace: CtfTrace, eventDef: IEventDefinition) : TraceEvent {
+
+    override var timestamp: Long = 0L
+        private set
+
+    override var cpu: Int = 0
+        private set
+
+    override var eventName: String = ""
+        private set
+
+    private val fieldMap = CtfTraceEventFieldMap(eventDef)
+
+    override val fields: Map<String, FieldValue>
+        get() = fieldMap
+
+    override val attributes: Map<String, String> = emptyMap()
+
+    override fun getLongField(name: String) = fieldMap.getLong(name)
+
+    override fun getStringField(name: String) = fieldMap.getString(name)
+
+    override fun getBytesField(name: String) = fieldMap.getBytes(name)
+
+    init {
+        reset(eventDef)
+    }
+
+    fun reset(eventDef: IEventDefinition) {
+        /* eventDef.getTimestamp() returns a cycle count */
+        timestamp = trace.innerTrace.timestampCyclesToNanos(eventDef.timestamp)
+        cpu = eventDef.cpu
+        eventName = eventDef.declaration.name
+        fieldMap.reset(eventDef)
+    }
+
+    override fun toString(): String {
+        return MoreObjects.toStringHelper(this)
+                .add("timestamp", NumberFormat.getInstance().format(timestamp)) //$NON-NLS-1$
+                .add("event name", eventName) //$NON-NLS-1$
+                .add("cpu", cpu) //$NON-NLS-1$
+                .add("fields", fields) //$NON-NLS-1$
+                .toString()
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.efficios.jabberwocky.ctf.analysis
+
+import ca.polymtl.dorsal.libdelorean.IStateSystemReader
+import ca.polymtl.dorsal.libdelorean.IStateSystemWriter
+import ca.polymtl.dorsal.libdelorean.statevalue.IntegerStateValue
+import com.efficios.jabberwocky.analysis.IAnalysis
+import com.efficios.jabberwocky.analysis.statesystem.StateSystemAnalysis
+import com.efficios.jabberwocky.analysis.statesystem.StateSystemAnalysisPipeline
+import com.efficios.jabberwocky.collection.TraceCollection
+import com.efficios.jabberwocky.common.TimeRange
+import com.efficios.jabberwocky.ctf.trace.CtfTrace
+import com.efficios.jabberwocky.ctf.trace.ExtractedCtfTestTrace
+import com.efficios.jabberwocky.ctf.trace.event.CtfTraceEvent
+import com.efficios.jabberwocky.project.TraceProject
+import com.efficios.jabberwocky.tests.JavaFXTestBase
+import com.efficios.jabberwocky.trace.event.TraceEvent
+import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.lttng.scope.ttt.ctf.CtfTestTrace
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Test running several analyses at once through the [StateSystemAnalysisPipeline].
+ */
+class CtfStateSystemAnalysisPipelineTest : JavaFXTestBase() {
+
+    companion object {
+        private lateinit var ETT1: ExtractedCtfTestTrace
+        private lateinit var ETT2: ExtractedCtfTestTrace
+
+        @BeforeAll
+        @JvmStatic
+        fun setupClass() {
+            ETT1 = ExtractedCtfTestTrace(CtfTestTrace.KERNEL)
+            ETT2 = ExtractedCtfTestTrace(CtfTestTrace.TRACE2)
+        }
+
+        @AfterAll
+        @JvmStatic
+        fun teardownClass() {
+            ETT1.close()
+            ETT2.close()
+        }
+
+        private val projectName = "Test-pipeline-project"
+        private val attribName = "count"
+    }
+
+    private lateinit var projectPath: Path
+    private lateinit var project: TraceProject<CtfTraceEvent, CtfTrace>
+
+    private lateinit var results: Map<StateSystemAnalysis, IStateSystemReader>
+
+    @BeforeEach
+    fun setup() {
+        projectPath = Files.createTempDirectory(projectName)
+        project = TraceProject(projectName, projectPath, listOf(TraceCollection(listOf(ETT1.trace, ETT2.trace))))
+
+        results = StateSystemAnalysisPipeline.execute(project, listOf(AllTracesAnalysis, FirstTraceAnalysis))
+    }
+
+    @AfterEach
+    fun cleanup() {
+        results.values.forEach { it.dispose() }
+        projectPath.toFile().deleteRecursively()
+    }
+
+    private abstract class CountingAnalysis : StateSystemAnalysis() {
+
+        override val providerVersion = 0
+
+        override fun appliesTo(project: TraceProject<*, *>) = true
+
+        override fun canExecute(project: TraceProject<*, *>) = true
+
+        override fun handleEvent(ss: IStateSystemWriter, event: TraceEvent, trackedState: Array<Any>?) {
+            val quark = ss.getQuarkAbsoluteAndAdd(attribName)
+            ss.incrementAttribute(event.timestamp, quark)
+        }
+    }
+
+    private object AllTracesAnalysis : CountingAnalysis() {
+        override fun filterTraces(project: TraceProject<*, *>): TraceCollection<*, *> =
+                TraceCollection(project.traceCollections.flatMap { it.traces })
+    }
+
+    private object FirstTraceAnalysis : CountingAnalysis() {
+        override fun filterTraces(project: TraceProject<*, *>): TraceCollection<*, *> =
+                TraceCollection(listOf(project.traceCollections.first().traces.first()))
+    }
+
+    /** Count the events of each trace in a separate attribute, building each trace separately. */
+    private object PerTraceAnalysis : CountingAnalysis() {
+        override val buildPerTrace = true
+
+        override fun filterTraces(project: TraceProject<*, *>): TraceCollection<*, *> =
+                TraceCollection(project.traceCollections.flatMap { it.traces })
+
+        override fun handleEvent(ss: IStateSystemWriter, event: TraceEvent, trackedState: Array<Any>?) {
+            val quark = ss.getQuarkAbsoluteAndAdd(event.trace.name, attribName)
+            ss.incrementAttribute(event.timestamp, quark)
+        }
+    }
+
+    /** Count all events, building the history in time slices. */
+    private object TimeSlicedAnalysis : CountingAnalysis() {
+        override val buildTimeSliced = true
+
+        override fun filterTraces(project: TraceProject<*, *>): TraceCollection<*, *> =
+                TraceCollection(project.traceCollections.flatMap { it.traces })
+    }
+
+    /** Count all events, with a lookbehind covering the whole project for partial ranges. */
+    private object RangeAnalysis : CountingAnalysis() {
+        override val rangeLookbehind = Long.MAX_VALUE
+
+        override fun filterTraces(project: TraceProject<*, *>): TraceCollection<*, *> =
+                TraceCollection(project.traceCollections.flatMap { it.traces })
+    }
+
+    private fun IStateSystemReader.finalCount(vararg path: String): Int {
+        val quark = getQuarkAbsolute(*path, attribName)
+        return (querySingleState(currentEndTime, quark).stateValue as IntegerStateValue).value
+    }
+
+    @Test
+    fun testResults() {
+        assertEquals(2, results.size)
+        assertEquals(CtfTestTrace.KERNEL.nbEvents + CtfTestTrace.TRACE2.nbEvents, results.getValue(AllTracesAnalysis).finalCount())
+        assertEquals(CtfTestTrace.KERNEL.nbEvents, results.getValue(FirstTraceAnalysis).finalCount())
+    }
+
+    @Test
+    fun testReopen() {
+        /* The history files now exist, executing again should simply reopen them. */
+        results.values.forEach { it.dispose() }
+        results = mapOf(FirstTraceAnalysis to FirstTraceAnalysis.execute(project),
+                AllTracesAnalysis to AllTracesAnalysis.execute(project))
+
+        assertEquals(CtfTestTrace.KERNEL.nbEvents, results.getValue(FirstTraceAnalysis).finalCount())
+        assertEquals(CtfTestTrace.KERNEL.nbEvents + CtfTestTrace.TRACE2.nbEvents, results.getValue(AllTracesAnalysis).finalCount())
+    }
+
+    @Test
+    fun testTimeSliced() {
+        val ss = TimeSlicedAnalysis.execute(project)
+        try {
+            val reference = results.getValue(AllTracesAnalysis)
+            assertEquals(reference.startTime, ss.startTime)
+            assertEquals(reference.currentEndTime, ss.currentEndTime)
+
+            /* Results at any point should be the same as with the history built in one go. */
+            val quark = ss.getQuarkAbsolute(attribName)
+            val refQuark = reference.getQuarkAbsolute(attribName)
+            val step = (ss.currentEndTime - ss.startTime) / 50
+            (0..50).map { ss.startTime + it * step }.forEach {
+                val expected = reference.querySingleState(it, refQuark)
+                val actual = ss.querySingleState(it, quark)
+                assertEquals(expected.stateValue, actual.stateValue)
+                assertEquals(expected.start, actual.start)
+                assertEquals(expected.end, actual.end)
+            }
+        } finally {
+            ss.dispose()
+        }
+    }
+
+    @Test
+    fun testRange() {
+        val reference = results.getValue(AllTracesAnalysis)
+        val refQuark = reference.getQuarkAbsolute(attribName)
+        val fullRange = project.fullRange
+        val range = TimeRange.of(fullRange.startTime + fullRange.duration / 4, fullRange.startTime + fullRange.duration / 2)
+
+        val ss = RangeAnalysis.execute(project, range)
+        try {
+            assertEquals(range.startTime, ss.startTime)
+            assertEquals(range.endTime, ss.currentEndTime)
+
+            /* The lookbehind covers the whole project, so the counts should be the same as the full history's. */
+            val quark = ss.getQuarkAbsolute(attribName)
+            listOf(range.startTime, range.startTime + range.duration / 2, range.endTime).forEach {
+                assertEquals(reference.querySingleState(it, refQuark).stateValue, ss.querySingleState(it, quark).stateValue)
+            }
+        } finally {
+            ss.dispose()
+        }
+
+        /* A range contained in the previous one should re-use its history. */
+        val subRange = TimeRange.of(range.startTime + 1, range.endTime - 1)
+        val subSS = RangeAnalysis.execute(project, subRange)
+        try {
+            assertEquals(range.startTime, subSS.startTime)
+            assertEquals(range.endTime, subSS.currentEndTime)
+        } finally {
+            subSS.dispose()
+        }
+    }
+
+    @Test
+    fun testRangeFiles() {
+        val fullRange = project.fullRange
+        val range1 = TimeRange.of(fullRange.startTime + fullRange.duration / 4, fullRange.startTime + fullRange.duration / 2)
+        val range2 = TimeRange.of(fullRange.startTime + fullRange.duration * 3 / 8, fullRange.startTime + fullRange.duration * 3 / 4)
+
+        fun historyFiles() = Files.newDirectoryStream(projectPath.resolve(IAnalysis.ANALYSES_DIRECTORY)).use { paths ->
+            paths.map { it.fileName.toString() }.filter { it.startsWith(RangeAnalysis.javaClass.toString()) }
+        }
+
+        /* Only the history of the range gets created, not the one of the whole project */
+        val ss1 = RangeAnalysis.execute(project, range1)
+        assertEquals(1, historyFiles().size)
+
+        /* An overlapping range builds their union, but the first history is still in use */
+        val ss2 = RangeAnalysis.execute(project, range2)
+        try {
+            assertEquals(range1.startTime, ss2.startTime)
+            assertEquals(range2.endTime, ss2.currentEndTime)
+            assertEquals(2, historyFiles().size)
+            ss1.querySingleState(range1.endTime, ss1.getQuarkAbsolute(attribName))
+        } finally {
+            ss1.dispose()
+            ss2.dispose()
+        }
+
+        /* Once it is not used anymore, the first history gets deleted */
+        RangeAnalysis.execute(project, range2).dispose()
+        assertEquals(1, historyFiles().size)
+    }
+
+    @Test
+    fun testPerTrace() {
+        val ss = PerTraceAnalysis.execute(project)
+        try {
+            assertEquals(4, ss.nbAttributes)
+            assertEquals(CtfTestTrace.KERNEL.nbEvents, ss.finalCount(ETT1.trace.name))
+            assertEquals(CtfTestTrace.TRACE2.nbEvents, ss.finalCount(ETT2.trace.name))
+        } finally {
+            ss.dispose()
+        }
+    }
+}
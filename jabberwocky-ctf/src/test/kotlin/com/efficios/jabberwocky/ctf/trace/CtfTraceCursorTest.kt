@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package com.efficios.jabberwocky.ctf.trace
+
+import com.efficios.jabberwocky.collection.TraceCollection
+import com.efficios.jabberwocky.trace.TraceCursor
+import com.efficios.jabberwocky.trace.event.TraceEvent
+import org.junit.jupiter.api.AfterAll
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.BeforeAll
+import org.junit.jupiter.api.Test
+import org.lttng.scope.ttt.ctf.CtfTestTrace
+
+/**
+ * Tests for the cursors of [CtfTrace], which should return the same events as
+ * the iterators.
+ */
+class CtfTraceCursorTest {
+
+    companion object {
+        private lateinit var ETT1: ExtractedCtfTestTrace
+        private lateinit var ETT2: ExtractedCtfTestTrace
+
+        @BeforeAll
+        @JvmStatic
+        fun setupClass() {
+            ETT1 = ExtractedCtfTestTrace(CtfTestTrace.KERNEL)
+            ETT2 = ExtractedCtfTestTrace(CtfTestTrace.TRACE2)
+        }
+
+        @AfterAll
+        @JvmStatic
+        fun teardownClass() {
+            ETT1.close()
+            ETT2.close()
+        }
+
+        private const val NB_COMPARED_EVENTS = 10_000
+    }
+
+    private fun assertSameEvent(expected: TraceEvent, actual: TraceEvent) {
+        assertEquals(expected.timestamp, actual.timestamp)
+        assertEquals(expected.cpu, actual.cpu)
+        assertEquals(expected.eventName, actual.eventName)
+        assertEquals(expected.fields, actual.fields)
+    }
+
+    @Test
+    fun testSameEventsAsIterator() {
+        val trace = ETT1.trace
+        trace.iterator().use { iter ->
+            trace.cursor().use { cursor ->
+                repeat(NB_COMPARED_EVENTS) {
+                    assertTrue(cursor.advance())
+                    assertSameEvent(iter.next(), cursor.event)
+                }
+            }
+        }
+    }
+
+    @Test
+    fun testReadAll() {
+        var count = 0
+        ETT2.trace.cursor().use {
+            while (it.advance()) count++
+            assertFalse(it.advance())
+        }
+        assertEquals(CtfTestTrace.TRACE2.nbEvents, count)
+    }
+
+    @Test
+    fun testSeek() {
+        val trace = ETT1.trace
+        val target = trace.iterator().use { iter ->
+            repeat(NB_COMPARED_EVENTS) { iter.next() }
+            iter.next()
+        }
+
+        trace.cursor().use { cursor ->
+            cursor.seek(target.timestamp)
+            assertTrue(cursor.advance())
+            assertEquals(target.timestamp, cursor.event.timestamp)
+        }
+    }
+
+    private fun readEvents(cursor: TraceCursor<TraceEvent>): List<Pair<Long, String>> {
+        val events = mutableListOf<Pair<Long, String>>()
+        cursor.use {
+            while (it.advance()) {
+                val event = it.event
+                events.add(event.timestamp to event.eventName)
+            }
+        }
+        return events
+    }
+
+    @Test
+    fun testFilteredCursor() {
+        val trace = ETT1.trace
+        val wantedEvents = setOf("sched_switch", "sched_wakeup", "irq_handler_entry")
+
+        val expected = readEvents(trace.cursor()).filter { it.second in wantedEvents }
+        assertTrue(expected.isNotEmpty())
+        assertEquals(expected, readEvents(trace.cursor { it in wantedEvents }))
+    }
+
+    @Test
+    fun testFilteredCursorWithEventTypeIndex() {
+        val trace = ETT2.trace
+        val allEvents = readEvents(trace.cursor())
+        val rareEvent = allEvents.groupingBy { it.second }.eachCount().minBy { it.value }!!.key
+
+        trace.indexEventTypes()
+        assertEquals(allEvents.filter { it.second == rareEvent }, readEvents(trace.cursor { it == rareEvent }))
+        assertEquals(allEvents, readEvents(trace.cursor()))
+    }
+
+    @Test
+    fun testCollectionCursor() {
+        val collection = TraceCollection(listOf(ETT1.trace, ETT2.trace))
+        collection.iterator().use { iter ->
+            collection.cursor().use { cursor ->
+                var previousTimestamp = Long.MIN_VALUE
+                repeat(NB_COMPARED_EVENTS) {
+                    assertTrue(cursor.advance())
+                    val event = cursor.event
+                    assertTrue(event.timestamp >= previousTimestamp)
+                    assertEquals(iter.next().timestamp, event.timestamp)
+                    previousTimestamp = event.timestamp
+                }
+            }
+        }
+    }
+}
@@ -14,8 +14,7 @@ import com.efficios.jabberwocky.trace.TraceIteratorTestBase
 import com.efficios.jabberwocky.trace.event.FieldValue
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.AfterAll
-import org.junit.jupiter.api.Assertions.assertNotNull
-import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.BeforeAll
 import org.junit.jupiter.api.Test
 import org.lttng.scope.ttt.ctf.CtfTestTrace
@@ -38,6 +37,8 @@ class CtfTraceIteratorTest : TraceIteratorTestBase() {
         }
 
         private const val TRACE_NB_EVENTS = 595641
+        private const val NB_COMPARED_EVENTS = 20_000
+        private const val NB_COPIED_POSITIONS = 50
     }
 
     override val trace = ETT.trace
@@ -88,24 +89,72 @@ class CtfTraceIteratorTest : TraceIteratorTestBase() {
 
     override val timestampAfterEnd = lastEvent.timestamp + 100
 
+    /**
+     * Reading backwards should return exactly the events read forwards, in
+     * reverse order, including across packet boundaries.
+     */
     @Test
-    fun testBackwardsCache() {
-        with(iterator as CtfTraceIterator) {
+    fun testPreviousSameAsNext() {
+        with(iterator) {
             seek(middleEvent.timestamp)
-            assertNull(cacheIterator)
+            val forwardEvents = (1..NB_COMPARED_EVENTS).map { next() }
+            val backwardEvents = (1..NB_COMPARED_EVENTS).map { previous() }
+            assertThat(backwardEvents).isEqualTo(forwardEvents.reversed())
+            assertEquals(middleEvent, next())
+        }
+    }
 
-            previous()
-            val iter = cacheIterator!!
-            assertNotNull(iter)
+    /**
+     * Read the whole trace backwards, starting from after the end.
+     */
+    @Test
+    fun testReadAllBackwards() {
+        with(iterator) {
+            seek(timestampAfterEnd)
+            var count = 0
+            var previousTimestamp = Long.MAX_VALUE
+            while (hasPrevious()) {
+                val event = previous()
+                assertThat(event.timestamp).isLessThanOrEqualTo(previousTimestamp)
+                previousTimestamp = event.timestamp
+                count++
+            }
+            assertEquals(TRACE_NB_EVENTS, count)
+            assertEquals(event1, next())
+        }
+    }
 
-            /* Exhaust the iterator and see how many events we had in cache */
-            var i = 0
-            while (iter.hasPrevious()) {
-                previous()
-                i++
+    /**
+     * A copy should be on the same event as the original iterator, even when
+     * the events before it have the same timestamp. In this trace, each lost
+     * event has the timestamp of the last event of its packet.
+     */
+    @Test
+    fun testCopySameTimestamp() {
+        ExtractedCtfTestTrace(CtfTestTrace.HELLO_LOST).use { ett ->
+            val events = ett.trace.iterator().use { it.asSequence().toList() }
+            val positions = (1 until events.size)
+                    .filter { events[it].timestamp == events[it - 1].timestamp }
+                    .take(NB_COPIED_POSITIONS)
+            assertThat(positions).isNotEmpty
+
+            ett.trace.iterator().use { iter ->
+                var index = 0
+                positions.forEach { position ->
+                    while (index < position) {
+                        iter.next()
+                        index++
+                    }
+                    iter.copy().use { copy ->
+                        assertEquals(events[position], copy.next(), "Position $position")
+                        if (position + 1 < events.size) {
+                            assertEquals(events[position + 1], copy.next())
+                        }
+                    }
+                    assertEquals(events[position], iter.next())
+                    index++
+                }
             }
-            // TODO Check the actual packet start times and test against the exact value.
-            assertThat(i).isLessThan(5000).withFailMessage("Number of events in cache")
         }
     }
 }
@@ -9,6 +9,7 @@
 
 package com.efficios.jabberwocky.ctf.trace
 
+import com.google.common.collect.Iterators
 import org.junit.jupiter.api.AfterAll
 import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.BeforeAll
@@ -42,4 +43,17 @@ class CtfTraceTest {
         assertEquals("trace2", ETT2.trace.name)
     }
 
+    /**
+     * The start and end times found using the packet index should be the
+     * timestamps of the first and last events of the trace.
+     */
+    @Test
+    fun testStartEndTimes() {
+        listOf(ETT1.trace, ETT2.trace).forEach { trace ->
+            val (first, last) = trace.iterator().use { it.next().timestamp to Iterators.getLast(it).timestamp }
+            assertEquals(first, trace.startTime)
+            assertEquals(last, trace.endTime)
+        }
+    }
+
 }
\ No newline at end of file
@@ -10,8 +10,7 @@
 package com.efficios.jabberwocky.ctf.trace.event
 
 import com.efficios.jabberwocky.ctf.trace.ExtractedCtfTestTrace
-import com.efficios.jabberwocky.trace.event.FieldValue.ArrayValue
-import com.efficios.jabberwocky.trace.event.FieldValue.IntegerValue
+import com.efficios.jabberwocky.trace.event.FieldValue.ByteArrayValue
 import org.junit.jupiter.api.AfterAll
 import org.junit.jupiter.api.Assertions.assertArrayEquals
 import org.junit.jupiter.api.Assertions.assertEquals
@@ -73,10 +72,9 @@ class CtfTmfEventFieldSignExtensionTest {
 
             /* Retrieve the event's field called "build_id" */
             val event = iter.next()
-            val arrayValue = event.fields["build_id"]?.asType<ArrayValue<IntegerValue>>()!!
+            val arrayValue = event.fields["build_id"]?.asType<ByteArrayValue>()!!
             val values = (0 until arrayValue.size)
                     .map { arrayValue.getElement(it) }
-                    .map { it.value }
                     .toLongArray()
 
             assertArrayEquals(expectedValues, values)
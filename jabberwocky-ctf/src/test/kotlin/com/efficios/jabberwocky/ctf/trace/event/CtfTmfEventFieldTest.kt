@@ -13,8 +13,7 @@
 
 package com.efficios.jabberwocky.ctf.trace.event
 
-import com.efficios.jabberwocky.trace.event.FieldValue.ArrayValue
-import com.efficios.jabberwocky.trace.event.FieldValue.IntegerValue
+import com.efficios.jabberwocky.trace.event.FieldValue.ByteArrayValue
 import org.eclipse.tracecompass.ctf.core.CTFException
 import org.eclipse.tracecompass.ctf.core.event.io.BitBuffer
 import org.eclipse.tracecompass.ctf.core.event.types.*
@@ -222,11 +221,9 @@ class CtfTmfEventFieldTest {
     @Test
     fun testParseFieldSequenceValue() {
         val fieldDef = fixture.lookupDefinition(SEQ)
-        @SuppressWarnings("unchecked")
-        val result = CtfTraceEventFieldParser.parseField(fieldDef).asType<ArrayValue<IntegerValue>>()!!
+        val result = CtfTraceEventFieldParser.parseField(fieldDef).asType<ByteArrayValue>()!!
         val values = (0 until result.size)
                 .map { result.getElement(it) }
-                .map { it.value }
                 .toLongArray()
         val expected = longArrayOf(2, 2)
         assertArrayEquals(expected, values)
@@ -118,6 +118,36 @@ class CtfTmfEventTest {
         assertNotNull(result.value)
     }
 
+    /**
+     * Fields looked up one at a time should be the same as the ones obtained
+     * when going through all of them.
+     */
+    @Test
+    fun testFieldLookups() {
+        val event = ETT.trace.iterator().use { iter ->
+            iter.next()
+            iter.next()
+        }
+        val lookedUp = fixture.fields.keys.associate { it to event.fields[it] }
+        assertEquals(fixture.fields, lookedUp)
+        assertEquals(fixture.fields.size, event.fields.size)
+        assertNull(event.fields["not_a_field"])
+        assertNull(event.fields["context.not_a_field"])
+    }
+
+    /**
+     * Test the primitive field accessors, which should give the same values as
+     * the field map.
+     */
+    @Test
+    fun testGetPrimitiveFields() {
+        val expected = fixture.fields[VALID_FIELD]?.asType<IntegerValue>()!!
+        assertEquals(expected.value, fixture.getLongField(VALID_FIELD))
+        assertThrows(IllegalArgumentException::class.java) { fixture.getLongField("not_a_field") }
+        assertThrows(IllegalArgumentException::class.java) { fixture.getStringField(VALID_FIELD) }
+        assertThrows(IllegalArgumentException::class.java) { fixture.getBytesField(VALID_FIELD) }
+    }
+
     /**
      * Run the long getTimestamp() method test.
      */
@@ -10,7 +10,6 @@
 package com.efficios.jabberwocky.lttng.kernel.views.timegraph.threads;
 
 import ca.polymtl.dorsal.libdelorean.IStateSystemReader;
-import ca.polymtl.dorsal.libdelorean.StateSystemUtils;
 import ca.polymtl.dorsal.libdelorean.exceptions.AttributeNotFoundException;
 import ca.polymtl.dorsal.libdelorean.exceptions.StateSystemDisposedException;
 import ca.polymtl.dorsal.libdelorean.interval.StateInterval;
@@ -32,8 +31,15 @@ import com.google.common.collect.Iterables;
 import com.google.common.primitives.Ints;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.FutureTask;
 
 import static java.util.Objects.requireNonNull;
@@ -56,18 +62,33 @@ public class ThreadsModelArrowProviderCpus extends StateSystemModelArrowProvider
             return TimeGraphArrowRender.EMPTY_RENDER;
         }
 
+        long start = Math.max(timeRange.getStartTime(), ss.getStartTime());
+        long end = Math.min(timeRange.getEndTime(), ss.getCurrentEndTime());
+        if (start > end) {
+            return TimeGraphArrowRender.EMPTY_RENDER;
+        }
+
         List<Integer> threadLineQuarks = ss.getQuarks(Attributes.CPUS, "*", Attributes.CURRENT_THREAD); //$NON-NLS-1$
         List<List<TimeGraphArrow>> allArrows = new LinkedList<>();
         try {
+            /* Get the intervals of all the CPUs in one range query */
+            Map<Integer, List<StateInterval>> intervalsPerQuark = new HashMap<>();
+            Iterator<StateInterval> iter = ss.queryHistoryRange(new HashSet<>(threadLineQuarks), start, end);
+            while (iter.hasNext()) {
+                StateInterval interval = iter.next();
+                intervalsPerQuark.computeIfAbsent(interval.getAttribute(), q -> new ArrayList<>()).add(interval);
+            }
+
             for (int threadLineQuark : threadLineQuarks) {
-                List<StateInterval> intervals = StateSystemUtils.queryHistoryRange(ss, threadLineQuark, timeRange.getStartTime(), timeRange.getEndTime(), 1, task);
                 if (task != null && task.isCancelled()) {
                     return TimeGraphArrowRender.EMPTY_RENDER;
                 }
+                List<StateInterval> intervals = intervalsPerQuark.getOrDefault(threadLineQuark, Collections.emptyList());
                 if (intervals.size() < 2) {
                     /* Not enough states to establish a timeline */
                     continue;
                 }
+                intervals.sort(Comparator.comparingLong(StateInterval::getStart));
 
                 String cpuName = ss.getAttributeName(ss.getParentAttributeQuark(threadLineQuark));
                 Integer cpu = Ints.tryParse(cpuName);
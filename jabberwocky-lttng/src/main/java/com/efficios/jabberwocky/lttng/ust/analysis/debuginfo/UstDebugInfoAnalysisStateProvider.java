@@ -13,7 +13,6 @@ import ca.polymtl.dorsal.libdelorean.IStateSystemWriter;
 import ca.polymtl.dorsal.libdelorean.exceptions.AttributeNotFoundException;
 import ca.polymtl.dorsal.libdelorean.statevalue.StateValue;
 import com.efficios.jabberwocky.lttng.ust.trace.layout.LttngUst28EventLayout;
-import com.efficios.jabberwocky.trace.event.FieldValue.ArrayValue;
 import com.efficios.jabberwocky.trace.event.FieldValue.IntegerValue;
 import com.efficios.jabberwocky.trace.event.FieldValue.StringValue;
 import com.efficios.jabberwocky.trace.event.TraceEvent;
@@ -363,16 +362,16 @@ class UstDebugInfoAnalysisStateProvider {
      */
     private void handleBuildId(LttngUst28EventLayout layout, TraceEvent event, final Long vpid,
                                final IStateSystemWriter ss, boolean statedump) {
-        ArrayValue<IntegerValue> buildIdArrayField = (ArrayValue<IntegerValue>) event.getFields().get(layout.fieldBuildId());
+        boolean hasBuildIdField = event.getFields().containsKey(layout.fieldBuildId());
         IntegerValue baddrField = (IntegerValue) event.getFields().get(layout.fieldBaddr());
 
-        if (buildIdArrayField == null || baddrField == null) {
+        if (!hasBuildIdField || baddrField == null) {
             // TODO Restore logging
 //            LOGGER.warning(() -> "[UstDebugInfoStateProvider:InvalidBuildIdEvent] event=" + event.toString()); //$NON-NLS-1$
             return;
         }
 
-        IntegerValue[] buildIdArray = buildIdArrayField.getElements();
+        byte[] buildIdArray = event.getBytesField(layout.fieldBuildId());
         long baddr = baddrField.getValue();
 
         /*
@@ -380,7 +379,7 @@ class UstDebugInfoAnalysisStateProvider {
          * Use lower-case encoding, since this is how eu-readelf
          * displays it.
          */
-        String buildId = requireNonNull(BaseEncoding.base16().encode(integerValueArrayToByteArray(buildIdArray)).toLowerCase());
+        String buildId = requireNonNull(BaseEncoding.base16().encode(buildIdArray).toLowerCase());
 
         long ts = getBinInfoTimeStamp(event, vpid, statedump);
         PendingBinInfo p = retrievePendingBinInfo(vpid, baddr);
@@ -482,15 +481,4 @@ class UstDebugInfoAnalysisStateProvider {
 
         return event.getTimestamp();
     }
-
-    /**
-     * Until we can use Java 8 IntStream, see
-     */
-    private static byte[] integerValueArrayToByteArray(IntegerValue[] array) {
-        byte[] ret = new byte[array.length];
-        for (int i = 0; i < array.length; i++) {
-            ret[i] = (byte) array[i].getValue();
-        }
-        return ret;
-    }
 }
@@ -21,6 +21,7 @@ import com.efficios.jabberwocky.lttng.kernel.trace.getKernelEventLayout
 import com.efficios.jabberwocky.lttng.kernel.trace.isKernelTrace
 import com.efficios.jabberwocky.lttng.kernel.trace.layout.LttngKernelEventLayout
 import com.efficios.jabberwocky.project.TraceProject
+import com.efficios.jabberwocky.trace.Trace
 import com.efficios.jabberwocky.trace.event.TraceEvent
 
 /**
@@ -74,6 +75,9 @@ object KernelAnalysis : StateSystemAnalysis() {
 
     override val providerVersion = VERSION
 
+    /* Kernel traces of a project come from different machines, their states can be built separately. */
+    override val buildPerTrace = true
+
     override fun filterTraces(project: TraceProject<*, *>): TraceCollection<*, *> =
             project.traceCollections
                     .flatMap { collection -> collection.traces }
@@ -81,6 +85,15 @@ object KernelAnalysis : StateSystemAnalysis() {
                     .filter { it.isKernelTrace() }
                     .let { TraceCollection(it) }
 
+    /* Only the events that have a handler cause state changes, the others do not need to be read. */
+    override fun eventNameFilter(trace: Trace<*>): ((String) -> Boolean)? {
+        val layout = (trace as? CtfTrace)?.getKernelEventLayout() ?: return null
+        val defs = KernelAnalysisEventDefinitions.getDefsFromLayout(layout)
+        return { eventName ->
+            defs.eventNames.containsKey(eventName) || isSyscallEntry(layout, eventName) || isSyscallExit(layout, eventName)
+        }
+    }
+
     override fun handleEvent(ss: IStateSystemWriter, event: TraceEvent, trackedState: Array<Any>?) {
         val trace = event.trace
         if (trace !is CtfTrace || !trace.isKernelTrace()) {
@@ -13,7 +13,6 @@ package com.efficios.jabberwocky.lttng.kernel.analysis.os.handlers
 import ca.polymtl.dorsal.libdelorean.IStateSystemWriter
 import ca.polymtl.dorsal.libdelorean.statevalue.StateValue
 import com.efficios.jabberwocky.lttng.kernel.trace.layout.LttngKernelEventLayout
-import com.efficios.jabberwocky.trace.event.FieldValue.IntegerValue
 import com.efficios.jabberwocky.trace.event.TraceEvent
 
 class IPIExitHandler(layout: LttngKernelEventLayout) : KernelEventHandler(layout) {
@@ -21,12 +20,12 @@ class IPIExitHandler(layout: LttngKernelEventLayout) : KernelEventHandler(layout
     override fun handleEvent(ss: IStateSystemWriter, event: TraceEvent) {
         val cpu = event.cpu
         val timestamp = event.timestamp
-        val irqId = (event.fields[layout.fieldIPIVector] as IntegerValue).value
+        val irqId = event.getLongField(layout.fieldIPIVector)
 
         /* Put this IRQ back to inactive in the resource tree */
         ss.modifyAttribute(timestamp,
                 StateValue.nullValue(),
-                ss.getQuarkRelativeAndAdd(ss.getNodeIRQs(cpu), irqId.toString()))
+                ss.getChildQuarkAndAdd(ss.getNodeIRQs(cpu), irqId.toInt()))
 
         /* Set the previous process back to running */
         ss.getCurrentThreadNode(cpu)?.let { ss.setProcessToRunning(timestamp, it) }
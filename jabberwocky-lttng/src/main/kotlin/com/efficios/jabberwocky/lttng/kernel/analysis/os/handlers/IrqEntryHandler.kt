@@ -14,7 +14,6 @@ import ca.polymtl.dorsal.libdelorean.IStateSystemWriter
 import ca.polymtl.dorsal.libdelorean.statevalue.StateValue
 import com.efficios.jabberwocky.lttng.kernel.analysis.os.StateValues
 import com.efficios.jabberwocky.lttng.kernel.trace.layout.LttngKernelEventLayout
-import com.efficios.jabberwocky.trace.event.FieldValue.IntegerValue
 import com.efficios.jabberwocky.trace.event.TraceEvent
 
 class IrqEntryHandler(layout: LttngKernelEventLayout) : KernelEventHandler(layout) {
@@ -22,14 +21,14 @@ class IrqEntryHandler(layout: LttngKernelEventLayout) : KernelEventHandler(layou
     override fun handleEvent(ss: IStateSystemWriter, event: TraceEvent) {
         val cpu = event.cpu
         val timestamp = event.timestamp
-        val irqId = (event.fields[layout.fieldIrq] as IntegerValue).value
+        val irqId = event.getLongField(layout.fieldIrq)
 
         /*
          * Mark this IRQ as active in the resource tree.
          */
         ss.modifyAttribute(timestamp,
                 StateValue.newValueInt(StateValues.CPU_STATUS_IRQ),
-                ss.getQuarkRelativeAndAdd(ss.getNodeIRQs(cpu), irqId.toString()))
+                ss.getChildQuarkAndAdd(ss.getNodeIRQs(cpu), irqId.toInt()))
 
         /* Change the status of the running process to interrupted */
         ss.getCurrentThreadNode(cpu)?.let {
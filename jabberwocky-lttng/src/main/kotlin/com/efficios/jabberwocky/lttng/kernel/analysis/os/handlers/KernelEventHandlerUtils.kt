@@ -10,6 +10,7 @@
 
 package com.efficios.jabberwocky.lttng.kernel.analysis.os.handlers
 
+import ca.polymtl.dorsal.libdelorean.IStateSystemQuarkResolver
 import ca.polymtl.dorsal.libdelorean.IStateSystemWriter
 import ca.polymtl.dorsal.libdelorean.statevalue.IntegerStateValue
 import ca.polymtl.dorsal.libdelorean.statevalue.StateValue
@@ -25,7 +26,7 @@ import com.efficios.jabberwocky.lttng.kernel.analysis.os.StateValues
  * Gets the CPU quark of the given CPU.
  */
 fun IStateSystemWriter.getCPUNode(cpuNumber: Int): Int =
-        getQuarkRelativeAndAdd(getNodeCPUs(), cpuNumber.toString())
+        getChildQuarkAndAdd(getNodeCPUs(), cpuNumber)
 
 /**
  * Get the node quark of the thread currently running on the given CPU.
@@ -36,10 +37,15 @@ fun IStateSystemWriter.getCurrentThreadNode(cpuNumber: Int): Int? {
      * Shortcut for the "current thread" attribute node. It requires
      * querying the current CPU's current thread.
      */
-    val quark = getQuarkRelativeAndAdd(getCPUNode(cpuNumber), Attributes.CURRENT_THREAD)
+    val quark = getChildQuarkAndAdd(getCPUNode(cpuNumber), Attributes.CURRENT_THREAD)
     val value = queryOngoingState(quark)
     val thread = (value as? IntegerStateValue)?.value ?: return null
-    return getQuarkRelativeAndAdd(getNodeThreads(), Attributes.buildThreadAttributeName(thread, cpuNumber))
+    /* Threads other than 0 are named after their TID, see Attributes.buildThreadAttributeName() */
+    return if (thread == 0) {
+        getChildQuarkAndAdd(getNodeThreads(), Attributes.buildThreadAttributeName(thread, cpuNumber)!!)
+    } else {
+        getChildQuarkAndAdd(getNodeThreads(), thread)
+    }
 }
 
 /**
@@ -49,7 +55,7 @@ fun IStateSystemWriter.getCurrentThreadNode(cpuNumber: Int): Int? {
  * mode state.
  */
 fun IStateSystemWriter.setProcessToRunning(timestamp: Long, currentThreadNode: Int) {
-    val quark = getQuarkRelativeAndAdd(currentThreadNode, Attributes.SYSTEM_CALL)
+    val quark = getChildQuarkAndAdd(currentThreadNode, Attributes.SYSTEM_CALL)
     val sv = if (queryOngoingState(quark).isNull) {
         /* We were in user mode before the interruption */
         StateValues.PROCESS_STATUS_RUN_USERMODE_VALUE
@@ -64,25 +70,25 @@ fun IStateSystemWriter.setProcessToRunning(timestamp: Long, currentThreadNode: I
  * Get the "IRQs" node for the given CPU.
  */
 fun IStateSystemWriter.getNodeIRQs(cpuNumber: Int): Int =
-        getQuarkAbsoluteAndAdd(Attributes.CPUS, Integer.toString(cpuNumber), Attributes.IRQS)
+        getChildQuarkAndAdd(getCPUNode(cpuNumber), Attributes.IRQS)
 
 /**
  * Get the "CPUs" node.
  */
 fun IStateSystemWriter.getNodeCPUs(): Int =
-        getQuarkAbsoluteAndAdd(Attributes.CPUS)
+        getChildQuarkAndAdd(IStateSystemQuarkResolver.ROOT_ATTRIBUTE, Attributes.CPUS)
 
 /**
  * Get the Soft IRQs node for the given CPU.
  */
 fun IStateSystemWriter.getNodeSoftIRQs(cpuNumber: Int): Int =
-        getQuarkAbsoluteAndAdd(Attributes.CPUS, Integer.toString(cpuNumber), Attributes.SOFT_IRQS)
+        getChildQuarkAndAdd(getCPUNode(cpuNumber), Attributes.SOFT_IRQS)
 
 /**
  * Get the "Threads" node.
  */
 fun IStateSystemWriter.getNodeThreads(): Int =
-        getQuarkAbsoluteAndAdd(Attributes.THREADS)
+        getChildQuarkAndAdd(IStateSystemQuarkResolver.ROOT_ATTRIBUTE, Attributes.THREADS)
 
 /**
  * Reset the CPU's status when it's coming out of an interruption.
@@ -115,7 +121,7 @@ fun IStateSystemWriter.cpuExitInterrupt(timestamp: Long, cpuNumber: Int) {
 private fun IStateSystemWriter.getCpuStatus(cpuQuark: Int): StateValue {
 
     /* Check if there is a IRQ running */
-    getQuarkRelativeAndAdd(cpuQuark, Attributes.IRQS)
+    getChildQuarkAndAdd(cpuQuark, Attributes.IRQS)
             .let { getSubAttributes(it, false) }
             .map { queryOngoingState(it) }
             .forEach {
@@ -125,7 +131,7 @@ private fun IStateSystemWriter.getCpuStatus(cpuQuark: Int): StateValue {
             }
 
     /* Check if there is a soft IRQ running */
-    getQuarkRelativeAndAdd(cpuQuark, Attributes.SOFT_IRQS)
+    getChildQuarkAndAdd(cpuQuark, Attributes.SOFT_IRQS)
             .let { getSubAttributes(it, false) }
             .map { queryOngoingState(it) }
             .forEach {
@@ -138,14 +144,14 @@ private fun IStateSystemWriter.getCpuStatus(cpuQuark: Int): StateValue {
      * Check if there is a thread running. If not, report IDLE. If there is,
      * report the running state of the thread (usermode or system call).
      */
-    val currentThreadState = getQuarkRelativeAndAdd(cpuQuark, Attributes.CURRENT_THREAD)
+    val currentThreadState = getChildQuarkAndAdd(cpuQuark, Attributes.CURRENT_THREAD)
             .let { queryOngoingState(it) } as? IntegerStateValue ?: return StateValue.nullValue()
 
     val tid = currentThreadState.value
     if (tid == 0) {
         return StateValues.CPU_STATUS_IDLE_VALUE
     }
-    val threadSystemCallQuark = getQuarkAbsoluteAndAdd(Attributes.THREADS, tid.toString(), Attributes.SYSTEM_CALL)
+    val threadSystemCallQuark = getChildQuarkAndAdd(getChildQuarkAndAdd(getNodeThreads(), tid), Attributes.SYSTEM_CALL)
     return if (queryOngoingState(threadSystemCallQuark).isNull) {
         StateValues.CPU_STATUS_RUN_USERMODE_VALUE
     } else {
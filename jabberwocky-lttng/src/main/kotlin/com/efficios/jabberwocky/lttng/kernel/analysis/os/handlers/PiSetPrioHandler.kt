@@ -14,15 +14,14 @@ import ca.polymtl.dorsal.libdelorean.IStateSystemWriter
 import ca.polymtl.dorsal.libdelorean.statevalue.StateValue
 import com.efficios.jabberwocky.lttng.kernel.analysis.os.Attributes
 import com.efficios.jabberwocky.lttng.kernel.trace.layout.LttngKernelEventLayout
-import com.efficios.jabberwocky.trace.event.FieldValue.IntegerValue
 import com.efficios.jabberwocky.trace.event.TraceEvent
 
 class PiSetPrioHandler(layout: LttngKernelEventLayout) : KernelEventHandler(layout) {
 
     override fun handleEvent(ss: IStateSystemWriter, event: TraceEvent) {
         val cpu = event.cpu
-        val tid = (event.fields[layout.fieldTid] as IntegerValue).value.toInt()
-        val prio = (event.fields[layout.fieldNewPrio] as IntegerValue).value.toInt()
+        val tid = event.getLongField(layout.fieldTid).toInt()
+        val prio = event.getLongField(layout.fieldNewPrio).toInt()
 
         val threadAttributeName = Attributes.buildThreadAttributeName(tid, cpu) ?: return
 
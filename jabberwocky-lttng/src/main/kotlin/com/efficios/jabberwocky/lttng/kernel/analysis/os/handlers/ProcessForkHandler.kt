@@ -15,8 +15,6 @@ import ca.polymtl.dorsal.libdelorean.statevalue.StateValue
 import com.efficios.jabberwocky.lttng.kernel.analysis.os.Attributes
 import com.efficios.jabberwocky.lttng.kernel.analysis.os.StateValues
 import com.efficios.jabberwocky.lttng.kernel.trace.layout.LttngKernelEventLayout
-import com.efficios.jabberwocky.trace.event.FieldValue.IntegerValue
-import com.efficios.jabberwocky.trace.event.FieldValue.StringValue
 import com.efficios.jabberwocky.trace.event.TraceEvent
 
 class ProcessForkHandler(layout: LttngKernelEventLayout) : KernelEventHandler(layout) {
@@ -25,9 +23,9 @@ class ProcessForkHandler(layout: LttngKernelEventLayout) : KernelEventHandler(la
         val cpu = event.cpu
         val timestamp = event.timestamp
 
-        val childProcessName = (event.fields[layout.fieldChildComm] as StringValue).value
-        val parentTid = (event.fields[layout.fieldParentTid] as IntegerValue).value.toInt()
-        val childTid = (event.fields[layout.fieldChildTid] as IntegerValue).value.toInt()
+        val childProcessName = event.getStringField(layout.fieldChildComm)
+        val parentTid = event.getLongField(layout.fieldParentTid).toInt()
+        val childTid = event.getLongField(layout.fieldChildTid).toInt()
 
         val parentThreadAttributeName = Attributes.buildThreadAttributeName(parentTid, cpu) ?: return
         val childThreadAttributeName = Attributes.buildThreadAttributeName(childTid, cpu) ?: return
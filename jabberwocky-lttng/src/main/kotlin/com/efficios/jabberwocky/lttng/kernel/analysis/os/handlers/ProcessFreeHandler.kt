@@ -13,14 +13,13 @@ package com.efficios.jabberwocky.lttng.kernel.analysis.os.handlers
 import ca.polymtl.dorsal.libdelorean.IStateSystemWriter
 import com.efficios.jabberwocky.lttng.kernel.analysis.os.Attributes
 import com.efficios.jabberwocky.lttng.kernel.trace.layout.LttngKernelEventLayout
-import com.efficios.jabberwocky.trace.event.FieldValue.IntegerValue
 import com.efficios.jabberwocky.trace.event.TraceEvent
 
 class ProcessFreeHandler(layout: LttngKernelEventLayout) : KernelEventHandler(layout) {
 
     override fun handleEvent(ss: IStateSystemWriter, event: TraceEvent) {
         val cpu = event.cpu
-        val tid = (event.fields[layout.fieldTid] as IntegerValue).value.toInt()
+        val tid = event.getLongField(layout.fieldTid).toInt()
 
         val threadAttributeName = Attributes.buildThreadAttributeName(tid, cpu) ?: return
 
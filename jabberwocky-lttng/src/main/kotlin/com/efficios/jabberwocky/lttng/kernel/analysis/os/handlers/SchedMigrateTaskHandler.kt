@@ -10,7 +10,6 @@
 package com.efficios.jabberwocky.lttng.kernel.analysis.os.handlers
 
 import ca.polymtl.dorsal.libdelorean.IStateSystemWriter
-import ca.polymtl.dorsal.libdelorean.statevalue.StateValue
 import com.efficios.jabberwocky.lttng.kernel.analysis.os.Attributes
 import com.efficios.jabberwocky.lttng.kernel.analysis.os.StateValues
 import com.efficios.jabberwocky.lttng.kernel.trace.layout.LttngKernelEventLayout
@@ -43,8 +42,8 @@ class SchedMigrateTaskHandler(layout: LttngKernelEventLayout) : KernelEventHandl
                 threadNode)
 
         /* Update the thread's running queue to the new one indicated by the event */
-        ss.modifyAttribute(t,
-                StateValue.newValueInt(destCpu),
+        ss.modifyAttributeInt(t,
+                destCpu,
                 ss.getQuarkRelativeAndAdd(threadNode, Attributes.CURRENT_CPU_RQ))
     }
 
@@ -16,8 +16,6 @@ import com.efficios.jabberwocky.lttng.kernel.analysis.os.Attributes
 import com.efficios.jabberwocky.lttng.kernel.analysis.os.LinuxValues
 import com.efficios.jabberwocky.lttng.kernel.analysis.os.StateValues
 import com.efficios.jabberwocky.lttng.kernel.trace.layout.LttngKernelEventLayout
-import com.efficios.jabberwocky.trace.event.FieldValue.IntegerValue
-import com.efficios.jabberwocky.trace.event.FieldValue.StringValue
 import com.efficios.jabberwocky.trace.event.TraceEvent
 
 class SchedSwitchHandler(layout: LttngKernelEventLayout) : KernelEventHandler(layout) {
@@ -26,13 +24,13 @@ class SchedSwitchHandler(layout: LttngKernelEventLayout) : KernelEventHandler(la
         val cpu = event.cpu
         val timestamp = event.timestamp
 
-        val prevProcessName = (event.fields[layout.fieldPrevComm] as StringValue).value
-        val prevTid = (event.fields[layout.fieldPrevTid] as IntegerValue).value.toInt()
-        val prevState = (event.fields[layout.fieldPrevState] as IntegerValue).value.toInt()
-        val prevPrio = (event.fields[layout.fieldPrevPrio] as IntegerValue).value.toInt()
-        val nextProcessName = (event.fields[layout.fieldNextComm] as StringValue).value
-        val nextTid = (event.fields[layout.fieldNextTid] as IntegerValue).value.toInt()
-        val nextPrio = (event.fields[layout.fieldNextPrio] as IntegerValue).value.toInt()
+        val prevProcessName = event.getStringField(layout.fieldPrevComm)
+        val prevTid = event.getLongField(layout.fieldPrevTid).toInt()
+        val prevState = event.getLongField(layout.fieldPrevState).toInt()
+        val prevPrio = event.getLongField(layout.fieldPrevPrio).toInt()
+        val nextProcessName = event.getStringField(layout.fieldNextComm)
+        val nextTid = event.getLongField(layout.fieldNextTid).toInt()
+        val nextPrio = event.getLongField(layout.fieldNextPrio).toInt()
 
         /* Will never return null since "cpu" is never null here. */
         val formerThreadAttributeName = Attributes.buildThreadAttributeName(prevTid, cpu)!!
@@ -56,8 +54,8 @@ class SchedSwitchHandler(layout: LttngKernelEventLayout) : KernelEventHandler(la
          * set if we've seen the previous sched_wakeup, but doesn't hurt to set
          * it here too.
          */
-        ss.modifyAttribute(timestamp,
-                StateValue.newValueInt(cpu),
+        ss.modifyAttributeInt(timestamp,
+                cpu,
                 ss.getQuarkRelativeAndAdd(newCurrentThreadNode, Attributes.CURRENT_CPU_RQ))
 
         /* Set the exec name of the former process */
@@ -119,19 +117,17 @@ private fun IStateSystemWriter.setOldProcessStatus(prevState: Int, formerThreadN
     }
             .let { sv -> modifyAttribute(timestamp, sv, formerThreadNode) }
 
-    val sv = if (staysOnRunQueue) {
+    val quark = getQuarkRelativeAndAdd(formerThreadNode, Attributes.CURRENT_CPU_RQ)
+    if (staysOnRunQueue) {
         /*
          * Set the thread's run queue. This will often be redundant with
          * previous events, but it may be the first time we see the
          * information too.
          */
-        StateValue.newValueInt(cpu)
+        modifyAttributeInt(timestamp, cpu, quark)
     } else {
-        StateValue.nullValue()
+        modifyAttributeNull(timestamp, quark)
     }
-    modifyAttribute(timestamp,
-            sv,
-            getQuarkRelativeAndAdd(formerThreadNode, Attributes.CURRENT_CPU_RQ))
 
 }
 
@@ -152,13 +148,13 @@ private fun IStateSystemWriter.setCpuStatus(nextTid: Int, newCurrentThreadNode:
 }
 
 private fun IStateSystemWriter.setCpuProcess(nextTid: Int, timestamp: Long, currentCPUNode: Int) =
-        modifyAttribute(timestamp,
-                StateValue.newValueInt(nextTid),
+        modifyAttributeInt(timestamp,
+                nextTid,
                 getQuarkRelativeAndAdd(currentCPUNode, Attributes.CURRENT_THREAD))
 
 private fun IStateSystemWriter.setProcessPrio(prio: Int, threadNode: Int, timestamp: Long) =
-        modifyAttribute(timestamp,
-                StateValue.newValueInt(prio),
+        modifyAttributeInt(timestamp,
+                prio,
                 getQuarkRelativeAndAdd(threadNode, Attributes.PRIO))
 
 private fun IStateSystemWriter.setProcessExecName(processName: String, threadNode: Int, timestamp: Long) =
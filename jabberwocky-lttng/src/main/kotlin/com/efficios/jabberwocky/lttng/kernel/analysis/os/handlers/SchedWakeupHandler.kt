@@ -12,11 +12,9 @@ package com.efficios.jabberwocky.lttng.kernel.analysis.os.handlers
 
 import ca.polymtl.dorsal.libdelorean.IStateSystemWriter
 import ca.polymtl.dorsal.libdelorean.statevalue.IntegerStateValue
-import ca.polymtl.dorsal.libdelorean.statevalue.StateValue
 import com.efficios.jabberwocky.lttng.kernel.analysis.os.Attributes
 import com.efficios.jabberwocky.lttng.kernel.analysis.os.StateValues
 import com.efficios.jabberwocky.lttng.kernel.trace.layout.LttngKernelEventLayout
-import com.efficios.jabberwocky.trace.event.FieldValue.IntegerValue
 import com.efficios.jabberwocky.trace.event.TraceEvent
 
 /**
@@ -32,9 +30,9 @@ class SchedWakeupHandler(layout: LttngKernelEventLayout) : KernelEventHandler(la
         val cpu = event.cpu
         val timestamp = event.timestamp
 
-        val tid = (event.fields[layout.fieldTid] as IntegerValue).value.toInt()
-        val prio = (event.fields[layout.fieldPrio] as IntegerValue).value.toInt()
-        val targetCpu = (event.fields[layout.fieldTargetCpu] as IntegerValue).value.toInt()
+        val tid = event.getLongField(layout.fieldTid).toInt()
+        val prio = event.getLongField(layout.fieldPrio).toInt()
+        val targetCpu = event.getLongField(layout.fieldTargetCpu).toInt()
 
         val threadAttributeName = Attributes.buildThreadAttributeName(tid, cpu) ?: return
         val threadNode = ss.getQuarkRelativeAndAdd(ss.getNodeThreads(), threadAttributeName)
@@ -53,16 +51,16 @@ class SchedWakeupHandler(layout: LttngKernelEventLayout) : KernelEventHandler(la
         }
 
         /* Set the thread's target run queue */
-        ss.modifyAttribute(timestamp,
-                StateValue.newValueInt(targetCpu),
+        ss.modifyAttributeInt(timestamp,
+                targetCpu,
                 ss.getQuarkRelativeAndAdd(threadNode, Attributes.CURRENT_CPU_RQ))
 
         /*
          * When a user changes a threads prio (e.g. with pthread_setschedparam),
          * it shows in ftrace with a sched_wakeup.
          */
-        ss.modifyAttribute(timestamp,
-                StateValue.newValueInt(prio),
+        ss.modifyAttributeInt(timestamp,
+                prio,
                 ss.getQuarkRelativeAndAdd(threadNode, Attributes.PRIO))
     }
 }
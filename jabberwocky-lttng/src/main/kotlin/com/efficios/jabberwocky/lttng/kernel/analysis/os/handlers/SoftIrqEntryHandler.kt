@@ -13,7 +13,6 @@ package com.efficios.jabberwocky.lttng.kernel.analysis.os.handlers
 import ca.polymtl.dorsal.libdelorean.IStateSystemWriter
 import com.efficios.jabberwocky.lttng.kernel.analysis.os.StateValues
 import com.efficios.jabberwocky.lttng.kernel.trace.layout.LttngKernelEventLayout
-import com.efficios.jabberwocky.trace.event.FieldValue.IntegerValue
 import com.efficios.jabberwocky.trace.event.TraceEvent
 
 class SoftIrqEntryHandler(layout: LttngKernelEventLayout) : KernelEventHandler(layout) {
@@ -22,7 +21,7 @@ class SoftIrqEntryHandler(layout: LttngKernelEventLayout) : KernelEventHandler(l
         val cpu = event.cpu
         val timestamp = event.timestamp
 
-        val softIrqId = (event.fields[layout.fieldVec] as IntegerValue).value.toInt()
+        val softIrqId = event.getLongField(layout.fieldVec).toInt()
 
         val cpuNode = ss.getCPUNode(cpu)
         val currentThreadNode = ss.getCurrentThreadNode(cpu)
@@ -30,7 +29,7 @@ class SoftIrqEntryHandler(layout: LttngKernelEventLayout) : KernelEventHandler(l
         /* Mark this SoftIRQ as active in the resource tree. */
         ss.modifyAttribute(timestamp,
                 StateValues.CPU_STATUS_SOFTIRQ_VALUE,
-                ss.getQuarkRelativeAndAdd(ss.getNodeSoftIRQs(cpu), softIrqId.toString()))
+                ss.getChildQuarkAndAdd(ss.getNodeSoftIRQs(cpu), softIrqId))
 
         /* Change the status of the running process to interrupted */
         currentThreadNode?.let {
@@ -15,7 +15,6 @@ import ca.polymtl.dorsal.libdelorean.statevalue.IntegerStateValue
 import ca.polymtl.dorsal.libdelorean.statevalue.StateValue
 import com.efficios.jabberwocky.lttng.kernel.analysis.os.StateValues
 import com.efficios.jabberwocky.lttng.kernel.trace.layout.LttngKernelEventLayout
-import com.efficios.jabberwocky.trace.event.FieldValue.IntegerValue
 import com.efficios.jabberwocky.trace.event.TraceEvent
 
 class SoftIrqExitHandler(layout: LttngKernelEventLayout) : KernelEventHandler(layout) {
@@ -24,10 +23,10 @@ class SoftIrqExitHandler(layout: LttngKernelEventLayout) : KernelEventHandler(la
         val cpu = event.cpu
         val timestamp = event.timestamp
 
-        val softIrqId = (event.fields[layout.fieldVec] as IntegerValue).value.toInt()
+        val softIrqId = event.getLongField(layout.fieldVec).toInt()
 
         /* Put this SoftIRQ back to inactive (= -1) in the resource tree */
-        val quark = ss.getQuarkRelativeAndAdd(ss.getNodeSoftIRQs(cpu), softIrqId.toString())
+        val quark = ss.getChildQuarkAndAdd(ss.getNodeSoftIRQs(cpu), softIrqId)
         if (isSoftIrqRaised(ss.queryOngoingState(quark))) {
             ss.modifyAttribute(timestamp, StateValues.SOFT_IRQ_RAISED_VALUE, quark)
         } else {
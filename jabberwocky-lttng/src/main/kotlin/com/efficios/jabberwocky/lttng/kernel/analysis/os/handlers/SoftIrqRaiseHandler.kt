@@ -15,7 +15,6 @@ import ca.polymtl.dorsal.libdelorean.statevalue.IntegerStateValue
 import ca.polymtl.dorsal.libdelorean.statevalue.StateValue
 import com.efficios.jabberwocky.lttng.kernel.analysis.os.StateValues
 import com.efficios.jabberwocky.lttng.kernel.trace.layout.LttngKernelEventLayout
-import com.efficios.jabberwocky.trace.event.FieldValue.IntegerValue
 import com.efficios.jabberwocky.trace.event.TraceEvent
 
 class SoftIrqRaiseHandler(layout: LttngKernelEventLayout) : KernelEventHandler(layout) {
@@ -23,10 +22,10 @@ class SoftIrqRaiseHandler(layout: LttngKernelEventLayout) : KernelEventHandler(l
     override fun handleEvent(ss: IStateSystemWriter, event: TraceEvent) {
         val cpu = event.cpu
 
-        val softIrqId = (event.fields[layout.fieldVec] as IntegerValue).value.toInt()
+        val softIrqId = event.getLongField(layout.fieldVec).toInt()
 
         /* Mark this SoftIRQ as *raised* in the resource tree. */
-        val quark = ss.getQuarkRelativeAndAdd(ss.getNodeSoftIRQs(cpu), softIrqId.toString())
+        val quark = ss.getChildQuarkAndAdd(ss.getNodeSoftIRQs(cpu), softIrqId)
         val sv = if (isInSoftirq(ss.queryOngoingState(quark))) {
             StateValues.SOFT_IRQ_RAISED_RUNNING_VALUE
         } else {
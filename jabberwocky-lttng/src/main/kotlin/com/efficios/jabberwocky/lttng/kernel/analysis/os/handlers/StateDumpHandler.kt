@@ -17,7 +17,6 @@ import com.efficios.jabberwocky.lttng.kernel.analysis.os.LinuxValues
 import com.efficios.jabberwocky.lttng.kernel.analysis.os.StateValues
 import com.efficios.jabberwocky.lttng.kernel.trace.layout.LttngKernelEventLayout
 import com.efficios.jabberwocky.trace.event.FieldValue.IntegerValue
-import com.efficios.jabberwocky.trace.event.FieldValue.StringValue
 import com.efficios.jabberwocky.trace.event.TraceEvent
 
 /**
@@ -29,11 +28,11 @@ class StateDumpHandler(layout: LttngKernelEventLayout) : KernelEventHandler(layo
         val eventCpu = event.cpu
         val timestamp = event.timestamp
 
-        val tid = (event.fields["tid"] as IntegerValue).value.toInt()
-        val pid = (event.fields["pid"] as IntegerValue).value.toInt()
-        val ppid = (event.fields["ppid"] as IntegerValue).value.toInt()
-        val status = (event.fields["status"] as IntegerValue).value.toInt()
-        val name = (event.fields["name"] as StringValue).value
+        val tid = event.getLongField("tid").toInt()
+        val pid = event.getLongField("pid").toInt()
+        val ppid = event.getLongField("ppid").toInt()
+        val status = event.getLongField("status").toInt()
+        val name = event.getStringField("name")
 
         /* Only present in LTTng 2.10+ */
         val cpuField = (event.fields["cpu"] as? IntegerValue)?.value?.toInt()
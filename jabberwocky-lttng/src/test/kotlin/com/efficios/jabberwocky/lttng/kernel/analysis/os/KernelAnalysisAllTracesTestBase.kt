@@ -17,6 +17,7 @@ import com.efficios.jabberwocky.tests.JavaFXTestBase
 import com.google.common.io.MoreFiles
 
 import org.junit.jupiter.api.*
+import org.junit.jupiter.api.Assertions.assertEquals
 import org.lttng.scope.ttt.ctf.CtfTestTrace
 import java.io.IOException
 import java.nio.file.Files
@@ -63,6 +64,18 @@ internal abstract class KernelAnalysisAllTracesTestBase(private val testTrace: E
         val ss = ss!!
         assertThrows<AttributeNotFoundException> { ss.getQuarkAbsolute("Threads", "-1") }
     }
+
+    /**
+     * Ensure the history covers the whole trace, even though the events that
+     * are not handled by the analysis are filtered out.
+     */
+    @Test
+    fun testHistoryEndsAtTraceEnd() {
+        val ss = ss!!
+        val traceEnd = testTrace.trace.endTime
+        assertEquals(traceEnd, ss.currentEndTime)
+        assertEquals(ss.nbAttributes, ss.queryFullState(traceEnd).size)
+    }
 }
 
 internal class ContextSwitchesTest : KernelAnalysisAllTracesTestBase(TRACE) {
@@ -12,9 +12,9 @@
 package com.efficios.jabberwocky.javeltrace
 
 import com.efficios.jabberwocky.ctf.trace.CtfTrace
-import com.efficios.jabberwocky.ctf.trace.event.CtfTraceEvent
 import com.efficios.jabberwocky.project.TraceProject
 import com.efficios.jabberwocky.trace.event.FieldValue
+import com.efficios.jabberwocky.trace.event.TraceEvent
 import java.nio.file.Files
 import java.nio.file.Paths
 import java.util.*
@@ -39,13 +39,13 @@ fun main(args: Array<String>) {
     val trace = CtfTrace(Paths.get(tracePath))
     val project = TraceProject.ofSingleTrace("MyProject", projectPath, trace)
 
-    /* Retrieve an iterator on the project and read its events. */
-    project.iterator().use {
+    /* Retrieve a cursor on the project and read its events, they are only printed once. */
+    project.cursor().use {
         var prevTimestamp: Long = 0
         var i = 0
 
-        while (it.hasNext()) {
-            val event = it.next()
+        while (it.advance()) {
+            val event = it.event
             val offset = event.timestamp - prevTimestamp
             printEvent(event, offset)
             prevTimestamp = event.timestamp
@@ -57,7 +57,7 @@ fun main(args: Array<String>) {
     projectPath.toFile().deleteRecursively()
 }
 
-private fun printEvent(event: CtfTraceEvent, offset: Long) {
+private fun printEvent(event: TraceEvent, offset: Long) {
     val ts = event.timestamp
     // TODO Correct the timestamp
 //    val ts2 = trace.innerTrace.timestampCyclesToNanos(ts)
@@ -11,14 +11,14 @@
 
 package ca.polymtl.dorsal.libdelorean;
 
-import com.google.common.collect.ImmutableList;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.PrintWriter;
-import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.util.Objects.requireNonNull;
 
@@ -29,6 +29,9 @@ import static java.util.Objects.requireNonNull;
  * It is abstract, as different implementations can provide different ways to
  * access sub-attributes
  *
+ * Sub-attributes are only added by one thread at a time, the attribute tree
+ * takes care of that, but they can be read concurrently without locking.
+ *
  * @author Alexandre Montplaisir
  */
 final class Attribute {
@@ -38,7 +41,21 @@ final class Attribute {
     private final int quark;
 
     /** The sub-attributes (<basename, attribute>) of this attribute */
-    private final Map<String, Attribute> subAttributes;
+    private final Map<String, Attribute> subAttributes = new ConcurrentHashMap<>();
+
+    /**
+     * The same sub-attributes, in the order they were added. Entries are
+     * written before the count is incremented, so readers can use the first
+     * 'nbSubAttributes' ones without locking.
+     */
+    private volatile Attribute[] orderedSubAttributes = new Attribute[0];
+    private volatile int nbSubAttributes = 0;
+
+    /**
+     * Quarks of the sub-attributes named after a number, created the first
+     * time such a sub-attribute is looked up by number.
+     */
+    private volatile IntQuarkMap intSubAttributes = null;
 
     /**
      * Constructor
@@ -55,7 +72,6 @@ final class Attribute {
         this.parent = parent;
         this.quark = quark;
         this.name = name;
-        this.subAttributes = Collections.synchronizedMap(new LinkedHashMap<String, Attribute>());
     }
 
     // ------------------------------------------------------------------------
@@ -86,7 +102,52 @@ final class Attribute {
      * @return The child attributes.
      */
     public Iterable<Attribute> getSubAttributes() {
-        return ImmutableList.copyOf(subAttributes.values());
+        /* Read the count first, the array is at least as recent */
+        int nb = nbSubAttributes;
+        List<Attribute> list = Arrays.asList(orderedSubAttributes);
+        return list.subList(0, nb);
+    }
+
+    /**
+     * Get a direct sub-attribute of this attribute.
+     *
+     * @param childName
+     *            The name of the sub-attribute
+     * @return The sub-attribute, or null if it does not exist
+     */
+    public Attribute getSubAttribute(String childName) {
+        return subAttributes.get(childName);
+    }
+
+    /**
+     * Get the quark of a direct sub-attribute whose name is a number, if it
+     * was looked up that way before.
+     *
+     * @param childName
+     *            The name of the sub-attribute, as a number
+     * @return The quark of the sub-attribute, or -1 if it is not known
+     */
+    public int getIntSubAttributeQuark(int childName) {
+        IntQuarkMap map = intSubAttributes;
+        return (map == null ? -1 : map.get(childName));
+    }
+
+    /**
+     * Remember the quark of a direct sub-attribute whose name is a number.
+     * Only one thread at a time may call this.
+     *
+     * @param childName
+     *            The name of the sub-attribute, as a number
+     * @param childQuark
+     *            The quark of the sub-attribute
+     */
+    public void addIntSubAttributeQuark(int childName, int childQuark) {
+        IntQuarkMap map = intSubAttributes;
+        if (map == null) {
+            map = new IntQuarkMap();
+            intSubAttributes = map;
+        }
+        map.put(childName, childQuark);
     }
 
     /**
@@ -150,7 +211,8 @@ final class Attribute {
     /* The methods how to access children are left to derived classes */
 
     /**
-     * Add a sub-attribute to this attribute
+     * Add a sub-attribute to this attribute. Only one thread at a time may
+     * add sub-attributes.
      *
      * @param newSubAttribute The new attribute to add
      */
@@ -158,6 +220,14 @@ final class Attribute {
         if (newSubAttribute == null) {
             throw new IllegalArgumentException();
         }
+        Attribute[] array = orderedSubAttributes;
+        int nb = nbSubAttributes;
+        if (nb == array.length) {
+            array = Arrays.copyOf(array, Math.max(2 * nb, 4));
+        }
+        array[nb] = newSubAttribute;
+        orderedSubAttributes = array;
+        nbSubAttributes = nb + 1;
         subAttributes.put(newSubAttribute.getName(), newSubAttribute);
     }
 
@@ -15,10 +15,14 @@ import ca.polymtl.dorsal.libdelorean.exceptions.AttributeNotFoundException;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static java.util.Objects.requireNonNull;
 
@@ -27,6 +31,15 @@ import static java.util.Objects.requireNonNull;
  * Each node of this tree is both like a file and a directory in the
  * "file system".
  *
+ * Attributes are only added by one thread at a time, but all the queries are
+ * done without locking. Attributes are never removed, and each one is fully
+ * built before the attribute count is incremented, so readers only need to
+ * look at the attributes below the count they read.
+ *
+ * The tree is saved in a compact binary format: a table of the distinct
+ * attribute names, followed by the parent quark and name index of each
+ * attribute, in quark order.
+ *
  * @author alexmont
  *
  */
@@ -35,10 +48,16 @@ final class AttributeTree {
     /* "Magic number" for attribute tree files or file sections */
     private static final int ATTRIB_TREE_MAGIC_NUMBER = 0x06EC3671;
 
+    /* Version of the format, increment when breaking compatibility */
+    private static final int ATTRIB_TREE_FORMAT_VERSION = 2;
+
     private final StateSystem ss;
-    private final List<Attribute> attributeList;
     private final Attribute attributeTreeRoot;
 
+    /* The attributes, indexed by quark. Only the first 'nbAttributes' are valid. */
+    private volatile Attribute[] attributes = new Attribute[64];
+    private volatile int nbAttributes = 0;
+
     /**
      * Standard constructor, create a new empty Attribute Tree
      *
@@ -47,7 +66,6 @@ final class AttributeTree {
      */
     public AttributeTree(StateSystem ss) {
         this.ss = ss;
-        this.attributeList = new ArrayList<>();
         this.attributeTreeRoot = new Attribute(null, "root", -1); //$NON-NLS-1$
     }
 
@@ -65,30 +83,45 @@ final class AttributeTree {
      */
     public AttributeTree(StateSystem ss, FileInputStream fis) throws IOException {
         this(ss);
-        ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(fis));
+        FileChannel fc = fis.getChannel();
+        long pos = fc.position();
+        ByteBuffer buffer = fc.map(FileChannel.MapMode.READ_ONLY, pos, fc.size() - pos);
 
         /* Read the header of the Attribute Tree file (or file section) */
-        int res = ois.readInt(); /* Magic number */
-        if (res != ATTRIB_TREE_MAGIC_NUMBER) {
+        if (buffer.remaining() < 2 * Integer.BYTES
+                || buffer.getInt() != ATTRIB_TREE_MAGIC_NUMBER
+                || buffer.getInt() != ATTRIB_TREE_FORMAT_VERSION) {
             throw new IOException("The attribute tree file section is either invalid or corrupted."); //$NON-NLS-1$
         }
 
-
-        ArrayList<String[]> attribList;
         try {
-            @SuppressWarnings("unchecked")
-            ArrayList<String[]> list = (ArrayList<String[]>) ois.readObject();
-            attribList = list;
-        } catch (ClassNotFoundException e) {
-            throw new IOException("Unrecognizable attribute list"); //$NON-NLS-1$
-        }
+            String[] names = new String[buffer.getInt()];
+            for (int i = 0; i < names.length; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                names[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
 
-        /*
-         * Now we have 'list', the ArrayList of String arrays representing all
-         * the attributes. Simply create attributes the normal way from them.
-         */
-        for (String[] attrib : attribList) {
-            this.getQuarkAndAdd(-1, attrib);
+            /*
+             * Parents always come before their children, so the attributes can
+             * be created directly in quark order.
+             */
+            int nb = buffer.getInt();
+            Attribute[] array = new Attribute[Math.max(nb, 1)];
+            for (int quark = 0; quark < nb; quark++) {
+                int parentQuark = buffer.getInt();
+                String name = names[buffer.getInt()];
+                Attribute parent = (parentQuark == -1 ? attributeTreeRoot : array[parentQuark]);
+                Attribute attribute = new Attribute(parent, requireNonNull(name), quark);
+                parent.addSubAttribute(attribute);
+                array[quark] = attribute;
+                ss.addEmptyAttribute();
+            }
+            attributes = array;
+            nbAttributes = nb;
+        } catch (RuntimeException e) {
+            /* Truncated section, or out-of-range index */
+            throw new IOException("The attribute tree file section is either invalid or corrupted.", e); //$NON-NLS-1$
         }
     }
 
@@ -104,17 +137,39 @@ final class AttributeTree {
         try (FileOutputStream fos = new FileOutputStream(file, true);
                 FileChannel fc = fos.getChannel();) {
             fc.position(pos);
-            try (ObjectOutputStream oos = new ObjectOutputStream(fos)) {
+            try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fos))) {
+                dos.writeInt(ATTRIB_TREE_MAGIC_NUMBER);
+                dos.writeInt(ATTRIB_TREE_FORMAT_VERSION);
+
+                /* Many attributes share the same name, write each name once */
+                int nb = nbAttributes;
+                Attribute[] array = attributes;
+                Map<String, Integer> nameIndexes = new HashMap<>();
+                List<String> names = new ArrayList<>();
+                int[] attributeNameIndexes = new int[nb];
+                for (int quark = 0; quark < nb; quark++) {
+                    String name = array[quark].getName();
+                    Integer index = nameIndexes.get(name);
+                    if (index == null) {
+                        index = names.size();
+                        nameIndexes.put(name, index);
+                        names.add(name);
+                    }
+                    attributeNameIndexes[quark] = index;
+                }
 
-                /* Write the almost-magic number */
-                oos.writeInt(ATTRIB_TREE_MAGIC_NUMBER);
+                dos.writeInt(names.size());
+                for (String name : names) {
+                    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                    dos.writeInt(bytes.length);
+                    dos.write(bytes);
+                }
 
-                /* Compute the serialized list of attributes and write it */
-                List<String[]> list = new ArrayList<>(attributeList.size());
-                for (Attribute entry : this.attributeList) {
-                    list.add(entry.getFullAttribute());
+                dos.writeInt(nb);
+                for (int quark = 0; quark < nb; quark++) {
+                    dos.writeInt(array[quark].getParentAttributeQuark());
+                    dos.writeInt(attributeNameIndexes[quark]);
                 }
-                oos.writeObject(list);
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -129,8 +184,18 @@ final class AttributeTree {
      *
      * @return The current number of attributes in the tree
      */
-    public synchronized int getNbAttributes() {
-        return attributeList.size();
+    public int getNbAttributes() {
+        return nbAttributes;
+    }
+
+    private Attribute getAttribute(int quark) {
+        /* Read the count first, the array is at least as recent */
+        int nb = nbAttributes;
+        Attribute[] array = attributes;
+        if (quark < 0 || quark >= nb) {
+            throw new IndexOutOfBoundsException("Quark: " + quark + ", Size: " + nb); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        return array[quark];
     }
 
     /**
@@ -146,7 +211,7 @@ final class AttributeTree {
      * @throws AttributeNotFoundException
      *             If the specified path was not found
      */
-    public synchronized int getQuarkDontAdd(int startingNodeQuark, String... subPath)
+    public int getQuarkDontAdd(int startingNodeQuark, String... subPath)
             throws AttributeNotFoundException {
         assert (startingNodeQuark >= -1);
 
@@ -161,7 +226,7 @@ final class AttributeTree {
         if (startingNodeQuark == -1) {
             prevNode = attributeTreeRoot;
         } else {
-            prevNode = attributeList.get(startingNodeQuark);
+            prevNode = getAttribute(startingNodeQuark);
         }
 
         int knownQuark = prevNode.getSubAttributeQuark(subPath);
@@ -191,46 +256,99 @@ final class AttributeTree {
      *            The path to the attribute, relative to the starting node.
      * @return The quark of the attribute represented by the path
      */
-    public synchronized int getQuarkAndAdd(int startingNodeQuark, String... subPath) {
-        // FIXME synchronized here is probably quite costly... maybe only locking
-        // the "for" would be enough?
+    public int getQuarkAndAdd(int startingNodeQuark, String... subPath) {
         assert (subPath != null && subPath.length > 0);
         assert (startingNodeQuark >= -1);
 
-        Attribute nextNode = null;
-        Attribute prevNode;
-
         /* Get the "starting node" */
+        Attribute startingNode;
         if (startingNodeQuark == -1) {
-            prevNode = attributeTreeRoot;
+            startingNode = attributeTreeRoot;
         } else {
-            prevNode = attributeList.get(startingNodeQuark);
+            startingNode = getAttribute(startingNodeQuark);
         }
 
-        int knownQuark = prevNode.getSubAttributeQuark(subPath);
-        if (knownQuark == -1) {
-            /*
-             * The attribute was not in the table previously, and we want to add
-             * it
-             */
-            for (String curDirectory : subPath) {
-                nextNode = prevNode.getSubAttributeNode(curDirectory);
-                if (nextNode == null) {
-                    /* This is where we need to start adding */
-                    nextNode = new Attribute(prevNode, requireNonNull(curDirectory), attributeList.size());
-                    prevNode.addSubAttribute(nextNode);
-                    attributeList.add(nextNode);
-                    ss.addEmptyAttribute();
+        /* Most of the time the attribute exists, which requires no locking */
+        int knownQuark = startingNode.getSubAttributeQuark(subPath);
+        if (knownQuark != -1) {
+            return knownQuark;
+        }
+        return addAttribute(startingNode, subPath);
+    }
+
+    /**
+     * Get the quark of a direct sub-attribute, creating it if needed. This is
+     * the same as {@link #getQuarkAndAdd} with a path of one element, but
+     * without going through a path array.
+     *
+     * @param parentQuark
+     *            The quark of the parent attribute. Use '-1' for the root node.
+     * @param childName
+     *            The name of the sub-attribute
+     * @return The quark of the sub-attribute
+     */
+    public int getChildQuarkAndAdd(int parentQuark, String childName) {
+        Attribute parent = (parentQuark == -1 ? attributeTreeRoot : getAttribute(parentQuark));
+        Attribute child = parent.getSubAttribute(childName);
+        if (child != null) {
+            return child.getQuark();
+        }
+        return addAttribute(parent, new String[] { childName });
+    }
+
+    /**
+     * Get the quark of a direct sub-attribute whose name is the decimal
+     * representation of a number, creating it if needed. Sub-attributes looked
+     * up this way are then found by their number directly, without formatting
+     * it as a string.
+     *
+     * @param parentQuark
+     *            The quark of the parent attribute. Use '-1' for the root node.
+     * @param childName
+     *            The name of the sub-attribute, as a number
+     * @return The quark of the sub-attribute
+     */
+    public int getChildQuarkAndAdd(int parentQuark, int childName) {
+        Attribute parent = (parentQuark == -1 ? attributeTreeRoot : getAttribute(parentQuark));
+        int quark = parent.getIntSubAttributeQuark(childName);
+        if (quark != -1) {
+            return quark;
+        }
+        return addIntAttribute(parent, childName);
+    }
+
+    private synchronized int addIntAttribute(Attribute parent, int childName) {
+        int quark = parent.getIntSubAttributeQuark(childName);
+        if (quark == -1) {
+            quark = addAttribute(parent, new String[] { Integer.toString(childName) });
+            parent.addIntSubAttributeQuark(childName, quark);
+        }
+        return quark;
+    }
+
+    private synchronized int addAttribute(Attribute startingNode, String[] subPath) {
+        /* Another thread may have added it in the meantime, the loop handles that */
+        Attribute prevNode = startingNode;
+        for (String curDirectory : subPath) {
+            Attribute nextNode = prevNode.getSubAttribute(curDirectory);
+            if (nextNode == null) {
+                /* This is where we need to start adding */
+                int quark = nbAttributes;
+                nextNode = new Attribute(prevNode, requireNonNull(curDirectory), quark);
+                Attribute[] array = attributes;
+                if (quark == array.length) {
+                    array = Arrays.copyOf(array, 2 * quark);
                 }
-                prevNode = nextNode;
+                array[quark] = nextNode;
+                attributes = array;
+                ss.addEmptyAttribute();
+                /* Publish the attribute before making it reachable from its parent */
+                nbAttributes = quark + 1;
+                prevNode.addSubAttribute(nextNode);
             }
-            return attributeList.size() - 1;
+            prevNode = nextNode;
         }
-        /*
-         * The attribute was already existing, return the quark of that
-         * attribute
-         */
-        return knownQuark;
+        return prevNode.getQuark();
     }
 
     /**
@@ -247,13 +365,13 @@ final class AttributeTree {
      *             If 'attributeQuark' is invalid, or if there is no attrbiute
      *             associated to it.
      */
-    public synchronized @NotNull List<Integer> getSubAttributes(int attributeQuark, boolean recursive)
+    public @NotNull List<Integer> getSubAttributes(int attributeQuark, boolean recursive)
             throws AttributeNotFoundException {
         List<Integer> listOfChildren = new ArrayList<>();
         Attribute startingAttribute;
 
         /* Check if the quark is valid */
-        if (attributeQuark < -1 || attributeQuark >= attributeList.size()) {
+        if (attributeQuark < -1 || attributeQuark >= nbAttributes) {
             throw new AttributeNotFoundException(ss.getSSID() + " Quark:" + attributeQuark); //$NON-NLS-1$
         }
 
@@ -261,7 +379,7 @@ final class AttributeTree {
         if (attributeQuark == -1) {
             startingAttribute = attributeTreeRoot;
         } else {
-            startingAttribute = attributeList.get(attributeQuark);
+            startingAttribute = getAttribute(attributeQuark);
         }
 
         /* Iterate through the sub-attributes and add them to the list */
@@ -279,11 +397,11 @@ final class AttributeTree {
      * @return Quark of the parent attribute or <code>-1</code> for the root
      *         attribute
      */
-    public synchronized int getParentAttributeQuark(int quark) {
+    public int getParentAttributeQuark(int quark) {
         if (quark == -1) {
             return quark;
         }
-        return attributeList.get(quark).getParentAttributeQuark();
+        return getAttribute(quark).getParentAttributeQuark();
     }
 
     private void addSubAttributes(List<Integer> list, Attribute curAttribute,
@@ -303,8 +421,8 @@ final class AttributeTree {
      *            The quark of the attribute
      * @return The (base) name of the attribute
      */
-    public synchronized @NotNull String getAttributeName(int quark) {
-        return attributeList.get(quark).getName();
+    public @NotNull String getAttributeName(int quark) {
+        return getAttribute(quark).getName();
     }
 
     /**
@@ -314,8 +432,8 @@ final class AttributeTree {
      *            The quark of the attribute
      * @return The full path name of the attribute
      */
-    public synchronized @NotNull String getFullAttributeName(int quark) {
-        return attributeList.get(quark).getFullAttributeName();
+    public @NotNull String getFullAttributeName(int quark) {
+        return getAttribute(quark).getFullAttributeName();
     }
 
     /**
@@ -326,8 +444,8 @@ final class AttributeTree {
      *            The quark of the attribute
      * @return The path elements of the full path
      */
-    public synchronized @NotNull String[] getFullAttributePathArray(int quark) {
-        return attributeList.get(quark).getFullAttribute();
+    public @NotNull String[] getFullAttributePathArray(int quark) {
+        return getAttribute(quark).getFullAttribute();
     }
 
     /**
@@ -16,6 +16,7 @@ import ca.polymtl.dorsal.libdelorean.exceptions.TimeRangeException;
 import ca.polymtl.dorsal.libdelorean.interval.StateInterval;
 import ca.polymtl.dorsal.libdelorean.statevalue.StateValue;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -79,6 +80,13 @@ public interface IStateSystemReader extends IStateSystemQuarkResolver {
      */
     void dispose();
 
+    /**
+     * Check if this state system was disposed, see {@link #dispose()}.
+     *
+     * @return True if it was disposed, false otherwise
+     */
+    boolean isDisposed();
+
     // ------------------------------------------------------------------------
     // Query methods
     // ------------------------------------------------------------------------
@@ -176,4 +184,31 @@ public interface IStateSystemReader extends IStateSystemQuarkResolver {
      *             disposed.
      */
     Map<Integer, StateInterval> queryStates(long t, Set<Integer> quarks);
+
+    /**
+     * Range query method. Get all the intervals of the specified quarks that
+     * intersect the time range [t1, t2].
+     *
+     * This is usually much faster than successive single or partial queries,
+     * since the backend can look for all the intervals in one pass. The
+     * parts of the range that are outside of the state system's time range
+     * are ignored.
+     *
+     * @param quarks
+     *            The quarks to query
+     * @param t1
+     *            The start of the time range
+     * @param t2
+     *            The end of the time range
+     * @return An iterator over the matching intervals. They are not returned
+     *         in any particular order.
+     * @throws TimeRangeException
+     *             If t2 is smaller than t1
+     * @throws AttributeNotFoundException
+     *             If one of the quarks does not exist in the model
+     * @throws StateSystemDisposedException
+     *             If the query is sent after the state system has been
+     *             disposed.
+     */
+    Iterator<StateInterval> queryHistoryRange(Set<Integer> quarks, long t1, long t2);
 }
\ No newline at end of file
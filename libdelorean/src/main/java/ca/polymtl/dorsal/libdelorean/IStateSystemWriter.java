@@ -78,6 +78,45 @@ public interface IStateSystemWriter extends IStateSystemReader {
      */
     int getQuarkRelativeAndAdd(int startingNodeQuark, String... subPath);
 
+    /**
+     * Quark-getting method for a direct sub-attribute of a known attribute.
+     *
+     * This is meant for hot paths, like event handlers, which look up the same
+     * few children over and over: it does not need a path array, and is
+     * resolved by a direct lookup in the children of the parent attribute.
+     *
+     * This version WILL create new attributes: if the attribute passed in
+     * parameter is new in the system, it will be added and its new quark will
+     * be returned.
+     *
+     * @param parentQuark
+     *            The quark of the parent attribute. Use '-1' for the root
+     *            attribute.
+     * @param childName
+     *            The name of the sub-attribute
+     * @return The quark of the sub-attribute (which either existed or just got
+     *         created)
+     */
+    int getChildQuarkAndAdd(int parentQuark, String childName);
+
+    /**
+     * Same as {@link #getChildQuarkAndAdd(int, String)}, for a sub-attribute
+     * whose name is the decimal representation of a number, like a CPU
+     * number or a thread ID.
+     *
+     * Once the sub-attribute was looked up this way, it is found directly from
+     * the number, without formatting it as a string.
+     *
+     * @param parentQuark
+     *            The quark of the parent attribute. Use '-1' for the root
+     *            attribute.
+     * @param childName
+     *            The name of the sub-attribute, as a number
+     * @return The quark of the sub-attribute (which either existed or just got
+     *         created)
+     */
+    int getChildQuarkAndAdd(int parentQuark, int childName);
+
     /*
      * @name State-changing methods
      */
@@ -123,6 +162,83 @@ public interface IStateSystemWriter extends IStateSystemReader {
     void modifyAttribute(long t, StateValue value, int attributeQuark)
             throws AttributeNotFoundException;
 
+    /**
+     * Same as {@link #modifyAttribute}, for an integer value. No state value
+     * object is created until the resulting interval is inserted in the
+     * history.
+     *
+     * @param t
+     *            Timestamp of the state change
+     * @param value
+     *            The integer value we want to assign to the attribute
+     * @param attributeQuark
+     *            Integer value of the quark corresponding to the attribute we
+     *            want to modify
+     * @throws TimeRangeException
+     *             If the requested time is outside of the trace's range
+     * @throws AttributeNotFoundException
+     *             If the requested attribute quark is invalid
+     */
+    void modifyAttributeInt(long t, int value, int attributeQuark)
+            throws AttributeNotFoundException;
+
+    /**
+     * Same as {@link #modifyAttribute}, for a long value. No state value
+     * object is created until the resulting interval is inserted in the
+     * history.
+     *
+     * @param t
+     *            Timestamp of the state change
+     * @param value
+     *            The long value we want to assign to the attribute
+     * @param attributeQuark
+     *            Integer value of the quark corresponding to the attribute we
+     *            want to modify
+     * @throws TimeRangeException
+     *             If the requested time is outside of the trace's range
+     * @throws AttributeNotFoundException
+     *             If the requested attribute quark is invalid
+     */
+    void modifyAttributeLong(long t, long value, int attributeQuark)
+            throws AttributeNotFoundException;
+
+    /**
+     * Same as {@link #modifyAttribute}, for a double value. No state value
+     * object is created until the resulting interval is inserted in the
+     * history.
+     *
+     * @param t
+     *            Timestamp of the state change
+     * @param value
+     *            The double value we want to assign to the attribute
+     * @param attributeQuark
+     *            Integer value of the quark corresponding to the attribute we
+     *            want to modify
+     * @throws TimeRangeException
+     *             If the requested time is outside of the trace's range
+     * @throws AttributeNotFoundException
+     *             If the requested attribute quark is invalid
+     */
+    void modifyAttributeDouble(long t, double value, int attributeQuark)
+            throws AttributeNotFoundException;
+
+    /**
+     * Same as {@link #modifyAttribute}, with the null state value. Unlike
+     * {@link #removeAttribute}, the sub-attributes are not modified.
+     *
+     * @param t
+     *            Timestamp of the state change
+     * @param attributeQuark
+     *            Integer value of the quark corresponding to the attribute we
+     *            want to modify
+     * @throws TimeRangeException
+     *             If the requested time is outside of the trace's range
+     * @throws AttributeNotFoundException
+     *             If the requested attribute quark is invalid
+     */
+    void modifyAttributeNull(long t, int attributeQuark)
+            throws AttributeNotFoundException;
+
     /**
      * Increment attribute method. Reads the current value of a given integer
      * attribute (this value is right now in the Transient State), and increment
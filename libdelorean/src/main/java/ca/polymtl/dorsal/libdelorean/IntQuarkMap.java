@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package ca.polymtl.dorsal.libdelorean;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Map of int keys to quarks, without boxing. Used by attributes to find their
+ * sub-attributes named after a number (CPU number, thread ID, etc.) without
+ * formatting the number as a string.
+ *
+ * Each entry is packed in a single long, the key in the upper half and
+ * (quark + 1) in the lower half, so 0 marks an empty slot. Entries are only
+ * added by one thread at a time, but can be read concurrently without
+ * locking: a reader sees either an empty slot or a complete entry.
+ *
+ * @author Alexandre Montplaisir
+ */
+final class IntQuarkMap {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private volatile AtomicLongArray table = new AtomicLongArray(INITIAL_CAPACITY);
+    private int size = 0;
+
+    /**
+     * Get the quark associated with a key.
+     *
+     * @param key
+     *            The key
+     * @return The quark, or -1 if there is none for this key
+     */
+    public int get(int key) {
+        AtomicLongArray t = table;
+        int mask = t.length() - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            long entry = t.get(slot);
+            if (entry == 0) {
+                return -1;
+            }
+            if ((int) (entry >>> 32) == key) {
+                return (int) entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Associate a quark with a key which is not in the map yet. Only one
+     * thread at a time may call this.
+     *
+     * @param key
+     *            The key
+     * @param quark
+     *            The quark, which cannot be negative
+     */
+    public void put(int key, int quark) {
+        AtomicLongArray t = table;
+        if (2 * (size + 1) > t.length()) {
+            /* Fill a bigger table, then publish it */
+            AtomicLongArray newTable = new AtomicLongArray(2 * t.length());
+            for (int i = 0; i < t.length(); i++) {
+                long entry = t.get(i);
+                if (entry != 0) {
+                    insert(newTable, entry);
+                }
+            }
+            insert(newTable, pack(key, quark));
+            table = newTable;
+        } else {
+            insert(t, pack(key, quark));
+        }
+        size++;
+    }
+
+    private static void insert(AtomicLongArray t, long entry) {
+        int mask = t.length() - 1;
+        int slot = hash((int) (entry >>> 32)) & mask;
+        while (t.get(slot) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        t.set(slot, entry);
+    }
+
+    private static long pack(int key, int quark) {
+        return ((long) key << 32) | ((quark + 1) & 0xFFFFFFFFL);
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -19,6 +19,7 @@ import ca.polymtl.dorsal.libdelorean.exceptions.TimeRangeException;
 import ca.polymtl.dorsal.libdelorean.interval.StateInterval;
 import ca.polymtl.dorsal.libdelorean.statevalue.IntegerStateValue;
 import ca.polymtl.dorsal.libdelorean.statevalue.StateValue;
+import com.google.common.collect.Iterators;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -136,6 +137,11 @@ class StateSystem implements IStateSystemWriter {
         backend.dispose();
     }
 
+    @Override
+    public synchronized boolean isDisposed() {
+        return isDisposed;
+    }
+
     //--------------------------------------------------------------------------
     //        General methods related to the attribute tree
     //--------------------------------------------------------------------------
@@ -248,6 +254,16 @@ class StateSystem implements IStateSystemWriter {
         return getAttributeTree().getQuarkAndAdd(startingNodeQuark, subPath);
     }
 
+    @Override
+    public int getChildQuarkAndAdd(int parentQuark, String childName) {
+        return getAttributeTree().getChildQuarkAndAdd(parentQuark, childName);
+    }
+
+    @Override
+    public int getChildQuarkAndAdd(int parentQuark, int childName) {
+        return getAttributeTree().getChildQuarkAndAdd(parentQuark, childName);
+    }
+
     @Override
     public List<Integer> getSubAttributes(int quark, boolean recursive)
             throws AttributeNotFoundException {
@@ -374,17 +390,35 @@ class StateSystem implements IStateSystemWriter {
         transState.processStateChange(t, value, attributeQuark);
     }
 
+    @Override
+    public void modifyAttributeInt(long t, int value, int attributeQuark)
+            throws TimeRangeException, AttributeNotFoundException {
+        transState.processStateChangeInt(t, value, attributeQuark);
+    }
+
+    @Override
+    public void modifyAttributeLong(long t, long value, int attributeQuark)
+            throws TimeRangeException, AttributeNotFoundException {
+        transState.processStateChangeLong(t, value, attributeQuark);
+    }
+
+    @Override
+    public void modifyAttributeDouble(long t, double value, int attributeQuark)
+            throws TimeRangeException, AttributeNotFoundException {
+        transState.processStateChangeDouble(t, value, attributeQuark);
+    }
+
+    @Override
+    public void modifyAttributeNull(long t, int attributeQuark)
+            throws TimeRangeException, AttributeNotFoundException {
+        transState.processStateChangeNull(t, attributeQuark);
+    }
+
     @Override
     public void incrementAttribute(long t, int attributeQuark)
             throws TimeRangeException,
             AttributeNotFoundException {
-        StateValue stateValue = queryOngoingState(attributeQuark);
-        int prevValue = 0;
-        /* if the attribute was previously null, start counting at 0 */
-        if (!stateValue.isNull()) {
-            prevValue = ((IntegerStateValue) stateValue).getValue();
-        }
-        modifyAttribute(t, StateValue.newValueInt(prevValue + 1), attributeQuark);
+        transState.incrementOngoingValue(t, attributeQuark);
     }
 
     @Override
@@ -418,9 +452,9 @@ class StateSystem implements IStateSystemWriter {
         }
 
         stackDepth++;
-        subAttributeQuark = getQuarkRelativeAndAdd(attributeQuark, String.valueOf(stackDepth));
+        subAttributeQuark = getChildQuarkAndAdd(attributeQuark, stackDepth);
 
-        modifyAttribute(t, StateValue.newValueInt(stackDepth), attributeQuark);
+        modifyAttributeInt(t, stackDepth, attributeQuark);
         modifyAttribute(t, value, subAttributeQuark);
     }
 
@@ -459,14 +493,12 @@ class StateSystem implements IStateSystemWriter {
         StateValue poppedValue = queryOngoingState(subAttributeQuark);
 
         /* Update the state value of the stack-attribute */
-        StateValue nextSV;
         if (--stackDepth == 0) {
             /* Store a null state value */
-            nextSV = StateValue.nullValue();
+            modifyAttributeNull(t, attributeQuark);
         } else {
-            nextSV = StateValue.newValueInt(stackDepth);
+            modifyAttributeInt(t, stackDepth, attributeQuark);
         }
-        modifyAttribute(t, nextSV, attributeQuark);
 
         /* Delete the sub-attribute that contained the user's state value */
         removeAttribute(t, subAttributeQuark);
@@ -494,7 +526,7 @@ class StateSystem implements IStateSystemWriter {
             removeAttribute(t, childNodeQuark);
         }
         /* Nullify ourselves */
-        transState.processStateChange(t, StateValue.nullValue(), attributeQuark);
+        transState.processStateChangeNull(t, attributeQuark);
     }
 
     //--------------------------------------------------------------------------
@@ -656,6 +688,55 @@ class StateSystem implements IStateSystemWriter {
         return results;
     }
 
+    @Override
+    public Iterator<StateInterval> queryHistoryRange(Set<Integer> quarks, long t1, long t2) {
+        if (isDisposed) {
+            throw new StateSystemDisposedException();
+        }
+        if (t2 < t1) {
+            throw new TimeRangeException(getSSID() + " Start:" + t1 + ", End:" + t2); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+
+        final long start = Math.max(t1, getStartTime());
+        final long end = Math.min(t2, getCurrentEndTime());
+        if (start > end) {
+            return Collections.emptyIterator();
+        }
+
+        Set<Integer> backendQuarks = new HashSet<>(quarks.size());
+        List<StateInterval> otherIntervals = new ArrayList<>();
+
+        for (int quark : quarks) {
+            if (quark < 0 || quark >= getNbAttributes()) {
+                throw new AttributeNotFoundException(getSSID() + " Quark:" + quark); //$NON-NLS-1$
+            }
+
+            if (aggregationRules.containsKey(quark)) {
+                /* Aggregate attributes can only be queried one timestamp at a time */
+                StateInterval interval = querySingleState(start, quark);
+                otherIntervals.add(interval);
+                while (interval.getEnd() < end) {
+                    interval = querySingleState(interval.getEnd() + 1, quark);
+                    otherIntervals.add(interval);
+                }
+                continue;
+            }
+
+            /*
+             * The ongoing state, if we are currently building the history, is
+             * not in the backend yet. Everything before it is.
+             */
+            StateInterval ongoing = transState.getIntervalAt(end, quark);
+            if (ongoing != null) {
+                otherIntervals.add(ongoing);
+            }
+            backendQuarks.add(quark);
+        }
+
+        Iterator<StateInterval> backendIntervals = backend.doRangeQuery(backendQuarks, start, end);
+        return Iterators.concat(backendIntervals, otherIntervals.iterator());
+    }
+
     // --------------------------------------------------------------------------
     // State aggregation methods
     // --------------------------------------------------------------------------
@@ -19,6 +19,8 @@ import ca.polymtl.dorsal.libdelorean.statevalue.StateValue;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.FutureTask;
@@ -111,35 +113,18 @@ public final class StateSystemUtils {
                                                         int attributeQuark, long t1, long t2)
             throws AttributeNotFoundException, StateSystemDisposedException {
 
-        List<StateInterval> intervals;
-        StateInterval currentInterval;
-        long ts, tEnd;
-
         /* Make sure the time range makes sense */
         if (t2 < t1) {
             throw new TimeRangeException(ss.getSSID() + " Start:" + t1 + ", End:" + t2); //$NON-NLS-1$ //$NON-NLS-2$
         }
-
-        /* Set the actual, valid end time of the range query */
-        if (t2 > ss.getCurrentEndTime()) {
-            tEnd = ss.getCurrentEndTime();
-        } else {
-            tEnd = t2;
+        if (t1 < ss.getStartTime() || t1 > ss.getCurrentEndTime()) {
+            throw new TimeRangeException(ss.getSSID() + " Time:" + t1 + ", Start:" + ss.getStartTime() + ", End:" + ss.getCurrentEndTime()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
         }
 
-        /* Get the initial state at time T1 */
-        intervals = new ArrayList<>();
-        currentInterval = ss.querySingleState(t1, attributeQuark);
-        intervals.add(currentInterval);
-
-        /* Get the following state changes */
-        ts = currentInterval.getEnd();
-        while (ts != -1 && ts < tEnd) {
-            ts++; /* To "jump over" to the next state in the history */
-            currentInterval = ss.querySingleState(ts, attributeQuark);
-            intervals.add(currentInterval);
-            ts = currentInterval.getEnd();
-        }
+        /* Get all the intervals in one range query, then put them in order */
+        List<StateInterval> intervals = new ArrayList<>();
+        ss.queryHistoryRange(Collections.singleton(attributeQuark), t1, t2).forEachRemaining(intervals::add);
+        intervals.sort(Comparator.comparingLong(StateInterval::getStart));
         return intervals;
     }
 
@@ -15,13 +15,19 @@ import ca.polymtl.dorsal.libdelorean.backend.IStateHistoryBackend;
 import ca.polymtl.dorsal.libdelorean.exceptions.AttributeNotFoundException;
 import ca.polymtl.dorsal.libdelorean.exceptions.TimeRangeException;
 import ca.polymtl.dorsal.libdelorean.interval.StateInterval;
+import ca.polymtl.dorsal.libdelorean.statevalue.BooleanStateValue;
+import ca.polymtl.dorsal.libdelorean.statevalue.DoubleStateValue;
+import ca.polymtl.dorsal.libdelorean.statevalue.IntegerStateValue;
+import ca.polymtl.dorsal.libdelorean.statevalue.LongStateValue;
 import ca.polymtl.dorsal.libdelorean.statevalue.NullStateValue;
 import ca.polymtl.dorsal.libdelorean.statevalue.StateValue;
+import ca.polymtl.dorsal.libdelorean.statevalue.StringStateValue;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
@@ -34,10 +40,36 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * of the interval will be the recorded time we have here, and the "end time"
  * will be the timestamp of the new state-changing event we just read.
  *
+ * The ongoing states are kept in parallel arrays indexed by quark: start
+ * times, a type tag and the raw bits of the value. Primitive state changes
+ * are then applied without creating any object; a {@link StateValue} is only
+ * created when an interval is flushed to the backend, or when the state is
+ * queried.
+ *
  * @author Alexandre Montplaisir
  */
 class TransientState {
 
+    /* Type tags of the ongoing values */
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_BOOLEAN = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_STRING = 5;
+
+    /* State value class of each type tag, indexed by tag */
+    private static final Class<?>[] TYPE_CLASSES = {
+            NullStateValue.class,
+            BooleanStateValue.class,
+            IntegerStateValue.class,
+            LongStateValue.class,
+            DoubleStateValue.class,
+            StringStateValue.class
+    };
+
+    private static final int INITIAL_CAPACITY = 64;
+
     /* Indicates where to insert state changes that we generate */
     private final IStateHistoryBackend fBackend;
 
@@ -46,10 +78,21 @@ class TransientState {
     private volatile boolean fIsActive;
     private volatile long fLatestTime;
 
-    /* A method accessing these arrays will have to go through the lock */
-    private List<StateValue> fOngoingStateInfo;
-    private List<Long> fOngoingStateStartTimes;
-    private List<Class<? extends StateValue>> fStateValueTypes;
+    /*
+     * A method accessing these arrays will have to go through the lock. Only
+     * the first fNbAttributes entries are used.
+     */
+    private int fNbAttributes;
+    /* Start time of the ongoing state of each attribute */
+    private long[] fStartTimes;
+    /* Type tag of the ongoing value of each attribute */
+    private byte[] fTypes;
+    /* Raw ongoing value of each attribute, if it is of a primitive type */
+    private long[] fPayloads;
+    /* Ongoing value of each attribute, if it is a string */
+    private @Nullable StateValue[] fStringValues;
+    /* Type tag registered for each attribute, by its first non-null value */
+    private byte[] fExpectedTypes;
 
     /**
      * Constructor
@@ -60,13 +103,20 @@ class TransientState {
     public TransientState(IStateHistoryBackend backend) {
         fBackend = backend;
         fIsActive = true;
-        fOngoingStateInfo = new ArrayList<>();
-        fOngoingStateStartTimes = new ArrayList<>();
-        fStateValueTypes = new ArrayList<>();
+        allocate(INITIAL_CAPACITY);
 
         fLatestTime = backend.getStartTime();
     }
 
+    private void allocate(int capacity) {
+        fNbAttributes = 0;
+        fStartTimes = new long[capacity];
+        fTypes = new byte[capacity];
+        fPayloads = new long[capacity];
+        fStringValues = new StateValue[capacity];
+        fExpectedTypes = new byte[capacity];
+    }
+
     /**
      * Get the latest time we have seen so far.
      *
@@ -89,7 +139,7 @@ class TransientState {
         fRWLock.readLock().lock();
         try {
             checkValidAttribute(quark);
-            return fOngoingStateInfo.get(quark);
+            return getValue(quark);
         } finally {
             fRWLock.readLock().unlock();
         }
@@ -108,7 +158,7 @@ class TransientState {
         fRWLock.readLock().lock();
         try {
             checkValidAttribute(quark);
-            return fOngoingStateStartTimes.get(quark);
+            return fStartTimes[quark];
         } finally {
             fRWLock.readLock().unlock();
         }
@@ -130,7 +180,7 @@ class TransientState {
         fRWLock.writeLock().lock();
         try {
             checkValidAttribute(quark);
-            fOngoingStateInfo.set(quark, newValue);
+            setValue(quark, newValue);
         } finally {
             fRWLock.writeLock().unlock();
         }
@@ -151,8 +201,8 @@ class TransientState {
         fRWLock.readLock().lock();
         try {
             checkValidAttribute(quark);
-            return new StateInterval(fOngoingStateStartTimes.get(quark), fLatestTime,
-                    quark, fOngoingStateInfo.get(quark));
+            return new StateInterval(fStartTimes[quark], fLatestTime,
+                    quark, getValue(quark));
         } finally {
             fRWLock.readLock().unlock();
         }
@@ -174,11 +224,11 @@ class TransientState {
         fRWLock.readLock().lock();
         try {
             checkValidAttribute(quark);
-            if (!isActive() || time < fOngoingStateStartTimes.get(quark)) {
+            if (!isActive() || time < fStartTimes[quark]) {
                 return null;
             }
-            return new StateInterval(fOngoingStateStartTimes.get(quark),
-                    fLatestTime, quark, fOngoingStateInfo.get(quark));
+            return new StateInterval(fStartTimes[quark],
+                    fLatestTime, quark, getValue(quark));
         } catch (AttributeNotFoundException e) {
             return null;
         } finally {
@@ -187,7 +237,7 @@ class TransientState {
     }
 
     private void checkValidAttribute(int quark) throws AttributeNotFoundException {
-        if (quark > fOngoingStateInfo.size() - 1 || quark < 0) {
+        if (quark > fNbAttributes - 1 || quark < 0) {
             throw new AttributeNotFoundException(fBackend.getSSID() + " Quark:" + quark); //$NON-NLS-1$
         }
     }
@@ -208,14 +258,13 @@ class TransientState {
 
         fRWLock.writeLock().lock();
         try {
-            fOngoingStateInfo = new ArrayList<>(size);
-            fOngoingStateStartTimes = new ArrayList<>(size);
-            fStateValueTypes = new ArrayList<>(size);
+            allocate(Math.max(size, INITIAL_CAPACITY));
 
             for (StateInterval interval : newStateIntervals) {
-                fOngoingStateInfo.add(interval.getStateValue());
-                fOngoingStateStartTimes.add(interval.getStart());
-                fStateValueTypes.add(interval.getStateValue().getClass());
+                int quark = fNbAttributes++;
+                setValue(quark, interval.getStateValue());
+                fStartTimes[quark] = interval.getStart();
+                fExpectedTypes[quark] = fTypes[quark];
             }
         } finally {
             fRWLock.writeLock().unlock();
@@ -230,16 +279,29 @@ class TransientState {
     public void addEmptyEntry() {
         fRWLock.writeLock().lock();
         try {
+            int quark = fNbAttributes;
+            if (quark == fStartTimes.length) {
+                int newCapacity = Math.max(2 * quark, INITIAL_CAPACITY);
+                fStartTimes = Arrays.copyOf(fStartTimes, newCapacity);
+                fTypes = Arrays.copyOf(fTypes, newCapacity);
+                fPayloads = Arrays.copyOf(fPayloads, newCapacity);
+                fStringValues = Arrays.copyOf(fStringValues, newCapacity);
+                fExpectedTypes = Arrays.copyOf(fExpectedTypes, newCapacity);
+            }
+
             /*
              * Since this is a new attribute, we suppose it was in the
              * "null state" since the beginning (so we can have intervals
              * covering for all timestamps). A null interval will then get added
              * at the first state change.
              */
-            fOngoingStateInfo.add(StateValue.nullValue());
-            fStateValueTypes.add(NullStateValue.class);
+            fTypes[quark] = TYPE_NULL;
+            fPayloads[quark] = 0;
+            fStringValues[quark] = null;
+            fExpectedTypes[quark] = TYPE_NULL;
 
-            fOngoingStateStartTimes.add(fBackend.getStartTime());
+            fStartTimes[quark] = fBackend.getStartTime();
+            fNbAttributes++;
         } finally {
             fRWLock.writeLock().unlock();
         }
@@ -261,35 +323,161 @@ class TransientState {
      */
     public void processStateChange(long eventTime, StateValue value, int quark)
             throws TimeRangeException, AttributeNotFoundException {
+        if (value instanceof IntegerStateValue) {
+            processStateChange(eventTime, quark, TYPE_INTEGER, ((IntegerStateValue) value).getValue(), null);
+        } else if (value instanceof LongStateValue) {
+            processStateChange(eventTime, quark, TYPE_LONG, ((LongStateValue) value).getValue(), null);
+        } else if (value instanceof DoubleStateValue) {
+            processStateChange(eventTime, quark, TYPE_DOUBLE, doubleToPayload(((DoubleStateValue) value).getValue()), null);
+        } else if (value instanceof BooleanStateValue) {
+            processStateChange(eventTime, quark, TYPE_BOOLEAN, ((BooleanStateValue) value).getValue() ? 1 : 0, null);
+        } else if (value instanceof StringStateValue) {
+            processStateChange(eventTime, quark, TYPE_STRING, 0, value);
+        } else {
+            processStateChange(eventTime, quark, TYPE_NULL, 0, null);
+        }
+    }
+
+    /**
+     * Process a state change to an integer value, without creating a
+     * {@link StateValue} for it.
+     *
+     * @param eventTime
+     *            The timestamp associated with this state change
+     * @param value
+     *            The new value of the attribute
+     * @param quark
+     *            The quark of the attribute that is being modified
+     * @throws TimeRangeException
+     *             If 'eventTime' is invalid
+     * @throws AttributeNotFoundException
+     *             IF 'quark' does not represent an existing attribute
+     */
+    public void processStateChangeInt(long eventTime, int value, int quark)
+            throws TimeRangeException, AttributeNotFoundException {
+        processStateChange(eventTime, quark, TYPE_INTEGER, value, null);
+    }
+
+    /**
+     * Process a state change to a long value, without creating a
+     * {@link StateValue} for it.
+     *
+     * @param eventTime
+     *            The timestamp associated with this state change
+     * @param value
+     *            The new value of the attribute
+     * @param quark
+     *            The quark of the attribute that is being modified
+     * @throws TimeRangeException
+     *             If 'eventTime' is invalid
+     * @throws AttributeNotFoundException
+     *             IF 'quark' does not represent an existing attribute
+     */
+    public void processStateChangeLong(long eventTime, long value, int quark)
+            throws TimeRangeException, AttributeNotFoundException {
+        processStateChange(eventTime, quark, TYPE_LONG, value, null);
+    }
+
+    /**
+     * Process a state change to a double value, without creating a
+     * {@link StateValue} for it.
+     *
+     * @param eventTime
+     *            The timestamp associated with this state change
+     * @param value
+     *            The new value of the attribute
+     * @param quark
+     *            The quark of the attribute that is being modified
+     * @throws TimeRangeException
+     *             If 'eventTime' is invalid
+     * @throws AttributeNotFoundException
+     *             IF 'quark' does not represent an existing attribute
+     */
+    public void processStateChangeDouble(long eventTime, double value, int quark)
+            throws TimeRangeException, AttributeNotFoundException {
+        processStateChange(eventTime, quark, TYPE_DOUBLE, doubleToPayload(value), null);
+    }
+
+    /**
+     * Process a state change to the null value.
+     *
+     * @param eventTime
+     *            The timestamp associated with this state change
+     * @param quark
+     *            The quark of the attribute that is being modified
+     * @throws TimeRangeException
+     *             If 'eventTime' is invalid
+     * @throws AttributeNotFoundException
+     *             IF 'quark' does not represent an existing attribute
+     */
+    public void processStateChangeNull(long eventTime, int quark)
+            throws TimeRangeException, AttributeNotFoundException {
+        processStateChange(eventTime, quark, TYPE_NULL, 0, null);
+    }
+
+    /**
+     * Increment the ongoing value of an integer attribute by one. A null
+     * value counts as 0.
+     *
+     * @param eventTime
+     *            The timestamp associated with this state change
+     * @param quark
+     *            The quark of the attribute that is being modified
+     * @throws TimeRangeException
+     *             If 'eventTime' is invalid
+     * @throws AttributeNotFoundException
+     *             IF 'quark' does not represent an existing attribute
+     */
+    public void incrementOngoingValue(long eventTime, int quark)
+            throws TimeRangeException, AttributeNotFoundException {
+        fRWLock.writeLock().lock();
+        try {
+            checkValidAttribute(quark);
+            int prevValue = 0;
+            /* if the attribute was previously null, start counting at 0 */
+            if (fTypes[quark] != TYPE_NULL) {
+                checkType(quark, fTypes[quark], TYPE_INTEGER);
+                prevValue = (int) fPayloads[quark];
+            }
+            processStateChange(eventTime, quark, TYPE_INTEGER, prevValue + 1, null);
+        } finally {
+            fRWLock.writeLock().unlock();
+        }
+    }
+
+    private void processStateChange(long eventTime, int quark, byte type, long payload, @Nullable StateValue stringValue)
+            throws TimeRangeException, AttributeNotFoundException {
         if (!this.fIsActive) {
             return;
         }
 
         fRWLock.writeLock().lock();
         try {
-            Class<? extends StateValue> expectedSvType = fStateValueTypes.get(quark);
             checkValidAttribute(quark);
 
             /*
              * Make sure the state value type we're inserting is the same as the
              * one registered for this attribute.
              */
-            if (expectedSvType == NullStateValue.class) {
+            byte expectedType = fExpectedTypes[quark];
+            if (expectedType == TYPE_NULL) {
                 /*
                  * The value hasn't been used yet, set it to the value we're
                  * currently inserting (which might be null/-1 again).
                  */
-                fStateValueTypes.set(quark, value.getClass());
-            } else if ((value.getClass() != NullStateValue.class) && (value.getClass() != expectedSvType)) {
+                fExpectedTypes[quark] = type;
+            } else if (type != TYPE_NULL) {
                 /*
                  * We authorize inserting null values in any type of attribute,
                  * but for every other types, it needs to match our
                  * expectations!
                  */
-                throw new IllegalArgumentException(fBackend.getSSID() + " Quark:" + quark + ", Type:" + value.getClass().getSimpleName() + ", Expected:" + expectedSvType.getSimpleName()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                checkType(quark, type, expectedType);
             }
 
-            if (fOngoingStateInfo.get(quark).equals(value)) {
+            if (fTypes[quark] == type
+                    && fPayloads[quark] == payload
+                    && Objects.equals(fStringValues[quark], stringValue)) {
                 /*
                  * This is the case where the new value and the one already
                  * present in the Builder are the same. We do not need to create
@@ -298,19 +486,21 @@ class TransientState {
                 return;
             }
 
-            if (fOngoingStateStartTimes.get(quark) < eventTime) {
+            if (fStartTimes[quark] < eventTime) {
                 /*
                  * These two conditions are necessary to create an interval and
                  * update ongoingStateInfo.
                  */
-                fBackend.insertPastState(fOngoingStateStartTimes.get(quark),
+                fBackend.insertPastState(fStartTimes[quark],
                         eventTime - 1, /* End Time */
                         quark, /* attribute quark */
-                        fOngoingStateInfo.get(quark)); /* StateValue */
+                        getValue(quark)); /* StateValue */
 
-                fOngoingStateStartTimes.set(quark, eventTime);
+                fStartTimes[quark] = eventTime;
             }
-            fOngoingStateInfo.set(quark, value);
+            fTypes[quark] = type;
+            fPayloads[quark] = payload;
+            fStringValues[quark] = stringValue;
 
             /* Update the Transient State's lastestTime, if needed */
             if (fLatestTime < eventTime) {
@@ -322,6 +512,66 @@ class TransientState {
         }
     }
 
+    private void checkType(int quark, byte type, byte expectedType) {
+        if (type != expectedType) {
+            throw new IllegalArgumentException(fBackend.getSSID() + " Quark:" + quark + ", Type:" + TYPE_CLASSES[type].getSimpleName() + ", Expected:" + TYPE_CLASSES[expectedType].getSimpleName()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+    }
+
+    /**
+     * Create the state value object of the ongoing value of an attribute.
+     * Values cached by {@link StateValue} are not allocated again.
+     */
+    private StateValue getValue(int quark) {
+        long payload = fPayloads[quark];
+        switch (fTypes[quark]) {
+        case TYPE_BOOLEAN:
+            return StateValue.newValueBoolean(payload != 0);
+        case TYPE_INTEGER:
+            return StateValue.newValueInt((int) payload);
+        case TYPE_LONG:
+            return StateValue.newValueLong(payload);
+        case TYPE_DOUBLE:
+            return StateValue.newValueDouble(Double.longBitsToDouble(payload));
+        case TYPE_STRING:
+            return Objects.requireNonNull(fStringValues[quark]);
+        case TYPE_NULL:
+        default:
+            return StateValue.nullValue();
+        }
+    }
+
+    private void setValue(int quark, StateValue value) {
+        fPayloads[quark] = 0;
+        fStringValues[quark] = null;
+        if (value instanceof IntegerStateValue) {
+            fTypes[quark] = TYPE_INTEGER;
+            fPayloads[quark] = ((IntegerStateValue) value).getValue();
+        } else if (value instanceof LongStateValue) {
+            fTypes[quark] = TYPE_LONG;
+            fPayloads[quark] = ((LongStateValue) value).getValue();
+        } else if (value instanceof DoubleStateValue) {
+            fTypes[quark] = TYPE_DOUBLE;
+            fPayloads[quark] = doubleToPayload(((DoubleStateValue) value).getValue());
+        } else if (value instanceof BooleanStateValue) {
+            fTypes[quark] = TYPE_BOOLEAN;
+            fPayloads[quark] = ((BooleanStateValue) value).getValue() ? 1 : 0;
+        } else if (value instanceof StringStateValue) {
+            fTypes[quark] = TYPE_STRING;
+            fStringValues[quark] = value;
+        } else {
+            fTypes[quark] = TYPE_NULL;
+        }
+    }
+
+    /*
+     * Double values are compared like DoubleStateValue.equals() does, so all
+     * NaNs are the same value, but 0.0 and -0.0 are not.
+     */
+    private static long doubleToPayload(double value) {
+        return Double.doubleToLongBits(value);
+    }
+
     /**
      * Run a "get state at time" query on the Transient State only.
      *
@@ -337,7 +587,7 @@ class TransientState {
             if (!this.fIsActive) {
                 return;
             }
-            if (stateInfo.size() > fOngoingStateInfo.size()) {
+            if (stateInfo.size() > fNbAttributes) {
                 throw new IllegalArgumentException();
             }
 
@@ -374,8 +624,8 @@ class TransientState {
                 return;
             }
 
-            for (int i = 0; i < fOngoingStateInfo.size(); i++) {
-                if (fOngoingStateStartTimes.get(i) > endTime) {
+            for (int i = 0; i < fNbAttributes; i++) {
+                if (fStartTimes[i] > endTime) {
                     /*
                      * Handle the cases where trace end > timestamp of last
                      * state change. This can happen when inserting "future"
@@ -384,10 +634,10 @@ class TransientState {
                     continue;
                 }
                 try {
-                    fBackend.insertPastState(fOngoingStateStartTimes.get(i),
+                    fBackend.insertPastState(fStartTimes[i],
                             endTime, /* End Time */
                             i, /* attribute quark */
-                            fOngoingStateInfo.get(i)); /* StateValue */
+                            getValue(i)); /* StateValue */
 
                 } catch (TimeRangeException e) {
                     /*
@@ -398,8 +648,7 @@ class TransientState {
                 }
             }
 
-            fOngoingStateInfo.clear();
-            fOngoingStateStartTimes.clear();
+            allocate(0);
             this.fIsActive = false;
 
         } finally {
@@ -441,10 +690,10 @@ class TransientState {
                 return;
             }
             writer.println("\nAttribute\tStateValue\tValid since time"); //$NON-NLS-1$
-            for (int i = 0; i < fOngoingStateInfo.size(); i++) {
+            for (int i = 0; i < fNbAttributes; i++) {
                 writer.format("%d\t\t", i); //$NON-NLS-1$
-                writer.print(fOngoingStateInfo.get(i).toString() + "\t\t"); //$NON-NLS-1$
-                writer.println(fOngoingStateStartTimes.get(i).toString());
+                writer.print(getValue(i).toString() + "\t\t"); //$NON-NLS-1$
+                writer.println(fStartTimes[i]);
             }
             writer.println('\n');
 
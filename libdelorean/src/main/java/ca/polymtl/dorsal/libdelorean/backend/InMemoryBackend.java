@@ -213,4 +213,24 @@ class InMemoryBackend implements IStateHistoryBackend {
             }
         });
     }
+
+    @Override
+    public Iterator<StateInterval> doRangeQuery(@NotNull Set<Integer> quarks, long t1, long t2) {
+        List<StateInterval> results = new ArrayList<>();
+
+        /*
+         * Like for the other queries, skip the intervals ending before the
+         * range, then only compare the start times.
+         */
+        synchronized (intervals) {
+            Iterator<StateInterval> iter = serachforEndTime(intervals, t1);
+            while (iter.hasNext()) {
+                StateInterval entry = iter.next();
+                if (entry.getStart() <= t2 && quarks.contains(entry.getAttribute())) {
+                    results.add(entry);
+                }
+            }
+        }
+        return results.iterator();
+    }
 }
@@ -16,6 +16,8 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -126,4 +128,13 @@ class NullBackend implements IStateHistoryBackend {
             }
         });
     }
+
+    /**
+     * Null back-ends cannot run queries. No interval will be returned.
+     */
+    @Override
+    public Iterator<StateInterval> doRangeQuery(@NotNull Set<Integer> quarks, long t1, long t2) {
+        /* Cannot do past queries */
+        return Collections.emptyIterator();
+    }
 }
@@ -48,7 +48,7 @@ class HistoryTree {
     private static final int HISTORY_FILE_MAGIC_NUMBER = 0x05FFA900;
 
     /** File format version. Increment when breaking compatibility. */
-    private static final int FILE_VERSION = 7;
+    private static final int FILE_VERSION = 10;
 
     // ------------------------------------------------------------------------
     // Tree-specific configuration
@@ -143,6 +143,23 @@ class HistoryTree {
      *             If an error happens reading the file
      */
     public HistoryTree(File existingStateFile, int expProviderVersion) throws IOException {
+        this(existingStateFile, expProviderVersion, HT_IO.DEFAULT_CACHE_BUDGET);
+    }
+
+    /**
+     * "Reader" constructor : instantiate a SHTree from an existing tree file on
+     * disk, specifying the size of its node cache.
+     *
+     * @param existingStateFile
+     *            Path/filename of the history-file we are to open
+     * @param expProviderVersion
+     *            The expected version of the state provider
+     * @param cacheBudget
+     *            Maximum size in bytes of the nodes kept in memory
+     * @throws IOException
+     *             If an error happens reading the file
+     */
+    public HistoryTree(File existingStateFile, int expProviderVersion, long cacheBudget) throws IOException {
         /*
          * Open the file ourselves, get the tree header information we need,
          * then pass on the descriptor to the TreeIO object.
@@ -218,7 +235,10 @@ class HistoryTree {
          * file, not extremely elegant. But how to pass the information here to
          * the SHT otherwise?
          */
-        fTreeIO = new HT_IO(fStateFile, fBlockSize, fMaxChildren, false);
+        fTreeIO = new HT_IO(fStateFile, fBlockSize, fMaxChildren, false, cacheBudget);
+
+        /* The file is complete, nodes can be read from a mapping of it */
+        fTreeIO.mapNodes(fNodeCount);
 
         fLatestBranch = buildLatestBranch(rootNodeSeqNb);
         fTreeEnd = getRootNode().getNodeEnd();
@@ -285,6 +305,9 @@ class HistoryTree {
                 fTreeIO.writeNode(fLatestBranch.get(i));
             }
 
+            /* The header must be written last, once all the nodes are */
+            fTreeIO.finishWrites(fNodeCount);
+
             try (FileChannel fc = fTreeIO.getFcOut();) {
                 ByteBuffer buffer = ByteBuffer.allocate(TREE_HEADER_SIZE);
                 buffer.order(ByteOrder.LITTLE_ENDIAN);
@@ -314,6 +337,12 @@ class HistoryTree {
                 assert (res <= TREE_HEADER_SIZE);
                 /* done writing the file header */
 
+                /*
+                 * All the nodes are now on disk and will not change, further
+                 * reads can use a mapping of the file.
+                 */
+                fTreeIO.mapNodes(fNodeCount);
+
             } catch (IOException e) {
                 /*
                  * If we were able to write so far, there should not be any
@@ -355,6 +384,24 @@ class HistoryTree {
         return fNodeCount;
     }
 
+    /**
+     * Get the number of node reads that were served from the node cache.
+     *
+     * @return The number of cache hits
+     */
+    public long getCacheHits() {
+        return fTreeIO.getCacheHits();
+    }
+
+    /**
+     * Get the number of node reads that had to be read from the file.
+     *
+     * @return The number of cache misses
+     */
+    public long getCacheMisses() {
+        return fTreeIO.getCacheMisses();
+    }
+
     /**
      * Get the current root node of this tree
      *
@@ -488,7 +535,7 @@ class HistoryTree {
         HistoryTreeNode targetNode = fLatestBranch.get(indexOfNode);
 
         /* Verify if there is enough room in this node to store this interval */
-        if (interval.getSizeOnDisk() > targetNode.getNodeFreeSpace()) {
+        if (interval.getSizeOnDisk() + HistoryTreeNode.INTERVAL_INDEX_ENTRY_SIZE > targetNode.getNodeFreeSpace()) {
             /* Nope, not enough room. Insert in a new sibling instead. */
             addSiblingNode(indexOfNode);
             tryInsertAtNode(interval, fLatestBranch.size() - 1);
@@ -694,6 +741,40 @@ class HistoryTree {
         return readNode(potentialNextSeqNb);
     }
 
+    /**
+     * Select the children of the given node whose time range intersects the
+     * range [t1, t2]. Useful for visiting all the nodes that can contain
+     * intervals of a time range.
+     *
+     * @param currentNode
+     *            The node on which the request is made
+     * @param t1
+     *            The start of the time range
+     * @param t2
+     *            The end of the time range
+     * @return The children nodes intersecting the range
+     * @throws ClosedChannelException
+     *             If the file channel was closed while we were reading the tree
+     */
+    public List<HistoryTreeNode> selectChildren(CoreNode currentNode, long t1, long t2) throws ClosedChannelException {
+        List<HistoryTreeNode> children = new ArrayList<>();
+        final int nbChildren = currentNode.getNbChildren();
+
+        for (int i = 0; i < nbChildren; i++) {
+            if (currentNode.getChildStart(i) > t2) {
+                /* This child and the following ones start after the range */
+                break;
+            }
+            /* A child ends right before the start of the next one */
+            if (i < nbChildren - 1 && currentNode.getChildStart(i + 1) - 1 < t1) {
+                continue;
+            }
+            int seqNb = currentNode.getChild(i);
+            children.add(currentNode.isOnDisk() ? fTreeIO.readNode(seqNb) : readNode(seqNb));
+        }
+        return children;
+    }
+
     /**
      * Get the current size of the history file.
      *
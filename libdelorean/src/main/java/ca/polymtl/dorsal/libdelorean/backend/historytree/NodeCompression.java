@@ -0,0 +1,419 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package ca.polymtl.dorsal.libdelorean.backend.historytree;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Compressed encoding of the payload of history tree nodes, meaning their
+ * interval index and their intervals.
+ *
+ * The intervals are first written in a compact form: timestamps as varints
+ * relative to the start of the node (the end time relative to the start
+ * time), quarks and integer values as varints, strings without their
+ * terminator. The index is not stored, it is rebuilt when decoding. The
+ * result is then compressed with a byte-oriented LZ77 scheme similar to LZ4,
+ * which is fast to decode and works well on the repeated type bytes, quarks
+ * and values of a node.
+ *
+ * Decoding gives back the exact payload that was encoded, so nodes read from
+ * disk can access their intervals at fixed offsets whatever their encoding.
+ *
+ * @author Alexandre Montplaisir
+ */
+final class NodeCompression {
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int HASH_BITS = 12;
+
+    private NodeCompression() {}
+
+    /**
+     * Encode the payload of a node.
+     *
+     * @param payload
+     *            Little-endian buffer containing the payload, from its
+     *            position to its limit: the interval index, then the
+     *            intervals in the same order. It is not modified.
+     * @param count
+     *            The number of intervals in the payload
+     * @param nodeStart
+     *            The start time of the node
+     * @return The encoded payload, or null if it would not be smaller than
+     *         the original one
+     */
+    static @Nullable byte[] encode(ByteBuffer payload, int count, long nodeStart) {
+        int base = payload.position();
+        int rawSize = payload.remaining();
+
+        ByteSink compact = new ByteSink(rawSize + 8 * count + 16);
+        for (int i = 0; i < count; i++) {
+            int pos = base + payload.getInt(base + i * Integer.BYTES);
+            byte type = payload.get(pos);
+            long start = payload.getLong(pos + HTInterval.START_OFFSET);
+            long end = payload.getLong(pos + HTInterval.END_OFFSET);
+            int quark = payload.getInt(pos + HTInterval.QUARK_OFFSET);
+            int valuePos = pos + HTInterval.VALUE_OFFSET;
+
+            compact.put(type);
+            compact.putVarLong(start - nodeStart);
+            compact.putVarLong(end - start);
+            compact.putVarLong(quark & 0xFFFFFFFFL);
+
+            switch (type) {
+            case HTInterval.TYPE_NULL:
+            case HTInterval.TYPE_BOOLEAN_TRUE:
+            case HTInterval.TYPE_BOOLEAN_FALSE:
+                break;
+            case HTInterval.TYPE_INTEGER:
+                compact.putVarLong(zigZag(payload.getInt(valuePos)));
+                break;
+            case HTInterval.TYPE_LONG:
+                compact.putVarLong(zigZag(payload.getLong(valuePos)));
+                break;
+            case HTInterval.TYPE_DOUBLE:
+                compact.putLong(payload.getLong(valuePos));
+                break;
+            case HTInterval.TYPE_STRING: {
+                int strSize = payload.getShort(valuePos);
+                compact.putVarLong(strSize);
+                for (int j = 0; j < strSize; j++) {
+                    compact.put(payload.get(valuePos + Short.BYTES + j));
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown value type " + type); //$NON-NLS-1$
+            }
+        }
+
+        byte[] compressed = compress(compact.bytes, compact.size);
+        return (compressed.length < rawSize ? compressed : null);
+    }
+
+    /**
+     * Decode a payload encoded by {@link #encode}.
+     *
+     * @param encoded
+     *            Buffer containing the encoded payload, from its position to
+     *            its limit. Its position is moved to the limit.
+     * @param count
+     *            The number of intervals in the payload
+     * @param nodeStart
+     *            The start time of the node
+     * @param capacity
+     *            The maximum size of the decoded payload
+     * @return A little-endian buffer containing the original payload,
+     *         positioned at its start
+     * @throws IOException
+     *             If the encoded data is not valid
+     */
+    static ByteBuffer decode(ByteBuffer encoded, int count, long nodeStart, int capacity) throws IOException {
+        byte[] input = new byte[encoded.remaining()];
+        encoded.get(input);
+
+        /* The compact form is never much larger than the original payload */
+        byte[] compact = new byte[capacity + 8 * count + 16];
+        int compactSize = decompress(input, compact);
+
+        ByteSource source = new ByteSource(compact, compactSize);
+        ByteBuffer payload = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            int pos = count * Integer.BYTES;
+            for (int i = 0; i < count; i++) {
+                payload.putInt(i * Integer.BYTES, pos);
+                payload.position(pos);
+
+                byte type = source.get();
+                long start = nodeStart + source.getVarLong();
+                long end = start + source.getVarLong();
+                payload.put(type);
+                payload.putLong(start);
+                payload.putLong(end);
+                payload.putInt((int) source.getVarLong());
+
+                switch (type) {
+                case HTInterval.TYPE_NULL:
+                case HTInterval.TYPE_BOOLEAN_TRUE:
+                case HTInterval.TYPE_BOOLEAN_FALSE:
+                    break;
+                case HTInterval.TYPE_INTEGER:
+                    payload.putInt((int) unZigZag(source.getVarLong()));
+                    break;
+                case HTInterval.TYPE_LONG:
+                    payload.putLong(unZigZag(source.getVarLong()));
+                    break;
+                case HTInterval.TYPE_DOUBLE:
+                    payload.putLong(source.getLong());
+                    break;
+                case HTInterval.TYPE_STRING: {
+                    int strSize = (int) source.getVarLong();
+                    payload.putShort((short) strSize);
+                    for (int j = 0; j < strSize; j++) {
+                        payload.put(source.get());
+                    }
+                    payload.put((byte) 0);
+                    break;
+                }
+                default:
+                    throw new IOException("Invalid interval type in compressed node: " + type); //$NON-NLS-1$
+                }
+                pos = payload.position();
+            }
+        } catch (BufferOverflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Compressed node is larger than a block", e); //$NON-NLS-1$
+        }
+        if (source.hasRemaining()) {
+            throw new IOException("Unexpected data at the end of a compressed node"); //$NON-NLS-1$
+        }
+
+        payload.clear();
+        return payload;
+    }
+
+    // ------------------------------------------------------------------------
+    // LZ77 block compression
+    // ------------------------------------------------------------------------
+
+    /*
+     * The compressed data is a series of sequences, each one made of a token
+     * byte, literal bytes, and a match. The high nibble of the token is the
+     * number of literals, the low nibble is the match length minus
+     * MIN_MATCH. A nibble of 15 is followed by extra length bytes, added until
+     * one is not 255. The match is a 2-byte offset back into the output. The
+     * last sequence only has literals.
+     */
+
+    private static byte[] compress(byte[] src, int srcLength) {
+        ByteSink out = new ByteSink(srcLength + srcLength / 255 + 16);
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+
+        int anchor = 0;
+        int i = 0;
+        while (i + MIN_MATCH <= srcLength) {
+            int sequence = readInt(src, i);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[hash];
+            table[hash] = i;
+
+            if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                i++;
+                continue;
+            }
+
+            int matchLength = MIN_MATCH;
+            while (i + matchLength < srcLength && src[ref + matchLength] == src[i + matchLength]) {
+                matchLength++;
+            }
+
+            int literals = i - anchor;
+            out.put((byte) ((Math.min(literals, 15) << 4) | Math.min(matchLength - MIN_MATCH, 15)));
+            if (literals >= 15) {
+                out.putLength(literals - 15);
+            }
+            out.put(src, anchor, literals);
+            out.put((byte) (i - ref));
+            out.put((byte) ((i - ref) >>> 8));
+            if (matchLength - MIN_MATCH >= 15) {
+                out.putLength(matchLength - MIN_MATCH - 15);
+            }
+
+            i += matchLength;
+            anchor = i;
+        }
+
+        int literals = srcLength - anchor;
+        out.put((byte) (Math.min(literals, 15) << 4));
+        if (literals >= 15) {
+            out.putLength(literals - 15);
+        }
+        out.put(src, anchor, literals);
+
+        return Arrays.copyOf(out.bytes, out.size);
+    }
+
+    private static int decompress(byte[] src, byte[] dst) throws IOException {
+        ByteSource in = new ByteSource(src, src.length);
+        int out = 0;
+        try {
+            while (true) {
+                int token = in.get() & 0xFF;
+
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    literals += in.getLength();
+                }
+                in.get(dst, out, literals);
+                out += literals;
+
+                if (!in.hasRemaining()) {
+                    /* Last sequence */
+                    return out;
+                }
+
+                int offset = (in.get() & 0xFF) | ((in.get() & 0xFF) << 8);
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    matchLength += in.getLength();
+                }
+                matchLength += MIN_MATCH;
+                if (offset == 0 || offset > out || out + matchLength > dst.length) {
+                    throw new IOException("Invalid match in compressed node"); //$NON-NLS-1$
+                }
+                /* Copy byte per byte, the match can overlap the output */
+                for (int j = 0; j < matchLength; j++) {
+                    dst[out + j] = dst[out - offset + j];
+                }
+                out += matchLength;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated compressed node", e); //$NON-NLS-1$
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Helpers
+    // ------------------------------------------------------------------------
+
+    private static int readInt(byte[] array, int pos) {
+        return (array[pos] & 0xFF)
+                | ((array[pos + 1] & 0xFF) << 8)
+                | ((array[pos + 2] & 0xFF) << 16)
+                | ((array[pos + 3] & 0xFF) << 24);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /** Growable byte array */
+    private static final class ByteSink {
+        byte[] bytes;
+        int size = 0;
+
+        ByteSink(int initialCapacity) {
+            bytes = new byte[initialCapacity];
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + extra));
+            }
+        }
+
+        void put(byte b) {
+            ensureCapacity(1);
+            bytes[size++] = b;
+        }
+
+        void put(byte[] src, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(src, offset, bytes, size, length);
+            size += length;
+        }
+
+        void putLong(long value) {
+            for (int i = 0; i < Long.BYTES; i++) {
+                put((byte) (value >>> (8 * i)));
+            }
+        }
+
+        void putVarLong(long value) {
+            long v = value;
+            while ((v & ~0x7FL) != 0) {
+                put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            put((byte) v);
+        }
+
+        void putLength(int length) {
+            int l = length;
+            while (l >= 255) {
+                put((byte) 255);
+                l -= 255;
+            }
+            put((byte) l);
+        }
+    }
+
+    /** Reader of a byte array, throwing IOException past its end */
+    private static final class ByteSource {
+        private final byte[] bytes;
+        private final int size;
+        private int pos = 0;
+
+        ByteSource(byte[] bytes, int size) {
+            this.bytes = bytes;
+            this.size = size;
+        }
+
+        boolean hasRemaining() {
+            return pos < size;
+        }
+
+        byte get() throws IOException {
+            if (pos >= size) {
+                throw new IOException("Truncated compressed node"); //$NON-NLS-1$
+            }
+            return bytes[pos++];
+        }
+
+        void get(byte[] dst, int offset, int length) throws IOException {
+            if (length > size - pos || length > dst.length - offset) {
+                throw new IOException("Truncated compressed node"); //$NON-NLS-1$
+            }
+            System.arraycopy(bytes, pos, dst, offset, length);
+            pos += length;
+        }
+
+        long getLong() throws IOException {
+            long value = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                value |= (get() & 0xFFL) << (8 * i);
+            }
+            return value;
+        }
+
+        long getVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = get();
+                value |= (b & 0x7FL) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Invalid varint in compressed node"); //$NON-NLS-1$
+        }
+
+        int getLength() throws IOException {
+            int length = 0;
+            int b;
+            do {
+                b = get() & 0xFF;
+                length += b;
+            } while (b == 255);
+            return length;
+        }
+    }
+}
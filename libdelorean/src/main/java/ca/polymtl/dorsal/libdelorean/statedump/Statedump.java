@@ -10,6 +10,7 @@
 package ca.polymtl.dorsal.libdelorean.statedump;
 
 import ca.polymtl.dorsal.libdelorean.IStateSystemReader;
+import ca.polymtl.dorsal.libdelorean.IStateSystemWriter;
 import ca.polymtl.dorsal.libdelorean.exceptions.StateSystemDisposedException;
 import ca.polymtl.dorsal.libdelorean.interval.StateInterval;
 import ca.polymtl.dorsal.libdelorean.statevalue.*;
@@ -140,6 +141,29 @@ public class Statedump {
         return fStatedumpVersion;
     }
 
+    /**
+     * Restore the states of this statedump into a state system, as if they
+     * were all assigned at the given timestamp. Attributes that do not exist
+     * yet in the target state system will be created.
+     *
+     * This can be used to resume building a state history from a known
+     * point, without having to process everything that came before.
+     *
+     * @param ss
+     *            The state system in which to restore the states
+     * @param timestamp
+     *            The timestamp at which to assign the states
+     */
+    public void restoreInto(IStateSystemWriter ss, long timestamp) {
+        for (int i = 0; i < fAttributes.size(); i++) {
+            int quark = ss.getQuarkAbsoluteAndAdd(fAttributes.get(i));
+            StateValue sv = fStates.get(i);
+            if (!sv.isNull()) {
+                ss.modifyAttribute(timestamp, sv, quark);
+            }
+        }
+    }
+
     /**
      * Save this statedump at the given location.
      *
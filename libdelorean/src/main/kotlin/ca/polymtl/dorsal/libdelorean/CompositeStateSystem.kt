@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package ca.polymtl.dorsal.libdelorean
+
+import ca.polymtl.dorsal.libdelorean.backend.StateHistoryBackendFactory
+import ca.polymtl.dorsal.libdelorean.exceptions.AttributeNotFoundException
+import ca.polymtl.dorsal.libdelorean.exceptions.TimeRangeException
+import ca.polymtl.dorsal.libdelorean.interval.StateInterval
+import ca.polymtl.dorsal.libdelorean.statevalue.StateValue
+
+/**
+ * Read-only state system presenting several state systems as a single one.
+ *
+ * The attribute trees of the sub-state systems are merged by attribute path,
+ * so that an attribute present in more than one of them is seen as a single
+ * attribute. For such attributes, the state reported at a given time is the
+ * one that started most recently in any of the sub-state systems, and it ends
+ * at the next state change in any of them. This is the same state a single
+ * state system would have recorded if it had received all the state changes.
+ *
+ * The sub-state systems should be completely built before being passed here,
+ * since their attribute trees are only read once, at construction.
+ *
+ * @param ssid
+ *            The ID of this composite state system
+ * @param stateSystems
+ *            The state systems to merge
+ */
+open class CompositeStateSystem(ssid: String,
+                                protected val stateSystems: List<IStateSystemReader>) : IStateSystemReader {
+
+    /** Merged attribute tree. Its own backend is not used, it only serves to resolve quarks. */
+    private val attributes: IStateSystemWriter = StateSystemFactory.newStateSystem(StateHistoryBackendFactory.createNullBackend(ssid))
+
+    /** For each quark of this state system, the matching quark in each sub-state system, or -1. */
+    private val quarkMappings: Array<IntArray>
+
+    /** For each sub-state system, the matching quark of this state system for each of its quarks. */
+    private val reverseMappings: Array<IntArray>
+
+    init {
+        if (stateSystems.isEmpty()) throw IllegalArgumentException("A composite state system needs at least one state system")
+
+        val mappings = mutableListOf<IntArray>()
+        reverseMappings = Array(stateSystems.size) { ssIndex ->
+            val ss = stateSystems[ssIndex]
+            IntArray(ss.nbAttributes) { subQuark ->
+                val quark = attributes.getQuarkAbsoluteAndAdd(*ss.getFullAttributePathArray(subQuark))
+                while (mappings.size <= quark) mappings.add(IntArray(stateSystems.size) { -1 })
+                mappings[quark][ssIndex] = subQuark
+                quark
+            }
+        }
+        quarkMappings = mappings.toTypedArray()
+    }
+
+    // ------------------------------------------------------------------------
+    // General methods
+    // ------------------------------------------------------------------------
+
+    override fun getSSID(): String = attributes.ssid
+
+    override fun getStartTime() = stateSystems.map { it.startTime }.min()!!
+
+    override fun getCurrentEndTime() = stateSystems.map { it.currentEndTime }.max()!!
+
+    override fun waitUntilBuilt() = stateSystems.forEach { it.waitUntilBuilt() }
+
+    override fun waitUntilBuilt(timeout: Long) = stateSystems.all { it.waitUntilBuilt(timeout) }
+
+    override fun dispose() {
+        stateSystems.forEach { it.dispose() }
+        attributes.dispose()
+    }
+
+    override fun isDisposed() = attributes.isDisposed
+
+    // ------------------------------------------------------------------------
+    // Quark resolution, using the merged attribute tree
+    // ------------------------------------------------------------------------
+
+    override fun getNbAttributes() = attributes.nbAttributes
+
+    override fun getQuarkAbsolute(vararg attribute: String) = attributes.getQuarkAbsolute(*attribute)
+
+    override fun getQuarkRelative(startingNodeQuark: Int, vararg subPath: String) =
+            attributes.getQuarkRelative(startingNodeQuark, *subPath)
+
+    override fun getSubAttributes(quark: Int, recursive: Boolean): List<Int> =
+            attributes.getSubAttributes(quark, recursive)
+
+    override fun getSubAttributes(quark: Int, recursive: Boolean, pattern: String): List<Int> =
+            attributes.getSubAttributes(quark, recursive, pattern)
+
+    override fun getQuarks(vararg pattern: String): List<Int> = attributes.getQuarks(*pattern)
+
+    override fun getAttributeName(attributeQuark: Int): String = attributes.getAttributeName(attributeQuark)
+
+    override fun getFullAttributePath(attributeQuark: Int): String = attributes.getFullAttributePath(attributeQuark)
+
+    override fun getFullAttributePathArray(attributeQuark: Int): Array<String> =
+            attributes.getFullAttributePathArray(attributeQuark)
+
+    override fun getParentAttributeQuark(attributeQuark: Int) = attributes.getParentAttributeQuark(attributeQuark)
+
+    // ------------------------------------------------------------------------
+    // Query methods
+    // ------------------------------------------------------------------------
+
+    override fun queryOngoingState(attributeQuark: Int): StateValue {
+        val (ss, subQuark) = latestOngoing(attributeQuark)
+        return ss.queryOngoingState(subQuark)
+    }
+
+    override fun getOngoingStartTime(attribute: Int): Long {
+        val (ss, subQuark) = latestOngoing(attribute)
+        return ss.getOngoingStartTime(subQuark)
+    }
+
+    override fun queryFullState(t: Long): List<StateInterval> {
+        checkValidTime(t)
+        val intervals = Array(getNbAttributes()) { mutableListOf<StateInterval>() }
+        stateSystems.forEachIndexed { ssIndex, ss ->
+            if (!ss.covers(t)) return@forEachIndexed
+            ss.queryFullState(t).forEach { intervals[reverseMappings[ssIndex][it.attribute]].add(it) }
+        }
+        return intervals.mapIndexed { quark, candidates -> merge(t, quark, candidates) }
+    }
+
+    override fun querySingleState(t: Long, attributeQuark: Int): StateInterval {
+        checkValidTime(t)
+        val mapping = quarkMapping(attributeQuark)
+        val candidates = stateSystems.indices
+                .filter { mapping[it] >= 0 && stateSystems[it].covers(t) }
+                .map { stateSystems[it].querySingleState(t, mapping[it]) }
+        return merge(t, attributeQuark, candidates)
+    }
+
+    override fun queryStates(t: Long, quarks: Set<Int>): Map<Int, StateInterval> {
+        checkValidTime(t)
+        val intervals = quarks.associate { it to mutableListOf<StateInterval>() }
+        stateSystems.forEachIndexed { ssIndex, ss ->
+            if (!ss.covers(t)) return@forEachIndexed
+            val subQuarks = quarks.map { quarkMapping(it)[ssIndex] }.filter { it >= 0 }.toSet()
+            if (subQuarks.isEmpty()) return@forEachIndexed
+            ss.queryStates(t, subQuarks).values.forEach { intervals.getValue(reverseMappings[ssIndex][it.attribute]).add(it) }
+        }
+        return intervals.mapValues { merge(t, it.key, it.value) }
+    }
+
+    override fun queryHistoryRange(quarks: Set<Int>, t1: Long, t2: Long): Iterator<StateInterval> {
+        if (t2 < t1) throw TimeRangeException("${getSSID()} Start:$t1, End:$t2")
+        quarks.forEach { quarkMapping(it) }
+
+        val start = maxOf(t1, getStartTime())
+        val end = minOf(t2, getCurrentEndTime())
+        if (start > end) return emptyList<StateInterval>().iterator()
+
+        /* One range query per sub-state system, for all the requested quarks it has */
+        val subIntervals = quarks.associate { it to Array(stateSystems.size) { mutableListOf<StateInterval>() } }
+        stateSystems.forEachIndexed { ssIndex, ss ->
+            if (ss.startTime > end || ss.currentEndTime < start) return@forEachIndexed
+            val subQuarks = quarks.map { quarkMapping(it)[ssIndex] }.filter { it >= 0 }.toSet()
+            if (subQuarks.isEmpty()) return@forEachIndexed
+            ss.queryHistoryRange(subQuarks, maxOf(start, ss.startTime), minOf(end, ss.currentEndTime)).forEach {
+                subIntervals.getValue(reverseMappings[ssIndex][it.attribute])[ssIndex].add(it)
+            }
+        }
+
+        return quarks.asSequence()
+                .flatMap { quark -> joinRange(quark, mergeRange(quark, start, end, subIntervals.getValue(quark))).asSequence() }
+                .iterator()
+    }
+
+    /**
+     * Merge the intervals that the sub-state systems have for one attribute
+     * over the time range [start, end], the same way [merge] does for a single
+     * timestamp.
+     *
+     * @param subIntervals
+     *            The intervals of the attribute in each sub-state system
+     */
+    private fun mergeRange(quark: Int, start: Long, end: Long, subIntervals: Array<MutableList<StateInterval>>): List<StateInterval> {
+        val mapping = quarkMapping(quark)
+        subIntervals.forEach { intervals -> intervals.sortBy { it.start } }
+        val positions = IntArray(stateSystems.size)
+        val merged = mutableListOf<StateInterval>()
+
+        var t = start
+        while (t <= end) {
+            var latest: StateInterval? = null
+            /* Last timestamp before the state of one of the sub-state systems changes */
+            var last = Long.MAX_VALUE
+            for (ssIndex in stateSystems.indices) {
+                if (mapping[ssIndex] < 0) continue
+                val ss = stateSystems[ssIndex]
+                if (t > ss.currentEndTime) continue
+                if (t < ss.startTime) {
+                    last = minOf(last, ss.startTime - 1)
+                    continue
+                }
+
+                val intervals = subIntervals[ssIndex]
+                while (positions[ssIndex] < intervals.size && intervals[positions[ssIndex]].end < t) positions[ssIndex]++
+                val interval = intervals.getOrNull(positions[ssIndex]) ?: continue
+                if (interval.start <= t) {
+                    last = minOf(last, interval.end)
+                    if (latest == null || interval.start > latest.start) latest = interval
+                } else {
+                    last = minOf(last, interval.start - 1)
+                }
+            }
+
+            val interval = if (latest == null) {
+                /* No sub-state system had this attribute at this time */
+                StateInterval(t, if (last == Long.MAX_VALUE) end else last, quark, StateValue.nullValue())
+            } else {
+                /* The first interval keeps its real start, the next ones start where the previous one ended */
+                val intervalStart = if (merged.isEmpty()) latest.start else maxOf(latest.start, t)
+                StateInterval(intervalStart, last, quark, latest.stateValue)
+            }
+            merged.add(interval)
+            if (interval.end >= end) break
+            t = interval.end + 1
+        }
+        return merged
+    }
+
+    /**
+     * Post-process the consecutive intervals that a range query found for an
+     * attribute, in chronological order. By default they are returned as is.
+     */
+    protected open fun joinRange(quark: Int, intervals: List<StateInterval>): List<StateInterval> = intervals
+
+    private fun quarkMapping(quark: Int): IntArray {
+        if (quark < 0 || quark >= quarkMappings.size) throw AttributeNotFoundException("${getSSID()} Quark:$quark")
+        return quarkMappings[quark]
+    }
+
+    private fun latestOngoing(quark: Int): Pair<IStateSystemReader, Int> {
+        val mapping = quarkMapping(quark)
+        return stateSystems.indices
+                .filter { mapping[it] >= 0 }
+                .map { stateSystems[it] to mapping[it] }
+                .maxBy { (ss, subQuark) -> ss.getOngoingStartTime(subQuark) }!!
+    }
+
+    /** Get the quark in the given sub-state system matching a quark of this state system, or -1 */
+    protected fun subQuark(quark: Int, ssIndex: Int) = quarkMapping(quark)[ssIndex]
+
+    /**
+     * Combine the intervals that the sub-state systems have for the given
+     * attribute at time t into the single interval this state system returns.
+     */
+    protected open fun merge(t: Long, quark: Int, candidates: List<StateInterval>): StateInterval {
+        /* No sub-state system had this attribute at this time */
+        val latest = candidates.maxBy { it.start } ?: return StateInterval(t, t, quark, StateValue.nullValue())
+        val end = candidates.map { it.end }.min()!!
+        return StateInterval(latest.start, end, quark, latest.stateValue)
+    }
+
+    private fun IStateSystemReader.covers(t: Long) = (t >= startTime && t <= currentEndTime)
+
+    private fun checkValidTime(t: Long) {
+        if (t < getStartTime() || t > getCurrentEndTime()) {
+            throw TimeRangeException("${getSSID()} Time:$t, Start:${getStartTime()}, End:${getCurrentEndTime()}")
+        }
+    }
+}
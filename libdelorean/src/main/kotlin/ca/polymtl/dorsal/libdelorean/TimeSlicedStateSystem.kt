@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package ca.polymtl.dorsal.libdelorean
+
+import ca.polymtl.dorsal.libdelorean.interval.StateInterval
+import ca.polymtl.dorsal.libdelorean.statevalue.StateValue
+
+/**
+ * Read-only state system made of consecutive time slices of one history, each
+ * slice being stored in its own state system.
+ *
+ * The slices must be passed in chronological order, and each one must start
+ * right after the end of the previous one. Intervals that were cut at the
+ * boundary between two slices are joined back together in query results.
+ *
+ * @param ssid
+ *            The ID of this state system
+ * @param slices
+ *            The state systems of each time slice, in order
+ */
+class TimeSlicedStateSystem(ssid: String, slices: List<IStateSystemReader>) : CompositeStateSystem(ssid, slices) {
+
+    override fun merge(t: Long, quark: Int, candidates: List<StateInterval>): StateInterval {
+        /* Only one slice covers any given timestamp. */
+        val sliceIndex = sliceAt(t)
+        val interval = candidates.singleOrNull() ?: nullInterval(sliceIndex, quark)
+        val value = interval.stateValue
+        return StateInterval(joinedStart(quark, interval.start, value), joinedEnd(quark, interval.end, value), quark, value)
+    }
+
+    /**
+     * The range query already covers the slices that intersect the range, so
+     * only the intervals that were cut at a slice start are joined here. The
+     * first and last intervals can still continue in slices outside of the
+     * range.
+     */
+    override fun joinRange(quark: Int, intervals: List<StateInterval>): List<StateInterval> {
+        if (intervals.isEmpty()) return intervals
+
+        val joined = mutableListOf<StateInterval>()
+        for (interval in intervals) {
+            val previous = joined.lastOrNull()
+            if (previous != null
+                    && previous.end + 1 == interval.start
+                    && previous.stateValue == interval.stateValue
+                    && stateSystems.any { it.startTime == interval.start }) {
+                joined[joined.size - 1] = StateInterval(previous.start, interval.end, quark, previous.stateValue)
+            } else {
+                joined.add(interval)
+            }
+        }
+
+        val first = joined.first()
+        joined[0] = StateInterval(joinedStart(quark, first.start, first.stateValue), first.end, quark, first.stateValue)
+        val last = joined.last()
+        joined[joined.size - 1] = StateInterval(last.start, joinedEnd(quark, last.end, last.stateValue), quark, last.stateValue)
+        return joined
+    }
+
+    private fun sliceAt(t: Long) = stateSystems.indexOfFirst { t >= it.startTime && t <= it.currentEndTime }
+
+    /** Start of an interval that starts at 'start', once joined with the same state in the previous slices */
+    private fun joinedStart(quark: Int, start: Long, value: StateValue): Long {
+        var joinedStart = start
+        var index = sliceAt(start)
+        while (index > 0 && joinedStart == stateSystems[index].startTime) {
+            val previous = sliceInterval(index - 1, quark, stateSystems[index - 1].currentEndTime)
+            if (previous.stateValue != value) break
+            joinedStart = previous.start
+            index--
+        }
+        return joinedStart
+    }
+
+    /** End of an interval that ends at 'end', once joined with the same state in the next slices */
+    private fun joinedEnd(quark: Int, end: Long, value: StateValue): Long {
+        var joinedEnd = end
+        var index = sliceAt(end)
+        while (index in 0 until stateSystems.size - 1 && joinedEnd == stateSystems[index].currentEndTime) {
+            val next = sliceInterval(index + 1, quark, stateSystems[index + 1].startTime)
+            if (next.stateValue != value) break
+            joinedEnd = next.end
+            index++
+        }
+        return joinedEnd
+    }
+
+    private fun sliceInterval(sliceIndex: Int, quark: Int, t: Long): StateInterval {
+        val subQuark = subQuark(quark, sliceIndex)
+        return if (subQuark < 0) {
+            nullInterval(sliceIndex, quark)
+        } else {
+            stateSystems[sliceIndex].querySingleState(t, subQuark)
+        }
+    }
+
+    /* An attribute missing from a slice is null for the whole duration of that slice. */
+    private fun nullInterval(sliceIndex: Int, quark: Int): StateInterval {
+        val slice = stateSystems[sliceIndex]
+        return StateInterval(slice.startTime, slice.currentEndTime, quark, StateValue.nullValue())
+    }
+}
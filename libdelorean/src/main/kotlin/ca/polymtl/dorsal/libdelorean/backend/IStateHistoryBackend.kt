@@ -148,4 +148,36 @@ interface IStateHistoryBackend {
                 .forEach { results.put(it.attribute, it) }
 
     }
+
+    /**
+     * Get all the intervals of the specified quarks that intersect the time
+     * range [t1, t2]. The parts of the range that are outside of this
+     * backend's time range are ignored.
+     *
+     * The intervals are returned in no particular order. The default
+     * implementation walks the history of each quark with successive calls to
+     * {@link #doSingularQuery}, but backends that can find all the intervals
+     * of a range in one pass are welcome to do so.
+     *
+     * @param quarks
+     *            The quarks to query
+     * @param t1
+     *            The start of the time range
+     * @param t2
+     *            The end of the time range
+     * @return An iterator over the matching intervals
+     */
+    fun doRangeQuery(quarks: Set<Int>, t1: Long, t2: Long): Iterator<StateInterval> {
+        val start = maxOf(t1, startTime)
+        val end = minOf(t2, endTime)
+        if (start > end) return emptyList<StateInterval>().iterator()
+
+        return quarks.asSequence()
+                .flatMap { quark ->
+                    generateSequence(doSingularQuery(start, quark)) {
+                        if (it.end >= end) null else doSingularQuery(it.end + 1, quark)
+                    }
+                }
+                .iterator()
+    }
 }
\ No newline at end of file
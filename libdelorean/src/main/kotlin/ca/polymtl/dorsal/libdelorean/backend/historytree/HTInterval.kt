@@ -43,59 +43,102 @@ class HTInterval : StateInterval {
     }
 
     companion object {
+
+        /* 'Byte' equivalent for state values types */
+        internal const val TYPE_NULL: Byte = -1
+        internal const val TYPE_INTEGER: Byte = 0
+        internal const val TYPE_STRING: Byte = 1
+        internal const val TYPE_LONG: Byte = 2
+        internal const val TYPE_DOUBLE: Byte = 3
+        internal const val TYPE_BOOLEAN_TRUE: Byte = 4
+        internal const val TYPE_BOOLEAN_FALSE: Byte = 5
+
+        /* Offsets of the fields of an interval, relative to its start */
+        internal const val START_OFFSET = java.lang.Byte.BYTES
+        internal const val END_OFFSET = START_OFFSET + java.lang.Long.BYTES
+        internal const val QUARK_OFFSET = END_OFFSET + java.lang.Long.BYTES
+        internal const val VALUE_OFFSET = QUARK_OFFSET + Integer.BYTES
+
         /**
          * Reader factory method. Builds the interval using an already-allocated
          * ByteBuffer, which normally comes from a NIO FileChannel.
          *
          * @param buffer
-         *            The ByteBuffer from which to read the information
+         *            The ByteBuffer from which to read the information. Its
+         *            position is moved to the end of the interval.
          * @return The interval object
          * @throws IOException
          *             If there was an error reading from the buffer
          */
         fun readFrom(buffer: ByteBuffer): HTInterval {
-            val startPos: Int = buffer.position()
+            val pos = buffer.position()
+            val valueType = buffer.get(pos)
+            val value = readValue(buffer, valueType, pos + VALUE_OFFSET)
+            val intervalSize = VALUE_OFFSET + valueSize(buffer, valueType, pos + VALUE_OFFSET)
+            buffer.position(pos + intervalSize)
 
-            /* Read the data common to all intervals */
-            val valueType: Byte = buffer.get()
-            val intervalStart: Long = buffer.getLong()
-            val intervalEnd: Long = buffer.getLong()
-            val attribute: Int = buffer.getInt()
+            try {
+                return HTInterval(buffer.getLong(pos + START_OFFSET),
+                        buffer.getLong(pos + END_OFFSET),
+                        buffer.getInt(pos + QUARK_OFFSET),
+                        value,
+                        intervalSize)
+            } catch (e: TimeRangeException) {
+                throw IOException(errMsg, e)
+            }
+        }
 
-            val value: StateValue = when (valueType) {
+        /**
+         * Decode the state value of an interval, at absolute offsets in the
+         * buffer. The buffer's position is not used nor modified.
+         *
+         * @param bb
+         *            The buffer containing the interval
+         * @param valueType
+         *            The value type byte of the interval
+         * @param pos
+         *            The position of the value, meaning the start of the
+         *            interval plus [VALUE_OFFSET]
+         * @return The state value
+         * @throws IOException
+         *             If the data is not a valid value
+         */
+        internal fun readValue(bb: ByteBuffer, valueType: Byte, pos: Int): StateValue {
+            return when (valueType) {
                 TYPE_NULL -> StateValue.nullValue()
                 TYPE_BOOLEAN_TRUE -> StateValue.newValueBoolean(true)
                 TYPE_BOOLEAN_FALSE -> StateValue.newValueBoolean(false)
-                TYPE_INTEGER -> StateValue.newValueInt(buffer.getInt())
-                TYPE_LONG -> StateValue.newValueLong(buffer.getLong())
-                TYPE_DOUBLE -> StateValue.newValueDouble(buffer.getDouble())
+                TYPE_INTEGER -> StateValue.newValueInt(bb.getInt(pos))
+                TYPE_LONG -> StateValue.newValueLong(bb.getLong(pos))
+                TYPE_DOUBLE -> StateValue.newValueDouble(bb.getDouble(pos))
+                /* For strings the first "short" indicates the size */
                 TYPE_STRING -> {
-                    /* the first byte = the size to read */
-                    val strSize: Short = buffer.getShort()
-                    val array = ByteArray(strSize.toInt())
-                    buffer.get(array)
-
+                    val strSize = bb.getShort(pos).toInt()
+                    val strPos = pos + java.lang.Short.BYTES
                     /* Confirm the 0'ed byte at the end */
-                    val res: Byte = buffer.get()
-                    if (res != 0.toByte()) {
-                        throw IOException(errMsg)
-                    }
+                    if (bb.get(strPos + strSize) != 0.toByte()) throw IOException(errMsg)
 
+                    val array = ByteArray(strSize)
+                    val strBuffer = bb.duplicate()
+                    strBuffer.position(strPos)
+                    strBuffer.get(array)
                     StateValue.newValueString(String(array))
                 }
-                else -> {
-                    /* Unknown data, better to not make anything up... */
-                    throw IOException(errMsg)
-                }
+                /* Unknown data, better to not make anything up... */
+                else -> throw IOException(errMsg)
             }
+        }
 
-            val intervalSize: Int = buffer.position() - startPos
-            try {
-                return HTInterval(intervalStart, intervalEnd, attribute, value, intervalSize)
-            } catch (e: TimeRangeException) {
-                throw IOException(errMsg, e)
+        /** Size of the value read by [readValue], in bytes */
+        private fun valueSize(bb: ByteBuffer, valueType: Byte, pos: Int): Int {
+            return when (valueType) {
+                TYPE_NULL, TYPE_BOOLEAN_TRUE, TYPE_BOOLEAN_FALSE -> 0
+                TYPE_INTEGER -> Integer.BYTES
+                TYPE_LONG -> java.lang.Long.BYTES
+                TYPE_DOUBLE -> java.lang.Double.BYTES
+                TYPE_STRING -> java.lang.Short.BYTES + bb.getShort(pos) + 1
+                else -> throw IOException(errMsg)
             }
-
         }
     }
 
@@ -148,15 +191,6 @@ class HTInterval : StateInterval {
 
 }
 
-/* 'Byte' equivalent for state values types */
-private const val TYPE_NULL: Byte = -1
-private const val TYPE_INTEGER: Byte = 0
-private const val TYPE_STRING: Byte = 1
-private const val TYPE_LONG: Byte = 2
-private const val TYPE_DOUBLE: Byte = 3
-private const val TYPE_BOOLEAN_TRUE: Byte = 4
-private const val TYPE_BOOLEAN_FALSE: Byte = 5
-
 private const val errMsg: String = "Invalid interval data. Maybe your file is corrupt?"
 
 private fun computeIntervalSizeOnDisk(sv: StateValue): Int {
@@ -183,11 +217,11 @@ private fun computeIntervalSizeOnDisk(sv: StateValue): Int {
  */
 private fun getByteFromType(sv: StateValue): Byte {
     return when(sv) {
-        is NullStateValue -> TYPE_NULL
-        is BooleanStateValue -> if (sv.value) TYPE_BOOLEAN_TRUE else TYPE_BOOLEAN_FALSE
-        is IntegerStateValue -> TYPE_INTEGER
-        is LongStateValue -> TYPE_LONG
-        is DoubleStateValue -> TYPE_DOUBLE
-        is StringStateValue -> TYPE_STRING
+        is NullStateValue -> HTInterval.TYPE_NULL
+        is BooleanStateValue -> if (sv.value) HTInterval.TYPE_BOOLEAN_TRUE else HTInterval.TYPE_BOOLEAN_FALSE
+        is IntegerStateValue -> HTInterval.TYPE_INTEGER
+        is LongStateValue -> HTInterval.TYPE_LONG
+        is DoubleStateValue -> HTInterval.TYPE_DOUBLE
+        is StringStateValue -> HTInterval.TYPE_STRING
     }
 }
\ No newline at end of file
@@ -11,18 +11,28 @@
 
 package ca.polymtl.dorsal.libdelorean.backend.historytree
 
+import com.google.common.cache.Cache
 import com.google.common.cache.CacheBuilder
-import com.google.common.cache.CacheLoader
-import com.google.common.cache.LoadingCache
+import com.google.common.cache.Weigher
 import java.io.File
 import java.io.FileInputStream
 import java.io.FileOutputStream
 import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
 import java.nio.channels.ClosedChannelException
 import java.nio.channels.FileChannel
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.BlockingQueue
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantReadWriteLock
 import java.util.logging.Level
 import java.util.logging.Logger
+import kotlin.concurrent.read
+import kotlin.concurrent.write
 
 /**
  * This class abstracts inputs/outputs of the HistoryTree nodes.
@@ -33,6 +43,22 @@ import java.util.logging.Logger
  * This abstraction is mainly for code isolation/clarification purposes. Every
  * HistoryTree must contain 1 and only 1 HT_IO element.
  *
+ * Each instance has its own node cache, bounded by the total size in bytes of
+ * the nodes it holds, so that one large history cannot evict all the nodes of
+ * the other opened histories.
+ *
+ * When building a new file, nodes can be written asynchronously: closed nodes
+ * are put in a bounded queue, and a dedicated thread serializes and writes
+ * them, so that the thread inserting intervals does not wait on the disk. It
+ * only blocks if the queue is full. Nodes with consecutive sequence numbers
+ * are written together with a single gathering write. Until they are written,
+ * queued nodes are still served by [readNode].
+ *
+ * Nodes can also be compressed (see [HistoryTreeNode.serialize]). They still
+ * have one block each in the file, but only the start of that block is
+ * written, so the rest does not take any space on file systems that support
+ * sparse files, and is never read.
+ *
  * @author Alexandre Montplaisir
  *
  * @param stateFile
@@ -45,39 +71,135 @@ import java.util.logging.Logger
  *            node.
  * @param newFile
  *            Flag indicating that the file must be created from scratch
+ * @param cacheBudget
+ *            Maximum size, in bytes, of the nodes kept in this tree's node
+ *            cache. At least one node is always kept.
+ * @param asyncWrites
+ *            If nodes should be written by a separate thread. Only used for
+ *            new files.
+ * @param compressNodes
+ *            If the nodes written to the file should be compressed
+ * @param maxSegmentSize
+ *            Maximum size in bytes of each mapping of the file, see [mapNodes]
  * @throws IOException
  *             An exception can be thrown when file cannot be accessed
  */
-internal class HT_IO(private val stateFile: File,
-                     private val blockSize: Int,
-                     private val maxChildren: Int,
-                     newFile: Boolean) {
+internal class HT_IO @JvmOverloads constructor(private val stateFile: File,
+                                               private val blockSize: Int,
+                                               private val maxChildren: Int,
+                                               newFile: Boolean,
+                                               cacheBudget: Long = DEFAULT_CACHE_BUDGET,
+                                               asyncWrites: Boolean = DEFAULT_ASYNC_WRITES,
+                                               private val compressNodes: Boolean = DEFAULT_COMPRESS_NODES,
+                                               maxSegmentSize: Int = MAX_SEGMENT_SIZE) {
 
     companion object {
         private val LOGGER = Logger.getLogger(HT_IO::class.java.name)
 
-        // TODO test/benchmark optimal cache size
-        private const val CACHE_SIZE = 256
+        /**
+         * Default node cache budget of each history tree, in bytes. Can be
+         * overridden with the "libdelorean.nodeCacheBudget" system property.
+         */
+        @JvmField
+        val DEFAULT_CACHE_BUDGET: Long = java.lang.Long.getLong("libdelorean.nodeCacheBudget", 16L * 1024 * 1024)
 
-        private data class CacheKey(val stateHistory: HT_IO, val seqNumber: Int)
+        /**
+         * If new history files are written by a separate thread by default.
+         * Can be disabled with the "libdelorean.asyncNodeWrites" system
+         * property.
+         */
+        @JvmField
+        val DEFAULT_ASYNC_WRITES: Boolean = System.getProperty("libdelorean.asyncNodeWrites", "true").toBoolean()
 
-        private val NODE_CACHE: LoadingCache<CacheKey, HistoryTreeNode> = CacheBuilder.newBuilder()
-                .maximumSize(CACHE_SIZE.toLong())
-                .build(object : CacheLoader<CacheKey, HistoryTreeNode>() {
-                    override fun load(key: CacheKey): HistoryTreeNode {
-                        val io = key.stateHistory
-                        val seqNb = key.seqNumber
+        /**
+         * If nodes are compressed by default. Off unless enabled with the
+         * "libdelorean.compressNodes" system property: compressed nodes make
+         * smaller files, but each one read has to be inflated, instead of
+         * only being copied out of the file's mapping.
+         */
+        @JvmField
+        val DEFAULT_COMPRESS_NODES: Boolean = System.getProperty("libdelorean.compressNodes", "false").toBoolean()
 
-                        LOGGER.finest { "[HtIo:CacheMiss] seqNum=$seqNb" }
+        /** Maximum size of each mapping of the file, a single one cannot exceed 2 GB */
+        private const val MAX_SEGMENT_SIZE = 1 shl 30
 
-                        synchronized(io) {
-                            io.seekFCToNodePos(io.fcIn, seqNb);
-                            return HistoryTreeNode.readNode(io.blockSize, io.maxChildren, io.fcIn)
-                        }
-                    }
-                })
+        /** Number of closed nodes that can wait to be written */
+        private const val WRITE_QUEUE_SIZE = 64
+
+        /** How long to wait for room in the write queue before checking the writer thread again */
+        private const val QUEUE_OFFER_TIMEOUT_MS = 100L
+
+        /** Maximum number of nodes written by a single gathering write */
+        private const val MAX_WRITE_BATCH = 16
+
+        /** Queue element telling the writer thread to stop */
+        private val END_OF_WRITES = Any()
+
+        /**
+         * Releases a file mapping right away, instead of whenever it gets
+         * garbage-collected. This goes through JDK internals, which differ
+         * between Java 8 and later versions. Null if neither is available.
+         */
+        private val UNMAPPER: ((MappedByteBuffer) -> Unit)? = try {
+            /* Java 9 and later */
+            val unsafeClass = Class.forName("sun.misc.Unsafe")
+            val invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer::class.java)
+            val unsafe = unsafeClass.getDeclaredField("theUnsafe").apply { isAccessible = true }.get(null)
+            val unmapper: (MappedByteBuffer) -> Unit = { invokeCleaner.invoke(unsafe, it) }
+            unmapper
+        } catch (e: ReflectiveOperationException) {
+            try {
+                /* Java 8 */
+                val cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner")
+                val clean = Class.forName("sun.misc.Cleaner").getMethod("clean")
+                val unmapper: (MappedByteBuffer) -> Unit = { clean.invoke(cleaner.invoke(it)) }
+                unmapper
+            } catch (e: ReflectiveOperationException) {
+                LOGGER.warning("History file mappings cannot be released explicitly, they will stay open until garbage-collected")
+                null
+            }
+        }
+    }
+
+    /*
+     * Guava caches are split in segments that are locked independently, and
+     * hits do not take any lock at all. The budget is divided between the
+     * segments, so don't use more segments than there are nodes to keep.
+     */
+    private val nodeCache: Cache<Int, HistoryTreeNode> = run {
+        val maxNodes = maxOf(cacheBudget / blockSize, 1L)
+        CacheBuilder.newBuilder()
+                .maximumWeight(maxNodes * blockSize)
+                .weigher(Weigher<Int, HistoryTreeNode> { _, node -> node.blockSize })
+                .concurrencyLevel(minOf(maxNodes, Runtime.getRuntime().availableProcessors().toLong()).toInt())
+                .build<Int, HistoryTreeNode>()
     }
 
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+    private val mappedReads = AtomicLong()
+
+    /*
+     * Once the file is complete, its node section is mapped in memory, so
+     * that nodes can be read without a system call. Each node read is copied
+     * out of the mapping, so that it stays valid once the mapping is
+     * released by [closeFile]. The lock keeps the mapping from being
+     * released during a copy.
+     */
+    private val nodesPerSegment = maxOf(maxSegmentSize / blockSize, 1)
+    private val mappingLock = ReentrantReadWriteLock()
+    private var mappedSegments: Array<MappedByteBuffer>? = null
+    private var mappedNodeCount = 0
+
+    /** Number of node reads that were served from the cache */
+    val cacheHits get() = hits.get()
+
+    /** Number of node reads that had to go to the file */
+    val cacheMisses get() = misses.get()
+
+    /** Number of the node reads going to the file that were served from its mapping */
+    val mappedNodeReads get() = mappedReads.get()
+
     /* Properties related to file I/O */
     private val fis: FileInputStream
     private val fos: FileOutputStream
@@ -106,6 +228,24 @@ internal class HT_IO(private val stateFile: File,
         fcOut = fos.channel
     }
 
+    /* Nodes that were closed but are not written yet, by sequence number */
+    private val pendingWrites = ConcurrentHashMap<Int, HistoryTreeNode>()
+
+    private val writeQueue: BlockingQueue<Any> = ArrayBlockingQueue(WRITE_QUEUE_SIZE)
+
+    /* First error encountered by the writer thread */
+    @Volatile
+    private var writeError: Throwable? = null
+
+    private val writerThread: Thread? = if (newFile && asyncWrites) {
+        Thread({ writeQueuedNodes() }, "libdelorean node writer: ${stateFile.name}").apply {
+            isDaemon = true
+            start()
+        }
+    } else {
+        null
+    }
+
     /**
      * Read a node from the file on disk.
      *
@@ -118,11 +258,31 @@ internal class HT_IO(private val stateFile: File,
      *             just catch this exception.
      */
     fun readNode(seqNumber: Int): HistoryTreeNode {
-        /* Do a cache lookup. If it's not present it will be loaded from disk */
         LOGGER.finest { "[HtIo:CacheLookup] seqNum=$seqNumber" }
-        val key = CacheKey(this, seqNumber);
+        nodeCache.getIfPresent(seqNumber)?.let {
+            hits.incrementAndGet()
+            return it
+        }
+
         try {
-            return NODE_CACHE.get(key)
+            /*
+             * Concurrent misses on the same node are coalesced by the cache,
+             * only one thread will actually read it.
+             */
+            return nodeCache.get(seqNumber) {
+                /* A node waiting to be written is not in the file yet */
+                pendingWrites[seqNumber] ?: run {
+                    LOGGER.finest { "[HtIo:CacheMiss] seqNum=$seqNumber" }
+                    misses.incrementAndGet()
+                    val mappedBlock = copyMappedNode(seqNumber)
+                    if (mappedBlock != null) {
+                        mappedReads.incrementAndGet()
+                        HistoryTreeNode.readNode(blockSize, maxChildren, mappedBlock)
+                    } else {
+                        HistoryTreeNode.readNode(blockSize, maxChildren, fcIn, nodePosition(seqNumber))
+                    }
+                }
+            }
 
         } catch (e: ExecutionException) {
             /* Get the inner exception that was generated */
@@ -131,30 +291,221 @@ internal class HT_IO(private val stateFile: File,
                 throw cause
             }
             /* Other types of IOExceptions shouldn't happen at this point though. */
-            throw IllegalStateException()
+            throw IllegalStateException(cause)
         }
     }
 
+    /**
+     * Write a closed node to the file. With asynchronous writes, this only
+     * queues the node, and blocks if too many nodes are already waiting.
+     *
+     * @param node
+     *            The node to write. It should not be modified afterwards.
+     */
     fun writeNode(node: HistoryTreeNode) {
-        try {
-            val seqNumber = node.seqNumber
+        writeError?.let { throw IllegalStateException(it) }
 
-            /* "Write-back" the node into the cache */
-            val key = CacheKey(this, seqNumber);
-            NODE_CACHE.put(key, node);
+        /* "Write-back" the node into the cache */
+        nodeCache.put(node.seqNumber, node)
 
-            /* Position ourselves at the start of the node and write it */
-            synchronized(this) {
-                seekFCToNodePos(fcOut, seqNumber);
-                node.writeSelf(fcOut);
+        if (writerThread == null) {
+            try {
+                synchronized(this) {
+                    writeNodes(listOf(node))
+                }
+            } catch (e: IOException) {
+                /* If we were able to open the file, we should be fine now... */
+                throw IllegalStateException(e)
             }
+            return
+        }
+
+        pendingWrites[node.seqNumber] = node
+        enqueue(node, writerThread)
+    }
+
+    /**
+     * Wait until all the nodes given to [writeNode] are written to the file,
+     * and stop the writer thread. No more nodes can be written afterwards.
+     *
+     * @param nodeCount
+     *            The number of nodes in the file
+     * @throws IllegalStateException
+     *             If a node could not be written
+     */
+    @Synchronized
+    fun finishWrites(nodeCount: Int) {
+        stopWriter()
+        writeError?.let { throw IllegalStateException(it) }
 
+        /* Compressed nodes do not fill their block, the file should still cover the last one */
+        try {
+            val end = nodePosition(nodeCount)
+            if (fcOut.size() < end) {
+                fcOut.write(ByteBuffer.allocate(1), end - 1)
+            }
         } catch (e: IOException) {
-            /* If we were able to open the file, we should be fine now... */
             throw IllegalStateException(e)
         }
     }
 
+    private fun stopWriter() {
+        val thread = writerThread ?: return
+        if (thread.isAlive) {
+            enqueue(END_OF_WRITES, thread)
+            thread.join()
+        }
+    }
+
+    /**
+     * Give an element to the writer thread, waiting if the queue is full.
+     * Fails instead of waiting forever if the thread is not running anymore.
+     */
+    private fun enqueue(element: Any, thread: Thread) {
+        while (!writeQueue.offer(element, QUEUE_OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            writeError?.let { throw IllegalStateException(it) }
+            if (!thread.isAlive) throw IllegalStateException("The writer thread of $stateFile has stopped")
+        }
+    }
+
+    /** Main loop of the writer thread */
+    private fun writeQueuedNodes() {
+        val batch = mutableListOf<Any>()
+        while (true) {
+            batch.add(writeQueue.take())
+            writeQueue.drainTo(batch, MAX_WRITE_BATCH - 1)
+
+            val nodes = batch.filterIsInstance<HistoryTreeNode>()
+            if (writeError == null) {
+                try {
+                    writeNodes(nodes)
+                } catch (e: Throwable) {
+                    /*
+                     * Keep emptying the queue, the error is reported to the
+                     * inserting thread. This includes errors like running out
+                     * of memory, which would otherwise leave it blocked on a
+                     * full queue.
+                     */
+                    LOGGER.log(Level.SEVERE, "Error writing history file $stateFile", e)
+                    writeError = e
+                }
+            }
+            nodes.forEach { pendingWrites.remove(it.seqNumber) }
+
+            if (batch.last() === END_OF_WRITES) return
+            batch.clear()
+        }
+    }
+
+    /**
+     * Serialize and write nodes to the file. Each run of uncompressed nodes
+     * with consecutive sequence numbers is written with one gathering write.
+     * Compressed nodes do not fill their block, so they are written one by
+     * one.
+     */
+    private fun writeNodes(nodes: List<HistoryTreeNode>) {
+        val sorted = nodes.sortedBy { it.seqNumber }
+        var runStart = 0
+        while (runStart < sorted.size) {
+            var runEnd = runStart + 1
+            while (runEnd < sorted.size && sorted[runEnd].seqNumber == sorted[runEnd - 1].seqNumber + 1) {
+                runEnd++
+            }
+            val run = sorted.subList(runStart, runEnd)
+            val buffers = Array(run.size) { run[it].serialize(compressNodes) }
+
+            if (buffers.all { it.remaining() == blockSize }) {
+                /* Position ourselves at the start of the first node and write them */
+                seekFCToNodePos(fcOut, run[0].seqNumber)
+                val expected = run.size.toLong() * blockSize
+                var written = 0L
+                while (written < expected) {
+                    written += fcOut.write(buffers)
+                }
+            } else {
+                run.forEachIndexed { i, node ->
+                    val buffer = buffers[i]
+                    val position = nodePosition(node.seqNumber)
+                    while (buffer.hasRemaining()) {
+                        fcOut.write(buffer, position + buffer.position())
+                    }
+                }
+            }
+            run.forEach { it.isOnDisk = true }
+
+            runStart = runEnd
+        }
+    }
+
+    /**
+     * Map the node section of the file in memory. This should only be called
+     * once all the nodes are written to the file, since it will not change
+     * afterwards.
+     *
+     * @param nodeCount
+     *            The number of nodes in the file
+     */
+    @Synchronized
+    fun mapNodes(nodeCount: Int) {
+        if (!fcIn.isOpen || nodeCount <= 0) return
+        mappingLock.write {
+            if (mappedSegments != null) return
+            try {
+                val nbSegments = (nodeCount + nodesPerSegment - 1) / nodesPerSegment
+                val segments = Array(nbSegments) {
+                    val firstNode = it * nodesPerSegment
+                    val segmentNodes = minOf(nodesPerSegment, nodeCount - firstNode)
+                    fcIn.map(FileChannel.MapMode.READ_ONLY, nodePosition(firstNode), segmentNodes.toLong() * blockSize)
+                }
+                mappedNodeCount = nodeCount
+                mappedSegments = segments
+            } catch (e: IOException) {
+                /* Nodes will simply be read from the file channel */
+                LOGGER.log(Level.WARNING, "Could not map history file $stateFile", e)
+            }
+        }
+    }
+
+    /**
+     * Copy the given node's block out of the file mapping.
+     *
+     * @return A buffer containing only the node's block, or null if it is not
+     *         mapped
+     */
+    private fun copyMappedNode(seqNumber: Int): ByteBuffer? {
+        mappingLock.read {
+            val segments = mappedSegments
+            if (segments == null || seqNumber >= mappedNodeCount) return null
+
+            val segment: ByteBuffer = segments[seqNumber / nodesPerSegment].duplicate()
+            val offset = (seqNumber % nodesPerSegment) * blockSize
+            segment.position(offset)
+            segment.limit(offset + blockSize)
+            val block = ByteBuffer.allocate(blockSize)
+            block.put(segment)
+            block.flip()
+            return block
+        }
+    }
+
+    /**
+     * Release the file mapping. Open mappings can otherwise keep the file from
+     * being deleted or replaced on some platforms, like Windows, until they
+     * are garbage-collected.
+     */
+    private fun unmapNodes() {
+        mappingLock.write {
+            val segments = mappedSegments ?: return
+            mappedSegments = null
+            val unmapper = UNMAPPER ?: return
+            try {
+                segments.forEach(unmapper)
+            } catch (e: ReflectiveOperationException) {
+                LOGGER.log(Level.WARNING, "Could not release the mapping of history file $stateFile", e)
+            }
+        }
+    }
+
     fun supplyATReader(nodeOffset: Int): FileInputStream {
         try {
             /*
@@ -170,6 +521,11 @@ internal class HT_IO(private val stateFile: File,
 
     @Synchronized
     fun closeFile() {
+        /* Let the writer thread finish, it uses the channels */
+        stopWriter()
+
+        /* Reads of nodes that are not cached will now fail with a ClosedChannelException */
+        unmapNodes()
         try {
             fis.close()
             fos.close()
@@ -200,11 +556,15 @@ internal class HT_IO(private val stateFile: File,
      *             If some other I/O error occurs
      */
     private fun seekFCToNodePos(fc: FileChannel, seqNumber: Int) {
+        fc.position(nodePosition(seqNumber))
+    }
+
+    /** Absolute position in the file of the node that has seqNumber */
+    private fun nodePosition(seqNumber: Int): Long {
         /*
-         * Cast to (long) is needed to make sure the result is a long too and
-         * doesn't get truncated
+         * Conversion to long is needed to make sure the result is a long too
+         * and doesn't get truncated
          */
-        fc.position(HistoryTree.TREE_HEADER_SIZE
-                + seqNumber.toLong() * blockSize)
+        return HistoryTree.TREE_HEADER_SIZE + seqNumber.toLong() * blockSize
     }
-}
\ No newline at end of file
+}
@@ -20,6 +20,9 @@ import java.io.File
 import java.io.FileInputStream
 import java.io.IOException
 import java.nio.channels.ClosedChannelException
+import java.util.ArrayDeque
+import java.util.BitSet
+import java.util.Collections
 
 
 /**
@@ -100,11 +103,39 @@ class HistoryTreeBackend private constructor(override val SSID: String,
                 existingStateFile: File,
                 providerVersion: Int) : this(ssid, HistoryTree(existingStateFile, providerVersion), true)
 
+    /**
+     * Existing history constructor, specifying the size of the node cache.
+     *
+     * @param ssid
+     *            The state system's id
+     * @param existingStateFile
+     *            Filename/location of the history we want to load
+     * @param providerVersion
+     *            Expected version of of the state provider plugin.
+     * @param cacheBudget
+     *            Maximum size, in bytes, of the history nodes to keep in
+     *            memory for this history
+     * @throws IOException
+     *             If we can't read the file, if it doesn't exist, is not
+     *             recognized, or if the version of the file does not match the
+     *             expected providerVersion.
+     */
+    constructor(ssid: String,
+                existingStateFile: File,
+                providerVersion: Int,
+                cacheBudget: Long) : this(ssid, HistoryTree(existingStateFile, providerVersion, cacheBudget), true)
+
     override val startTime get() = sht.treeStart
     override val endTime get() = sht.treeEnd
 
     val fileSize get() = sht.fileSize
 
+    /** Number of node reads served from this history's node cache */
+    val cacheHits get() = sht.cacheHits
+
+    /** Number of node reads that had to go to the history file */
+    val cacheMisses get() = sht.cacheMisses
+
     override fun insertPastState(stateStartTime: Long,
                                  stateEndTime: Long,
                                  quark: Int,
@@ -178,33 +209,64 @@ class HistoryTreeBackend private constructor(override val SSID: String,
         checkValidTime(t)
         var remaining = quarks.size
 
+        /* Test the quarks of the intervals without boxing them */
+        val quarkSet = BitSet()
+        quarks.forEach { quarkSet.set(it) }
+
         /* We start by reading the information in the root node. */
         var currentNode = sht.rootNode
-        synchronized(currentNode) {
-            currentNode.intervalIterator(t, quarks)
-                    .forEach {
-                        results.put(it.attribute, it)
-                        remaining--
-                    }
-        }
+        remaining -= currentNode.collectIntervals(t, quarkSet, results)
 
         /* Then we follow the branch down in the relevant children. */
         try {
             while (remaining > 0 && currentNode is CoreNode) {
                 currentNode = sht.selectNextChild(currentNode, t)
-                synchronized(currentNode) {
-                    currentNode.intervalIterator(t, quarks)
-                            .forEach {
-                                results.put(it.attribute, it)
-                                remaining--
-                            }
-                }
+                remaining -= currentNode.collectIntervals(t, quarkSet, results)
             }
         } catch (e: ClosedChannelException) {
             throw StateSystemDisposedException(e)
         }
     }
 
+    override fun doRangeQuery(quarks: Set<Int>, t1: Long, t2: Long): Iterator<StateInterval> {
+        val start = maxOf(t1, startTime)
+        val end = minOf(t2, endTime)
+        if (start > end || quarks.isEmpty()) return Collections.emptyIterator()
+
+        val quarkSet = BitSet()
+        quarks.forEach { quarkSet.set(it) }
+        return RangeQueryIterator(start, end, quarkSet)
+    }
+
+    /**
+     * Depth-first traversal of the nodes intersecting the time range, returning
+     * the matching intervals of each node as it is visited. Each relevant node
+     * is read only once, instead of once per query timestamp.
+     */
+    private inner class RangeQueryIterator(private val t1: Long,
+                                           private val t2: Long,
+                                           private val quarks: BitSet) : AbstractIterator<StateInterval>() {
+
+        private val nodesToVisit = ArrayDeque<HistoryTreeNode>().apply { push(sht.rootNode) }
+        private val nodeResults = ArrayDeque<StateInterval>()
+
+        override fun computeNext() {
+            while (nodeResults.isEmpty()) {
+                val node = nodesToVisit.poll() ?: return done()
+                node.collectIntervals(t1, t2, quarks, nodeResults)
+
+                if (node is CoreNode) {
+                    try {
+                        sht.selectChildren(node, t1, t2).asReversed().forEach { nodesToVisit.push(it) }
+                    } catch (e: ClosedChannelException) {
+                        throw StateSystemDisposedException(e)
+                    }
+                }
+            }
+            setNext(nodeResults.poll())
+        }
+    }
+
     private fun checkValidTime(t: Long) {
         if (t < startTime || t > endTime) {
             throw TimeRangeException(String.format("%s Time:%d, Start:%d, End:%d", SSID, t, startTime, endTime))
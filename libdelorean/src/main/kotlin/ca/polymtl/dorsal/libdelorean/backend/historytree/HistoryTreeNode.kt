@@ -10,23 +10,36 @@
 package ca.polymtl.dorsal.libdelorean.backend.historytree
 
 import ca.polymtl.dorsal.libdelorean.interval.StateInterval
-import ca.polymtl.dorsal.libdelorean.statevalue.StateValue
 import java.io.IOException
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
 import java.nio.channels.FileChannel
+import java.util.BitSet
 
 /**
  * <pre>
  *  1 - byte (type)
  * 16 - 2x long (start time, end time)
- * 16 - 4x int (seq number, parent seq number, intervalcount,
- *              strings section pos.)
- *  1 - byte (done or not)
+ * 12 - 3x int (seq number, parent seq number, intervalcount)
+ *  1 - byte (payload encoding)
+ *  4 - int (size of the payload, as stored)
  * </pre>
  */
 private const val COMMON_HEADER_SIZE = 34
 
+/*
+ * The header is followed by the payload: the interval index, one int per
+ * interval giving its offset relative to the end of the header, then the
+ * intervals. The entries are in the same order as the intervals, sorted by
+ * end time, so they can be binary-searched by end time.
+ *
+ * The payload is either stored as is, or compressed by NodeCompression. A
+ * compressed payload is decoded when the node is read, so the intervals can
+ * always be found at the offsets given by the index.
+ */
+private const val ENCODING_RAW: Byte = 0
+private const val ENCODING_COMPRESSED: Byte = 1
+
 /**
  * The base class for all the types of nodes that go in the History Tree.
  *
@@ -40,13 +53,13 @@ sealed class HistoryTreeNode(val blockSize: Int,
     var nodeEnd: Long? = null
         private set
 
-    /* Sum of bytes of all intervals in the node */
+    /* Sum of bytes of all intervals in the node, including their index entries */
     private var sizeOfIntervalSection = 0
 
     /* True if this node was read from disk (meaning its end time is now fixed) */
     @Volatile
     var isOnDisk = false
-        private set
+        internal set
 
     /* Vector containing all the intervals contained in this node */
     private var intervals: MutableList<HTInterval>? = mutableListOf()
@@ -54,24 +67,61 @@ sealed class HistoryTreeNode(val blockSize: Int,
     private var nodePayload: ByteBuffer? = null
     private var intervalCount: Int? = null
 
-    fun intervalIterator(targetTimestamp: Long,
-                         targetQuarks: Set<Int>?): Iterator<HTInterval> {
+    /**
+     * Call 'action' on each interval of this node that intersects the time
+     * range [t1, t2] and whose quark is accepted by 'quarkFilter'.
+     *
+     * Intervals are sorted by end time, so the ones ending before 't1' are
+     * skipped with a binary search. For nodes read from disk, the start and
+     * quark of the remaining intervals are tested directly in the raw data of
+     * the node, at absolute offsets. Only the intervals that match are
+     * decoded into objects.
+     */
+    private inline fun scanIntervals(t1: Long, t2: Long, quarkFilter: (Int) -> Boolean, action: (HTInterval) -> Unit) {
         val intervals = intervals
-        val nodePayload = nodePayload
-
-        return if (intervals != null) {
-            intervals.iterator().asSequence()
-                    .filter { targetQuarks?.contains(it.attribute) ?: true}
-                    .filter { it.intersects(targetTimestamp) }
-                    .iterator()
-        } else if (nodePayload != null) {
-            RawIntervalIterator(nodePayload, intervalCount!!, targetTimestamp, targetQuarks)
-        } else {
-            throw IllegalStateException()
+        if (intervals != null) {
+            val first = firstIndexEndingAfter(intervals.size, t1) { intervals[it].end }
+            for (i in first until intervals.size) {
+                val interval = intervals[i]
+                if (t2 >= interval.start && quarkFilter(interval.attribute)) action(interval)
+            }
+            return
+        }
+
+        val bb = nodePayload ?: throw IllegalStateException()
+        val count = intervalCount!!
+        val first = firstIndexEndingAfter(count, t1) { bb.getLong(bb.getInt(it * INTERVAL_INDEX_ENTRY_SIZE) + HTInterval.END_OFFSET) }
+        for (i in first until count) {
+            val pos = bb.getInt(i * INTERVAL_INDEX_ENTRY_SIZE)
+            val start = bb.getLong(pos + HTInterval.START_OFFSET)
+            val quark = bb.getInt(pos + HTInterval.QUARK_OFFSET)
+
+            if (t2 >= start && quarkFilter(quark)) {
+                val end = bb.getLong(pos + HTInterval.END_OFFSET)
+                action(HTInterval(start, end, quark, HTInterval.readValue(bb, bb.get(pos), pos + HTInterval.VALUE_OFFSET)))
+            }
         }
     }
 
+    /**
+     * Binary search for the index of the first interval whose end time is
+     * greater than or equal to 't', given the end times of the intervals
+     * sorted in ascending order. Returns 'count' if there is none.
+     */
+    private inline fun firstIndexEndingAfter(count: Int, t: Long, endAt: (Int) -> Long): Int {
+        var low = 0
+        var high = count
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (endAt(mid) < t) low = mid + 1 else high = mid
+        }
+        return low
+    }
+
     companion object {
+        /** Size of the index entry that each interval takes in a node, in addition to its own size */
+        const val INTERVAL_INDEX_ENTRY_SIZE = Integer.BYTES
+
         /**
          * Reader factory method. Build a Node object (of the right type) by reading
          * a block in the file.
@@ -83,17 +133,55 @@ sealed class HistoryTreeNode(val blockSize: Int,
          *            The maximum number of children allowed per core (non-leaf)
          *            node.
          * @param fc
-         *            FileChannel to the history file, ALREADY SEEKED at the start
-         *            of the node.
+         *            FileChannel to the history file
+         * @param nodeStartPos
+         *            Absolute position in 'fc' of the start of this node. The
+         *            channel's own position is not used nor modified, so
+         *            several threads can read from the same channel.
          * @return The node object
          * @throws IOException
          *             If there was an error reading from the file channel
          */
         @JvmStatic
-        fun readNode(blockSize: Int, maxChildren: Int, fc: FileChannel): HistoryTreeNode {
-            /* Absolute position in 'fc' of the start of this node */
-            val nodeStartPos = fc.position()
-            val buffer = fc.map(FileChannel.MapMode.READ_ONLY, nodeStartPos, blockSize.toLong());
+        fun readNode(blockSize: Int, maxChildren: Int, fc: FileChannel, nodeStartPos: Long): HistoryTreeNode {
+            val buffer = ByteBuffer.allocate(blockSize)
+            while (buffer.hasRemaining()) {
+                val res = fc.read(buffer, nodeStartPos + buffer.position())
+                if (res < 0) {
+                    if (buffer.position() == 0) throw IOException("Unexpected end of file while reading node at position $nodeStartPos")
+                    /*
+                     * Only the start of the block of a compressed node is
+                     * written, the rest reads as zeroes.
+                     */
+                    buffer.position(buffer.limit())
+                }
+            }
+            buffer.flip()
+            return readNode(blockSize, maxChildren, buffer)
+        }
+
+        /**
+         * Reader factory method. Build a Node object (of the right type) from
+         * a buffer containing its block, for example a memory-mapped portion
+         * of the history file.
+         *
+         * The node keeps a reference to the buffer's contents to read its
+         * intervals, so they should not be modified afterwards.
+         *
+         * @param blockSize
+         *            The size of each "block" on disk. One node will always fit in
+         *            one block.
+         * @param maxChildren
+         *            The maximum number of children allowed per core (non-leaf)
+         *            node.
+         * @param buffer
+         *            Buffer positioned at the start of the node
+         * @return The node object
+         * @throws IOException
+         *             If the buffer does not contain a valid node
+         */
+        @JvmStatic
+        fun readNode(blockSize: Int, maxChildren: Int, buffer: ByteBuffer): HistoryTreeNode {
             buffer.order(ByteOrder.LITTLE_ENDIAN)
 
             /* Read the common header part */
@@ -103,6 +191,8 @@ sealed class HistoryTreeNode(val blockSize: Int,
             val seqNb = buffer.getInt()
             val parentSeqNb = buffer.getInt()
             val intervalCount = buffer.getInt()
+            val encoding = buffer.get()
+            val payloadSize = buffer.getInt()
 
             /* Now the rest of the header depends on the node type */
             val newNode = when (typeByte) {
@@ -120,7 +210,16 @@ sealed class HistoryTreeNode(val blockSize: Int,
              * to null. Flip that around for nodes created through this factory
              * function.
              */
-            newNode.nodePayload = buffer.slice().order(ByteOrder.LITTLE_ENDIAN)
+            newNode.nodePayload = when (encoding) {
+                ENCODING_RAW -> buffer.slice().order(ByteOrder.LITTLE_ENDIAN)
+                ENCODING_COMPRESSED -> {
+                    if (payloadSize < 0 || payloadSize > buffer.remaining()) throw IOException("Invalid compressed node size $payloadSize")
+                    val encoded = buffer.slice()
+                    encoded.limit(payloadSize)
+                    NodeCompression.decode(encoded, intervalCount, start, blockSize - newNode.totalHeaderSize)
+                }
+                else -> throw IOException("Unknown node encoding $encoding")
+            }
             newNode.intervalCount = intervalCount
             newNode.intervals = null
 
@@ -133,11 +232,21 @@ sealed class HistoryTreeNode(val blockSize: Int,
     }
 
     /**
-     * Write this node to the given file channel.
+     * Serialize this node into a buffer, ready to be written to the file at
+     * the start of the node's block. The node should be closed, and will not
+     * be considered on disk until [isOnDisk] is set by whoever writes the
+     * buffer.
+     *
+     * Uncompressed nodes fill the whole block. Compressed nodes only fill
+     * its start, and the rest of the block does not need to be written.
+     *
+     * @param compress
+     *            If the payload should be compressed. It is kept as is if
+     *            compressing it does not make it smaller.
      */
     @Synchronized
-    fun writeSelf(fc: FileChannel) {
-        /* We shouldn't writeSelf() a node that was read from disk */
+    fun serialize(compress: Boolean): ByteBuffer {
+        /* We shouldn't serialize() a node that was read from disk */
         val intervals = intervals ?: throw IllegalStateException()
 
         val buffer = ByteBuffer.allocate(blockSize)
@@ -152,25 +261,45 @@ sealed class HistoryTreeNode(val blockSize: Int,
         buffer.putInt(parentSeqNumber)
         buffer.putInt(intervals.size)
 
+        /* The payload encoding and size are set once the payload is written */
+        val encodingPos = buffer.position()
+        buffer.put(ENCODING_RAW)
+        buffer.putInt(0)
+
         /* Now call the inner method to write the specific header part */
         writeSpecificHeader(buffer)
 
-        /* Back to us, we write the intervals */
+        /* Back to us, we write the interval index, then the intervals */
+        val payloadStart = buffer.position()
+        var intervalOffset = intervals.size * INTERVAL_INDEX_ENTRY_SIZE
+        intervals.forEach {
+            buffer.putInt(intervalOffset)
+            intervalOffset += it.sizeOnDisk
+        }
         intervals.forEach { it.writeInterval(buffer) }
+        val payloadEnd = buffer.position()
 
-        /* Fill the rest of the block with zeroes. */
-        while (buffer.position() < blockSize) {
-            buffer.put(0.toByte())
+        val encoded = if (compress) {
+            val payload = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+            payload.position(payloadStart)
+            payload.limit(payloadEnd)
+            NodeCompression.encode(payload, intervals.size, nodeStart)
+        } else {
+            null
         }
 
-        /* Finally, write everything in the Buffer to disk */
-        buffer.flip()
-        val res = fc.write(buffer)
-        if (res != blockSize) {
-            throw IllegalStateException("Wrong size of block written: Actual: $res, Expected: $blockSize")
+        if (encoded == null) {
+            /* The rest of the block is already filled with zeroes */
+            buffer.putInt(encodingPos + 1, payloadEnd - payloadStart)
+            buffer.clear()
+        } else {
+            buffer.put(encodingPos, ENCODING_COMPRESSED)
+            buffer.putInt(encodingPos + 1, encoded.size)
+            buffer.position(payloadStart)
+            buffer.put(encoded)
+            buffer.flip()
         }
-
-        isOnDisk = true
+        return buffer
     }
 
     /**
@@ -182,7 +311,7 @@ sealed class HistoryTreeNode(val blockSize: Int,
         val intervals = intervals ?: throw IllegalStateException()
 
         /* Just in case, should be checked before even calling this function */
-        assert (newInterval.sizeOnDisk <= nodeFreeSpace)
+        assert (newInterval.sizeOnDisk + INTERVAL_INDEX_ENTRY_SIZE <= nodeFreeSpace)
 
         /* Find the insert position to keep the list sorted */
         var index = intervals.size
@@ -191,7 +320,7 @@ sealed class HistoryTreeNode(val blockSize: Int,
         }
 
         intervals.add(index, newInterval)
-        sizeOfIntervalSection += newInterval.sizeOnDisk
+        sizeOfIntervalSection += newInterval.sizeOnDisk + INTERVAL_INDEX_ENTRY_SIZE
     }
 
     /**
@@ -237,7 +366,7 @@ sealed class HistoryTreeNode(val blockSize: Int,
      */
     @Synchronized
     fun writeInfoFromNode(stateInfo: MutableList<StateInterval?>, t: Long) {
-        intervalIterator(t, null).forEach { stateInfo[it.attribute] = it }
+        scanIntervals(t, t, { true }) { stateInfo[it.attribute] = it }
     }
 
     /**
@@ -253,12 +382,54 @@ sealed class HistoryTreeNode(val blockSize: Int,
      */
     @Synchronized
     fun getRelevantInterval(key: Int, t: Long): HTInterval? {
-        return intervalIterator(t, setOf(key)).asSequence().firstOrNull()
+        scanIntervals(t, t, { it == key }) { return it }
+        return null
+    }
+
+    /**
+     * Add to 'results' the intervals of this node that intersect the given
+     * timestamp, for the quarks that are set in 'quarks'.
+     *
+     * @param t
+     *            The timestamp
+     * @param quarks
+     *            The quarks to look for
+     * @param results
+     *            Where to put the intervals found, indexed by quark
+     * @return The number of intervals that were found
+     */
+    @Synchronized
+    fun collectIntervals(t: Long, quarks: BitSet, results: MutableMap<Int, StateInterval>): Int {
+        var found = 0
+        scanIntervals(t, t, { quarks.get(it) }) {
+            results.put(it.attribute, it)
+            found++
+        }
+        return found
+    }
+
+    /**
+     * Add to 'results' the intervals of this node that intersect the time
+     * range [t1, t2], for the quarks that are set in 'quarks'.
+     *
+     * @param t1
+     *            The start of the time range
+     * @param t2
+     *            The end of the time range
+     * @param quarks
+     *            The quarks to look for
+     * @param results
+     *            Where to add the intervals found
+     */
+    @Synchronized
+    fun collectIntervals(t1: Long, t2: Long, quarks: BitSet, results: MutableCollection<StateInterval>) {
+        scanIntervals(t1, t2, { quarks.get(it) }) { results.add(it) }
     }
 
     val totalHeaderSize get() = COMMON_HEADER_SIZE + specificHeaderSize
     private val dataSectionEndOffset get() = totalHeaderSize + sizeOfIntervalSection
 
+    /** Free space in this node, an interval needs its size plus one index entry to fit */
     val nodeFreeSpace: Int
         @Synchronized get() = (blockSize - dataSectionEndOffset)
 
@@ -373,108 +544,3 @@ internal class LeafNode(blockSize: Int,
         /* No specific header part */
     }
 }
-
-private class RawIntervalIterator(private val bb: ByteBuffer,
-                                  expectedIntervalCount: Int,
-                                  private val targetTimestamp: Long,
-                                  private val targetQuarks: Set<Int>?): AbstractIterator<HTInterval>() {
-
-    companion object {
-        /* 'Byte' equivalent for state values types */
-        private const val TYPE_NULL: Byte          = -1
-        private const val TYPE_INTEGER: Byte       = 0
-        private const val TYPE_STRING: Byte        = 1
-        private const val TYPE_LONG: Byte          = 2
-        private const val TYPE_DOUBLE: Byte        = 3
-        private const val TYPE_BOOLEAN_TRUE: Byte  = 4
-        private const val TYPE_BOOLEAN_FALSE: Byte = 5
-    }
-
-    init {
-        bb.position(0)
-    }
-
-    private var remaining = expectedIntervalCount
-
-    override fun computeNext() {
-        while (remaining > 0) {
-            remaining--
-            val interval = considerNextInterval() ?: continue
-            return setNext(interval)
-        }
-        return done()
-    }
-
-    private fun considerNextInterval(): HTInterval? {
-        /* Start reading the interval's data, and exit as soon as we find a non-matching condition. */
-        val valueType: Byte = bb.get()
-
-        val start = bb.getLong()
-        if (targetTimestamp < start) {
-            /* Skip over "end" and "quark" */
-            bb.skip(java.lang.Long.BYTES + Integer.BYTES)
-
-            skipPayload(valueType)
-            return null
-        }
-
-        val end = bb.getLong()
-        if (targetTimestamp > end) {
-            /* Skip over "quark" */
-            bb.skip(Integer.BYTES)
-
-            skipPayload(valueType)
-            return null
-        }
-
-        val quark = bb.getInt()
-        if (targetQuarks != null && !targetQuarks.contains(quark)) {
-            /* No need to skip, we're at the beginning of the payload now. */
-            skipPayload(valueType)
-            return null
-        }
-
-
-        /* All conditions match, return this interval */
-        val sv: StateValue = when (valueType) {
-            TYPE_NULL -> StateValue.nullValue()
-            TYPE_BOOLEAN_TRUE -> StateValue.newValueBoolean(true)
-            TYPE_BOOLEAN_FALSE -> StateValue.newValueBoolean(false)
-            TYPE_INTEGER -> StateValue.newValueInt(bb.getInt())
-            TYPE_LONG -> StateValue.newValueLong(bb.getLong())
-            TYPE_DOUBLE -> StateValue.newValueDouble(bb.getDouble())
-            /* For strings the first "short" indicates the size */
-            TYPE_STRING -> {
-                val strSize = bb.getShort()
-                val array = ByteArray(strSize.toInt())
-                bb.get(array)
-                /* Confirm the 0'ed byte at the end */
-                if (bb.get() != 0.toByte()) throw IOException()
-
-                StateValue.newValueString(String(array))
-            }
-            else -> throw IOException()
-        }
-        return HTInterval(start, end, quark, sv)
-    }
-
-    /** Skip the payload part, depending on its type. */
-    private fun skipPayload(valueType: Byte) {
-        val payloadSize: Int = when (valueType) {
-            TYPE_NULL,
-            TYPE_BOOLEAN_TRUE,
-            TYPE_BOOLEAN_FALSE -> 0
-            TYPE_INTEGER -> Integer.BYTES
-            TYPE_LONG -> java.lang.Long.BYTES
-            TYPE_DOUBLE -> java.lang.Double.BYTES
-           /* For strings the first "short" indicates the size */
-            TYPE_STRING -> bb.getShort().toInt() + 1
-            else -> throw IOException()
-        }
-        if (payloadSize > 0) bb.skip(payloadSize)
-    }
-}
-
-private fun ByteBuffer.skip(nbBytes: Int) {
-    position(position() + nbBytes)
-}
@@ -17,6 +17,7 @@ import org.junit.jupiter.api.Test;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -119,4 +120,77 @@ class AttributeTreeTest {
             file.delete();
         }
     }
+
+    /**
+     * Test that the sub-attributes of a reloaded attribute tree keep the same
+     * quarks and the same order, with many attributes sharing the same names.
+     *
+     * @throws IOException
+     *             if there is an error accessing the test file
+     * @throws AttributeNotFoundException
+     *             if the test fails
+     */
+    @Test
+    void testAttributeTreeFileStorageOrder() throws IOException, AttributeNotFoundException {
+        File file = File.createTempFile("AttributeTreeTest", ".ht");
+        IStateHistoryBackend backend1 = StateHistoryBackendFactory.createNullBackend("test");
+        StateSystem ss1 = new StateSystem(backend1);
+        AttributeTree attributeTree1 = new AttributeTree(ss1);
+        for (int i = 1000; i > 0; i--) {
+            attributeTree1.getQuarkAndAdd(-1, THREADS, String.valueOf(i), STATUS);
+        }
+        int threadsQuark = attributeTree1.getQuarkDontAdd(-1, THREADS);
+        List<Integer> expected = attributeTree1.getSubAttributes(threadsQuark, true);
+        attributeTree1.writeSelf(file, 0L);
+        ss1.dispose();
+
+        IStateHistoryBackend backend2 = StateHistoryBackendFactory.createNullBackend("test");
+        StateSystem ss2 = new StateSystem(backend2);
+        try (FileInputStream fis = new FileInputStream(file)) {
+            AttributeTree attributeTree2 = new AttributeTree(ss2, fis);
+            assertEquals(attributeTree1.getNbAttributes(), attributeTree2.getNbAttributes());
+            assertEquals(expected, attributeTree2.getSubAttributes(threadsQuark, true));
+            for (int quark : expected) {
+                assertArrayEquals(attributeTree1.getFullAttributePathArray(quark),
+                        attributeTree2.getFullAttributePathArray(quark));
+            }
+        } finally {
+            ss2.dispose();
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that sub-attributes looked up by number are the same as the ones
+     * looked up by name, whichever way they were created.
+     *
+     * @throws AttributeNotFoundException
+     *             if the test fails
+     */
+    @Test
+    void testChildQuarkByNumber() throws AttributeNotFoundException {
+        IStateHistoryBackend backend = StateHistoryBackendFactory.createNullBackend("test");
+        StateSystem ss = new StateSystem(backend);
+        try {
+            AttributeTree attributeTree = new AttributeTree(ss);
+            int threadsQuark = attributeTree.getChildQuarkAndAdd(-1, THREADS);
+            assertEquals(threadsQuark, attributeTree.getQuarkDontAdd(-1, THREADS));
+
+            /* Created by number, found by name */
+            for (int tid = -100; tid < 1000; tid += 7) {
+                int quark = attributeTree.getChildQuarkAndAdd(threadsQuark, tid);
+                assertEquals(quark, attributeTree.getQuarkDontAdd(-1, THREADS, String.valueOf(tid)));
+                assertEquals(quark, attributeTree.getChildQuarkAndAdd(threadsQuark, tid));
+            }
+
+            /* Created by name, found by number */
+            int quark = attributeTree.getQuarkAndAdd(-1, THREADS, "123456");
+            int nbAttributes = attributeTree.getNbAttributes();
+            assertEquals(quark, attributeTree.getChildQuarkAndAdd(threadsQuark, 123456));
+            assertEquals(quark, attributeTree.getChildQuarkAndAdd(threadsQuark, "123456"));
+            assertEquals(nbAttributes, attributeTree.getNbAttributes());
+        } finally {
+            ss.dispose();
+        }
+    }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package ca.polymtl.dorsal.libdelorean;
+
+import ca.polymtl.dorsal.libdelorean.backend.IStateHistoryBackend;
+import ca.polymtl.dorsal.libdelorean.backend.StateHistoryBackendFactory;
+import ca.polymtl.dorsal.libdelorean.interval.StateInterval;
+import ca.polymtl.dorsal.libdelorean.statevalue.StateValue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the primitive state change methods of the state system, like
+ * {@link IStateSystemWriter#modifyAttributeInt}.
+ *
+ * @author Alexandre Montplaisir
+ */
+@SuppressWarnings("nls")
+class StateSystemPrimitiveValuesTest {
+
+    private IStateSystemWriter ss;
+
+    /**
+     * Test initialization
+     */
+    @BeforeEach
+    void setup() {
+        IStateHistoryBackend backend = StateHistoryBackendFactory.createInMemoryBackend("test-ss", 0);
+        ss = new StateSystem(backend, true);
+    }
+
+    /**
+     * Test that primitive values end up in the history as the equivalent state
+     * values.
+     */
+    @Test
+    void testPrimitiveValues() throws Exception {
+        int intQuark = ss.getQuarkAbsoluteAndAdd("int");
+        int longQuark = ss.getQuarkAbsoluteAndAdd("long");
+        int doubleQuark = ss.getQuarkAbsoluteAndAdd("double");
+
+        ss.modifyAttributeInt(10, 1, intQuark);
+        ss.modifyAttributeLong(10, Long.MAX_VALUE, longQuark);
+        ss.modifyAttributeDouble(10, 1.5, doubleQuark);
+
+        ss.modifyAttributeInt(20, -2, intQuark);
+        ss.modifyAttributeNull(20, longQuark);
+        ss.modifyAttributeDouble(20, Double.NaN, doubleQuark);
+
+        assertEquals(StateValue.newValueInt(-2), ss.queryOngoingState(intQuark));
+        ss.closeHistory(30);
+
+        assertInterval(0, 9, StateValue.nullValue(), ss.querySingleState(5, intQuark));
+        assertInterval(10, 19, StateValue.newValueInt(1), ss.querySingleState(15, intQuark));
+        assertInterval(20, 30, StateValue.newValueInt(-2), ss.querySingleState(25, intQuark));
+
+        assertInterval(10, 19, StateValue.newValueLong(Long.MAX_VALUE), ss.querySingleState(15, longQuark));
+        assertInterval(20, 30, StateValue.nullValue(), ss.querySingleState(25, longQuark));
+
+        assertInterval(10, 19, StateValue.newValueDouble(1.5), ss.querySingleState(15, doubleQuark));
+        assertInterval(20, 30, StateValue.newValueDouble(Double.NaN), ss.querySingleState(25, doubleQuark));
+    }
+
+    /**
+     * Test that setting the same value again, by either method, does not
+     * create a new interval.
+     */
+    @Test
+    void testSameValue() throws Exception {
+        int quark = ss.getQuarkAbsoluteAndAdd("attrib");
+
+        ss.modifyAttributeInt(10, 5, quark);
+        ss.modifyAttribute(15, StateValue.newValueInt(5), quark);
+        ss.modifyAttributeInt(20, 5, quark);
+        ss.modifyAttributeDouble(25, Double.NaN, ss.getQuarkAbsoluteAndAdd("other"));
+        ss.closeHistory(30);
+
+        assertInterval(10, 30, StateValue.newValueInt(5), ss.querySingleState(20, quark));
+    }
+
+    /**
+     * Test that incrementing an attribute counts from 0 after a null value.
+     */
+    @Test
+    void testIncrement() throws Exception {
+        int quark = ss.getQuarkAbsoluteAndAdd("counter");
+
+        ss.incrementAttribute(10, quark);
+        ss.incrementAttribute(20, quark);
+        ss.modifyAttributeNull(30, quark);
+        ss.incrementAttribute(40, quark);
+        ss.closeHistory(50);
+
+        assertInterval(20, 29, StateValue.newValueInt(2), ss.querySingleState(25, quark));
+        assertInterval(40, 50, StateValue.newValueInt(1), ss.querySingleState(45, quark));
+    }
+
+    /**
+     * Test that an attribute keeps the type of its first value, whichever
+     * method is used to modify it.
+     */
+    @Test
+    void testTypeMismatch() throws Exception {
+        int quark = ss.getQuarkAbsoluteAndAdd("attrib");
+
+        ss.modifyAttributeNull(5, quark);
+        ss.modifyAttributeLong(10, 1L, quark);
+        ss.modifyAttributeNull(15, quark);
+        assertThrows(IllegalArgumentException.class, () -> ss.modifyAttributeInt(20, 1, quark));
+        assertThrows(IllegalArgumentException.class, () -> ss.modifyAttribute(20, StateValue.newValueString("a"), quark));
+        assertThrows(IllegalArgumentException.class, () -> ss.incrementAttribute(20, quark));
+        ss.modifyAttribute(20, StateValue.newValueLong(2L), quark);
+    }
+
+    private static void assertInterval(long start, long end, StateValue value, StateInterval interval) {
+        assertEquals(start, interval.getStart());
+        assertEquals(end, interval.getEnd());
+        assertEquals(value, interval.getStateValue());
+    }
+}
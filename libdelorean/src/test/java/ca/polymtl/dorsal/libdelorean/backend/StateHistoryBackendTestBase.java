@@ -265,6 +265,39 @@ public abstract class StateHistoryBackendTestBase {
         }
     }
 
+    /**
+     * Test the range query method {@link IStateHistoryBackend#doRangeQuery},
+     * making sure all, and only, the intervals intersecting the range are
+     * returned for the requested quarks.
+     */
+    @ParameterizedTest
+    @MethodSource("parameters")
+    void testRangeQuery(String name, List<StateInterval> intervals, int nbAttributes) {
+        setup(intervals);
+
+        IStateHistoryBackend backend = fBackend;
+        assertNotNull(backend);
+
+        /* Take only half the quarks, using even numbers. */
+        final Set<Integer> quarks = IntStream.iterate(0, i -> i + 2).limit(Math.max(1, nbAttributes / 2))
+                .boxed()
+                .collect(ImmutableSet.toImmutableSet());
+        final long t1 = 250;
+        final long t2 = 600;
+
+        Set<StateInterval> expected = new HashSet<>();
+        intervals.stream()
+                .filter(interval -> quarks.contains(interval.getAttribute()))
+                .filter(interval -> interval.getEnd() >= t1 && interval.getStart() <= t2)
+                .forEach(expected::add);
+
+        List<StateInterval> results = new ArrayList<>();
+        backend.doRangeQuery(quarks, t1, t2).forEachRemaining(results::add);
+
+        assertEquals(expected.size(), results.size());
+        assertEquals(expected, new HashSet<>(results));
+    }
+
     /**
      * Test that the backend time is set correctly.
      */
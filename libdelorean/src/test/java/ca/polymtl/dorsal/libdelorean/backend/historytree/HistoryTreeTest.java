@@ -9,6 +9,7 @@
 
 package ca.polymtl.dorsal.libdelorean.backend.historytree;
 
+import ca.polymtl.dorsal.libdelorean.interval.StateInterval;
 import ca.polymtl.dorsal.libdelorean.statevalue.StateValue;
 import com.google.common.collect.Iterables;
 import org.jetbrains.annotations.NotNull;
@@ -19,7 +20,12 @@ import org.junit.jupiter.api.Test;
 import java.io.File;
 import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -33,18 +39,22 @@ class HistoryTreeTest {
     /* Minimal allowed blocksize */
     private static final int BLOCK_SIZE = HistoryTree.TREE_HEADER_SIZE;
 
-    private static final int NULL_INTERVAL_SIZE = (new HTInterval(0, 1, 1, StateValue.nullValue())).getSizeOnDisk();
+    private static final int NULL_INTERVAL_SIZE = (new HTInterval(0, 1, 1, StateValue.nullValue())).getSizeOnDisk()
+            + HistoryTreeNode.INTERVAL_INDEX_ENTRY_SIZE;
 
     /* String with 23 characters, interval in file will be 25 bytes long */
     private static final String TEST_STRING = "abcdefghifklmnopqrstuvw"; //$NON-NLS-1$
     private static final @NotNull StateValue STRING_VALUE = StateValue.newValueString(TEST_STRING);
-    private static final int STRING_INTERVAL_SIZE = (new HTInterval(0, 1, 1, STRING_VALUE)).getSizeOnDisk();
+    private static final int STRING_INTERVAL_SIZE = (new HTInterval(0, 1, 1, STRING_VALUE)).getSizeOnDisk()
+            + HistoryTreeNode.INTERVAL_INDEX_ENTRY_SIZE;
 
     private static final @NotNull StateValue LONG_VALUE = StateValue.newValueLong(10L);
-    private static final int LONG_INTERVAL_SIZE = (new HTInterval(0, 1, 1, LONG_VALUE)).getSizeOnDisk();
+    private static final int LONG_INTERVAL_SIZE = (new HTInterval(0, 1, 1, LONG_VALUE)).getSizeOnDisk()
+            + HistoryTreeNode.INTERVAL_INDEX_ENTRY_SIZE;
 
     private static final @NotNull StateValue INT_VALUE = StateValue.newValueInt(1);
-    private static final int INT_INTERVAL_SIZE = (new HTInterval(0, 1, 1, INT_VALUE)).getSizeOnDisk();
+    private static final int INT_INTERVAL_SIZE = (new HTInterval(0, 1, 1, INT_VALUE)).getSizeOnDisk()
+            + HistoryTreeNode.INTERVAL_INDEX_ENTRY_SIZE;
 
     private File fTempFile;
 
@@ -305,6 +315,390 @@ class HistoryTreeTest {
         assertEquals( 4, branch.get(2).getParentSeqNumber());
     }
 
+    /**
+     * Test the node cache of a history tree opened from an existing file.
+     *
+     * @throws IOException
+     *             If the test fails
+     */
+    @Test
+    void testNodeCache() throws IOException {
+        long start = 1;
+
+        HistoryTree ht = setupSmallTree(3);
+        start = fillNextLeafNode(ht, start);
+        start = fillValues(ht, STRING_VALUE, 1, start);
+        ht.closeTree(start);
+        ht.closeFile();
+
+        /* Only allow one node in the cache */
+        ht = new HistoryTree(fTempFile, 1, BLOCK_SIZE);
+        try {
+            /* Opening the tree reads its latest branch */
+            assertEquals(0, ht.getCacheHits());
+            assertEquals(2, ht.getCacheMisses());
+
+            /* Node 0 is not on the latest branch */
+            assertEquals(0, ht.readNode(0).getSeqNumber());
+            assertEquals(0, ht.getCacheHits());
+            assertEquals(3, ht.getCacheMisses());
+
+            assertEquals(0, ht.readNode(0).getSeqNumber());
+            assertEquals(1, ht.getCacheHits());
+            assertEquals(3, ht.getCacheMisses());
+        } finally {
+            ht.closeFile();
+        }
+    }
+
+    /**
+     * Test that the nodes read back from the file are the ones that were
+     * written, including the nodes that were still waiting to be written while
+     * the tree was being built.
+     *
+     * @throws IOException
+     *             If the test fails
+     */
+    @Test
+    void testWrittenNodes() throws IOException {
+        long start = 1;
+
+        HistoryTree ht = setupSmallTree(3);
+        for (int i = 0; i < 40; i++) {
+            start = fillValues(ht, STRING_VALUE, 1, start);
+            start = fillNextLeafNode(ht, start);
+        }
+
+        int nodeCount = ht.getNodeCount();
+        int[] parents = new int[nodeCount];
+        long[] starts = new long[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            HistoryTreeNode node = ht.readNode(i);
+            assertEquals(i, node.getSeqNumber());
+            parents[i] = node.getParentSeqNumber();
+            starts[i] = node.getNodeStart();
+        }
+        ht.closeTree(start);
+        ht.closeFile();
+
+        ht = new HistoryTree(fTempFile, 1);
+        try {
+            assertEquals(nodeCount, ht.getNodeCount());
+            for (int i = 0; i < nodeCount; i++) {
+                HistoryTreeNode node = ht.readNode(i);
+                assertEquals(i, node.getSeqNumber());
+                assertEquals(parents[i], node.getParentSeqNumber());
+                assertEquals(starts[i], node.getNodeStart());
+                assertTrue(node.isOnDisk());
+            }
+        } finally {
+            ht.closeFile();
+        }
+    }
+
+    /**
+     * Test that the intervals of all types read back from the file are the
+     * ones that were inserted, whatever the encoding of their node.
+     *
+     * @throws IOException
+     *             If the test fails
+     */
+    @Test
+    void testNodeContents() throws IOException {
+        StateValue[] values = {
+                StateValue.nullValue(),
+                StateValue.newValueBoolean(true),
+                StateValue.newValueInt(-42),
+                StateValue.newValueLong(Long.MIN_VALUE),
+                StateValue.newValueDouble(Math.PI),
+                STRING_VALUE
+        };
+        BitSet allQuarks = new BitSet();
+        allQuarks.set(0, 10);
+
+        HistoryTree ht = setupSmallTree(3);
+        long t = 1;
+        for (int i = 0; i < 2000; i++) {
+            ht.insertInterval(new HTInterval(t, t + 1, i % 10, values[i % values.length]));
+            t++;
+        }
+
+        int nodeCount = ht.getNodeCount();
+        List<List<StateInterval>> expected = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            List<StateInterval> intervals = new ArrayList<>();
+            ht.readNode(i).collectIntervals(Long.MIN_VALUE, Long.MAX_VALUE, allQuarks, intervals);
+            expected.add(intervals);
+        }
+        ht.closeTree(t);
+        ht.closeFile();
+
+        ht = new HistoryTree(fTempFile, 1);
+        try {
+            for (int i = 0; i < nodeCount; i++) {
+                List<StateInterval> intervals = new ArrayList<>();
+                ht.readNode(i).collectIntervals(Long.MIN_VALUE, Long.MAX_VALUE, allQuarks, intervals);
+                assertEquals(expected.get(i), intervals);
+            }
+        } finally {
+            ht.closeFile();
+        }
+    }
+
+    /**
+     * Test that the nodes of a complete file read from its memory mapping are
+     * the same as the ones read from the file channel, including when the
+     * mapping is split in several segments.
+     *
+     * @throws IOException
+     *             If the test fails
+     */
+    @Test
+    void testMappedReads() throws IOException {
+        BitSet allQuarks = new BitSet();
+        allQuarks.set(0, 10);
+
+        HistoryTree ht = setupSmallTree(3);
+        long t = 1;
+        for (int i = 0; i < 2000; i++) {
+            ht.insertInterval(new HTInterval(t, t + 1, i % 10, (i % 2 == 0 ? STRING_VALUE : LONG_VALUE)));
+            t++;
+        }
+        ht.closeTree(t);
+        int nodeCount = ht.getNodeCount();
+        ht.closeFile();
+
+        /* Segments of 3 nodes, so that reads cross many segment boundaries. Only keep one node in the caches. */
+        HT_IO mapped = new HT_IO(fTempFile, BLOCK_SIZE, 3, false, BLOCK_SIZE, false, false, 3 * BLOCK_SIZE + 7);
+        HT_IO unmapped = new HT_IO(fTempFile, BLOCK_SIZE, 3, false, BLOCK_SIZE, false, false);
+        try {
+            assertTrue(nodeCount > 3 * 3);
+            mapped.mapNodes(nodeCount);
+
+            for (int i = 0; i < nodeCount; i++) {
+                HistoryTreeNode expected = unmapped.readNode(i);
+                HistoryTreeNode actual = mapped.readNode(i);
+                assertEquals(expected.getSeqNumber(), actual.getSeqNumber());
+                assertEquals(expected.getParentSeqNumber(), actual.getParentSeqNumber());
+                assertEquals(expected.getNodeStart(), actual.getNodeStart());
+                assertEquals(expected.getNodeEnd(), actual.getNodeEnd());
+
+                List<StateInterval> expectedIntervals = new ArrayList<>();
+                expected.collectIntervals(Long.MIN_VALUE, Long.MAX_VALUE, allQuarks, expectedIntervals);
+                List<StateInterval> actualIntervals = new ArrayList<>();
+                actual.collectIntervals(Long.MIN_VALUE, Long.MAX_VALUE, allQuarks, actualIntervals);
+                assertEquals(expectedIntervals, actualIntervals);
+            }
+
+            assertEquals(nodeCount, mapped.getCacheMisses());
+            assertEquals(nodeCount, mapped.getMappedNodeReads());
+            assertEquals(0, unmapped.getMappedNodeReads());
+        } finally {
+            mapped.closeFile();
+            unmapped.closeFile();
+        }
+    }
+
+    /**
+     * Test that nodes read from the memory mapping stay usable once the file
+     * is closed and its mapping released, and that the file can then be
+     * deleted.
+     *
+     * @throws IOException
+     *             If the test fails
+     */
+    @Test
+    void testMappedNodesAfterClose() throws IOException {
+        BitSet allQuarks = new BitSet();
+        allQuarks.set(0, 10);
+
+        HistoryTree ht = setupSmallTree(3);
+        long t = 1;
+        for (int i = 0; i < 500; i++) {
+            ht.insertInterval(new HTInterval(t, t + 1, i % 10, STRING_VALUE));
+            t++;
+        }
+        ht.closeTree(t);
+        int nodeCount = ht.getNodeCount();
+        ht.closeFile();
+
+        List<List<StateInterval>> expected = new ArrayList<>();
+        HT_IO unmapped = new HT_IO(fTempFile, BLOCK_SIZE, 3, false, BLOCK_SIZE, false, false);
+        try {
+            for (int i = 0; i < nodeCount; i++) {
+                List<StateInterval> intervals = new ArrayList<>();
+                unmapped.readNode(i).collectIntervals(Long.MIN_VALUE, Long.MAX_VALUE, allQuarks, intervals);
+                expected.add(intervals);
+            }
+        } finally {
+            unmapped.closeFile();
+        }
+
+        List<HistoryTreeNode> nodes = new ArrayList<>();
+        HT_IO mapped = new HT_IO(fTempFile, BLOCK_SIZE, 3, false, BLOCK_SIZE, false, false, 3 * BLOCK_SIZE + 7);
+        mapped.mapNodes(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            nodes.add(mapped.readNode(i));
+        }
+        assertEquals(nodeCount, mapped.getMappedNodeReads());
+        mapped.closeFile();
+        assertTrue(fTempFile.delete());
+
+        for (int i = 0; i < nodeCount; i++) {
+            List<StateInterval> actual = new ArrayList<>();
+            nodes.get(i).collectIntervals(Long.MIN_VALUE, Long.MAX_VALUE, allQuarks, actual);
+            assertEquals(expected.get(i), actual);
+        }
+    }
+
+    /**
+     * Test that the interval scans of a node, for single-time and range
+     * queries, return the same intervals as filtering all the intervals of the
+     * node, both for nodes in memory and nodes read back from disk.
+     *
+     * @throws IOException
+     *             If the test fails
+     */
+    @Test
+    void testNodeScans() throws IOException {
+        StateValue[] values = { StateValue.nullValue(), INT_VALUE, LONG_VALUE, STRING_VALUE };
+        BitSet allQuarks = new BitSet();
+        allQuarks.set(0, 10);
+        BitSet someQuarks = new BitSet();
+        someQuarks.set(1);
+        someQuarks.set(4, 7);
+
+        HistoryTree ht = setupSmallTree(3);
+        long t = 1;
+        for (int i = 0; i < 2000; i++) {
+            /* Intervals of different durations, so they do not end in the order they start */
+            ht.insertInterval(new HTInterval(t, t + i % 7, i % 10, values[i % values.length]));
+            t++;
+        }
+
+        int nodeCount = ht.getNodeCount();
+        List<List<StateInterval>> contents = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            List<StateInterval> intervals = new ArrayList<>();
+            HistoryTreeNode node = ht.readNode(i);
+            node.collectIntervals(Long.MIN_VALUE, Long.MAX_VALUE, allQuarks, intervals);
+            contents.add(intervals);
+            assertNodeScans(node, intervals, allQuarks);
+            assertNodeScans(node, intervals, someQuarks);
+        }
+        ht.closeTree(t);
+        ht.closeFile();
+
+        ht = new HistoryTree(fTempFile, 1);
+        try {
+            for (int i = 0; i < nodeCount; i++) {
+                HistoryTreeNode node = ht.readNode(i);
+                assertTrue(node.isOnDisk());
+                assertNodeScans(node, contents.get(i), allQuarks);
+                assertNodeScans(node, contents.get(i), someQuarks);
+            }
+        } finally {
+            ht.closeFile();
+        }
+    }
+
+    /**
+     * Test the search for the first interval ending at or after a timestamp
+     * in a single node, with several intervals ending at the same time and
+     * queries exactly at the interval boundaries. The node is tested in
+     * memory, and read back from its raw and compressed serializations.
+     *
+     * @throws IOException
+     *             If the test fails
+     */
+    @Test
+    void testNodeEndTimeSearch() throws IOException {
+        long[] ends = { 10, 10, 10, 20, 20, 30, 30, 30, 30, 40 };
+        long[] starts = { 5, 10, 1, 11, 20, 21, 30, 25, 11, 40 };
+        BitSet allQuarks = new BitSet();
+        allQuarks.set(0, ends.length);
+
+        LeafNode node = new LeafNode(BLOCK_SIZE, 0, -1, 1);
+        List<StateInterval> contents = new ArrayList<>();
+        for (int i = 0; i < ends.length; i++) {
+            HTInterval interval = new HTInterval(starts[i], ends[i], i, (i % 2 == 0 ? INT_VALUE : STRING_VALUE));
+            node.addInterval(interval);
+            contents.add(interval);
+        }
+        node.closeThisNode(50);
+
+        List<HistoryTreeNode> nodes = new ArrayList<>();
+        nodes.add(node);
+        nodes.add(HistoryTreeNode.readNode(BLOCK_SIZE, 0, node.serialize(false)));
+        nodes.add(HistoryTreeNode.readNode(BLOCK_SIZE, 0, node.serialize(true)));
+
+        long[] queries = { Long.MIN_VALUE, 0, 1, 9, 10, 11, 19, 20, 21, 29, 30, 31, 39, 40, 41, Long.MAX_VALUE };
+        for (HistoryTreeNode testNode : nodes) {
+            for (long t : queries) {
+                Map<Integer, StateInterval> expected = new HashMap<>();
+                List<StateInterval> expectedAfter = new ArrayList<>();
+                for (StateInterval interval : contents) {
+                    if (interval.intersects(t)) {
+                        expected.put(interval.getAttribute(), interval);
+                    }
+                    if (interval.getEnd() >= t) {
+                        expectedAfter.add(interval);
+                    }
+                }
+
+                Map<Integer, StateInterval> actual = new HashMap<>();
+                assertEquals(expected.size(), testNode.collectIntervals(t, allQuarks, actual), "t=" + t);
+                assertEquals(expected, actual, "t=" + t);
+
+                List<StateInterval> actualAfter = new ArrayList<>();
+                testNode.collectIntervals(t, Long.MAX_VALUE, allQuarks, actualAfter);
+                assertEquals(expectedAfter, actualAfter, "t=" + t);
+
+                for (int quark = 0; quark < ends.length; quark++) {
+                    assertEquals(expected.get(quark), testNode.getRelevantInterval(quark, t), "t=" + t + ", quark=" + quark);
+                }
+            }
+        }
+
+        /* An empty node has nothing to find */
+        LeafNode emptyNode = new LeafNode(BLOCK_SIZE, 1, -1, 1);
+        emptyNode.closeThisNode(50);
+        for (HistoryTreeNode testNode : Arrays.asList(emptyNode, HistoryTreeNode.readNode(BLOCK_SIZE, 0, emptyNode.serialize(false)))) {
+            List<StateInterval> found = new ArrayList<>();
+            testNode.collectIntervals(Long.MIN_VALUE, Long.MAX_VALUE, allQuarks, found);
+            assertTrue(found.isEmpty());
+            assertNull(testNode.getRelevantInterval(0, 10));
+        }
+    }
+
+    private static void assertNodeScans(HistoryTreeNode node, List<StateInterval> contents, BitSet quarks) {
+        long end = contents.stream().mapToLong(StateInterval::getEnd).max().orElse(node.getNodeStart());
+        for (long t = node.getNodeStart() - 1; t <= end + 1; t++) {
+            Map<Integer, StateInterval> expected = new HashMap<>();
+            for (StateInterval interval : contents) {
+                if (interval.intersects(t) && quarks.get(interval.getAttribute())) {
+                    expected.put(interval.getAttribute(), interval);
+                }
+            }
+            Map<Integer, StateInterval> actual = new HashMap<>();
+            assertEquals(expected.size(), node.collectIntervals(t, quarks, actual));
+            assertEquals(expected, actual);
+
+            for (long duration : new long[] { 0, 3, 50 }) {
+                long t2 = t + duration;
+                List<StateInterval> expectedRange = new ArrayList<>();
+                for (StateInterval interval : contents) {
+                    if (interval.getEnd() >= t && interval.getStart() <= t2 && quarks.get(interval.getAttribute())) {
+                        expectedRange.add(interval);
+                    }
+                }
+                List<StateInterval> actualRange = new ArrayList<>();
+                node.collectIntervals(t, t2, quarks, actualRange);
+                assertEquals(expectedRange, actualRange);
+            }
+        }
+    }
+
     private static HistoryTreeNode getLatestLeaf(HistoryTree ht) {
         List<HistoryTreeNode> latest = ht.getLatestBranch();
         return Iterables.getLast(latest);
@@ -9,6 +9,10 @@
 
 package ca.polymtl.dorsal.libdelorean.statedump;
 
+import ca.polymtl.dorsal.libdelorean.IStateSystemWriter;
+import ca.polymtl.dorsal.libdelorean.StateSystemFactory;
+import ca.polymtl.dorsal.libdelorean.backend.StateHistoryBackendFactory;
+import ca.polymtl.dorsal.libdelorean.interval.StateInterval;
 import ca.polymtl.dorsal.libdelorean.statevalue.StateValue;
 import com.google.common.io.MoreFiles;
 import org.junit.jupiter.api.Test;
@@ -92,6 +96,36 @@ public class StatedumpTest {
         }
     }
 
+    /**
+     * Test restoring a statedump into a new state system.
+     */
+    @Test
+    public void testRestoreInto() {
+        List<String[]> attributes = Arrays.asList(
+                new String[] { "Threads" },
+                new String[] { "Threads", "1000" },
+                new String[] { "Threads", "1000", "Status" });
+        List<StateValue> values = Arrays.asList(
+                StateValue.nullValue(),
+                StateValue.newValueInt(1),
+                StateValue.newValueString("Running"));
+        Statedump statedump = new Statedump(attributes, values, 0);
+
+        final long start = 100L;
+        IStateSystemWriter ss = StateSystemFactory.newStateSystem(StateHistoryBackendFactory.createInMemoryBackend("test-ssid", start));
+        statedump.restoreInto(ss, start);
+        ss.closeHistory(200L);
+
+        assertEquals(3, ss.getNbAttributes());
+        for (int i = 0; i < attributes.size(); i++) {
+            int quark = ss.getQuarkAbsolute(attributes.get(i));
+            StateInterval interval = ss.querySingleState(150L, quark);
+            assertEquals(values.get(i), interval.getStateValue());
+            assertEquals(start, interval.getStart());
+        }
+        ss.dispose();
+    }
+
     /**
      * Util method to replace {@link List#indexOf} for a list of arrays.
      * {@link Object#equals} doesn't work with arrays, unfortunately.
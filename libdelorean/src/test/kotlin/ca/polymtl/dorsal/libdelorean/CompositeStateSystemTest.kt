@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package ca.polymtl.dorsal.libdelorean
+
+import ca.polymtl.dorsal.libdelorean.backend.StateHistoryBackendFactory
+import ca.polymtl.dorsal.libdelorean.interval.StateInterval
+import ca.polymtl.dorsal.libdelorean.statevalue.StateValue
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+
+class CompositeStateSystemTest {
+
+    companion object {
+        private const val START_TIME = 1000L
+        private const val END_TIME = 2000L
+        private const val SSID = "test"
+    }
+
+    private lateinit var ss: IStateSystemReader
+
+    private var sharedQuark = -1
+    private var quarkA = -1
+    private var quarkB = -1
+
+    @BeforeEach
+    fun setup() {
+        val ss1 = StateSystemFactory.newStateSystem(StateHistoryBackendFactory.createInMemoryBackend(SSID, START_TIME))
+        ss1.getQuarkAbsoluteAndAdd("shared").let {
+            ss1.modifyAttribute(1100L, StateValue.newValueInt(1), it)
+            ss1.modifyAttribute(1500L, StateValue.newValueInt(3), it)
+        }
+        ss1.getQuarkAbsoluteAndAdd("a").let { ss1.modifyAttribute(1200L, StateValue.newValueInt(10), it) }
+        ss1.closeHistory(END_TIME)
+
+        val ss2 = StateSystemFactory.newStateSystem(StateHistoryBackendFactory.createInMemoryBackend(SSID, START_TIME))
+        ss2.getQuarkAbsoluteAndAdd("b").let { ss2.modifyAttribute(1300L, StateValue.newValueInt(20), it) }
+        ss2.getQuarkAbsoluteAndAdd("shared").let { ss2.modifyAttribute(1400L, StateValue.newValueInt(2), it) }
+        ss2.closeHistory(END_TIME)
+
+        ss = CompositeStateSystem(SSID, listOf(ss1, ss2))
+        sharedQuark = ss.getQuarkAbsolute("shared")
+        quarkA = ss.getQuarkAbsolute("a")
+        quarkB = ss.getQuarkAbsolute("b")
+    }
+
+    @AfterEach
+    fun cleanup() {
+        ss.dispose()
+    }
+
+    @Test
+    fun testAttributes() {
+        assertEquals(3, ss.nbAttributes)
+        assertEquals(setOf(sharedQuark, quarkA, quarkB), ss.getQuarks("*").toSet())
+        assertEquals(START_TIME, ss.startTime)
+        assertEquals(END_TIME, ss.currentEndTime)
+    }
+
+    @Test
+    fun testSingleQueries() {
+        assertEquals(StateInterval(1100L, 1399L, sharedQuark, StateValue.newValueInt(1)), ss.querySingleState(1200L, sharedQuark))
+        assertEquals(StateInterval(1400L, 1499L, sharedQuark, StateValue.newValueInt(2)), ss.querySingleState(1450L, sharedQuark))
+        assertEquals(StateInterval(1500L, END_TIME, sharedQuark, StateValue.newValueInt(3)), ss.querySingleState(1800L, sharedQuark))
+        assertEquals(StateInterval(1200L, END_TIME, quarkA, StateValue.newValueInt(10)), ss.querySingleState(1800L, quarkA))
+        assertEquals(StateInterval(START_TIME, 1299L, quarkB, StateValue.nullValue()), ss.querySingleState(1250L, quarkB))
+    }
+
+    @Test
+    fun testFullAndPartialQueries() {
+        val t = 1450L
+        val expected = listOf(sharedQuark, quarkA, quarkB).map { it to ss.querySingleState(t, it) }.toMap()
+
+        val fullState = ss.queryFullState(t)
+        assertEquals(3, fullState.size)
+        expected.forEach { quark, interval -> assertEquals(interval, fullState[quark]) }
+
+        assertEquals(expected, ss.queryStates(t, expected.keys))
+    }
+
+    /**
+     * Range queries should return the same intervals as following the
+     * attributes with single queries.
+     */
+    @Test
+    fun testRangeQueries() {
+        val quarks = setOf(sharedQuark, quarkA, quarkB)
+        listOf(START_TIME to END_TIME, 1100L to 1100L, 1250L to 1450L, 1499L to 1500L, 1900L to 5000L).forEach { (t1, t2) ->
+            val expected = quarks.flatMap { followSingleQueries(ss, it, t1, t2) }
+            val actual = ss.queryHistoryRange(quarks, t1, t2).asSequence().toList()
+            assertEquals(expected.sortedWith(INTERVAL_ORDER), actual.sortedWith(INTERVAL_ORDER), "[$t1, $t2]")
+        }
+    }
+}
+
+internal val INTERVAL_ORDER = compareBy<StateInterval>({ it.attribute }, { it.start })
+
+/** Intervals of an attribute over a time range, found with one single query per interval */
+internal fun followSingleQueries(ss: IStateSystemReader, quark: Int, t1: Long, t2: Long): List<StateInterval> {
+    val start = maxOf(t1, ss.startTime)
+    val end = minOf(t2, ss.currentEndTime)
+    return generateSequence(ss.querySingleState(start, quark)) {
+        if (it.end >= end) null else ss.querySingleState(it.end + 1, quark)
+    }.toList()
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package ca.polymtl.dorsal.libdelorean
+
+import ca.polymtl.dorsal.libdelorean.backend.StateHistoryBackendFactory
+import ca.polymtl.dorsal.libdelorean.statedump.Statedump
+import ca.polymtl.dorsal.libdelorean.statevalue.StateValue
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+
+/**
+ * Tests for [TimeSlicedStateSystem], compared to a single state system that
+ * received the same state changes.
+ */
+class TimeSlicedStateSystemTest {
+
+    companion object {
+        private const val START_TIME = 1000L
+        private const val END_TIME = 2000L
+        private const val SSID = "test"
+
+        private val SLICE_STARTS = listOf(START_TIME, 1300L, 1600L)
+        private val PATHS = listOf("x", "y", "z")
+
+        /* Time, attribute, value */
+        private val CHANGES = listOf(
+                Triple(1100L, "x", 1),
+                Triple(1200L, "z", 4),
+                Triple(1350L, "y", 5),
+                Triple(1450L, "x", 2),
+                Triple(1700L, "x", 3),
+                Triple(1800L, "z", 6))
+    }
+
+    private lateinit var reference: IStateSystemWriter
+    private lateinit var ss: IStateSystemReader
+
+    @BeforeEach
+    fun setup() {
+        reference = StateSystemFactory.newStateSystem(StateHistoryBackendFactory.createInMemoryBackend(SSID, START_TIME))
+        PATHS.forEach { reference.getQuarkAbsoluteAndAdd(it) }
+        applyChanges(reference, START_TIME, END_TIME)
+        reference.closeHistory(END_TIME)
+
+        val slices = SLICE_STARTS.mapIndexed { index, sliceStart ->
+            val sliceEnd = SLICE_STARTS.getOrNull(index + 1)?.minus(1) ?: END_TIME
+            val slice = StateSystemFactory.newStateSystem(StateHistoryBackendFactory.createInMemoryBackend(SSID, sliceStart))
+            if (index == 0) {
+                PATHS.forEach { slice.getQuarkAbsoluteAndAdd(it) }
+            } else {
+                Statedump(reference, sliceStart, 0).restoreInto(slice, sliceStart)
+            }
+            applyChanges(slice, sliceStart, sliceEnd)
+            slice.closeHistory(sliceEnd)
+            slice
+        }
+        ss = TimeSlicedStateSystem(SSID, slices)
+    }
+
+    @AfterEach
+    fun cleanup() {
+        ss.dispose()
+        reference.dispose()
+    }
+
+    private fun applyChanges(ss: IStateSystemWriter, start: Long, end: Long) {
+        CHANGES.filter { it.first in start..end }
+                .forEach { (t, path, value) -> ss.modifyAttribute(t, StateValue.newValueInt(value), ss.getQuarkAbsoluteAndAdd(path)) }
+    }
+
+    /**
+     * Single queries should join the intervals that were cut at the slice
+     * boundaries.
+     */
+    @Test
+    fun testSingleQueries() {
+        listOf(START_TIME, 1299L, 1300L, 1500L, 1599L, 1600L, END_TIME).forEach { t ->
+            PATHS.forEach { path ->
+                val expected = reference.querySingleState(t, reference.getQuarkAbsolute(path))
+                val actual = ss.querySingleState(t, ss.getQuarkAbsolute(path))
+                assertEquals(listOf(expected.start, expected.end, expected.stateValue),
+                        listOf(actual.start, actual.end, actual.stateValue), "$path at $t")
+            }
+        }
+    }
+
+    /**
+     * Range queries should return the same intervals as the single state
+     * system, including for ranges that start or end inside a slice, or
+     * exactly at a slice boundary.
+     */
+    @Test
+    fun testRangeQueries() {
+        val quarks = PATHS.map { ss.getQuarkAbsolute(it) }.toSet()
+        val referenceQuarks = PATHS.map { reference.getQuarkAbsolute(it) }.toSet()
+        listOf(START_TIME to END_TIME, 1299L to 1300L, 1300L to 1599L, 1400L to 1650L, 1600L to 1600L, 1900L to 5000L).forEach { (t1, t2) ->
+            val expected = reference.queryHistoryRange(referenceQuarks, t1, t2).asSequence()
+                    .map { listOf(reference.getFullAttributePath(it.attribute), it.start, it.end, it.stateValue) }
+                    .toSet()
+            val actual = ss.queryHistoryRange(quarks, t1, t2).asSequence().toList()
+            assertEquals(expected, actual.map { listOf(ss.getFullAttributePath(it.attribute), it.start, it.end, it.stateValue) }.toSet(), "[$t1, $t2]")
+            assertEquals(expected.size, actual.size, "[$t1, $t2]")
+
+            val followed = quarks.flatMap { followSingleQueries(ss, it, t1, t2) }
+            assertEquals(followed.sortedWith(INTERVAL_ORDER), actual.sortedWith(INTERVAL_ORDER), "[$t1, $t2]")
+        }
+    }
+}